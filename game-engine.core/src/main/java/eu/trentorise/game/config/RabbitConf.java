@@ -2,6 +2,7 @@ package eu.trentorise.game.config;
 
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory.ConfirmType;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
@@ -47,6 +48,8 @@ public class RabbitConf {
     	conn.setUsername(user);
     	conn.setPassword(pass);
     	conn.setVirtualHost(virtualHost);
+    	// notifications are marked as published on the confirm of the broker
+    	conn.setPublisherConfirmType(ConfirmType.CORRELATED);
     	return conn;
     }
     
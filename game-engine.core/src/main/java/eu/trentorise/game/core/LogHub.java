@@ -2,14 +2,39 @@ package eu.trentorise.game.core;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Optional;
 
 import org.slf4j.Logger;
+import org.slf4j.helpers.FormattingTuple;
 import org.slf4j.helpers.MessageFormatter;
 
+/**
+ * Logging facade prefixing every message with the id of the game.
+ *
+ * Parameterized variants check the level of the logger before doing any work: messages are
+ * formatted only when they are really written. Variants with one or two arguments use the slf4j
+ * formatter without creating an arguments array, the others use a builder reused by the calling
+ * thread
+ */
 public class LogHub {
 
+	private static final int LEVEL_DEBUG = 0;
+	private static final int LEVEL_INFO = 1;
+	private static final int LEVEL_WARN = 2;
+	private static final int LEVEL_ERROR = 3;
+
+	private static final String GAME_SEPARATOR = " - ";
+	private static final String PLACEHOLDER = "{}";
+
+	private static final int BUILDER_INITIAL_CAPACITY = 256;
+	// builders grown over this size are dropped, to avoid to retain big buffers per thread
+	private static final int BUILDER_MAX_CAPACITY = 8192;
+
+	private static final ThreadLocal<MessageBuilder> builders =
+			ThreadLocal.withInitial(MessageBuilder::new);
+
 	public static void info(String gameId, Logger logger, String msg) {
 		if (gameId != null) {
 			logger.info("{} - {}", gameId, msg);
@@ -42,20 +67,76 @@ public class LogHub {
 		}
 	}
 
+	public static void info(String gameId, Logger logger, String msg, Object arg) {
+		if (logger.isInfoEnabled()) {
+			log(LEVEL_INFO, gameId, logger, MessageFormatter.format(msg, arg));
+		}
+	}
+
+	public static void info(String gameId, Logger logger, String msg, Object arg1, Object arg2) {
+		if (logger.isInfoEnabled()) {
+			log(LEVEL_INFO, gameId, logger, MessageFormatter.format(msg, arg1, arg2));
+		}
+	}
+
 	public static void info(String gameId, Logger logger, String msg, Object... objs) {
-		info(gameId, logger, MessageFormatter.arrayFormat(msg, objs).getMessage());
+		if (logger.isInfoEnabled()) {
+			log(LEVEL_INFO, gameId, logger, msg, objs);
+		}
+	}
+
+	public static void error(String gameId, Logger logger, String msg, Object arg) {
+		if (logger.isErrorEnabled()) {
+			log(LEVEL_ERROR, gameId, logger, MessageFormatter.format(msg, arg));
+		}
+	}
+
+	public static void error(String gameId, Logger logger, String msg, Object arg1, Object arg2) {
+		if (logger.isErrorEnabled()) {
+			log(LEVEL_ERROR, gameId, logger, MessageFormatter.format(msg, arg1, arg2));
+		}
 	}
 
 	public static void error(String gameId, Logger logger, String msg, Object... objs) {
-		error(gameId, logger, MessageFormatter.arrayFormat(msg, objs).getMessage());
+		if (logger.isErrorEnabled()) {
+			log(LEVEL_ERROR, gameId, logger, msg, objs);
+		}
+	}
+
+	public static void warn(String gameId, Logger logger, String msg, Object arg) {
+		if (logger.isWarnEnabled()) {
+			log(LEVEL_WARN, gameId, logger, MessageFormatter.format(msg, arg));
+		}
+	}
+
+	public static void warn(String gameId, Logger logger, String msg, Object arg1, Object arg2) {
+		if (logger.isWarnEnabled()) {
+			log(LEVEL_WARN, gameId, logger, MessageFormatter.format(msg, arg1, arg2));
+		}
 	}
 
 	public static void warn(String gameId, Logger logger, String msg, Object... objs) {
-		warn(gameId, logger, MessageFormatter.arrayFormat(msg, objs).getMessage());
+		if (logger.isWarnEnabled()) {
+			log(LEVEL_WARN, gameId, logger, msg, objs);
+		}
+	}
+
+	public static void debug(String gameId, Logger logger, String msg, Object arg) {
+		if (logger.isDebugEnabled()) {
+			log(LEVEL_DEBUG, gameId, logger, MessageFormatter.format(msg, arg));
+		}
+	}
+
+	public static void debug(String gameId, Logger logger, String msg, Object arg1, Object arg2) {
+		if (logger.isDebugEnabled()) {
+			log(LEVEL_DEBUG, gameId, logger, MessageFormatter.format(msg, arg1, arg2));
+		}
 	}
 
 	public static void debug(String gameId, Logger logger, String msg, Object... objs) {
-		debug(gameId, logger, MessageFormatter.arrayFormat(msg, objs).getMessage());
+		if (logger.isDebugEnabled()) {
+			log(LEVEL_DEBUG, gameId, logger, msg, objs);
+		}
 	}
 
 	public static void info(String gameId, Logger logger, String msg, Exception e) {
@@ -90,6 +171,145 @@ public class LogHub {
 		}
 	}
 
+	private static void log(int level, String gameId, Logger logger, String msg, Object... objs) {
+		// as slf4j does, a trailing throwable is not a message argument
+		Throwable t = objs != null && objs.length > 0 && objs[objs.length - 1] instanceof Throwable
+				? (Throwable) objs[objs.length - 1] : null;
+		int argCount = objs == null ? 0 : (t != null ? objs.length - 1 : objs.length);
+		write(level, logger, format(gameId, msg, objs, argCount), t);
+	}
+
+	private static void log(int level, String gameId, Logger logger, FormattingTuple tuple) {
+		String message = gameId != null ? gameId + GAME_SEPARATOR + tuple.getMessage()
+				: tuple.getMessage();
+		write(level, logger, message, tuple.getThrowable());
+	}
+
+	private static void write(int level, Logger logger, String message, Throwable t) {
+		switch (level) {
+			case LEVEL_DEBUG:
+				logger.debug(message, t);
+				break;
+			case LEVEL_INFO:
+				logger.info(message, t);
+				break;
+			case LEVEL_WARN:
+				logger.warn(message, t);
+				break;
+			default:
+				logger.error(message, t);
+				break;
+		}
+	}
+
+	/**
+	 * Formats a message replacing the placeholders {} with the given arguments, following the
+	 * conventions of slf4j
+	 *
+	 * @param gameId if not null the message is prefixed with it
+	 * @param pattern message pattern
+	 * @param args arguments
+	 * @param argCount number of arguments to use
+	 * @return formatted message
+	 */
+	static String format(String gameId, String pattern, Object[] args, int argCount) {
+		MessageBuilder holder = builders.get();
+		// a toString() of an argument could log in turn: use a private builder in this case
+		StringBuilder sb = holder.inUse ? new StringBuilder(BUILDER_INITIAL_CAPACITY)
+				: holder.acquire();
+		try {
+			if (gameId != null) {
+				sb.append(gameId).append(GAME_SEPARATOR);
+			}
+			appendFormatted(sb, pattern, args, argCount);
+			return sb.toString();
+		} finally {
+			if (sb == holder.builder) {
+				holder.release();
+			}
+		}
+	}
+
+	private static void appendFormatted(StringBuilder sb, String pattern, Object[] args,
+			int argCount) {
+		if (pattern == null) {
+			sb.append((String) null);
+			return;
+		}
+		int from = 0;
+		int argIndex = 0;
+		while (argIndex < argCount) {
+			int placeholder = pattern.indexOf(PLACEHOLDER, from);
+			if (placeholder == -1) {
+				break;
+			}
+			if (isEscaped(pattern, placeholder)) {
+				if (isEscaped(pattern, placeholder - 1)) {
+					// double escape: literal backslash followed by the argument
+					sb.append(pattern, from, placeholder - 1);
+					appendArgument(sb, args[argIndex++]);
+				} else {
+					sb.append(pattern, from, placeholder - 1).append(PLACEHOLDER);
+				}
+			} else {
+				sb.append(pattern, from, placeholder);
+				appendArgument(sb, args[argIndex++]);
+			}
+			from = placeholder + PLACEHOLDER.length();
+		}
+		sb.append(pattern, from, pattern.length());
+	}
+
+	private static boolean isEscaped(String pattern, int index) {
+		return index > 0 && pattern.charAt(index - 1) == '\\';
+	}
+
+	private static void appendArgument(StringBuilder sb, Object arg) {
+		if (arg == null || !arg.getClass().isArray()) {
+			try {
+				sb.append(arg);
+			} catch (RuntimeException e) {
+				sb.append("[FAILED toString()]");
+			}
+		} else if (arg instanceof Object[]) {
+			sb.append(Arrays.deepToString((Object[]) arg));
+		} else if (arg instanceof int[]) {
+			sb.append(Arrays.toString((int[]) arg));
+		} else if (arg instanceof long[]) {
+			sb.append(Arrays.toString((long[]) arg));
+		} else if (arg instanceof double[]) {
+			sb.append(Arrays.toString((double[]) arg));
+		} else if (arg instanceof float[]) {
+			sb.append(Arrays.toString((float[]) arg));
+		} else if (arg instanceof boolean[]) {
+			sb.append(Arrays.toString((boolean[]) arg));
+		} else if (arg instanceof byte[]) {
+			sb.append(Arrays.toString((byte[]) arg));
+		} else if (arg instanceof short[]) {
+			sb.append(Arrays.toString((short[]) arg));
+		} else {
+			sb.append(Arrays.toString((char[]) arg));
+		}
+	}
+
+	private static class MessageBuilder {
+		private StringBuilder builder = new StringBuilder(BUILDER_INITIAL_CAPACITY);
+		private boolean inUse;
+
+		private StringBuilder acquire() {
+			if (builder.capacity() > BUILDER_MAX_CAPACITY) {
+				builder = new StringBuilder(BUILDER_INITIAL_CAPACITY);
+			}
+			builder.setLength(0);
+			inUse = true;
+			return builder;
+		}
+
+		private void release() {
+			inUse = false;
+		}
+	}
+
     /*
      * UTILITY LOG FUNCTIONS
      */
@@ -23,12 +23,35 @@ public class LoggingRuleListener implements RuleRuntimeEventListener {
 
     private Logger logger = LoggerFactory.getLogger(LoggingRuleListener.class);
 
+    private static final String OF_PLAYER = " of player {}";
+    private static final String PC_CREATED = "rule '{}' created PointConcept '{}' with score {}";
+    private static final String PC_CREATED_OF_PLAYER = PC_CREATED + OF_PLAYER;
+    private static final String BCC_CREATED =
+            "rule '{}' created BadgeCollectionConcept '{}' with badges {}";
+    private static final String BCC_CREATED_OF_PLAYER = BCC_CREATED + OF_PLAYER;
+    private static final String BADGE_NOTIFICATION_CREATED =
+            "rule '{}' created BadgeNotification for badge '{}'";
+    private static final String BADGE_NOTIFICATION_CREATED_OF_PLAYER =
+            BADGE_NOTIFICATION_CREATED + OF_PLAYER;
+    private static final String CUSTOM_DATA_ADDED = "rule '{}' added CustomData";
+    private static final String CUSTOM_DATA_ADDED_OF_PLAYER = CUSTOM_DATA_ADDED + OF_PLAYER;
+    private static final String PC_UPDATED =
+            "rule '{}' updated PointConcept '{}' of {} (total: {})";
+    private static final String PC_UPDATED_OF_PLAYER = PC_UPDATED + OF_PLAYER;
+    private static final String BCC_UPDATED =
+            "rule '{}' updated BadgeCollectionConcept '{}' with '{}'";
+    private static final String BCC_UPDATED_OF_PLAYER = BCC_UPDATED + OF_PLAYER;
+    private static final String CUSTOM_DATA_UPDATED = "rule '{}' updated CustomData";
+    private static final String CUSTOM_DATA_UPDATED_OF_PLAYER = CUSTOM_DATA_UPDATED + OF_PLAYER;
+
     private String domain;
     private String gameId;
     private String playerId;
     private String executionId;
     private long executionMoment;
     private PlayerState playerState;
+    // message patterns are chosen once, avoiding a concatenation for every log
+    private boolean logPlayer;
 
     public LoggingRuleListener(String domain, String gameId, String playerId,
             PlayerState playerState, String executionId, long executionMoment) {
@@ -38,6 +61,7 @@ public class LoggingRuleListener implements RuleRuntimeEventListener {
         this.executionId = executionId;
         this.executionMoment = executionMoment;
         this.playerState = playerState;
+        this.logPlayer = !StringUtils.isBlank(playerId);
     }
 
     public LoggingRuleListener() {}
@@ -47,14 +71,16 @@ public class LoggingRuleListener implements RuleRuntimeEventListener {
 
     @Override
     public void objectInserted(ObjectInsertedEvent insertEvent) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
         Object workingObj = insertEvent.getObject();
 
         if (workingObj instanceof PointConcept) {
             PointConcept pc = (PointConcept) workingObj;
 
             LogHub.info(gameId, logger,
-                    "rule \'{}\' created PointConcept \'{}\' with score {}"
-                            + (StringUtils.isBlank(playerId) ? "" : " of player {}"),
+                    logPlayer ? PC_CREATED_OF_PLAYER : PC_CREATED,
                     insertEvent.getRule() != null ? insertEvent.getRule().getName() : "-",
                     pc.getName(), pc.getScore(), playerId);
         }
@@ -62,8 +88,7 @@ public class LoggingRuleListener implements RuleRuntimeEventListener {
         if (workingObj instanceof BadgeCollectionConcept) {
             BadgeCollectionConcept bcc = (BadgeCollectionConcept) workingObj;
             LogHub.info(gameId, logger,
-                    "rule \'{}\' created BadgeCollectionConcept \'{}\' with badges {}"
-                            + (StringUtils.isBlank(playerId) ? "" : " of player {}"),
+                    logPlayer ? BCC_CREATED_OF_PLAYER : BCC_CREATED,
                     insertEvent.getRule() != null ? insertEvent.getRule().getName() : "-",
                     bcc.getName(), bcc.getBadgeEarned(), playerId);
         }
@@ -71,16 +96,14 @@ public class LoggingRuleListener implements RuleRuntimeEventListener {
         if (workingObj instanceof BadgeNotification) {
             BadgeNotification bn = (BadgeNotification) workingObj;
             LogHub.info(gameId, logger,
-                    "rule \'{}\' created BadgeNotification for badge \'{}\'"
-                            + (StringUtils.isBlank(playerId) ? "" : " of player {}"),
+                    logPlayer ? BADGE_NOTIFICATION_CREATED_OF_PLAYER : BADGE_NOTIFICATION_CREATED,
                     insertEvent.getRule() != null ? insertEvent.getRule().getName() : "-",
                     bn.getBadge(), playerId);
         }
 
         if (workingObj instanceof CustomData) {
             LogHub.info(gameId, logger,
-                    "rule \'{}\' added CustomData"
-                            + (StringUtils.isBlank(playerId) ? "" : " of player {}"),
+                    logPlayer ? CUSTOM_DATA_ADDED_OF_PLAYER : CUSTOM_DATA_ADDED,
                     insertEvent.getRule() != null ? insertEvent.getRule().getName() : "-",
                     playerId);
         }
@@ -101,14 +124,13 @@ public class LoggingRuleListener implements RuleRuntimeEventListener {
             PointConcept pc = (PointConcept) workingObj;
             double deltaScore =
                     PlayerStateUtils.getDeltaScore(playerState, pc.getName(), pc.getScore());
-            LogHub.info(gameId, logger,
-                    "rule \'{}\' updated PointConcept \'{}\' of {} (total: {})"
-                            + (StringUtils.isBlank(playerId) ? "" : " of player {}"),
+            LogHub.info(gameId, logger, logPlayer ? PC_UPDATED_OF_PLAYER : PC_UPDATED,
                     updateEvent.getRule() != null ? updateEvent.getRule().getName() : "-",
                     pc.getName(), deltaScore, pc.getScore(), playerId);
-
-            StatsLogger.logRulePointConceptDelta(domain, gameId, playerId, executionId,
-                    executionMoment, updateEvent.getRule().getName(), pc, deltaScore);
+            if (StatsLogger.isEnabled()) {
+                StatsLogger.logRulePointConceptDelta(domain, gameId, playerId, executionId,
+                        executionMoment, updateEvent.getRule().getName(), pc, deltaScore);
+            }
             PlayerStateUtils.incrementPointConcept(playerState, pc.getName(), deltaScore);
 
         }
@@ -119,13 +141,14 @@ public class LoggingRuleListener implements RuleRuntimeEventListener {
                     bcc.getBadgeEarned());
             if (!deltaBadges.isEmpty()) {
                 LogHub.info(gameId, logger,
-                        "rule \'{}\' updated BadgeCollectionConcept \'{}\' with \'{}\'"
-                                + (StringUtils.isBlank(playerId) ? "" : " of player {}"),
+                        logPlayer ? BCC_UPDATED_OF_PLAYER : BCC_UPDATED,
                         updateEvent.getRule() != null ? updateEvent.getRule().getName() : "-",
                         bcc.getName(), deltaBadges.get(0), playerId);
-                StatsLogger.logRuleBadgeCollectionConceptDelta(domain, gameId, playerId,
-                        executionId, executionMoment, updateEvent.getRule().getName(),
-                        bcc.getName(), deltaBadges.get(0));
+                if (StatsLogger.isEnabled()) {
+                    StatsLogger.logRuleBadgeCollectionConceptDelta(domain, gameId, playerId,
+                            executionId, executionMoment, updateEvent.getRule().getName(),
+                            bcc.getName(), deltaBadges.get(0));
+                }
                 PlayerStateUtils.incrementBadgeCollectionConcept(playerState, bcc.getName(),
                         deltaBadges.get(0));
             }
@@ -133,8 +156,7 @@ public class LoggingRuleListener implements RuleRuntimeEventListener {
 
         if (workingObj instanceof CustomData) {
             LogHub.info(gameId, logger,
-                    "rule \'{}\' updated CustomData"
-                            + (StringUtils.isBlank(playerId) ? "" : " of player {}"),
+                    logPlayer ? CUSTOM_DATA_UPDATED_OF_PLAYER : CUSTOM_DATA_UPDATED,
                     updateEvent.getRule() != null ? updateEvent.getRule().getName() : "-",
                     playerId);
         }
@@ -3,9 +3,9 @@ package eu.trentorise.game.core;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,25 +13,59 @@ import eu.trentorise.game.model.BadgeCollectionConcept;
 import eu.trentorise.game.model.LevelInstance;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.stats.LogStatsSink;
+import eu.trentorise.game.stats.RecordType;
+import eu.trentorise.game.stats.StatsEvent;
+import eu.trentorise.game.stats.StatsEvent.Field;
+import eu.trentorise.game.stats.StatsEventSink;
 import eu.trentorise.game.task.Classification;
 
+/**
+ * Produces the statistics events of the engine and publishes them to the registered
+ * {@link StatsEventSink}s. The stats log sink is always registered, other sinks can be added at
+ * runtime.
+ *
+ * Every method returns the text representation of the produced event. The text is rendered only
+ * when a text sink is enabled or when no sink is enabled at all, an event published only to the
+ * binary sinks is never rendered and the methods return null
+ */
 public class StatsLogger {
 
-    private static final String LOGGER_NAME = "stats";
+    private static final Logger internalLogger = LoggerFactory.getLogger(StatsLogger.class);
 
-    private static final Logger statsLogger = LoggerFactory.getLogger(LOGGER_NAME);
+    private static final List<StatsEventSink> sinks =
+            new CopyOnWriteArrayList<>(new StatsEventSink[] {new LogStatsSink()});
 
-    private static final Logger internalLogger = LoggerFactory.getLogger(StatsLogger.class);
+    public static void addSink(StatsEventSink sink) {
+        sinks.add(sink);
+    }
+
+    public static boolean removeSink(StatsEventSink sink) {
+        return sinks.remove(sink);
+    }
+
+    public static List<StatsEventSink> getSinks() {
+        return sinks;
+    }
+
+    /**
+     *
+     * @return true if at least a sink is interested in the events
+     */
+    public static boolean isEnabled() {
+        for (StatsEventSink sink : sinks) {
+            if (sink.isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
 
     public static String logRule(String domain, String gameId, String playerId, String executionId,
             long executionMoment, long timestamp, String ruleName, PointConcept concept) {
-        String msg = commonFieldsOutput(domain, gameId, playerId, executionId, executionMoment,
-                timestamp);
-        msg += " " + String.format("type=%s ruleName=\"%s\" name=\"%s\" score=%s",
-                PointConcept.class.getSimpleName(), ruleName, concept.getName(),
-                concept.getScore());
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.RULE_POINTCONCEPT, domain, gameId, playerId,
+                executionId, executionMoment, timestamp).with(Field.RULE_NAME, ruleName)
+                        .with(Field.NAME, concept.getName()).with(Field.SCORE, concept.getScore()));
     }
 
     public static String logRule(String domain, String gameId, String playerId, String executionId,
@@ -56,13 +90,10 @@ public class StatsLogger {
 
     public static String logRule(String domain, String gameId, String playerId, String executionId,
             long executionMoment, long timestamp, String ruleName, BadgeCollectionConcept concept) {
-        String msg = commonFieldsOutput(domain, gameId, playerId, executionId, executionMoment,
-                timestamp);
-        msg += " " + String.format("type=%s ruleName=\"%s\" name=\"%s\" badges=\"%s\"",
-                BadgeCollectionConcept.class.getSimpleName(), ruleName, concept.getName(),
-                concept.getBadgeEarned());
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.RULE_BADGECOLLECTIONCONCEPT, domain, gameId,
+                playerId, executionId, executionMoment, timestamp).with(Field.RULE_NAME, ruleName)
+                        .with(Field.NAME, concept.getName())
+                        .with(Field.BADGES, String.valueOf(concept.getBadgeEarned())));
     }
 
     public static String logRule(String domain, String gameId, String playerId, String executionId,
@@ -74,27 +105,18 @@ public class StatsLogger {
     private static String logRulePointConceptDelta(String domain, String gameId, String playerId,
             String executionId, long executionMoment, long timestamp, String ruleName,
             PointConcept concept, double deltaScore) {
-        String msg = commonFieldsOutput(domain, gameId, playerId, executionId, executionMoment,
-                timestamp);
-
-        msg += " " + String.format("type=%s ruleName=\"%s\" name=\"%s\" deltaScore=%s score=%s",
-                PointConcept.class.getSimpleName(), ruleName, concept.getName(), deltaScore,
-                concept.getScore());
-
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.RULE_POINTCONCEPT, domain, gameId, playerId,
+                executionId, executionMoment, timestamp).with(Field.RULE_NAME, ruleName)
+                        .with(Field.NAME, concept.getName()).with(Field.DELTA_SCORE, deltaScore)
+                        .with(Field.SCORE, concept.getScore()));
     }
 
     private static String logRuleBadgeCollectionConceptDelta(String domain, String gameId,
             String playerId, String executionId, long executionMoment, long timestamp,
             String ruleName, String conceptName, String badge) {
-        String msg = commonFieldsOutput(domain, gameId, playerId, executionId, executionMoment,
-                timestamp);
-
-        msg += " " + String.format("type=%s ruleName=\"%s\" name=\"%s\" new_badge=\"%s\"",
-                BadgeCollectionConcept.class.getSimpleName(), ruleName, conceptName, badge);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.RULE_BADGECOLLECTIONCONCEPT, domain, gameId,
+                playerId, executionId, executionMoment, timestamp).with(Field.RULE_NAME, ruleName)
+                        .with(Field.NAME, conceptName).with(Field.NEW_BADGE, badge));
     }
 
     public static String logAction(String domain, String gameId, String playerId,
@@ -107,12 +129,8 @@ public class StatsLogger {
     public static String logAction(String domain, String gameId, String playerId,
             String executionId, long executionMoment, long timestamp, String action,
             Map<String, Object> inputData, List<Object> factObjects, PlayerState state) {
-        String msg = commonFieldsOutput(domain, gameId, playerId, executionId, executionMoment,
-                timestamp);
-
-        msg += " " + String.format("type=%s actionName=\"%s\"", "Action", action);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.ACTION, domain, gameId, playerId, executionId,
+                executionMoment, timestamp).with(Field.ACTION_NAME, action));
     }
 
     public static String logClassification(String domain, String gameId, String playerId,
@@ -125,18 +143,14 @@ public class StatsLogger {
     public static String logClassification(String domain, String gameId, String playerId,
             String executionId, long executionMoment, long timestamp, Map<String, Object> inputData,
             List<Object> factObjects) {
-        String msg = commonFieldsOutput(domain, gameId, playerId, executionId, executionMoment,
-                timestamp);
-
         if (CollectionUtils.isNotEmpty(factObjects)) {
             for (Object factObj : factObjects) {
                 if (factObj instanceof Classification) {
                     Classification obj = (Classification) factObj;
-                    msg += " " + String.format(
-                            "type=%s classificationName=\"%s\" classificationPosition=%s",
-                            "Classification", obj.getName(), obj.getPosition());
-                    statsLogger.info(msg);
-                    return msg;
+                    return publish(new StatsEvent(RecordType.CLASSIFICATION, domain, gameId,
+                            playerId, executionId, executionMoment, timestamp)
+                                    .with(Field.CLASSIFICATION_NAME, obj.getName())
+                                    .with(Field.CLASSIFICATION_POSITION, obj.getPosition()));
                 }
             }
         } else {
@@ -149,166 +163,111 @@ public class StatsLogger {
 
     public static String logUserCreation(String domain, String gameId, String playerId,
             String executionId, long timestamp) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s creation", "UserCreation");
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.USER_CREATION, domain, gameId, playerId,
+                executionId, timestamp, timestamp));
     }
 
     public static String logBlacklist(String domain, String gameId, String playerId,
             String executionId, long timestamp, String blockedPlayerId) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s blockedPlayer=\"%s\"", "Blacklist", blockedPlayerId);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.BLACKLIST, domain, gameId, playerId, executionId,
+                timestamp, timestamp).with(Field.BLOCKED_PLAYER, blockedPlayerId));
     }
 
     public static String logUnblacklist(String domain, String gameId, String playerId,
             String executionId, long timestamp, String unblockedPlayerId) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " "
-                + String.format("type=%s blockedPlayer=\"%s\"", "Unblacklist", unblockedPlayerId);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.UNBLACKLIST, domain, gameId, playerId,
+                executionId, timestamp, timestamp).with(Field.BLOCKED_PLAYER, unblockedPlayerId));
     }
 
     public static String logChallengeAssignment(String domain, String gameId, String playerId,
             String executionId, long timestamp, String challengeName, Date start, Date end) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s name=\"%s\" startDate=%s endDate=%s",
-                "ChallengeAssigned", challengeName, start != null ? start.getTime() : null,
-                end != null ? end.getTime() : null);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_ASSIGNED, domain, gameId, playerId,
+                executionId, timestamp, timestamp).with(Field.NAME, challengeName)
+                        .with(Field.START_DATE, start != null ? start.getTime() : null)
+                        .with(Field.END_DATE, end != null ? end.getTime() : null));
     }
 
     public static String logChallengeCompleted(String domain, String gameId, String playerId,
             String executionId, long executionTime, long timestamp, String challengeName) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s name=\"%s\" completed", "ChallengeCompleted",
-                challengeName);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_COMPLETED, domain, gameId, playerId,
+                executionId, timestamp, timestamp).with(Field.NAME, challengeName));
     }
 
 
     public static String logChallengeProposed(String domain, String gameId, String playerId,
             String executionId, long executionTime, long timestamp, String challengeName) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " "
-                + String.format("type=%s name=\"%s\" proposed", "ChallengeProposed", challengeName);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_PROPOSED, domain, gameId, playerId,
+                executionId, timestamp, timestamp).with(Field.NAME, challengeName));
     }
 
     public static String logChallengeAccepted(String domain, String gameId, String playerId,
             String executionId, long executionTime, long timestamp, String challengeName) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " "
-                + String.format("type=%s name=\"%s\" accepted", "ChallengeAccepted", challengeName);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_ACCEPTED, domain, gameId, playerId,
+                executionId, timestamp, timestamp).with(Field.NAME, challengeName));
     }
 
 
     public static String logChoiceActived(String domain, String gameId, String playerId,
             String executionId, long executionTime, long timestamp, String choice) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " "
-                + String.format("type=%s choice=\"%s\"", "ChoiceActivated", choice);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHOICE_ACTIVATED, domain, gameId, playerId,
+                executionId, timestamp, timestamp).with(Field.CHOICE, choice));
     }
 
     public static String logChallengeRefused(String domain, String gameId, String playerId,
             String executionId, long executionTime, long timestamp, String challengeName) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " "
-                + String.format("type=%s name=\"%s\" refused", "ChallengeRefused", challengeName);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_REFUSED, domain, gameId, playerId,
+                executionId, timestamp, timestamp).with(Field.NAME, challengeName));
     }
 
 
     public static String logChallengeFailed(String domain, String gameId, String playerId,
             String executionId, long executionTime, long timestamp, String challengeName) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, executionTime, timestamp);
-        msg += " "
-                + String.format("type=%s name=\"%s\" failed", "ChallengeFailed", challengeName);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_FAILED, domain, gameId, playerId,
+                executionId, executionTime, timestamp).with(Field.NAME, challengeName));
     }
     public static String logEndGameAction(String domain, String gameId, String playerId,
             String executionId, long executionTime, long timestamp) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s end", "EndGameAction");
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.END_GAME_ACTION, domain, gameId, playerId,
+                executionId, timestamp, timestamp));
     }
 
     public static String logLevelGained(String domain, String gameId, String playerId,
             LevelInstance level, String executionId, long executionTime, long timestamp) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s levelName=\"%s\" levelType=\"%s\"", "LevelGained",
-                level.getName(), level.getType());
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.LEVEL_GAINED, domain, gameId, playerId,
+                executionId, timestamp, timestamp).with(Field.LEVEL_NAME, level.getName())
+                        .with(Field.LEVEL_TYPE, level.getType()));
     }
 
     public static String logInviteToChallenge(String domain, String gameId, String playerId,
             String executionId, long executionTime, long timestamp, String guestId,
             String instanceName, String challengeType) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s guest=\"%s\" name=\"%s\" challengeType=\"%s\"",
-                "ChallengeInvitation", guestId, instanceName, challengeType);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_INVITATION, domain, gameId, playerId,
+                executionId, timestamp, timestamp).with(Field.GUEST, guestId)
+                        .with(Field.NAME, instanceName).with(Field.CHALLENGE_TYPE, challengeType));
     }
 
     public static String logChallengeInvitationAccepted(String domain, String gameId,
             String playerId, String executionId, long executionTime, long timestamp,
             String instanceName, String challengeType) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s name=\"%s\" challengeType=\"%s\"",
-                "ChallengeInvitationAccepted", instanceName, challengeType);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_INVITATION_ACCEPTED, domain, gameId,
+                playerId, executionId, timestamp, timestamp).with(Field.NAME, instanceName)
+                        .with(Field.CHALLENGE_TYPE, challengeType));
     }
 
     public static String logChallengeInvitationRefused(String domain, String gameId,
             String playerId, String executionId, long executionTime, long timestamp,
             String instanceName, String challengeType) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s name=\"%s\" challengeType=\"%s\"",
-                "ChallengeInvitationRefused", instanceName, challengeType);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_INVITATION_REFUSED, domain, gameId,
+                playerId, executionId, timestamp, timestamp).with(Field.NAME, instanceName)
+                        .with(Field.CHALLENGE_TYPE, challengeType));
     }
 
     public static String logChallengeInvitationCanceled(String domain, String gameId,
             String playerId, String executionId, long executionTime, long timestamp,
             String instanceName, String challengeType) {
-        String msg =
-                commonFieldsOutput(domain, gameId, playerId, executionId, timestamp, timestamp);
-        msg += " " + String.format("type=%s name=\"%s\" challengeType=\"%s\"",
-                "ChallengeInvitationCanceled", instanceName, challengeType);
-        statsLogger.info(msg);
-        return msg;
+        return publish(new StatsEvent(RecordType.CHALLENGE_INVITATION_CANCELED, domain, gameId,
+                playerId, executionId, timestamp, timestamp).with(Field.NAME, instanceName)
+                        .with(Field.CHALLENGE_TYPE, challengeType));
     }
 
     public static String logSurveyCompleted(String domain, String gameId, String playerId,
@@ -320,22 +279,32 @@ public class StatsLogger {
     public static String logSurveyCompleted(String domain, String gameId, String playerId,
             String executionId, long executionMoment, long timestamp,
             Map<String, Object> inputData) {
-        String msg = commonFieldsOutput(domain, gameId, playerId, executionId, executionMoment,
-                timestamp);
         final String surveyType = (String) inputData.getOrDefault("surveyType", "");
-        msg += " " + String.format("type=%s surveyType=\"%s\"", "SurveyCompleted", surveyType);
-        statsLogger.info(msg);
-        return msg;
-    }
-
-    private static String commonFieldsOutput(String domain, String gameId, String playerId,
-            String executionId, long executionMoment, long timestamp) {
-        if(StringUtils.isBlank(domain)){
-            return String.format("\"%s\" \"%s\" %s %s %s", gameId, playerId, executionId,
-                    executionMoment, timestamp);   
-        }else{
-        return String.format("\"%s\" \"%s\" \"%s\" %s %s %s", domain, gameId, playerId, executionId,
-                executionMoment, timestamp);
+        return publish(new StatsEvent(RecordType.SURVEY_COMPLETED, domain, gameId, playerId,
+                executionId, executionMoment, timestamp).with(Field.SURVEY_TYPE, surveyType));
+    }
+
+    /*
+     * Dispatches the event to the enabled sinks, a failing sink does not prevent the delivery to
+     * the others
+     */
+    private static String publish(StatsEvent event) {
+        boolean published = false;
+        boolean text = false;
+        for (StatsEventSink sink : sinks) {
+            if (sink.isEnabled()) {
+                published = true;
+                text |= sink.isText();
+                try {
+                    sink.publish(event);
+                } catch (RuntimeException e) {
+                    LogHub.error(event.getGameId(), internalLogger,
+                            String.format("Exception publishing stats event on sink %s",
+                                    sink.getClass().getSimpleName()),
+                            e);
+                }
+            }
         }
+        return !published || text ? event.toString() : null;
     }
 }
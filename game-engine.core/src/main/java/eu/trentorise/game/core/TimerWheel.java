@@ -0,0 +1,83 @@
+package eu.trentorise.game.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel: items are put in the slot of their deadline tick, a slot holds the items of
+ * all the revolutions of the wheel, counted by the remaining rounds.
+ *
+ * Scheduling and advancing the wheel are O(1) per item, an item expires in the first
+ * {@link #advance(long)} after its deadline, with the precision of a tick. Items with a deadline
+ * already passed expire at the next tick.
+ */
+public class TimerWheel<T> {
+
+    private final long tickDuration;
+    private final long startTime;
+    private final List<LinkedList<Timeout<T>>> slots;
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(long tickDuration, int wheelSize, long startTime) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickDuration and wheelSize must be positive");
+        }
+        this.tickDuration = tickDuration;
+        this.startTime = startTime;
+        slots = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            slots.add(new LinkedList<>());
+        }
+    }
+
+    public synchronized void schedule(T item, long deadline) {
+        // first tick not before the deadline
+        long deadlineTick = Math.max(Math.floorDiv(deadline - startTime + tickDuration - 1, tickDuration),
+                currentTick);
+        Timeout<T> timeout = new Timeout<>(item, (deadlineTick - currentTick) / slots.size());
+        slots.get((int) (deadlineTick % slots.size())).add(timeout);
+        size++;
+    }
+
+    /**
+     * Moves the wheel up to the given time
+     *
+     * @return the items expired, in tick order
+     */
+    public synchronized List<T> advance(long now) {
+        List<T> expired = new ArrayList<>();
+        long nowTick = (now - startTime) / tickDuration;
+        while (currentTick <= nowTick) {
+            Iterator<Timeout<T>> slot = slots.get((int) (currentTick % slots.size())).iterator();
+            while (slot.hasNext()) {
+                Timeout<T> timeout = slot.next();
+                if (timeout.rounds <= 0) {
+                    expired.add(timeout.item);
+                    slot.remove();
+                    size--;
+                } else {
+                    timeout.rounds--;
+                }
+            }
+            currentTick++;
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static class Timeout<T> {
+        private final T item;
+        private long rounds;
+
+        private Timeout(T item, long rounds) {
+            this.item = item;
+            this.rounds = rounds;
+        }
+    }
+}
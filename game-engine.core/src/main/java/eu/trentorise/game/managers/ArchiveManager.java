@@ -3,37 +3,86 @@ package eu.trentorise.game.managers;
 import java.util.Date;
 import java.util.List;
 
+import javax.annotation.PostConstruct;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import eu.trentorise.game.model.ChallengeConcept;
 import eu.trentorise.game.model.GroupChallenge;
+import eu.trentorise.game.model.core.ArchivePage;
 import eu.trentorise.game.model.core.ArchivedConcept;
 
 @Service
 public class ArchiveManager {
 
     private static final String CHALLENGE_ARCHIVE_COLLECTION = "challengeArchive";
+    private static final int ARCHIVE_BATCH_SIZE = 1000;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String CURSOR_SEPARATOR = "_";
 
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    /**
+     * Archive queries always filter by game, the archiving date closes every index so date
+     * ranges and cursor pages are read as index ranges of the game
+     */
+    @PostConstruct
+    public void init() {
+        mongoTemplate.indexOps(CHALLENGE_ARCHIVE_COLLECTION)
+                .ensureIndex(new Index().on("gameId", Direction.ASC)
+                        .on("archivingDate", Direction.ASC).on("_id", Direction.ASC));
+        mongoTemplate.indexOps(CHALLENGE_ARCHIVE_COLLECTION)
+                .ensureIndex(new Index().on("gameId", Direction.ASC).on("playerId", Direction.ASC)
+                        .on("archivingDate", Direction.ASC).on("_id", Direction.ASC));
+        mongoTemplate.indexOps(CHALLENGE_ARCHIVE_COLLECTION)
+                .ensureIndex(new Index().on("gameId", Direction.ASC)
+                        .on("challenge.state", Direction.ASC).on("archivingDate", Direction.ASC)
+                        .on("_id", Direction.ASC));
+        // challenge reports by model
+        mongoTemplate.indexOps(CHALLENGE_ARCHIVE_COLLECTION)
+                .ensureIndex(new Index().on("gameId", Direction.ASC)
+                        .on("challenge.modelName", Direction.ASC)
+                        .on("challenge.start", Direction.ASC));
+    }
+
     public void moveToArchive(String gameId, String playerId, ChallengeConcept challenge) {
+        mongoTemplate.insert(archived(gameId, playerId, challenge), CHALLENGE_ARCHIVE_COLLECTION);
+    }
+
+    public void moveToArchive(String gameId, GroupChallenge challenge) {
+        mongoTemplate.insert(archived(gameId, challenge), CHALLENGE_ARCHIVE_COLLECTION);
+    }
+
+    public void moveToArchive(List<ArchivedConcept> archived) {
+        for (int i = 0; i < archived.size(); i += ARCHIVE_BATCH_SIZE) {
+            mongoTemplate.insert(
+                    archived.subList(i, Math.min(i + ARCHIVE_BATCH_SIZE, archived.size())),
+                    CHALLENGE_ARCHIVE_COLLECTION);
+        }
+    }
+
+    public static ArchivedConcept archived(String gameId, String playerId,
+            ChallengeConcept challenge) {
         ArchivedConcept archived = new ArchivedConcept();
         archived.setChallenge(challenge);
         archived.setGameId(gameId);
         archived.setPlayerId(playerId);
-        mongoTemplate.save(archived, CHALLENGE_ARCHIVE_COLLECTION);
+        return archived;
     }
 
-    public void moveToArchive(String gameId, GroupChallenge challenge) {
+    public static ArchivedConcept archived(String gameId, GroupChallenge challenge) {
         ArchivedConcept archived = new ArchivedConcept();
         archived.setGroupChallenge(challenge);
         archived.setGameId(gameId);
-        mongoTemplate.save(archived, CHALLENGE_ARCHIVE_COLLECTION);
+        return archived;
     }
 
     public List<ArchivedConcept> readArchives(String gameId, String playerId, String state,
@@ -41,7 +90,55 @@ public class ArchiveManager {
         List<ArchivedConcept> result;
 
         Query query = new Query();
+        query.addCriteria(archiveCriteria(gameId, playerId, state, from, to));
+
+        result = mongoTemplate.find(query, ArchivedConcept.class);
+
+        return result;
+
+    }
+
+    /**
+     * Reads a page of archives in archiving order. Pages are read by position on the archive
+     * indexes, so the cost of a page doesn't depend on how many pages precede it
+     * 
+     * @param cursor nextCursor of the previous page, null to read the first page
+     */
+    public ArchivePage readArchives(String gameId, String playerId, String state, Date from,
+            Date to, String cursor, int size) {
+        if (size <= 0 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(
+                    String.format("page size must be between 1 and %s", MAX_PAGE_SIZE));
+        }
+        Query query = new Query();
+        query.addCriteria(archiveCriteria(gameId, playerId, state, from, to));
+        if (cursor != null) {
+            int separator = cursor.indexOf(CURSOR_SEPARATOR);
+            Date lastDate;
+            String lastId;
+            try {
+                lastDate = new Date(Long.parseLong(cursor.substring(0, separator)));
+                lastId = cursor.substring(separator + 1);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(String.format("invalid cursor %s", cursor));
+            }
+            query.addCriteria(new Criteria().orOperator(Criteria.where("archivingDate").gt(lastDate),
+                    Criteria.where("archivingDate").is(lastDate).and("id").gt(lastId)));
+        }
+        query.with(Sort.by(Direction.ASC, "archivingDate", "id")).limit(size + 1);
+
+        List<ArchivedConcept> content = mongoTemplate.find(query, ArchivedConcept.class);
+        String nextCursor = null;
+        if (content.size() > size) {
+            content = content.subList(0, size);
+            ArchivedConcept last = content.get(size - 1);
+            nextCursor = last.getArchivingDate().getTime() + CURSOR_SEPARATOR + last.getId();
+        }
+        return new ArchivePage(content, nextCursor);
+    }
 
+    private Criteria archiveCriteria(String gameId, String playerId, String state, Date from,
+            Date to) {
         Criteria criteria = Criteria.where("gameId").is(gameId);
 
         if (playerId != null) {
@@ -59,12 +156,6 @@ public class ArchiveManager {
         } else if (to != null) {
             criteria = criteria.and("archivingDate").lte(to);
         }
-
-        query.addCriteria(criteria);
-
-        result = mongoTemplate.find(query, ArchivedConcept.class);
-
-        return result;
-
+        return criteria;
     }
 }
@@ -0,0 +1,236 @@
+/**
+ *    Copyright 2015 Fondazione Bruno Kessler - Trento RISE
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package eu.trentorise.game.managers;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.MongoCursor;
+
+import eu.trentorise.game.model.ChallengeConcept;
+import eu.trentorise.game.model.ChallengeConcept.ChallengeState;
+import eu.trentorise.game.model.GroupChallenge;
+import eu.trentorise.game.repo.ChallengeConceptPersistence;
+import eu.trentorise.game.repo.ChallengeDeadlinePersistence;
+
+/**
+ * Time ordered index of the end dates of the challenges not yet completed or failed.
+ *
+ * Entries are written when a challenge is saved and removed when it reaches a final state, the
+ * {@link ChallengeDeadlineScheduler} reads the next deadlines on the deadline index. An entry is
+ * claimed removing it only if its deadline is unchanged, so a deadline is processed once also
+ * with many engine instances. With challenge.deadline.enabled set to false no entry is written
+ */
+@Component
+public class ChallengeDeadlineIndex {
+
+	private static final List<String> OPEN_GROUP_STATES = Arrays.asList(ChallengeState.ASSIGNED.name(),
+			ChallengeState.ACTIVE.name());
+	private static final List<String> CLOSED_SINGLE_STATES = Arrays.asList(ChallengeState.COMPLETED.name(),
+			ChallengeState.FAILED.name());
+	private static final int REBUILD_BATCH_SIZE = 1000;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Value("${challenge.deadline.enabled:true}")
+	private boolean enabled;
+
+	@PostConstruct
+	public void init() {
+		if (!enabled) {
+			return;
+		}
+		mongoTemplate.indexOps(ChallengeDeadlinePersistence.class)
+				.ensureIndex(new Index().on("deadline", Direction.ASC));
+	}
+
+	public void track(GroupChallenge challenge) {
+		if (!enabled || challenge == null || challenge.getId() == null) {
+			return;
+		}
+		String id = ChallengeDeadlinePersistence.groupId(challenge.getId());
+		if (challenge.getEnd() != null && challenge.getState() != null
+				&& OPEN_GROUP_STATES.contains(challenge.getState().name())) {
+			mongoTemplate.upsert(byId(id), groupEntry(challenge.getGameId(), challenge.getId(), challenge.getEnd()),
+					ChallengeDeadlinePersistence.class);
+		} else {
+			mongoTemplate.remove(byId(id), ChallengeDeadlinePersistence.class);
+		}
+	}
+
+	public void track(String gameId, String playerId, ChallengeConcept challenge) {
+		if (!enabled) {
+			return;
+		}
+		String id = ChallengeDeadlinePersistence.singleId(gameId, playerId, challenge.getName());
+		if (challenge.getEnd() != null && !CLOSED_SINGLE_STATES.contains(challenge.persistedState().name())) {
+			mongoTemplate.upsert(byId(id), singleEntry(gameId, playerId, challenge.getName(), challenge.getEnd()),
+					ChallengeDeadlinePersistence.class);
+		} else {
+			mongoTemplate.remove(byId(id), ChallengeDeadlinePersistence.class);
+		}
+	}
+
+	/**
+	 * Tracks with a single bulk write the single challenges of many players
+	 */
+	public void track(List<ChallengeConceptPersistence> challenges) {
+		if (!enabled || challenges.isEmpty()) {
+			return;
+		}
+		BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, ChallengeDeadlinePersistence.class);
+		for (ChallengeConceptPersistence challenge : challenges) {
+			ChallengeConcept concept = challenge.getConcept();
+			String id = ChallengeDeadlinePersistence.singleId(challenge.getGameId(), challenge.getPlayerId(),
+					challenge.getName());
+			if (concept.getEnd() != null && !CLOSED_SINGLE_STATES.contains(concept.persistedState().name())) {
+				bulk.upsert(byId(id), singleEntry(challenge.getGameId(), challenge.getPlayerId(), challenge.getName(),
+						concept.getEnd()));
+			} else {
+				bulk.remove(byId(id));
+			}
+		}
+		bulk.execute();
+	}
+
+	public void untrack(Collection<String> ids) {
+		if (enabled && !ids.isEmpty()) {
+			mongoTemplate.remove(new Query(new Criteria("id").in(ids)), ChallengeDeadlinePersistence.class);
+		}
+	}
+
+	/**
+	 * @return the entries with a deadline before the given date, in deadline order
+	 */
+	public List<ChallengeDeadlinePersistence> due(Date until, int limit) {
+		Query query = new Query(new Criteria("deadline").lt(until)).with(Sort.by(Direction.ASC, "deadline"))
+				.limit(limit);
+		return mongoTemplate.find(query, ChallengeDeadlinePersistence.class);
+	}
+
+	/**
+	 * Removes the entry if its deadline is not changed since it has been read
+	 *
+	 * @return true if the entry is claimed by the caller
+	 */
+	public boolean claim(ChallengeDeadlinePersistence entry) {
+		Query query = byId(entry.getId());
+		query.addCriteria(new Criteria("deadline").is(entry.getDeadline()));
+		return mongoTemplate.remove(query, ChallengeDeadlinePersistence.class).getDeletedCount() > 0;
+	}
+
+	/**
+	 * Puts back a claimed entry with a new deadline, if in the meanwhile the challenge has not been
+	 * tracked again
+	 */
+	public void retry(ChallengeDeadlinePersistence entry, Date deadline) {
+		Update update = new Update().setOnInsert("type", entry.getType()).setOnInsert("gameId", entry.getGameId())
+				.setOnInsert("challengeId", entry.getChallengeId()).setOnInsert("playerId", entry.getPlayerId())
+				.setOnInsert("name", entry.getName()).setOnInsert("deadline", deadline);
+		mongoTemplate.upsert(byId(entry.getId()), update, ChallengeDeadlinePersistence.class);
+	}
+
+	/**
+	 * Indexes the open challenges already persisted, read with projected queries on the challenge
+	 * collections
+	 *
+	 * @return the number of indexed challenges
+	 */
+	public long rebuild() {
+		long indexed = 0;
+		BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, ChallengeDeadlinePersistence.class);
+		int batch = 0;
+
+		Document groupFilter = new Document("end", new Document("$ne", null)).append("state",
+				new Document("$in", OPEN_GROUP_STATES));
+		try (MongoCursor<Document> cursor = mongoTemplate.getCollection(
+				mongoTemplate.getCollectionName(GroupChallenge.class)).find(groupFilter)
+				.projection(new Document("gameId", 1).append("end", 1)).batchSize(REBUILD_BATCH_SIZE).iterator()) {
+			while (cursor.hasNext()) {
+				Document challenge = cursor.next();
+				String challengeId = challenge.get("_id").toString();
+				bulk.upsert(byId(ChallengeDeadlinePersistence.groupId(challengeId)),
+						groupEntry(challenge.getString("gameId"), challengeId, challenge.getDate("end")));
+				indexed++;
+				if (++batch == REBUILD_BATCH_SIZE) {
+					bulk.execute();
+					bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, ChallengeDeadlinePersistence.class);
+					batch = 0;
+				}
+			}
+		}
+
+		Document singleFilter = new Document("concept.end", new Document("$ne", null)).append("concept.state",
+				new Document("$nin", CLOSED_SINGLE_STATES));
+		try (MongoCursor<Document> cursor = mongoTemplate.getCollection(
+				mongoTemplate.getCollectionName(ChallengeConceptPersistence.class)).find(singleFilter)
+				.projection(new Document("gameId", 1).append("playerId", 1).append("name", 1).append("concept.end", 1))
+				.batchSize(REBUILD_BATCH_SIZE).iterator()) {
+			while (cursor.hasNext()) {
+				Document challenge = cursor.next();
+				String gameId = challenge.getString("gameId");
+				String playerId = challenge.getString("playerId");
+				String name = challenge.getString("name");
+				bulk.upsert(byId(ChallengeDeadlinePersistence.singleId(gameId, playerId, name)),
+						singleEntry(gameId, playerId, name, challenge.get("concept", Document.class).getDate("end")));
+				indexed++;
+				if (++batch == REBUILD_BATCH_SIZE) {
+					bulk.execute();
+					bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, ChallengeDeadlinePersistence.class);
+					batch = 0;
+				}
+			}
+		}
+		if (batch > 0) {
+			bulk.execute();
+		}
+		return indexed;
+	}
+
+	private Query byId(String id) {
+		return new Query(new Criteria("id").is(id));
+	}
+
+	private Update groupEntry(String gameId, String challengeId, Date deadline) {
+		return new Update().set("type", ChallengeDeadlinePersistence.GROUP).set("gameId", gameId)
+				.set("challengeId", challengeId).set("deadline", deadline);
+	}
+
+	private Update singleEntry(String gameId, String playerId, String name, Date deadline) {
+		return new Update().set("type", ChallengeDeadlinePersistence.SINGLE).set("gameId", gameId)
+				.set("playerId", playerId).set("name", name).set("deadline", deadline);
+	}
+}
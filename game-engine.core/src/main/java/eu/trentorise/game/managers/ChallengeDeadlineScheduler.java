@@ -0,0 +1,183 @@
+/**
+ *    Copyright 2015 Fondazione Bruno Kessler - Trento RISE
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package eu.trentorise.game.managers;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import eu.trentorise.game.core.LogHub;
+import eu.trentorise.game.core.TimerWheel;
+import eu.trentorise.game.repo.ChallengeDeadlinePersistence;
+import eu.trentorise.game.services.GameService;
+
+/**
+ * Completes and fails the challenges at their end date, replacing the nightly scans of all the
+ * games.
+ *
+ * Every challenge.deadline.refresh ms the entries of the {@link ChallengeDeadlineIndex} expiring
+ * in the next challenge.deadline.lookahead ms are put in a {@link TimerWheel}, ticking every
+ * challenge.deadline.tick ms. An expired entry is claimed on the index and processed: a group
+ * challenge is completed or failed, the player owning a single challenge gets its expired
+ * challenges failed. A failed processing is retried after challenge.deadline.retry-delay ms.
+ *
+ * At startup the index is rebuilt from the open challenges, deadlines passed while the engine was
+ * down are processed at the first tick
+ */
+@Component
+public class ChallengeDeadlineScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(ChallengeDeadlineScheduler.class);
+
+	@Autowired
+	private ChallengeDeadlineIndex deadlineIndex;
+
+	@Autowired
+	private GameService gameSrv;
+
+	@Value("${challenge.deadline.enabled:true}")
+	private boolean enabled;
+
+	@Value("${challenge.deadline.tick:1000}")
+	private long tick;
+
+	@Value("${challenge.deadline.wheel-size:512}")
+	private int wheelSize;
+
+	@Value("${challenge.deadline.lookahead:300000}")
+	private long lookahead;
+
+	@Value("${challenge.deadline.refresh:30000}")
+	private long refresh;
+
+	@Value("${challenge.deadline.batch-size:1000}")
+	private int batchSize;
+
+	@Value("${challenge.deadline.retry-delay:60000}")
+	private long retryDelay;
+
+	private TimerWheel<ChallengeDeadlinePersistence> wheel;
+
+	// deadline scheduled in the wheel for every entry, used only by the scheduler thread
+	private final Map<String, Date> scheduled = new HashMap<>();
+	private boolean saturated;
+
+	private ScheduledExecutorService executor;
+
+	@PostConstruct
+	public void init() {
+		if (!enabled) {
+			return;
+		}
+		wheel = new TimerWheel<>(tick, wheelSize, System.currentTimeMillis());
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "challenge-deadlines");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.execute(this::rebuild);
+		executor.scheduleWithFixedDelay(this::load, 0, refresh, TimeUnit.MILLISECONDS);
+		executor.scheduleAtFixedRate(this::expire, tick, tick, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private void rebuild() {
+		try {
+			long start = System.currentTimeMillis();
+			long indexed = deadlineIndex.rebuild();
+			LogHub.info(null, logger, String.format("Indexed deadlines of %s open challenges in %s ms", indexed,
+					System.currentTimeMillis() - start));
+		} catch (RuntimeException e) {
+			LogHub.error(null, logger, "Exception indexing challenge deadlines: " + e.getMessage());
+		}
+	}
+
+	private void load() {
+		try {
+			List<ChallengeDeadlinePersistence> due = deadlineIndex
+					.due(new Date(System.currentTimeMillis() + lookahead), batchSize);
+			for (ChallengeDeadlinePersistence entry : due) {
+				if (!entry.getDeadline().equals(scheduled.get(entry.getId()))) {
+					scheduled.put(entry.getId(), entry.getDeadline());
+					wheel.schedule(entry, entry.getDeadline().getTime());
+				}
+			}
+			// more deadlines in the lookahead, load them as soon as these are processed
+			saturated = due.size() == batchSize;
+		} catch (RuntimeException e) {
+			LogHub.error(null, logger, "Exception loading challenge deadlines: " + e.getMessage());
+		}
+	}
+
+	private void expire() {
+		List<ChallengeDeadlinePersistence> expired = wheel.advance(System.currentTimeMillis());
+		for (ChallengeDeadlinePersistence entry : expired) {
+			// an entry loaded again with a new deadline supersedes the previous one
+			if (entry.getDeadline().equals(scheduled.get(entry.getId()))) {
+				scheduled.remove(entry.getId());
+				process(entry);
+			}
+		}
+		if (!expired.isEmpty() && saturated) {
+			load();
+		}
+	}
+
+	private void process(ChallengeDeadlinePersistence entry) {
+		final String gameId = entry.getGameId();
+		try {
+			if (!deadlineIndex.claim(entry)) {
+				// deadline changed or processed by another engine instance
+				return;
+			}
+			Date now = new Date();
+			if (ChallengeDeadlinePersistence.GROUP.equals(entry.getType())) {
+				gameSrv.expireGroupChallenge(gameId, entry.getChallengeId(), now);
+			} else {
+				gameSrv.expireChallenges(gameId, entry.getPlayerId(), now);
+			}
+		} catch (RuntimeException e) {
+			LogHub.error(gameId, logger, "Exception processing challenge deadline {}, retry in {} ms: {}", entry,
+					retryDelay, e.getMessage());
+			try {
+				deadlineIndex.retry(entry, new Date(System.currentTimeMillis() + retryDelay));
+			} catch (RuntimeException retryException) {
+				LogHub.error(gameId, logger, "Exception rescheduling challenge deadline {}: {}", entry,
+						retryException.getMessage());
+			}
+		}
+	}
+}
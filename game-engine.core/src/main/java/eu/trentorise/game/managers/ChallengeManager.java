@@ -1,8 +1,16 @@
 package eu.trentorise.game.managers;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -14,12 +22,15 @@ import java.util.stream.Collectors;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
 import eu.trentorise.game.core.Clock;
@@ -32,7 +43,6 @@ import eu.trentorise.game.model.ChallengeModel;
 import eu.trentorise.game.model.ChallengeReportCSVStub;
 import eu.trentorise.game.model.ChallengeReportJSONStub;
 import eu.trentorise.game.model.ChallengeUpdate;
-import eu.trentorise.game.model.ExportCsv;
 import eu.trentorise.game.model.Game;
 import eu.trentorise.game.model.GroupChallenge;
 import eu.trentorise.game.model.GroupChallenge.Attendee;
@@ -60,6 +70,13 @@ public class ChallengeManager {
 	private static final String SINGLE = "single";
 	private static final String GROUP = "group";
 
+	private static final int REPORT_BATCH_SIZE = 1000;
+	private static final List<ChallengeState> CSV_STATES = Arrays.asList(ChallengeState.PROPOSED,
+			ChallengeState.ASSIGNED, ChallengeState.ACTIVE, ChallengeState.COMPLETED, ChallengeState.FAILED,
+			ChallengeState.REFUSED, ChallengeState.AUTO_DISCARDED, ChallengeState.CANCELED);
+	private static final String CSV_HEADER = "\"type\",\"challengeId\",\"name\",\"modelName\",\"playerId\",\"start\",\"end\",\"hide\","
+			+ CSV_STATES.stream().map(ChallengeState::name).collect(Collectors.joining(",")) + "\n";
+
 	private static final int LIMIT_INVITATIONS_AS_PROPOSER = 1;
 	private static final int LIMIT_INVITATIONS_AS_GUEST = 3;
 
@@ -87,6 +104,9 @@ public class ChallengeManager {
 	@Autowired
 	private MongoTemplate mongoTemplate;
 
+	@Autowired
+	private ChallengeDeadlineIndex deadlineIndex;
+
 	public List<String> conditionCheck(GroupChallenge groupChallenge) {
 		if (groupChallenge.getChallengeModel().equals(GroupChallenge.MODEL_NAME_COMPETITIVE_PERFORMANCE)) { // check if
 																											// I need
@@ -117,7 +137,9 @@ public class ChallengeManager {
 				challenge.setInstanceName(String.format("p_%s_%s", proposer != null ? proposer.getPlayerId() : "rs",
 						UUID.randomUUID().toString()));
 			}
-			return groupChallengeRepo.save(challenge);
+			GroupChallenge saved = groupChallengeRepo.save(challenge);
+			deadlineIndex.track(saved);
+			return saved;
 		} else {
 			return null;
 		}
@@ -198,10 +220,23 @@ public class ChallengeManager {
 				clock.now(), GroupChallenge.MODEL_NAME_COMPETITIVE_PERFORMANCE);
 	}
 
+	public GroupChallenge readGroupChallenge(String challengeId) {
+		return groupChallengeRepo.findById(challengeId).orElse(null);
+	}
+
 	public List<GroupChallenge> activeGroupChallengesByDate(String gameId, String playerId, Date atDate) {
 		return groupChallengeRepo.activeGroupChallenges(gameId, playerId, atDate);
 	}
 
+	/**
+	 * Saves only the challenge scores of the given attendees, without replacing the challenge
+	 * 
+	 * @return false if the challenge no longer exists or its attendees changed
+	 */
+	public boolean updateScores(GroupChallenge challenge, Collection<String> playerIds) {
+		return groupChallengeRepo.updateAttendeeScores(challenge, playerIds);
+	}
+
 	public List<GroupChallenge> groupChallengeToFail(String gameId, Date atDate) {
 		return groupChallengeRepo.groupChallengesToFail(gameId, atDate);
 	}
@@ -442,153 +477,172 @@ public class ChallengeManager {
 		});
 	}
 
-	public String readChallengeReportJSON(String gameId, Date from, Date to, String challengeType, String modelName,
-			Boolean hidden) throws JsonProcessingException {
-
-		String result;
-		List<ChallengeReportJSONStub> challengeReportList = new ArrayList<>();
-
-		if (challengeType == null) {
-			List<ChallengeReportJSONStub> singleChallenges = readSingleChallengesJSONStub(gameId, from, to, modelName,
-					hidden);
-			List<ChallengeReportJSONStub> groupChallenges = readGroupChallengesJSONStub(gameId, from, to, modelName);
-			challengeReportList.addAll(singleChallenges);
-			challengeReportList.addAll(groupChallenges);
-		} else if (challengeType.equalsIgnoreCase(SINGLE)) {
-			List<ChallengeReportJSONStub> singleChallenges = readSingleChallengesJSONStub(gameId, from, to, modelName,
-					hidden);
-			challengeReportList.addAll(singleChallenges);
-		} else if (challengeType.equalsIgnoreCase(GROUP)) {
-			List<ChallengeReportJSONStub> groupChallenges = readGroupChallengesJSONStub(gameId, from, to, modelName);
-			challengeReportList.addAll(groupChallenges);
-		}
-		
+	/**
+	 * Writes the challenges of the report as a JSON array or, if jsonLines, one JSON object per line.
+	 * 
+	 * The challenges are read with cursors and written one at a time, so memory use doesn't depend on
+	 * the size of the report. The stream is flushed but not closed
+	 */
+	public void writeChallengeReportJSON(String gameId, Date from, Date to, String challengeType, String modelName,
+			Boolean hidden, boolean jsonLines, OutputStream out) throws IOException {
 		ObjectMapper mapper = new ObjectMapper();
 		mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-		result = mapper.writeValueAsString(challengeReportList);
-
-		return result;
-
-	}
-
-	private List<ChallengeReportJSONStub> readSingleChallengesJSONStub(String gameId, Date from, Date to,
-			String modelName, Boolean hidden) {
-		List<ChallengeReportJSONStub> singleChallengeReport = new ArrayList<>();
-
-		List<ChallengeConceptPersistence> singleChallenges = readSingleChallenges(gameId, from, to, modelName, hidden);
-
-		for (ChallengeConceptPersistence sc : singleChallenges) {
-			ChallengeReportJSONStub tmp = new ChallengeReportJSONStub();
-			tmp.setSingleChallenge(sc.getConcept());
-			tmp.setChallengeType(SINGLE_CHALLENGE);
-			singleChallengeReport.add(tmp);
-		}
-
-		List<ArchivedConcept> archivedSingleChallenges = readSingleArchives(gameId, from, to, modelName, hidden);
-
-		for (ArchivedConcept asc : archivedSingleChallenges) {
-			ChallengeReportJSONStub tmp = new ChallengeReportJSONStub();
-			tmp.setSingleChallenge(asc.getChallenge());
-			tmp.setChallengeType(SINGLE_CHALLENGE);
-			singleChallengeReport.add(tmp);
+		mapper.configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, false);
+		mapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		ObjectWriter writer = mapper.writer();
+		try (SequenceWriter sequence = jsonLines ? writer.withRootValueSeparator("\n").writeValues(out)
+				: writer.writeValuesAsArray(out)) {
+			if (challengeType == null || challengeType.equalsIgnoreCase(SINGLE)) {
+				streamReport(singleChallengesQuery(gameId, from, to, modelName, hidden), ChallengeConceptPersistence.class,
+						sc -> sequence.write(singleChallengeJSONStub(sc.getConcept())));
+				streamReport(singleArchivesQuery(gameId, from, to, modelName, hidden), ArchivedConcept.class,
+						asc -> sequence.write(singleChallengeJSONStub(asc.getChallenge())));
+			}
+			if (challengeType == null || challengeType.equalsIgnoreCase(GROUP)) {
+				streamReport(groupChallengesQuery(gameId, from, to, modelName), GroupChallenge.class,
+						gc -> sequence.write(groupChallengeJSONStub(gc)));
+				streamReport(groupArchivesQuery(gameId, from, to, modelName), ArchivedConcept.class,
+						agc -> sequence.write(groupChallengeJSONStub(agc.getGroupChallenge())));
+			}
 		}
+		out.flush();
+	}
 
-		return singleChallengeReport;
-
+	private ChallengeReportJSONStub singleChallengeJSONStub(ChallengeConcept challenge) {
+		ChallengeReportJSONStub tmp = new ChallengeReportJSONStub();
+		tmp.setSingleChallenge(challenge);
+		tmp.setChallengeType(SINGLE_CHALLENGE);
+		return tmp;
 	}
 
-	private List<ChallengeReportJSONStub> readGroupChallengesJSONStub(String gameId, Date from, Date to,
-			String modelName) {
-		List<ChallengeReportJSONStub> groupChallengeReport = new ArrayList<>();
+	private ChallengeReportJSONStub groupChallengeJSONStub(GroupChallenge challenge) {
+		ChallengeReportJSONStub tmp = new ChallengeReportJSONStub();
+		tmp.setGroupChallenge(challenge);
+		tmp.setChallengeType(challenge.getClass().getSimpleName());
+		return tmp;
+	}
 
-		List<GroupChallenge> groupChallenges = readGroupChallenges(gameId, from, to, modelName);
+	/**
+	 * Writes the challenges of the report as CSV, read with cursors and written one row at a time.
+	 * The stream is flushed but not closed
+	 */
+	public void writeChallengeReportCSV(String gameId, Date from, Date to, String challengeType, String modelName,
+			Boolean hidden, OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		writer.write(CSV_HEADER);
+		if (challengeType == null || challengeType.equalsIgnoreCase(SINGLE)) {
+			streamReport(singleChallengesQuery(gameId, from, to, modelName, hidden), ChallengeConceptPersistence.class,
+					sc -> writer.write(csvRow(singleChallengeCSVStub(sc))));
+			streamReport(singleArchivesQuery(gameId, from, to, modelName, hidden), ArchivedConcept.class,
+					asc -> writer.write(csvRow(archivedSingleChallengeCSVStub(asc))));
+		}
+		if (challengeType == null || challengeType.equalsIgnoreCase(GROUP)) {
+			streamReport(groupChallengesQuery(gameId, from, to, modelName), GroupChallenge.class,
+					gc -> writer.write(csvRow(groupChallengeCSVStub(gc))));
+			streamReport(groupArchivesQuery(gameId, from, to, modelName), ArchivedConcept.class,
+					agc -> writer.write(csvRow(archivedGroupChallengeCSVStub(agc))));
+		}
+		writer.flush();
+	}
 
-		for (GroupChallenge gc : groupChallenges) {
-			ChallengeReportJSONStub tmp = new ChallengeReportJSONStub();
-			tmp.setGroupChallenge(gc);
-			tmp.setChallengeType(gc.getClass().getSimpleName());
-			groupChallengeReport.add(tmp);
-		}
+	public String challengeReportFilename(String gameId, String extension) {
+		DateTimeFormatter ldf = DateTimeFormatter.ofPattern("dd-MM-YYYY");
+		LocalDate today = LocalDate.now();
+		return "report_challenges" + "_" + gameId + "_" + today.format(ldf) + "." + extension;
+	}
 
-		List<ArchivedConcept> groupChallengeArchive = readGroupArchives(gameId, from, to, modelName);
+	@FunctionalInterface
+	private interface ReportWriter<T> {
+		void write(T challenge) throws IOException;
+	}
 
-		for (ArchivedConcept agc : groupChallengeArchive) {
-			ChallengeReportJSONStub tmp = new ChallengeReportJSONStub();
-			tmp.setGroupChallenge(agc.getGroupChallenge());
-			tmp.setChallengeType(agc.getGroupChallenge().getClass().getSimpleName());
-			groupChallengeReport.add(tmp);
+	private <T> void streamReport(Query query, Class<T> type, ReportWriter<T> writer) throws IOException {
+		query.cursorBatchSize(REPORT_BATCH_SIZE);
+		try (CloseableIterator<T> cursor = mongoTemplate.stream(query, type)) {
+			while (cursor.hasNext()) {
+				writer.write(cursor.next());
+			}
 		}
-
-		return groupChallengeReport;
 	}
 
-	public List<ChallengeReportCSVStub> readChallengeReportCSV(String gameId, Date from, Date to, String challengeType,
-			String modelName, Boolean hidden) {
-
-		List<ChallengeReportCSVStub> result = new ArrayList<>();
-
-		if (challengeType == null ) {
-			List<ChallengeReportCSVStub> singleChallenges = readSingleChallengesCSVStub(gameId, from, to, modelName,
-					hidden);
-			List<ChallengeReportCSVStub> groupChallenges = readGroupChallengesCSVStub(gameId, from, to, modelName);
-			result.addAll(singleChallenges);
-			result.addAll(groupChallenges);
-		} else if (challengeType.equalsIgnoreCase(SINGLE)) {
-			List<ChallengeReportCSVStub> singleChallenges = readSingleChallengesCSVStub(gameId, from, to, modelName,
-					hidden);
-			result.addAll(singleChallenges);
-		} else if (challengeType.equalsIgnoreCase(GROUP)) {
-			List<ChallengeReportCSVStub> groupChallenges = readGroupChallengesCSVStub(gameId, from, to, modelName);
-			result.addAll(groupChallenges);
-		} 
-		
-		return result;
+	private ChallengeReportCSVStub singleChallengeCSVStub(ChallengeConceptPersistence sc) {
+		ChallengeReportCSVStub tmp = new ChallengeReportCSVStub();
+		tmp.setChallengeType(SINGLE_CHALLENGE);
+		tmp.setId(sc.getId());
+		tmp.setName(sc.getName());
+		tmp.setModelName(sc.getConcept().getModelName());
+		tmp.setGameId(sc.getGameId());
+		tmp.setPlayerId(sc.getPlayerId());
+		tmp.setStart(sc.getConcept().getStart());
+		tmp.setEnd(sc.getConcept().getEnd());
+		tmp.setStateDate(Map.copyOf(sc.getConcept().getStateDate()));
+		tmp.setHide(sc.getConcept().getVisibility().isHidden());
+		return tmp;
 	}
 
-	private List<ChallengeReportCSVStub> readSingleChallengesCSVStub(String gameId, Date from, Date to,
-			String modelName, Boolean hidden) {
-
-		List<ChallengeReportCSVStub> singleChallengeReport = new ArrayList<>();
-
-		List<ChallengeConceptPersistence> singleChallenges = readSingleChallenges(gameId, from, to, modelName, hidden);
+	private ChallengeReportCSVStub archivedSingleChallengeCSVStub(ArchivedConcept asc) {
+		ChallengeReportCSVStub tmp = new ChallengeReportCSVStub();
+		tmp.setChallengeType(SINGLE_CHALLENGE);
+		tmp.setId(asc.getId());
+		tmp.setName(asc.getChallenge().getName());
+		tmp.setModelName(asc.getChallenge().getModelName());
+		tmp.setGameId(asc.getGameId());
+		tmp.setPlayerId(asc.getPlayerId());
+		tmp.setStart(asc.getChallenge().getStart());
+		tmp.setEnd(asc.getChallenge().getEnd());
+		tmp.setStateDate(Map.copyOf(asc.getChallenge().getStateDate()));
+		tmp.setHide(asc.getChallenge().isHidden());
+		return tmp;
+	}
 
-		for (ChallengeConceptPersistence sc : singleChallenges) {
-			ChallengeReportCSVStub tmp = new ChallengeReportCSVStub();
-			tmp.setChallengeType(SINGLE_CHALLENGE);
-			tmp.setId(sc.getId());
-			tmp.setName(sc.getName());
-			tmp.setModelName(sc.getConcept().getModelName());
-			tmp.setGameId(sc.getGameId());
-			tmp.setPlayerId(sc.getPlayerId());
-			tmp.setStart(sc.getConcept().getStart());
-			tmp.setEnd(sc.getConcept().getEnd());
-			tmp.setStateDate(Map.copyOf(sc.getConcept().getStateDate()));
-			tmp.setHide(sc.getConcept().getVisibility().isHidden());
-			singleChallengeReport.add(tmp);
-		}
+	private ChallengeReportCSVStub groupChallengeCSVStub(GroupChallenge gc) {
+		ChallengeReportCSVStub tmp = new ChallengeReportCSVStub();
+		tmp.setChallengeType(gc.getClass().getSimpleName());
+		tmp.setId(gc.getId());
+		tmp.setName(gc.getInstanceName());
+		tmp.setModelName(gc.getChallengeModel());
+		tmp.setGameId(gc.getGameId());
+		tmp.setPlayerId(
+				gc.getAttendees().stream().map(foo -> foo.getPlayerId()).collect(Collectors.toList()).toString());
+		tmp.setStart(gc.getStart());
+		tmp.setEnd(gc.getEnd());
+		tmp.setStateDate(Map.copyOf(gc.getStateDate()));
+		return tmp;
+	}
 
-		List<ArchivedConcept> archivedSingleChallenges = readSingleArchives(gameId, from, to, modelName, hidden);
-
-		for (ArchivedConcept asc : archivedSingleChallenges) {
-			ChallengeReportCSVStub tmp = new ChallengeReportCSVStub();
-			tmp.setChallengeType(SINGLE_CHALLENGE);
-			tmp.setId(asc.getId());
-			tmp.setName(asc.getChallenge().getName());
-			tmp.setModelName(asc.getChallenge().getModelName());
-			tmp.setGameId(asc.getGameId());
-			tmp.setPlayerId(asc.getPlayerId());
-			tmp.setStart(asc.getChallenge().getStart());
-			tmp.setEnd(asc.getChallenge().getEnd());
-			tmp.setStateDate(Map.copyOf(asc.getChallenge().getStateDate()));
-			tmp.setHide(asc.getChallenge().isHidden());
-			singleChallengeReport.add(tmp);
-		}
+	private ChallengeReportCSVStub archivedGroupChallengeCSVStub(ArchivedConcept agc) {
+		ChallengeReportCSVStub tmp = new ChallengeReportCSVStub();
+		tmp.setChallengeType(agc.getGroupChallenge().getClass().getSimpleName());
+		tmp.setId(agc.getId());
+		tmp.setName(agc.getGroupChallenge().getInstanceName());
+		tmp.setModelName(agc.getGroupChallenge().getChallengeModel());
+		tmp.setGameId(agc.getGameId());
+		tmp.setPlayerId(agc.getGroupChallenge().getAttendees().stream().map(foo -> foo.getPlayerId())
+				.collect(Collectors.toList()).toString());
+		tmp.setStart(agc.getGroupChallenge().getStart());
+		tmp.setEnd(agc.getGroupChallenge().getEnd());
+		tmp.setStateDate(Map.copyOf(agc.getGroupChallenge().getStateDate()));
+		return tmp;
+	}
 
-		return singleChallengeReport;
+	private String csvRow(ChallengeReportCSVStub challenge) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("\"" + challenge.getChallengeType() + "\",");
+		sb.append("\"" + challenge.getId() + "\",");
+		sb.append("\"" + challenge.getName() + "\",");
+		sb.append("\"" + challenge.getModelName() + "\",");
+		sb.append("\"" + challenge.getPlayerId() + "\",");
+		sb.append("\"" + challenge.getStart() + "\",");
+		sb.append("\"" + challenge.getEnd() + "\",");
+		sb.append("\"" + challenge.isHide() + "\",");
+		for (ChallengeState state : CSV_STATES) {
+			sb.append("\"" + challenge.getStateDate().get(state) + "\"");
+			sb.append(state == ChallengeState.CANCELED ? "\n" : ",");
+		}
+		return sb.toString();
 	}
 
-	private List<ChallengeConceptPersistence> readSingleChallenges(String gameId, Date from, Date to, String modelName,
-			Boolean hidden) {
+	private Query singleChallengesQuery(String gameId, Date from, Date to, String modelName, Boolean hidden) {
 
 		Query query = new Query();
 		Criteria criteria = Criteria.where("gameId").is(gameId);
@@ -610,55 +664,11 @@ public class ChallengeManager {
 		}
 
 		query.addCriteria(criteria);
-
-		return mongoTemplate.find(query, ChallengeConceptPersistence.class);
+		return query;
 
 	}
 
-	private List<ChallengeReportCSVStub> readGroupChallengesCSVStub(String gameId, Date from, Date to,
-			String modelName) {
-
-		List<ChallengeReportCSVStub> groupChallengeReport = new ArrayList<>();
-
-		List<GroupChallenge> groupChallenges = readGroupChallenges(gameId, from, to, modelName);
-
-		for (GroupChallenge gc : groupChallenges) {
-			ChallengeReportCSVStub tmp = new ChallengeReportCSVStub();
-			tmp.setChallengeType(gc.getClass().getSimpleName());
-			tmp.setId(gc.getId());
-			tmp.setName(gc.getInstanceName());
-			tmp.setModelName(gc.getChallengeModel());
-			tmp.setGameId(gc.getGameId());
-			tmp.setPlayerId(
-					gc.getAttendees().stream().map(foo -> foo.getPlayerId()).collect(Collectors.toList()).toString());
-			tmp.setStart(gc.getStart());
-			tmp.setEnd(gc.getEnd());
-			tmp.setStateDate(Map.copyOf(gc.getStateDate()));
-			groupChallengeReport.add(tmp);
-		}
-
-		List<ArchivedConcept> archivedGroupChallenges = readGroupArchives(gameId, from, to, modelName);
-
-		for (ArchivedConcept agc : archivedGroupChallenges) {
-			ChallengeReportCSVStub tmp = new ChallengeReportCSVStub();
-			tmp.setChallengeType(agc.getGroupChallenge().getClass().getSimpleName());
-			tmp.setId(agc.getId());
-			tmp.setName(agc.getGroupChallenge().getInstanceName());
-			tmp.setModelName(agc.getGroupChallenge().getChallengeModel());
-			tmp.setGameId(agc.getGameId());
-			tmp.setPlayerId(agc.getGroupChallenge().getAttendees().stream().map(foo -> foo.getPlayerId())
-					.collect(Collectors.toList()).toString());
-			tmp.setStart(agc.getGroupChallenge().getStart());
-			tmp.setEnd(agc.getGroupChallenge().getEnd());
-			tmp.setStateDate(Map.copyOf(agc.getGroupChallenge().getStateDate()));
-			groupChallengeReport.add(tmp);
-		}
-
-		return groupChallengeReport;
-
-	}
-
-	private List<GroupChallenge> readGroupChallenges(String gameId, Date from, Date to, String modelName) {
+	private Query groupChallengesQuery(String gameId, Date from, Date to, String modelName) {
 		Query query = new Query();
 		Criteria criteria = Criteria.where("gameId").is(gameId);
 
@@ -674,69 +684,15 @@ public class ChallengeManager {
 		}
 
 		query.addCriteria(criteria);
-		return mongoTemplate.find(query, GroupChallenge.class);
+		return query;
 
 	}
 
-	public ExportCsv getChallengeReportCSV(List<ChallengeReportCSVStub> result, String gameId) {
-		DateTimeFormatter ldf = DateTimeFormatter.ofPattern("dd-MM-YYYY");
-		LocalDate today = LocalDate.now();
-		String filename = "report_challenges" + "_" + gameId + "_" + today.format(ldf) + ".csv";
-		StringBuffer sb = new StringBuffer(
-				"\"type\",\"challengeId\",\"name\",\"modelName\",\"playerId\",\"start\",\"end\",\"hide\","
-						+ ChallengeState.PROPOSED + "," + ChallengeState.ASSIGNED + "," + ChallengeState.ACTIVE + ","
-						+ ChallengeState.COMPLETED + "," + ChallengeState.FAILED + "," + ChallengeState.REFUSED + ","
-						+ ChallengeState.AUTO_DISCARDED + "," + ChallengeState.CANCELED + "\n");
-		result.forEach(challenge -> {
-			Date proposed = challenge.getStateDate().containsKey(ChallengeState.PROPOSED)
-					? challenge.getStateDate().get(ChallengeState.PROPOSED)
-					: null;
-			Date assigned = challenge.getStateDate().containsKey(ChallengeState.ASSIGNED)
-					? challenge.getStateDate().get(ChallengeState.ASSIGNED)
-					: null;
-			Date active = challenge.getStateDate().containsKey(ChallengeState.ACTIVE)
-					? challenge.getStateDate().get(ChallengeState.ACTIVE)
-					: null;
-			Date completed = challenge.getStateDate().containsKey(ChallengeState.COMPLETED)
-					? challenge.getStateDate().get(ChallengeState.COMPLETED)
-					: null;
-			Date failed = challenge.getStateDate().containsKey(ChallengeState.FAILED)
-					? challenge.getStateDate().get(ChallengeState.FAILED)
-					: null;
-			Date refused = challenge.getStateDate().containsKey(ChallengeState.REFUSED)
-					? challenge.getStateDate().get(ChallengeState.REFUSED)
-					: null;
-			Date autoDiscarded = challenge.getStateDate().containsKey(ChallengeState.AUTO_DISCARDED)
-					? challenge.getStateDate().get(ChallengeState.AUTO_DISCARDED)
-					: null;
-			Date cancelled = challenge.getStateDate().containsKey(ChallengeState.CANCELED)
-					? challenge.getStateDate().get(ChallengeState.CANCELED)
-					: null;
-			sb.append("\"" + challenge.getChallengeType() + "\",");
-			sb.append("\"" + challenge.getId() + "\",");
-			sb.append("\"" + challenge.getName() + "\",");
-			sb.append("\"" + challenge.getModelName() + "\",");
-			sb.append("\"" + challenge.getPlayerId() + "\",");
-			sb.append("\"" + challenge.getStart() + "\",");
-			sb.append("\"" + challenge.getEnd() + "\",");
-			sb.append("\"" + challenge.isHide() + "\",");
-			sb.append("\"" + proposed + "\",");
-			sb.append("\"" + assigned + "\",");
-			sb.append("\"" + active + "\",");
-			sb.append("\"" + completed + "\",");
-			sb.append("\"" + failed + "\",");
-			sb.append("\"" + refused + "\",");
-			sb.append("\"" + autoDiscarded + "\",");
-			sb.append("\"" + cancelled + "\"\n");
-		});
-		ExportCsv exportCsv = new ExportCsv();
-		exportCsv.setFilename(filename);
-		exportCsv.setContentType("text/csv");
-		exportCsv.setContent(sb);
-		return exportCsv;
+	public List<ArchivedConcept> readGroupArchives(String gameId, Date from, Date to, String modelName) {
+		return mongoTemplate.find(groupArchivesQuery(gameId, from, to, modelName), ArchivedConcept.class);
 	}
 
-	public List<ArchivedConcept> readGroupArchives(String gameId, Date from, Date to, String modelName) {
+	private Query groupArchivesQuery(String gameId, Date from, Date to, String modelName) {
 		Query query = new Query();
 		Criteria criteria = Criteria.where("gameId").is(gameId).and("groupChallenge").exists(true);
 
@@ -752,12 +708,11 @@ public class ChallengeManager {
 		}
 
 		query.addCriteria(criteria);
-		return mongoTemplate.find(query, ArchivedConcept.class);
+		return query;
 
 	}
 
-	private List<ArchivedConcept> readSingleArchives(String gameId, Date from, Date to, String modelName,
-			Boolean hidden) {
+	private Query singleArchivesQuery(String gameId, Date from, Date to, String modelName, Boolean hidden) {
 		Query query = new Query();
 		Criteria criteria = Criteria.where("gameId").is(gameId).and("challenge").exists(true);
 
@@ -778,7 +733,7 @@ public class ChallengeManager {
 		}
 
 		query.addCriteria(criteria);
-		return mongoTemplate.find(query, ArchivedConcept.class);
+		return query;
 
 	}
 
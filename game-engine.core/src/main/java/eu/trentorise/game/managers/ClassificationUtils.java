@@ -44,8 +44,12 @@ public class ClassificationUtils {
 	}
 
 	public static String generateKey(PeriodInstance pi) {
+		return generateKey(pi.getStart());
+	}
+
+	public static String generateKey(long periodStart) {
 		String key = null;
-		LocalDateTime d = new LocalDateTime(pi.getStart());
+		LocalDateTime d = new LocalDateTime(periodStart);
 		key = dtf.print(d);
 		return key;
 	}
@@ -15,6 +15,8 @@
 package eu.trentorise.game.managers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -22,13 +24,18 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.annotation.PostConstruct;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.LogManager;
+import org.bson.Document;
 import org.perf4j.StopWatch;
 import org.perf4j.log4j.Log4JStopWatch;
 import org.slf4j.Logger;
@@ -38,18 +45,28 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
 
 import eu.trentorise.game.core.LogHub;
 import eu.trentorise.game.core.ResourceNotFoundException;
 import eu.trentorise.game.core.StatsLogger;
+import eu.trentorise.game.managers.drools.StatefulSessionManager;
 import eu.trentorise.game.model.ChallengeConcept;
 import eu.trentorise.game.model.ChallengeConcept.ChallengeState;
 import eu.trentorise.game.model.ChallengeModel;
@@ -57,6 +74,7 @@ import eu.trentorise.game.model.CustomData;
 import eu.trentorise.game.model.Game;
 import eu.trentorise.game.model.GroupChallenge;
 import eu.trentorise.game.model.GroupChallenge.Attendee;
+import eu.trentorise.game.model.GroupChallenge.Attendee.Role;
 import eu.trentorise.game.model.Inventory;
 import eu.trentorise.game.model.Inventory.ItemChoice;
 import eu.trentorise.game.model.Level;
@@ -64,8 +82,13 @@ import eu.trentorise.game.model.Level.Threshold;
 import eu.trentorise.game.model.PlayerBlackList;
 import eu.trentorise.game.model.PlayerLevel;
 import eu.trentorise.game.model.PlayerState;
+import eu.trentorise.game.model.PointConcept;
 import eu.trentorise.game.model.TeamState;
+import eu.trentorise.game.model.core.ArchivedConcept;
+import eu.trentorise.game.model.core.BulkChallengeAssignment;
+import eu.trentorise.game.model.core.BulkChallengeAssignment.PlayerAssignment;
 import eu.trentorise.game.model.core.ChallengeAssignment;
+import eu.trentorise.game.model.core.ChallengeAssignmentResult;
 import eu.trentorise.game.model.core.ClassificationBoard;
 import eu.trentorise.game.model.core.ClassificationPosition;
 import eu.trentorise.game.model.core.ClassificationType;
@@ -80,6 +103,7 @@ import eu.trentorise.game.notification.ChallengeInvitationRefusedNotification;
 import eu.trentorise.game.notification.ChallengeProposedNotification;
 import eu.trentorise.game.repo.ChallengeConceptPersistence;
 import eu.trentorise.game.repo.ChallengeConceptRepo;
+import eu.trentorise.game.repo.ChallengeDeadlinePersistence;
 import eu.trentorise.game.repo.GenericObjectPersistence;
 import eu.trentorise.game.repo.GroupChallengeRepo;
 import eu.trentorise.game.repo.PlayerRepo;
@@ -105,6 +129,9 @@ public class DBPlayerManager implements PlayerService {
     @Autowired
 	private ChallengeConceptRepo challengeConceptRepo;
 
+    @Autowired
+    private ChallengeDeadlineIndex deadlineIndex;
+
     @Autowired
     private GroupChallengeRepo groupChallengeRepo;
 
@@ -113,13 +140,36 @@ public class DBPlayerManager implements PlayerService {
 
     @Autowired
     private ArchiveManager archiveSrv;
+
+    @Autowired
+    private StatefulSessionManager statefulSessions;
     
     private static final int PROPOSER_RANGE = 2;
+    private static final int MAX_INVITATIONS = 3;
+    private static final int BULK_ASSIGNMENT_BATCH_SIZE = 1000;
     
     public static final String ACTIVE_CAMPAIGN_KEY = "activePlayer";
     
     public static final String IS_TEAM = "isTeam";
 
+    @PostConstruct
+    public void init() {
+        // challengers selection of readSystemPlayerState
+        mongoTemplate.indexOps(PlayerState.class).ensureIndex(new Index().on("gameId", Direction.ASC)
+                .on("levels.pointConcept", Direction.ASC).on("levels.levelIndex", Direction.ASC));
+        mongoTemplate.indexOps(GroupChallenge.class).ensureIndex(
+                new Index().on("gameId", Direction.ASC).on("state", Direction.ASC));
+        // expired challenges of the challenge failure check
+        mongoTemplate.indexOps(ChallengeConceptPersistence.class).ensureIndex(
+                new Index().on("gameId", Direction.ASC).on("concept.end", Direction.ASC));
+        // players with proposed challenges of AutoChallengeChoiceTask
+        mongoTemplate.indexOps(ChallengeConceptPersistence.class).ensureIndex(
+                new Index().on("gameId", Direction.ASC).on("concept.state", Direction.ASC));
+        // challenge upserts of the bulk assignment
+        mongoTemplate.indexOps(ChallengeConceptPersistence.class).ensureIndex(new Index()
+                .on("gameId", Direction.ASC).on("playerId", Direction.ASC).on("name", Direction.ASC));
+    }
+
     public PlayerState loadState(String gameId, String playerId, boolean upsert, boolean mergeChallenges) {
         return loadState(gameId, playerId, upsert,mergeChallenges, mergeChallenges, false);
     }
@@ -278,6 +328,8 @@ public class DBPlayerManager implements PlayerService {
         FindAndModifyOptions options = new FindAndModifyOptions();
         options.upsert(true);
         options.returnNew(true);
+        // resident rule session of the player no more reflects the persisted state
+        statefulSessions.invalidate(gameId, playerId);
         return mongoTemplate.findAndModify(query, update, options, StatePersistence.class);
     }
 
@@ -302,6 +354,37 @@ public class DBPlayerManager implements PlayerService {
         return res;
     }
 
+    @Override
+    public List<PlayerState> loadPointConcepts(String gameId, Collection<String> playerIds,
+            Collection<String> pointConceptNames) {
+        List<PlayerState> states = new ArrayList<>();
+        if (playerIds.isEmpty()) {
+            return states;
+        }
+        Query query = new Query(new Criteria("gameId").is(gameId).and("playerId").in(playerIds));
+        query.fields().include("gameId").include("playerId");
+        pointConceptNames.forEach(name -> query.fields().include("concepts.PointConcept." + name));
+        for (StatePersistence state : mongoTemplate.find(query, StatePersistence.class)) {
+            states.add(new PlayerState(state));
+        }
+
+        // point concepts not yet in the player state, as in initConceptsStructure
+        Game game = gameSrv.loadGameDefinitionById(gameId);
+        if (game != null && game.getConcepts() != null) {
+            for (PlayerState state : states) {
+                for (String name : pointConceptNames) {
+                    if (state.pointConcept(name) == null) {
+                        game.getConcepts().stream()
+                                .filter(concept -> concept instanceof PointConcept
+                                        && concept.getName().equals(name))
+                                .findFirst().ifPresent(concept -> state.getState().add(concept));
+                    }
+                }
+            }
+        }
+        return states;
+    }
+
     public Page<PlayerState> loadStates(String gameId, Pageable pageable,
             boolean mergeChallenges, boolean filterHiddenChallenges) {
         StopWatch stopWatch =
@@ -445,6 +528,7 @@ public class DBPlayerManager implements PlayerService {
     @Override
     public void deleteState(String gameId, String playerId) {
         playerRepo.deleteByGameIdAndPlayerId(gameId, playerId);
+        statefulSessions.invalidate(gameId, playerId);
     }
 
     @Override
@@ -535,6 +619,204 @@ public class DBPlayerManager implements PlayerService {
         }
 
 
+        Date disclosureDate = null;
+        if (challengeAssignment.isHide()) {
+            Game game = gameSrv.loadGameDefinitionById(gameId);
+            Date now = new Date();
+            disclosureDate = game.nextChallengeDisclosureDate(now);
+        }
+        ChallengeConcept challenge = newChallenge(challengeAssignment, data, disclosureDate);
+
+        // save in playerState
+        PlayerState state = loadState(gameId, playerId, true, false);
+
+        state.getState().add(challenge);
+        persistConcepts(gameId, playerId, new StatePersistence(state).getConcepts());
+
+        if (challenge.getVisibility().isHidden()) {
+            LogHub.info(gameId, logger,
+                    "challenge {} is hidden [disclosure date: {}], notification will be not send",
+                    challenge.getName(),
+                    LogHub.logDate(challenge.getVisibility().getDisclosureDate()).orElse("-"));
+        } else {
+            Notification challengeNotification = challengeNotification(gameId, playerId, challenge);
+            notificationSrv.notificate(challengeNotification);
+            LogHub.info(gameId, logger, "send notification: {}", challengeNotification.toString());
+        }
+        Game game = gameSrv.loadGameDefinitionById(gameId);
+        logChallengeAssignment(game, playerId, UUID.randomUUID().toString(), challenge);
+
+        return challenge;
+
+    }
+
+    @Override
+    public List<ChallengeAssignmentResult> assignChallenge(String gameId,
+            BulkChallengeAssignment bulkAssignment) {
+        if (bulkAssignment.getModelName() == null) {
+            throw new IllegalArgumentException("modelName cannot be null");
+        }
+        // fails fast on an invalid state, before any write
+        newChallenge(bulkAssignment, null, null);
+
+        Optional<ChallengeModel> model =
+                gameSrv.readChallengeModelByName(gameId, bulkAssignment.getModelName());
+        Game game = gameSrv.loadGameDefinitionById(gameId);
+        if (game == null) {
+            throw new IllegalArgumentException(String.format("game %s not exist", gameId));
+        }
+        Date disclosureDate =
+                bulkAssignment.isHide() ? game.nextChallengeDisclosureDate(new Date()) : null;
+        String executionId = UUID.randomUUID().toString();
+
+        long start = System.currentTimeMillis();
+        List<ChallengeAssignmentResult> results = new ArrayList<>();
+        Set<String> assignedNames = new HashSet<>();
+        List<PlayerAssignment> players = bulkAssignment.getPlayers();
+        for (int i = 0; i < players.size(); i += BULK_ASSIGNMENT_BATCH_SIZE) {
+            results.addAll(assignChallenges(game, bulkAssignment, model, disclosureDate,
+                    executionId, assignedNames,
+                    players.subList(i, Math.min(i + BULK_ASSIGNMENT_BATCH_SIZE, players.size()))));
+        }
+        LogHub.info(gameId, logger, "assigned challenge model {} to {} of {} players in {} ms",
+                bulkAssignment.getModelName(),
+                results.stream().filter(ChallengeAssignmentResult::isAssigned).count(),
+                players.size(), System.currentTimeMillis() - start);
+        return results;
+    }
+
+    private List<ChallengeAssignmentResult> assignChallenges(Game game,
+            BulkChallengeAssignment bulkAssignment, Optional<ChallengeModel> model,
+            Date disclosureDate, String executionId, Set<String> assignedNames,
+            List<PlayerAssignment> players) {
+        final String gameId = game.getId();
+        ChallengeAssignmentResult[] results = new ChallengeAssignmentResult[players.size()];
+
+        Set<String> playerIds = players.stream().map(PlayerAssignment::getPlayerId)
+                .filter(Objects::nonNull).collect(Collectors.toSet());
+        Set<String> existingPlayers = new HashSet<>(mongoTemplate.findDistinct(
+                new Query(new Criteria("gameId").is(gameId).and("playerId").in(playerIds)),
+                "playerId", StatePersistence.class, String.class));
+
+        BulkOperations assignOps =
+                mongoTemplate.bulkOps(BulkMode.UNORDERED, ChallengeConceptPersistence.class);
+        // position in players of every bulk write
+        List<Integer> writes = new ArrayList<>();
+        List<ChallengeConceptPersistence> challenges = new ArrayList<>();
+        for (int i = 0; i < players.size(); i++) {
+            PlayerAssignment player = players.get(i);
+            String playerId = player.getPlayerId();
+            ChallengeAssignment assignment = playerAssignment(bulkAssignment, player);
+            String name = assignment.getInstanceName();
+            if (playerId == null) {
+                results[i] = ChallengeAssignmentResult.failure(null, name, "playerId cannot be null");
+                continue;
+            }
+            if (assignment.getData() != null) {
+                if (!model.isPresent()) {
+                    results[i] = ChallengeAssignmentResult.failure(playerId, name,
+                            String.format("model %s not exist in game %s",
+                                    bulkAssignment.getModelName(), gameId));
+                    continue;
+                }
+                List<String> invalidFields = model.get().invalidFields(assignment);
+                if (!invalidFields.isEmpty()) {
+                    results[i] = ChallengeAssignmentResult.failure(playerId, name,
+                            String.format("field %s not present in model %s",
+                                    invalidFields.get(0), bulkAssignment.getModelName()));
+                    continue;
+                }
+            }
+            if (name != null && !assignedNames.add(playerId + ":" + name)) {
+                results[i] = ChallengeAssignmentResult.failure(playerId, name,
+                        String.format("challenge %s already assigned in the request", name));
+                continue;
+            }
+
+            if (!existingPlayers.contains(playerId)) {
+                // player state is initialized by the single assignment
+                try {
+                    ChallengeConcept challenge = assignChallenge(gameId, playerId, assignment);
+                    results[i] = new ChallengeAssignmentResult(playerId, challenge.getName());
+                } catch (RuntimeException e) {
+                    results[i] = ChallengeAssignmentResult.failure(playerId, name, e.getMessage());
+                }
+                continue;
+            }
+            ChallengeConcept challenge =
+                    newChallenge(assignment, assignment.getData(), disclosureDate);
+            assignOps.upsert(
+                    new Query(new Criteria("gameId").is(gameId).and("playerId").is(playerId)
+                            .and("name").is(challenge.getName())),
+                    new Update().set("concept", challenge));
+            writes.add(i);
+            challenges.add(new ChallengeConceptPersistence(challenge, gameId, playerId,
+                    challenge.getName()));
+            results[i] = new ChallengeAssignmentResult(playerId, challenge.getName());
+        }
+
+        if (!writes.isEmpty()) {
+            try {
+                assignOps.execute();
+            } catch (BulkOperationException e) {
+                Set<Integer> failedWrites = new HashSet<>();
+                for (BulkWriteError error : e.getErrors()) {
+                    int i = writes.get(error.getIndex());
+                    results[i] = ChallengeAssignmentResult.failure(results[i].getPlayerId(),
+                            results[i].getChallengeName(), error.getMessage());
+                    failedWrites.add(error.getIndex());
+                }
+                List<ChallengeConceptPersistence> written = new ArrayList<>();
+                for (int j = 0; j < challenges.size(); j++) {
+                    if (!failedWrites.contains(j)) {
+                        written.add(challenges.get(j));
+                    }
+                }
+                challenges = written;
+            }
+        }
+
+        deadlineIndex.track(challenges);
+        List<Notification> notifications = new ArrayList<>();
+        for (ChallengeConceptPersistence challenge : challenges) {
+            ChallengeConcept concept = challenge.getConcept();
+            if (!concept.getVisibility().isHidden()) {
+                notifications.add(challengeNotification(gameId, challenge.getPlayerId(), concept));
+            }
+            logChallengeAssignment(game, challenge.getPlayerId(), executionId, concept);
+        }
+        if (!notifications.isEmpty()) {
+            notificationSrv.notificate(notifications);
+            LogHub.info(gameId, logger, "send {} challenge notifications", notifications.size());
+        }
+        return Arrays.asList(results);
+    }
+
+    private ChallengeAssignment playerAssignment(BulkChallengeAssignment bulkAssignment,
+            PlayerAssignment player) {
+        Map<String, Object> data = null;
+        if (bulkAssignment.getData() != null || player.getData() != null) {
+            data = new HashMap<>();
+            if (bulkAssignment.getData() != null) {
+                data.putAll(bulkAssignment.getData());
+            }
+            if (player.getData() != null) {
+                data.putAll(player.getData());
+            }
+        }
+        ChallengeAssignment assignment = new ChallengeAssignment(bulkAssignment.getModelName(),
+                player.getInstanceName() != null ? player.getInstanceName()
+                        : bulkAssignment.getInstanceName(),
+                data, bulkAssignment.getChallengeType(), bulkAssignment.getStart(),
+                bulkAssignment.getEnd());
+        assignment.setOrigin(bulkAssignment.getOrigin());
+        assignment.setPriority(bulkAssignment.getPriority());
+        assignment.setHide(bulkAssignment.isHide());
+        return assignment;
+    }
+
+    private ChallengeConcept newChallenge(ChallengeAssignment challengeAssignment,
+            Map<String, Object> data, Date disclosureDate) {
         ChallengeConcept challenge = null;
         try {
             challenge = new ChallengeConcept(
@@ -545,7 +827,7 @@ public class DBPlayerManager implements PlayerService {
                             challengeAssignment.getChallengeType()));
         }
         challenge.setModelName(challengeAssignment.getModelName());
-        challenge.setFields(data);
+        challenge.setFields(data != null ? data : new HashMap<String, Object>());
         challenge.setStart(challengeAssignment.getStart());
         challenge.setEnd(challengeAssignment.getEnd());
         // needed since v2.2.0, gameConcept name is mandatory because it is used
@@ -558,60 +840,45 @@ public class DBPlayerManager implements PlayerService {
         challenge.getVisibility().setHidden(challengeAssignment.isHide());
 
         if (challenge.getVisibility().isHidden()) {
-            Game game = gameSrv.loadGameDefinitionById(gameId);
-            Date now = new Date();
-            Date disclosureDate = game.nextChallengeDisclosureDate(now);
             challenge.getVisibility().setDisclosureDate(disclosureDate);
         }
+        return challenge;
+    }
 
-        // save in playerState
-        PlayerState state = loadState(gameId, playerId, true, false);
-
-        state.getState().add(challenge);
-        persistConcepts(gameId, playerId, new StatePersistence(state).getConcepts());
-
-        if (challenge.getVisibility().isHidden()) {
-            LogHub.info(gameId, logger,
-                    "challenge {} is hidden [disclosure date: {}], notification will be not send",
-                    challenge.getName(),
-                    LogHub.logDate(challenge.getVisibility().getDisclosureDate()).orElse("-"));
+    private Notification challengeNotification(String gameId, String playerId,
+            ChallengeConcept challenge) {
+        if (challenge.getState() == ChallengeState.ASSIGNED) {
+            ChallengeAssignedNotification challengeAssignedNotification =
+                    new ChallengeAssignedNotification();
+            challengeAssignedNotification.setChallengeName(challenge.getName());
+            challengeAssignedNotification.setGameId(gameId);
+            challengeAssignedNotification.setPlayerId(playerId);
+            challengeAssignedNotification.setStartDate(challenge.getStart());
+            challengeAssignedNotification.setEndDate(challenge.getEnd());
+            return challengeAssignedNotification;
         } else {
-            Notification challengeNotification = null;
-            if (challenge.getState() == ChallengeState.ASSIGNED) {
-                ChallengeAssignedNotification challengeAssignedNotification =
-                        new ChallengeAssignedNotification();
-                challengeAssignedNotification.setChallengeName(challenge.getName());
-                challengeAssignedNotification.setGameId(gameId);
-                challengeAssignedNotification.setPlayerId(playerId);
-                challengeAssignedNotification.setStartDate(challengeAssignment.getStart());
-                challengeAssignedNotification.setEndDate(challengeAssignment.getEnd());
-                challengeNotification = challengeAssignedNotification;
-            } else {
-                ChallengeProposedNotification challengeProposedNotification =
-                        new ChallengeProposedNotification();
-                challengeProposedNotification.setChallengeName(challenge.getName());
-                challengeProposedNotification.setGameId(gameId);
-                challengeProposedNotification.setPlayerId(playerId);
-                challengeProposedNotification.setStartDate(challengeAssignment.getStart());
-                challengeProposedNotification.setEndDate(challengeAssignment.getEnd());
-                challengeNotification = challengeProposedNotification;
-            }
-            notificationSrv.notificate(challengeNotification);
-            LogHub.info(gameId, logger, "send notification: {}", challengeNotification.toString());
+            ChallengeProposedNotification challengeProposedNotification =
+                    new ChallengeProposedNotification();
+            challengeProposedNotification.setChallengeName(challenge.getName());
+            challengeProposedNotification.setGameId(gameId);
+            challengeProposedNotification.setPlayerId(playerId);
+            challengeProposedNotification.setStartDate(challenge.getStart());
+            challengeProposedNotification.setEndDate(challenge.getEnd());
+            return challengeProposedNotification;
         }
-        Game game = gameSrv.loadGameDefinitionById(gameId);
+    }
+
+    private void logChallengeAssignment(Game game, String playerId, String executionId,
+            ChallengeConcept challenge) {
         if (challenge.getState() == ChallengeState.ASSIGNED) {
-            StatsLogger.logChallengeAssignment(game.getDomain(), gameId, playerId,
-                    UUID.randomUUID().toString(), System.currentTimeMillis(), challenge.getName(),
-                    challengeAssignment.getStart(), challengeAssignment.getEnd());
+            StatsLogger.logChallengeAssignment(game.getDomain(), game.getId(), playerId,
+                    executionId, System.currentTimeMillis(), challenge.getName(),
+                    challenge.getStart(), challenge.getEnd());
         } else if (challenge.getState() == ChallengeState.PROPOSED) {
-            StatsLogger.logChallengeProposed(game.getDomain(), gameId, playerId,
-                    UUID.randomUUID().toString(), System.currentTimeMillis(),
-                    System.currentTimeMillis(), challenge.getName());
+            StatsLogger.logChallengeProposed(game.getDomain(), game.getId(), playerId,
+                    executionId, System.currentTimeMillis(), System.currentTimeMillis(),
+                    challenge.getName());
         }
-
-        return challenge;
-
     }
 
     private ChallengeState convertToChallengeState(String challengeType) {
@@ -755,6 +1022,7 @@ public class DBPlayerManager implements PlayerService {
             java.util.Iterator<ChallengeConcept> iterator = state.challenges().iterator();
 
             // refuse all SINGLE PROPOSED
+            List<ArchivedConcept> refused = new ArrayList<>();
             while (iterator.hasNext()) {
                 ChallengeConcept ch = iterator.next();
                 if (ch.getState() == ChallengeState.PROPOSED) {
@@ -764,11 +1032,12 @@ public class DBPlayerManager implements PlayerService {
                     ChallengeConceptPersistence saved = challengeConceptRepo.findByGameIdAndPlayerIdAndName(gameId,
 							playerId, ch.getName());
                     challengeConceptRepo.delete(saved);
-                    archiveSrv.moveToArchive(gameId, playerId, removedChallenge);
+                    refused.add(ArchiveManager.archived(gameId, playerId, removedChallenge));
                     StatsLogger.logChallengeRefused(game.getDomain(), gameId, playerId,
                             executionId, executionTime, executionTime, ch.getName());
                 }
             }
+            archiveSrv.moveToArchive(refused);
             saveState(state);
         }
 
@@ -835,6 +1104,7 @@ public class DBPlayerManager implements PlayerService {
                 .orElse(null);
 
         // auto discarded all PROPOSED SINGLE challenges
+        List<ArchivedConcept> discarded = new ArrayList<>();
         state.challenges().stream()
                 .filter(challenge -> challenge.getState() == ChallengeState.PROPOSED)
                 .forEach(proposed -> {
@@ -844,7 +1114,7 @@ public class DBPlayerManager implements PlayerService {
 							playerId, proposed.getName());
 					challengeConceptRepo.delete(saved);
                     removedChallenge.updateState(ChallengeState.AUTO_DISCARDED);
-                    archiveSrv.moveToArchive(gameId, playerId, removedChallenge);
+                    discarded.add(ArchiveManager.archived(gameId, playerId, removedChallenge));
                 });
 
         // auto discarded all PROPOSED GROUP challenges
@@ -853,12 +1123,99 @@ public class DBPlayerManager implements PlayerService {
         groupChallengeRepo.deleteAll(otherProposedhallenges);
         otherProposedhallenges.forEach(challenge -> {
             challenge.updateState(ChallengeState.AUTO_DISCARDED);
-            archiveSrv.moveToArchive(gameId, challenge);
+            discarded.add(ArchiveManager.archived(gameId, challenge));
         });
+        archiveSrv.moveToArchive(discarded);
 
         saveState(state);
         return forcedChallenge;
     }
+
+    @Override
+    public Map<String, ChallengeConcept> forceChallengeChoice(String gameId,
+            Collection<String> playerIds) {
+        Map<String, ChallengeConcept> forcedChallenges = new HashMap<>();
+        if (playerIds.isEmpty()) {
+            return forcedChallenges;
+        }
+        Query query = new Query(new Criteria("gameId").is(gameId).and("playerId").in(playerIds)
+                .and("concept.state").is(ChallengeState.PROPOSED));
+        Map<String, List<ChallengeConceptPersistence>> proposedByPlayer =
+                mongoTemplate.find(query, ChallengeConceptPersistence.class).stream()
+                        .collect(Collectors.groupingBy(ChallengeConceptPersistence::getPlayerId));
+
+        List<String> discardedIds = new ArrayList<>();
+        List<String> untrackedDeadlines = new ArrayList<>();
+        List<ArchivedConcept> archived = new ArrayList<>();
+        BulkOperations forceOps =
+                mongoTemplate.bulkOps(BulkMode.UNORDERED, ChallengeConceptPersistence.class);
+        PriorityComparator priorityComparator = new PriorityComparator();
+        proposedByPlayer.forEach((playerId, proposed) -> {
+            ChallengeConceptPersistence maxPriority = proposed.stream()
+                    .max((c1, c2) -> priorityComparator.compare(c1.getConcept(), c2.getConcept()))
+                    .get();
+            proposed.forEach(challenge -> {
+                ChallengeConcept concept = challenge.getConcept();
+                if (challenge == maxPriority) {
+                    concept.updateState(ChallengeState.ASSIGNED).forced();
+                    forceOps.updateOne(
+                            new Query(new Criteria("id").is(challenge.getId()).and("concept.state")
+                                    .is(ChallengeState.PROPOSED)),
+                            new Update().set("concept.state", ChallengeState.ASSIGNED)
+                                    .set("concept.stateDate." + ChallengeState.ASSIGNED,
+                                            concept.getStateDate().get(ChallengeState.ASSIGNED))
+                                    .set("concept.forced", true));
+                    forcedChallenges.put(playerId, concept);
+                } else {
+                    concept.updateState(ChallengeState.AUTO_DISCARDED);
+                    archived.add(ArchiveManager.archived(gameId, playerId, concept));
+                    discardedIds.add(challenge.getId());
+                    untrackedDeadlines.add(ChallengeDeadlinePersistence.singleId(gameId, playerId,
+                            challenge.getName()));
+                }
+            });
+        });
+
+        // forced challenges are assigned last, so players of an interrupted call can be
+        // processed again
+        archiveSrv.moveToArchive(archived);
+        if (!discardedIds.isEmpty()) {
+            mongoTemplate.remove(new Query(new Criteria("id").in(discardedIds)),
+                    ChallengeConceptPersistence.class);
+        }
+        deadlineIndex.untrack(untrackedDeadlines);
+        if (!forcedChallenges.isEmpty()) {
+            forceOps.execute();
+        }
+        return forcedChallenges;
+    }
+
+    @Override
+    public int discardProposedGroupChallenges(String gameId) {
+        Query query = new Query(
+                new Criteria("gameId").is(gameId).and("state").is(ChallengeState.PROPOSED));
+        List<GroupChallenge> proposed = mongoTemplate.find(query, GroupChallenge.class);
+        if (proposed.isEmpty()) {
+            return 0;
+        }
+        List<ArchivedConcept> archived = proposed.stream().map(challenge -> {
+            challenge.updateState(ChallengeState.AUTO_DISCARDED);
+            return ArchiveManager.archived(gameId, challenge);
+        }).collect(Collectors.toList());
+        archiveSrv.moveToArchive(archived);
+        mongoTemplate.remove(new Query(new Criteria("id").in(
+                proposed.stream().map(GroupChallenge::getId).collect(Collectors.toList()))),
+                GroupChallenge.class);
+        return proposed.size();
+    }
+
+    @Override
+    public List<String> readPlayersWithProposedChallenges(String gameId) {
+        Query query = new Query(new Criteria("gameId").is(gameId).and("concept.state")
+                .is(ChallengeState.PROPOSED));
+        return mongoTemplate.findDistinct(query, "playerId", ChallengeConceptPersistence.class,
+                String.class);
+    }
     
 
 
@@ -937,6 +1294,11 @@ public class DBPlayerManager implements PlayerService {
 	
 	@Override
 	public List<String> readSystemPlayerState(String gameId, String playerId, String conceptName) {
+		return readSystemPlayerState(gameId, playerId, conceptName, 0);
+	}
+
+	@Override
+	public List<String> readSystemPlayerState(String gameId, String playerId, String conceptName, int limit) {
 
 		List<String> sps = new ArrayList<String>();
 		List<String> filterPlayerList = new ArrayList<String>();
@@ -993,47 +1355,26 @@ public class DBPlayerManager implements PlayerService {
 					filterPlayerList.add(blocker.getPlayerId());
 				}
 				
-				Query q2 = new Query();
-				q2.addCriteria(criteria);
-				List<PlayerState> filerList = mongoTemplate.find(q2, PlayerState.class);
-
-				Date now = new Date();
-				for (PlayerState ps : filerList) {
-					// 4. player has received less than 3 invitations to challenge
-					if (groupChallengeRepo.guestInvitations(gameId, ps.getPlayerId()).size() < 3) {
-
-						// 5.1 check for group challenge assignment.
-						Criteria groupChallengeCheck = new Criteria("gameId").is(gameId).and("state").is(ChallengeState.ASSIGNED)
-								.and("start").gt(now).and("attendees.playerId").is(ps.getPlayerId());
-						Query q4 = new Query();
-						q4.addCriteria(groupChallengeCheck);
-						
-						if (mongoTemplate.find(q4, GroupChallenge.class).size() > 0) {
-							continue;
-						}
-						
-						// 5.2 check for single challenge assignment.
-                        // boolean isChallengeAssignedInFuture = false;
-                        // for (ChallengeConcept cp : loadState(gameId, ps.getPlayerId(), false,
-                        // false)
-                        // .challenges()) {
-                        // if (cp.getState().equals(ChallengeState.ASSIGNED)
-                        // && cp.getStart().after(now)) {
-                        // isChallengeAssignedInFuture = true;
-                        // break;
-                        // }
-                        // }
-                        // if (!isChallengeAssignedInFuture) {
-						// filter custom data.
-						if (ps.getCustomData().containsKey(ACTIVE_CAMPAIGN_KEY)
-								&& ps.getCustomData().get(ACTIVE_CAMPAIGN_KEY).equals(false)) {
-							continue;
-						}
-						sps.add(ps.getPlayerId());
-                        // }
-					}
+				// 5. players with 3 or more pending invitations or with a group
+				// challenge assigned in the future
+				filterPlayerList.addAll(busyChallengers(gameId));
+
+				// 6. players not excluded from the active campaign
+				criteria = criteria.and("customData." + ACTIVE_CAMPAIGN_KEY).ne(false);
+
+				List<AggregationOperation> pipeline = new ArrayList<>();
+				pipeline.add(Aggregation.match(criteria));
+				if (limit > 0) {
+					pipeline.add(Aggregation.sample(limit));
 				}
-				
+				pipeline.add(Aggregation.project("playerId").andExclude("_id"));
+				AggregationResults<Document> challengers = mongoTemplate.aggregate(
+						Aggregation.newAggregation(pipeline), mongoTemplate.getCollectionName(PlayerState.class),
+						Document.class);
+				for (Document challenger : challengers) {
+					sps.add(challenger.getString("playerId"));
+				}
+
 			} else {
 				LogHub.error(gameId, logger,
 						"readSystemPlayerState: no reference level found for player {} for this game {} for conceptName {}",
@@ -1054,6 +1395,38 @@ public class DBPlayerManager implements PlayerService {
 
 	}
 
+	/*
+	 * players of the game invited as guest to 3 or more group challenges or
+	 * attendee of a group challenge assigned in the future, read in a single
+	 * aggregation over the open group challenges
+	 */
+	private Set<String> busyChallengers(String gameId) {
+		Aggregation aggregation = Aggregation.newAggregation(
+				Aggregation.match(new Criteria("gameId").is(gameId).and("state")
+						.in(ChallengeState.PROPOSED.name(), ChallengeState.ASSIGNED.name())),
+				Aggregation.facet(Aggregation.match(new Criteria("state").is(ChallengeState.PROPOSED.name())),
+						Aggregation.unwind("attendees"),
+						Aggregation.match(new Criteria("attendees.role").is(Role.GUEST.name())),
+						Aggregation.group("attendees.playerId").count().as("invitations"),
+						Aggregation.match(new Criteria("invitations").gte(MAX_INVITATIONS))).as("invited")
+						.and(Aggregation.match(new Criteria("state").is(ChallengeState.ASSIGNED.name())
+								.and("start").gt(new Date())), Aggregation.unwind("attendees"),
+								Aggregation.group("attendees.playerId"))
+						.as("assigned"));
+		Document result = mongoTemplate
+				.aggregate(aggregation, mongoTemplate.getCollectionName(GroupChallenge.class), Document.class)
+				.getUniqueMappedResult();
+		Set<String> busy = new HashSet<>();
+		if (result != null) {
+			for (String facet : Arrays.asList("invited", "assigned")) {
+				for (Document player : result.getList(facet, Document.class)) {
+					busy.add(player.getString("_id"));
+				}
+			}
+		}
+		return busy;
+	}
+
     @Override
     public Inventory choiceActivation(String gameId, String playerId, ItemChoice choice) {
         PlayerState state = loadState(gameId, playerId, false, false);
@@ -1088,12 +1461,19 @@ public class DBPlayerManager implements PlayerService {
 				ChallengeConcept cc = mapper.convertValue(gpo.getObj(), ChallengeConcept.class);
 				// update, insert
 				ChallengeConceptPersistence persist = challengeConceptRepo.findByGameIdAndPlayerIdAndName(gameId, playerId, cc.getName());
+				ChallengeConcept previous = null;
 				if (persist != null) {
+					previous = persist.getConcept();
 					persist.setConcept(cc);
 				} else {
 					persist = new ChallengeConceptPersistence(cc, gameId, playerId, cc.getName());
 				}
 				challengeConceptRepo.save(persist);
+				// deadline index is touched only when end or state change
+				if (previous == null || !Objects.equals(previous.getEnd(), cc.getEnd())
+						|| previous.persistedState() != cc.persistedState()) {
+					deadlineIndex.track(gameId, playerId, cc);
+				}
 			}
 		}
 		
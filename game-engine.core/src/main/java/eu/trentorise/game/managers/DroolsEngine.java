@@ -17,6 +17,7 @@ package eu.trentorise.game.managers;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -37,12 +38,11 @@ import org.drools.verifier.VerifierError;
 import org.drools.verifier.builder.VerifierBuilder;
 import org.drools.verifier.builder.VerifierBuilderFactory;
 import org.kie.api.command.Command;
+import org.kie.api.event.rule.AgendaEventListener;
 import org.kie.api.io.ResourceType;
 import org.kie.api.runtime.ExecutionResults;
 import org.kie.api.runtime.KieContainer;
 import org.kie.api.runtime.StatelessKieSession;
-import org.kie.api.runtime.rule.QueryResults;
-import org.kie.api.runtime.rule.QueryResultsRow;
 import org.kie.internal.command.CommandFactory;
 import org.perf4j.StopWatch;
 import org.perf4j.log4j.Log4JStopWatch;
@@ -58,7 +58,11 @@ import eu.trentorise.game.core.LogHub;
 import eu.trentorise.game.core.LoggingRuleListener;
 import eu.trentorise.game.core.StatsLogger;
 import eu.trentorise.game.core.Utility;
+import eu.trentorise.game.managers.WorkflowMetrics.Stage;
+import eu.trentorise.game.managers.drools.ExecutionResult;
 import eu.trentorise.game.managers.drools.KieContainerFactory;
+import eu.trentorise.game.managers.drools.RuleProfiler;
+import eu.trentorise.game.managers.drools.StatefulSessionManager;
 import eu.trentorise.game.model.Level.Threshold;
 import eu.trentorise.game.model.core.GameConcept;
 import eu.trentorise.game.model.core.Notification;
@@ -78,6 +82,8 @@ public class DroolsEngine implements GameEngine {
 
     private final Logger logger = LoggerFactory.getLogger(DroolsEngine.class);
 
+    private static final String RESULT_FACTS = "facts";
+
     @Autowired
     private NotificationManager notificationSrv;
 
@@ -96,6 +102,15 @@ public class DroolsEngine implements GameEngine {
     @Autowired
     private ChallengeConceptRepo challengeConceptRepo;
 
+    @Autowired
+    private StatefulSessionManager statefulSessions;
+
+    @Autowired
+    private RuleProfiler ruleProfiler;
+
+    @Autowired
+    private WorkflowMetrics metrics;
+
     public PlayerState execute(String gameId, PlayerState state, String action,
             Map<String, Object> data, String executionId, long executionMoment,
             List<Object> factObjects) {
@@ -120,36 +135,37 @@ public class DroolsEngine implements GameEngine {
         KieContainer kieContainer = kieContainerFactory.getContainer(gameId);
 
         PlayerState stateBeforePlay = state.clone();
-        StatelessKieSession kSession = kieContainer.newStatelessKieSession();
-        kSession.addEventListener(new LoggingRuleListener(game.getDomain(), gameId,
-                state.getPlayerId(), stateBeforePlay, executionId, executionMoment));
+        LoggingRuleListener ruleListener = new LoggingRuleListener(game.getDomain(), gameId,
+                state.getPlayerId(), stateBeforePlay, executionId, executionMoment);
+        AgendaEventListener profilingListener = ruleProfiler.newListener(gameId);
 
-        List<Command> cmds = new ArrayList<Command>();
+        // facts of the action
+        List<Object> actionFacts = new ArrayList<>();
 
         if (data == null) {
             data = new HashMap<String, Object>();
         }
-        cmds.add(CommandFactory.newInsert(new InputData(data)));
+        actionFacts.add(new InputData(data));
 
         if (!StringUtils.isBlank(action)) {
-            cmds.add(CommandFactory.newInsert(new Action(action)));
+            actionFacts.add(new Action(action));
         }
 
         if (factObjects != null) {
-            cmds.add(CommandFactory.newInsertElements(factObjects));
+            actionFacts.addAll(factObjects);
         }
 
-        cmds.add(CommandFactory.newInsert(new Game(gameId)));
+        actionFacts.add(new Game(gameId));
 
         Player player = new Player(state);
-        cmds.add(CommandFactory.newInsert(player));
+        actionFacts.add(player);
 
         //push team state to kb.
         List<TeamState> playerTeams = playerSrv.readTeams(gameId, state.getPlayerId());
         for (TeamState ts: playerTeams) {
-        	cmds.add(CommandFactory.newInsert(new Player(ts)));
+            actionFacts.add(new Player(ts));
             CustomData insCustomData = ts.getCustomData();
-            cmds.add(CommandFactory.newInsert(insCustomData));
+            actionFacts.add(insCustomData);
         }
 
 
@@ -164,166 +180,161 @@ public class DroolsEngine implements GameEngine {
         Set<GameConcept> inactiveConcepts =
                 new HashSet<>(CollectionUtils.subtract(concepts, activeConcepts));
 
+        boolean stateful = isStatefulExecution(game);
+        ExecutionResult executionResult = null;
+        long stageStart = metrics.start();
+        if (stateful) {
+            List<Object> sessionFacts = new ArrayList<>(actionFacts);
+            sessionFacts.add(state.getCustomData());
+            executionResult = statefulSessions.execute(gameId, state.getPlayerId(), kieContainer,
+                    activeConcepts, sessionFacts, ruleListener, profilingListener,
+                    () -> sessionGlobals(gameId));
+            // null when the session of the player is held by an outer execution of this thread
+            stateful = executionResult != null;
+        }
+        if (!stateful) {
+            executionResult = executeStateless(kieContainer, gameId, actionFacts, activeConcepts,
+                    state.getCustomData(), ruleListener, profilingListener);
+        }
+        metrics.record(Stage.RULES_EXECUTION, gameId, action, stageStart);
+
+        boolean processed = false;
+        try {
+            // new state contains archived challenges and all GameConcept
+            // loaded in engine session
+            Set<GameConcept> newState = new HashSet<GameConcept>(inactiveConcepts);
+            // notifications of the execution, persisted together when the state is saved
+            List<Notification> notifications = new ArrayList<>();
+
+            for (GameConcept stateElement : executionResult.getGameConcepts()) {
+                newState.add(stateElement);
+                if (stateElement instanceof ChallengeConcept) {
+                    ChallengeConcept challenge = (ChallengeConcept) stateElement;
+
+                    // normalize state, useful when action come from the past
+                    challenge.normalizeState();
+
+                    sendChallengeCompletedNotifications(challenge, gameId, player.getId(),
+                            executionMoment, notifications);
+                    logCompletedChallenge(game.getDomain(), gameId, executionId, executionMoment,
+                            player, challenge);
+                }
+            }
 
-        // ATTENTION: Drools modifies objects inserted in working memory by
-        // reference
-        cmds.add(CommandFactory.newInsertElements(activeConcepts));
-        CustomData insCustomData = state.getCustomData();
-        cmds.add(CommandFactory.newInsert(insCustomData));
-        cmds.add(CommandFactory.newFireAllRules());
+            List<CustomData> customData = executionResult.getCustomData();
 
-        // queries
-        cmds.add(CommandFactory.newQuery("retrieveState", "getGameConcepts"));
-        cmds.add(CommandFactory.newQuery("retrieveNotifications", "getNotifications"));
-        cmds.add(CommandFactory.newQuery("retrieveCustomData", "getCustomData"));
-        cmds.add(CommandFactory.newQuery("retrieveUpdateTeams", "getUpdateTeams"));
-        cmds.add(CommandFactory.newQuery("retrieveUpdateMembers", "getUpdateMembers"));
-        cmds.add(CommandFactory.newQuery("retrieveLevel", "getLevel"));
-        cmds.add(CommandFactory.newQuery("retrieveMember", "getMember"));
+            state.setState(newState);
 
-        // set gameId as constant
-        kSession.setGlobal("utils", new Utility(gameId));
+            stageStart = metrics.start();
+            List<PlayerLevel> levelsAfterAction = gameSrv.calculateLevels(gameId, state);
 
-        kSession = loadGameConstants(kSession, gameId);
+            List<LevelInstance> newGainedLevels = newGainedLevels(game, state, levelsAfterAction);
 
-        ExecutionResults results = kSession.execute(CommandFactory.newBatchExecution(cmds));
+            state = state.updateLevels(levelsAfterAction);
+            logLevelStatus(gameId, levelsAfterAction);
 
-        // new state contains archived challenges and all GameConcept
-        // loaded in engine session
-        Set<GameConcept> newState = new HashSet<GameConcept>(inactiveConcepts);
-
-        Iterator<QueryResultsRow> iter =
-                ((QueryResults) results.getValue("retrieveState")).iterator();
-        while (iter.hasNext()) {
-            GameConcept stateElement = (GameConcept) iter.next().get("$result");
-            newState.add(stateElement);
-            if (stateElement instanceof ChallengeConcept) {
-                ChallengeConcept challenge = (ChallengeConcept) stateElement;
-
-                // normalize state, useful when action come from the past
-                challenge.normalizeState();
-
-                sendChallengeCompletedNotifications(challenge, gameId, player.getId(),
-                        executionMoment);
-                logCompletedChallenge(game.getDomain(), gameId, executionId, executionMoment,
-                        player, challenge);
+            if (!newGainedLevels.isEmpty()) {
+                state.updateInventory(game, newGainedLevels);
+                LogHub.info(gameId, logger, "Gained new levels {}", newGainedLevels);
+                sendLevelNotifications(game.getDomain(), gameId, state.getPlayerId(), executionId,
+                        executionMoment, System.currentTimeMillis(), newGainedLevels, game,
+                        notifications);
             }
-        }
-
-        List<CustomData> customData = new ArrayList<CustomData>();
+            metrics.record(Stage.LEVEL_CALCULATION, gameId, action, stageStart);
 
-        iter = ((QueryResults) results.getValue("retrieveCustomData")).iterator();
-        while (iter.hasNext()) {
-            CustomData stateCustomData = (CustomData) iter.next().get("$data");
-            customData.add(stateCustomData);
-        }
+            // fix for dataset prior than 0.9 version
+            state.setCustomData(customData.isEmpty() ? new CustomData() : customData.get(0));
 
-        iter = ((QueryResults) results.getValue("retrieveUpdateTeams")).iterator();
-
-        if (iter.hasNext()) {
-            Set<Object> facts = new HashSet<>();
-            Iterator<QueryResultsRow> iter1 = null;
-            while (iter.hasNext()) {
-                UpdateTeams updateCalls = (UpdateTeams) iter.next().get("$data");
-                iter1 = ((QueryResults) results.getValue("retrieveLevel")).iterator();
-                int level = 1;
-                if (iter1.hasNext()) {
-                    level = (int) iter1.next().get("$data");
-                    level++;
-                }
-                facts.add(new Propagation(updateCalls.getPropagationAction(), level));
-                facts.add(new Transmission(updateCalls.getData()));
+            if (stopWatch != null) {
+                stopWatch.stop("game execution", String.format("execution for game %s of player %s",
+                        gameId, state.getPlayerId()));
             }
-
-            LogHub.info(gameId, logger, "Player {} belongs to {} teams", state.getPlayerId(),
-                    playerTeams.size());
-            if (playerTeams.size() > 0) {
-                LogHub.info(gameId, logger, "call for update with data {}", data);
+        
+            stageStart = metrics.start();
+            boolean result = playerSrv.saveState(state) != null;
+            metrics.record(Stage.STATE_SAVE, gameId, action, stageStart);
+            if (stateful) {
+                statefulSessions.release(gameId, state.getPlayerId(), state, result);
             }
+            processed = true;
+
+            // propagation takes the sessions of other players: it runs after the release of the
+            // session of the player, so executions propagating in opposite directions between a
+            // team and its members never wait for each other
+            stageStart = metrics.start();
+            if (!executionResult.getUpdateTeams().isEmpty()) {
+                Set<Object> facts = new HashSet<>();
+                int level = executionResult.nextPropagationLevel();
+                for (UpdateTeams updateCalls : executionResult.getUpdateTeams()) {
+                    facts.add(new Propagation(updateCalls.getPropagationAction(), level));
+                    facts.add(new Transmission(updateCalls.getData()));
+                }
 
-            iter1 = ((QueryResults) results.getValue("retrieveMember")).iterator();
-            Member fromPropagation = null;
-            if (iter1.hasNext()) {
-                fromPropagation = (Member) iter1.next().get("$data");
-            }
-            Map<String, Object> payloadData = new HashMap<>(data);
-            if (fromPropagation != null && fromPropagation.getInputData() != null) {
-                payloadData.putAll(fromPropagation.getInputData());
-            }
-            facts.add(new Member(state.getPlayerId(), payloadData));
-            for (TeamState team : playerTeams) {
-                workflow.apply(gameId, action, team.getPlayerId(), executionMoment, payloadData,
-                        new ArrayList<>(facts));
-            }
-        }
-        iter = ((QueryResults) results.getValue("retrieveUpdateMembers")).iterator();
-        if (iter.hasNext()) {
-            Set<Object> facts = new HashSet<>();
-            while (iter.hasNext()) {
-                UpdateMembers updateCalls = (UpdateMembers) iter.next().get("$data");
-                facts.add(new Propagation(updateCalls.getPropagationAction()));
-            }
-            // check if a propagation to team members is needed
-            try {
-                TeamState team = playerSrv.readTeam(gameId, state.getPlayerId());
-                List<String> members = team.getMembers();
-                facts.add(new Team(state.getPlayerId(), data));
-                LogHub.info(gameId, logger, "Team {} has {} members", state.getPlayerId(),
-                        members.size());
-                for (String member : members) {
-                    workflow.apply(gameId, action, member, executionMoment, data,
+                LogHub.info(gameId, logger, "Player {} belongs to {} teams", state.getPlayerId(),
+                        playerTeams.size());
+                if (playerTeams.size() > 0) {
+                    LogHub.info(gameId, logger, "call for update with data {}", data);
+                }
+
+                Member fromPropagation = executionResult.getMember();
+                Map<String, Object> payloadData = new HashMap<>(data);
+                if (fromPropagation != null && fromPropagation.getInputData() != null) {
+                    payloadData.putAll(fromPropagation.getInputData());
+                }
+                facts.add(new Member(state.getPlayerId(), payloadData));
+                for (TeamState team : playerTeams) {
+                    workflow.apply(gameId, action, team.getPlayerId(), executionMoment, payloadData,
                             new ArrayList<>(facts));
                 }
-            } catch (ClassCastException e) {
-                LogHub.info(gameId, logger,
-                        "{} is not a team, there is no propagation to team members",
-                        state.getPlayerId());
             }
+            if (!executionResult.getUpdateMembers().isEmpty()) {
+                Set<Object> facts = new HashSet<>();
+                for (UpdateMembers updateCalls : executionResult.getUpdateMembers()) {
+                    facts.add(new Propagation(updateCalls.getPropagationAction()));
+                }
+                // check if a propagation to team members is needed
+                try {
+                    TeamState team = playerSrv.readTeam(gameId, state.getPlayerId());
+                    List<String> members = team.getMembers();
+                    facts.add(new Team(state.getPlayerId(), data));
+                    LogHub.info(gameId, logger, "Team {} has {} members", state.getPlayerId(),
+                            members.size());
+                    for (String member : members) {
+                        workflow.apply(gameId, action, member, executionMoment, data,
+                                new ArrayList<>(facts));
+                    }
+                } catch (ClassCastException e) {
+                    LogHub.info(gameId, logger,
+                            "{} is not a team, there is no propagation to team members",
+                            state.getPlayerId());
+                }
 
-        }
-
-        state.setState(newState);
-
-        List<PlayerLevel> levelsAfterAction = gameSrv.calculateLevels(gameId, state);
-
-        List<LevelInstance> newGainedLevels = newGainedLevels(game, state, levelsAfterAction);
-
-        state = state.updateLevels(levelsAfterAction);
-        logLevelStatus(gameId, levelsAfterAction);
-
-        if (!newGainedLevels.isEmpty()) {
-            state.updateInventory(game, newGainedLevels);
-            LogHub.info(gameId, logger, String.format("Gained new levels %s", newGainedLevels));
-            sendLevelNotifications(game.getDomain(), gameId, state.getPlayerId(), executionId,
-                    executionMoment, System.currentTimeMillis(), newGainedLevels, game);
-        }
-
-        // fix for dataset prior than 0.9 version
-        state.setCustomData(customData.isEmpty() ? new CustomData() : customData.get(0));
+            }
+            metrics.record(Stage.TEAM_PROPAGATION, gameId, action, stageStart);
 
-        if (stopWatch != null) {
-            stopWatch.stop("game execution", String.format("execution for game %s of player %s",
-                    gameId, state.getPlayerId()));
-        }
+            stageStart = metrics.start();
+            for (Notification note : executionResult.getNotifications()) {
+                notifications.add(note);
+                LogHub.info(gameId, logger, "send notification: {}", note.toString());
+            }
+            notificationSrv.notificate(notifications);
+            metrics.record(Stage.NOTIFICATION, gameId, action, stageStart);
         
-        boolean result = playerSrv.saveState(state) != null;
+            LogHub.info(gameId, logger, "player state updated: {}", result);
         
-        iter = ((QueryResults) results.getValue("retrieveNotifications")).iterator();
-        while (iter.hasNext()) {
-            Notification note = (Notification) iter.next().get("$notifications");
-            notificationSrv.notificate(note);
-            LogHub.info(gameId, logger, "send notification: {}", note.toString());
+            return state;
+        } finally {
+            if (stateful && !processed) {
+                // the working memory could contain changes never persisted
+                statefulSessions.abort(gameId, state.getPlayerId());
+            }
         }
-        
-        LogHub.info(gameId, logger, "player state updated: {}", result);
-        
-        return state;
     }
 
 
     private void sendLevelNotifications(String domain, String gameId, String playerId,
             String executionId, long executionTime, long timestamp,
-            List<LevelInstance> newGainedLevels, Game game) {
+            List<LevelInstance> newGainedLevels, Game game, List<Notification> notifications) {
         newGainedLevels.forEach(instance -> {
             LevelGainedNotification notification = new LevelGainedNotification();
             notification.setGameId(gameId);
@@ -334,7 +345,7 @@ public class DroolsEngine implements GameEngine {
                     .indexOf(new Threshold(instance.getName(), -1));
 
             notification.setLevelIndex(levelIndex);
-            notificationSrv.notificate(notification);
+            notifications.add(notification);
             LogHub.info(gameId, logger, "send notification: {}", notification.toString());
             StatsLogger.logLevelGained(domain, gameId, playerId, instance, executionId,
                     executionTime, timestamp);
@@ -399,16 +410,17 @@ public class DroolsEngine implements GameEngine {
     }
 
     private void logLevelStatus(String gameId, List<PlayerLevel> levels) {
-        if (levels != null && !levels.isEmpty()) {
-        StringBuffer levelStatus = new StringBuffer();
-        for (PlayerLevel lev : levels) {
+        if (levels != null && !levels.isEmpty() && logger.isInfoEnabled()) {
+            StringBuilder levelStatus = new StringBuilder();
+            for (PlayerLevel lev : levels) {
                 if (levelStatus.length() != 0) {
-                    levelStatus.append(",");
+                    levelStatus.append(',');
                 }
-                levelStatus.append(String.format("{levelName=%s,levelValue=%s,toNextLevel=%s}",
-                    lev.getLevelName(), lev.getLevelValue(), lev.getToNextLevel()));
-        }
-            LogHub.info(gameId, logger, "Level status: " + levelStatus.toString());
+                levelStatus.append("{levelName=").append(lev.getLevelName())
+                        .append(",levelValue=").append(lev.getLevelValue())
+                        .append(",toNextLevel=").append(lev.getToNextLevel()).append('}');
+            }
+            LogHub.info(gameId, logger, "Level status: {}", levelStatus);
         }
 
 
@@ -422,7 +434,7 @@ public class DroolsEngine implements GameEngine {
     }
 
     private void sendChallengeCompletedNotifications(ChallengeConcept stateElement, String gameId,
-            String playerId, long executionMoment) {
+            String playerId, long executionMoment, List<Notification> notifications) {
         if (stateElement.isCompleted()) {
             ChallengeCompletedNotication challengeNotification = new ChallengeCompletedNotication();
             challengeNotification.setGameId(gameId);
@@ -433,13 +445,55 @@ public class DroolsEngine implements GameEngine {
             challengeNotification.setPointConcept(stateElement.getFields().containsKey("counterName")? String.valueOf(stateElement.getFields().get("counterName")): "");
             challengeNotification.setStart(stateElement.getStart().getTime());
             challengeNotification.setEnd(stateElement.getEnd().getTime());
-            notificationSrv.notificate(challengeNotification);
+            notifications.add(challengeNotification);
             LogHub.info(gameId, logger, "send notification: {}", challengeNotification.toString());
         }
     }
 
 
-    private StatelessKieSession loadGameConstants(StatelessKieSession kSession, String gameId) {
+    private ExecutionResult executeStateless(KieContainer kieContainer, String gameId,
+            List<Object> actionFacts, Set<GameConcept> activeConcepts, CustomData customData,
+            LoggingRuleListener ruleListener, AgendaEventListener profilingListener) {
+        StatelessKieSession kSession = kieContainer.newStatelessKieSession();
+        kSession.addEventListener(ruleListener);
+        if (profilingListener != null) {
+            kSession.addEventListener(profilingListener);
+        }
+
+        List<Command> cmds = new ArrayList<Command>();
+        cmds.add(CommandFactory.newInsertElements(actionFacts));
+
+        // ATTENTION: Drools modifies objects inserted in working memory by
+        // reference
+        cmds.add(CommandFactory.newInsertElements(activeConcepts));
+        cmds.add(CommandFactory.newInsert(customData));
+        cmds.add(CommandFactory.newFireAllRules());
+
+        // retrieve all the facts in a single working memory traversal
+        cmds.add(CommandFactory.newGetObjects(RESULT_FACTS));
+
+        sessionGlobals(gameId).forEach(kSession::setGlobal);
+
+        ExecutionResults results = kSession.execute(CommandFactory.newBatchExecution(cmds));
+        return ExecutionResult.classify((Collection<?>) results.getValue(RESULT_FACTS));
+    }
+
+    private Map<String, Object> sessionGlobals(String gameId) {
+        Map<String, Object> globals = new HashMap<>();
+        // set gameId as constant
+        globals.put("utils", new Utility(gameId));
+        globals.putAll(loadGameConstants(gameId));
+        return globals;
+    }
+
+    private boolean isStatefulExecution(Game game) {
+        return game.getSettings() != null && game.getSettings().getEngineSettings() != null
+                && game.getSettings().getEngineSettings().isStateful();
+    }
+
+    private Map<String, Object> loadGameConstants(String gameId) {
+
+        Map<String, Object> gameConstants = new HashMap<>();
 
         // load game constants
         InputStream constantsFileStream = null;
@@ -468,7 +522,7 @@ public class DroolsEngine implements GameEngine {
                 while (constantsIter.hasNext()) {
                     String constant = constantsIter.next();
                     Object value = numberConversion(constants.getProperty(constant));
-                    kSession.setGlobal(constant, value);
+                    gameConstants.put(constant, value);
                     if (logger.isDebugEnabled()) {
                         List<Object> listValue = constants.getList(constant);
                         if (listValue.isEmpty()) {
@@ -485,7 +539,7 @@ public class DroolsEngine implements GameEngine {
         } else {
             LogHub.info(gameId, logger, "Rule constants file not found");
         }
-        return kSession;
+        return gameConstants;
     }
 
     private Object numberConversion(Object value) {
@@ -17,7 +17,6 @@ package eu.trentorise.game.managers;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -28,27 +27,38 @@ import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 
 import org.apache.log4j.LogManager;
+import org.bson.Document;
 import org.perf4j.StopWatch;
 import org.perf4j.log4j.Log4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Component;
 
-import com.google.common.math.Quantiles;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 
 import eu.trentorise.game.core.ChallengeFailureTask;
 import eu.trentorise.game.core.CheckPerformanceGroupChallengeTask;
@@ -58,6 +68,7 @@ import eu.trentorise.game.core.LogHub;
 import eu.trentorise.game.core.StatsLogger;
 import eu.trentorise.game.core.TaskSchedule;
 import eu.trentorise.game.managers.drools.KieContainerFactory;
+import eu.trentorise.game.model.ChallengeConcept;
 import eu.trentorise.game.model.ChallengeConcept.ChallengeState;
 import eu.trentorise.game.model.ChallengeModel;
 import eu.trentorise.game.model.Game;
@@ -69,14 +80,18 @@ import eu.trentorise.game.model.PlayerLevel;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.model.PointConcept;
 import eu.trentorise.game.model.PointConcept.PeriodInstance;
+import eu.trentorise.game.model.ScoreSketch;
 import eu.trentorise.game.model.core.ClasspathRule;
 import eu.trentorise.game.model.core.DBRule;
 import eu.trentorise.game.model.core.EngineTask;
 import eu.trentorise.game.model.core.FSRule;
 import eu.trentorise.game.model.core.GameConcept;
 import eu.trentorise.game.model.core.GameTask;
+import eu.trentorise.game.model.core.Notification;
 import eu.trentorise.game.model.core.Rule;
 import eu.trentorise.game.notification.ChallengeFailedNotication;
+import eu.trentorise.game.repo.ChallengeConceptPersistence;
+import eu.trentorise.game.repo.ChallengeDeadlinePersistence;
 import eu.trentorise.game.repo.ChallengeModelRepo;
 import eu.trentorise.game.repo.GamePersistence;
 import eu.trentorise.game.repo.GameRepo;
@@ -98,6 +113,14 @@ public class GameManager implements GameService {
 
     private static final long ONE_SECOND_IN_MILLIS = 1000;
 
+    private static final int FAILURE_BATCH_SIZE = 500;
+    // id of the execution failing a challenge on the expiration check
+    private static final String FAILURE_EXECUTION_FIELD = "failureExecutionId";
+
+    private static final int QUANTILES_SCALE = 10;
+
+    public static final String METER_GAME_STATS = "gamification.statistics.game";
+
     @Value("${schedule.task.job-destroyer}")
     private String jobDestroyerCronExpression;
 
@@ -110,6 +133,20 @@ public class GameManager implements GameService {
     @Value("${schedule.task.game-stats}")
     private String gameStatsCronExpression;
 
+    // challenge end dates are processed by ChallengeDeadlineScheduler
+    @Value("${challenge.deadline.enabled:true}")
+    private boolean challengeDeadlineScheduling;
+
+    // game statistics are updated by GameStatisticsAccumulator
+    @Value("${game.stats.incremental:true}")
+    private boolean incrementalGameStats;
+
+    @Value("${game.stats.pool-size:4}")
+    private int gameStatsPoolSize;
+
+    @Value("${challenge.failure.pool-size:4}")
+    private int failurePoolSize;
+
     @Autowired
     private TaskService taskSrv;
 
@@ -140,6 +177,12 @@ public class GameManager implements GameService {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @Autowired
+    private ChallengeDeadlineIndex deadlineIndex;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
     @PostConstruct
     private void startup() {
         for (Game game : loadGames(true)) {
@@ -157,24 +200,28 @@ public class GameManager implements GameService {
                 new JobDestroyerTask(taskSrv, this, "taskDestroyer", jobDestroyerSchedule);
         engineTasks.add(jobDestroyerTask);
 
-        TaskSchedule checkPerfomanceGroupChallengeSchedule = new TaskSchedule();
-        checkPerfomanceGroupChallengeSchedule
-                .setCronExpression(checkPerformanceGroupChallengeCronExpression);
-        EngineTask checkPerfomanceGroupChallengeTask =
-                new CheckPerformanceGroupChallengeTask(this,
-                "checkPerformanceGroupChallenge", checkPerfomanceGroupChallengeSchedule);
-        engineTasks.add(checkPerfomanceGroupChallengeTask);
-
-        TaskSchedule failureChallengeSchedule = new TaskSchedule();
-        failureChallengeSchedule.setCronExpression(failureChallengeCronExpression);
-        EngineTask failureChallengeTask =
-                new ChallengeFailureTask(this, "challengeFailure", failureChallengeSchedule);
-        engineTasks.add(failureChallengeTask);
-
-        TaskSchedule gameStatsSchedule = new TaskSchedule();
-        gameStatsSchedule.setCronExpression(gameStatsCronExpression);
-        EngineTask gameStatsTask = new GameStatsTask(this, "gameStats", gameStatsSchedule);
-        engineTasks.add(gameStatsTask);
+        if (!challengeDeadlineScheduling) {
+            TaskSchedule checkPerfomanceGroupChallengeSchedule = new TaskSchedule();
+            checkPerfomanceGroupChallengeSchedule
+                    .setCronExpression(checkPerformanceGroupChallengeCronExpression);
+            EngineTask checkPerfomanceGroupChallengeTask =
+                    new CheckPerformanceGroupChallengeTask(this,
+                    "checkPerformanceGroupChallenge", checkPerfomanceGroupChallengeSchedule);
+            engineTasks.add(checkPerfomanceGroupChallengeTask);
+
+            TaskSchedule failureChallengeSchedule = new TaskSchedule();
+            failureChallengeSchedule.setCronExpression(failureChallengeCronExpression);
+            EngineTask failureChallengeTask =
+                    new ChallengeFailureTask(this, "challengeFailure", failureChallengeSchedule);
+            engineTasks.add(failureChallengeTask);
+        }
+
+        if (!incrementalGameStats) {
+            TaskSchedule gameStatsSchedule = new TaskSchedule();
+            gameStatsSchedule.setCronExpression(gameStatsCronExpression);
+            EngineTask gameStatsTask = new GameStatsTask(this, "gameStats", gameStatsSchedule);
+            engineTasks.add(gameStatsTask);
+        }
 
         engineTasks.forEach(task -> {
             taskSrv.createEngineTask(task);
@@ -391,89 +438,191 @@ public class GameManager implements GameService {
             List<GroupChallenge> completedChallenges =
                     challengeSrv.completedPerformanceGroupChallenges(gameId);
 
-            completedChallenges.forEach(challenge -> {
-                List<String> winners = challengeSrv.conditionCheck(challenge);
-
-                challenge.updateState(ChallengeState.COMPLETED, challenge.getEnd());
-                challengeSrv.save(challenge);
-                challengeSrv.sendChallengeNotification(challenge);
-                challengeSrv.logStatsEvents(game, challenge);
-                // action rewards
-                // fix: executionTime should be challenge end time minus some time to be sure that
-                // reward will be assigned to the correct period
-                winners.stream().forEach(w -> {
-                    workflow.apply(gameId, INTERNAL_ACTION_PREFIX + "reward", w,
-                            challenge.getEnd().getTime() - ONE_SECOND_IN_MILLIS, null,
-                            Arrays.asList(challenge.getReward()));
-                });
-            });
+            completedChallenges.forEach(challenge -> completeGroupChallenge(game, challenge));
 
         });
         LogHub.info(null, logger, String.format("End best performance challenge action in %s ms",
                 (System.currentTimeMillis() - startOperation)));
     }
 
+    private void completeGroupChallenge(Game game, GroupChallenge challenge) {
+        final String gameId = game.getId();
+        List<String> winners = challengeSrv.conditionCheck(challenge);
+
+        challenge.updateState(ChallengeState.COMPLETED, challenge.getEnd());
+        challengeSrv.save(challenge);
+        challengeSrv.sendChallengeNotification(challenge);
+        challengeSrv.logStatsEvents(game, challenge);
+        // action rewards
+        // fix: executionTime should be challenge end time minus some time to be sure that
+        // reward will be assigned to the correct period
+        winners.stream().forEach(w -> {
+            workflow.apply(gameId, INTERNAL_ACTION_PREFIX + "reward", w,
+                    challenge.getEnd().getTime() - ONE_SECOND_IN_MILLIS, null,
+                    Arrays.asList(challenge.getReward()));
+        });
+    }
+
+    private void failGroupChallenge(Game game, GroupChallenge groupChallenge) {
+        groupChallenge.updateState(ChallengeState.FAILED, groupChallenge.getEnd());
+        groupChallenge = challengeSrv.save(groupChallenge);
+        challengeSrv.sendChallengeNotification(groupChallenge);
+        challengeSrv.logStatsEvents(game, groupChallenge);
+    }
+
+    @Override
+    public void expireGroupChallenge(String gameId, String challengeId, Date deadline) {
+        Game game = loadGameDefinitionById(gameId);
+        GroupChallenge challenge = challengeSrv.readGroupChallenge(challengeId);
+        if (game == null || challenge == null || challenge.getEnd() == null
+                || challenge.getEnd().after(deadline)) {
+            return;
+        }
+        if (challenge.getState() == ChallengeState.ASSIGNED && GroupChallenge.MODEL_NAME_COMPETITIVE_PERFORMANCE
+                .equals(challenge.getChallengeModel())) {
+            completeGroupChallenge(game, challenge);
+            LogHub.info(gameId, logger, "Best performance group challenge {} completed",
+                    challenge.getInstanceName());
+        } else if (challenge.getState() == ChallengeState.ASSIGNED
+                || challenge.getState() == ChallengeState.ACTIVE) {
+            failGroupChallenge(game, challenge);
+            LogHub.info(gameId, logger, "Group challenge {} failed", challenge.getInstanceName());
+        }
+    }
+
+    @Override
+    public void expireChallenges(String gameId, String playerId, Date deadline) {
+        Game game = loadGameDefinitionById(gameId);
+        if (game != null) {
+            failExpiredChallenges(game, playerId, deadline);
+        }
+    }
+
     public void taskChallengeFailure() {
         LogHub.info(null, logger, "Challenge failure checker in action");
-        final int pageSize = 50;
         long start = System.currentTimeMillis();
         Date now = new Date();
         List<Game> activeGames = loadGames(true);
-        PageRequest firstPage = PageRequest.of(0, pageSize);
-
-        activeGames.forEach(game -> {
-            final String gameId = game.getId();
-            Page<String> pagedPlayerIds = playerSrv.readPlayers(gameId, firstPage);
-            updateChallengeState(pagedPlayerIds, game, now);
-            for (int pageIdx = 1; pageIdx < pagedPlayerIds.getTotalPages(); pageIdx++) {
-                PageRequest pageRequest = PageRequest.of(pageIdx, pageSize);
-                pagedPlayerIds = playerSrv.readPlayers(gameId, pageRequest);
-                updateChallengeState(pagedPlayerIds, game, now);
+        ExecutorService executor = Executors
+                .newFixedThreadPool(Math.max(1, Math.min(failurePoolSize, activeGames.size())));
+        try {
+            List<Future<?>> checks = activeGames.stream()
+                    .map(game -> executor.submit(() -> failExpiredChallenges(game, now)))
+                    .collect(Collectors.toList());
+            for (Future<?> check : checks) {
+                check.get();
             }
-            List<GroupChallenge> groupChallengesToFail =
-                    challengeSrv.groupChallengeToFail(gameId, now);
-            groupChallengesToFail.forEach(groupChallenge -> {
-                groupChallenge.updateState(ChallengeState.FAILED, groupChallenge.getEnd());
-                groupChallenge = challengeSrv.save(groupChallenge);
-                challengeSrv.sendChallengeNotification(groupChallenge);
-                challengeSrv.logStatsEvents(game, groupChallenge);
-            });
-        });
-
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LogHub.error(null, logger, "Exception in challenge failure check", e);
+        } finally {
+            executor.shutdown();
+        }
 
         long end = System.currentTimeMillis();
         LogHub.info(null, logger,
                 String.format("Challenge failure check finished in %s ms ", (end - start)));
     }
 
-    private void updateChallengeState(Page<String> pagedPlayerIds, Game game, Date deadline) {
-        String executionId = UUID.randomUUID().toString();
+    private void failExpiredChallenges(Game game, Date now) {
         final String gameId = game.getId();
-        pagedPlayerIds.forEach(id -> {
-            PlayerState player = playerSrv.loadState(gameId, id, true, true, false, true);
-            player.challenges().forEach(challenge -> {
-                if (challenge.getEnd() != null && challenge.getEnd().before(deadline)
-                        && challenge.persistedState() != ChallengeState.COMPLETED
-                        && challenge.persistedState() != ChallengeState.FAILED) {
-                    challenge.updateState(ChallengeState.FAILED, challenge.getEnd());
-                    StatsLogger.logChallengeFailed(game.getDomain(), gameId, player.getPlayerId(),
-                            executionId, challenge.getEnd().getTime(), deadline.getTime(),
-                            challenge.getName());
-                    ChallengeFailedNotication notification = new ChallengeFailedNotication();
-                    notification.setChallengeName(challenge.getName());
-                    notification.setGameId(game.getId());
-                    notification.setPlayerId(player.getPlayerId());
-					notification.setModel(challenge.getModelName());
-					notification.setPointConcept(challenge.getFields().containsKey("counterName")
-							? String.valueOf(challenge.getFields().get("counterName"))
-							: "");
-					notification.setStart(challenge.getStart().getTime());
-					notification.setEnd(challenge.getEnd().getTime());
-					notificationSrv.notificate(notification);
+        try {
+            long failed = failExpiredChallenges(game, null, now);
+            List<GroupChallenge> groupChallengesToFail =
+                    challengeSrv.groupChallengeToFail(gameId, now);
+            groupChallengesToFail.forEach(groupChallenge -> failGroupChallenge(game, groupChallenge));
+            LogHub.info(gameId, logger, "Failed {} challenges and {} group challenges", failed,
+                    groupChallengesToFail.size());
+        } catch (RuntimeException e) {
+            LogHub.error(gameId, logger, "Exception failing expired challenges", e);
+        }
+    }
+
+    /*
+     * reads the expired challenges from the challengeConcept collection and fails them in batches,
+     * only the players owning them are touched
+     */
+    private long failExpiredChallenges(Game game, String playerId, Date deadline) {
+        Criteria crit = new Criteria("gameId").is(game.getId());
+        if (playerId != null) {
+            crit.and("playerId").is(playerId);
+        }
+        crit.and("concept.end").lt(deadline).and("concept.state").nin(ChallengeState.COMPLETED,
+                ChallengeState.FAILED);
+        Query query = new Query(crit);
+        query.cursorBatchSize(FAILURE_BATCH_SIZE);
+
+        String executionId = UUID.randomUUID().toString();
+        long failed = 0;
+        List<ChallengeConceptPersistence> batch = new ArrayList<>(FAILURE_BATCH_SIZE);
+        try (CloseableIterator<ChallengeConceptPersistence> expired =
+                mongoTemplate.stream(query, ChallengeConceptPersistence.class)) {
+            while (expired.hasNext()) {
+                ChallengeConceptPersistence challenge = expired.next();
+                // challenges completed before 2.4.0 have no state
+                if (challenge.getConcept().persistedState() == ChallengeState.COMPLETED) {
+                    continue;
+                }
+                batch.add(challenge);
+                if (batch.size() == FAILURE_BATCH_SIZE) {
+                    failed += failChallenges(game, batch, deadline, executionId);
+                    batch.clear();
                 }
-            });
-            playerSrv.saveState(player);
+            }
+        }
+        if (!batch.isEmpty()) {
+            failed += failChallenges(game, batch, deadline, executionId);
+        }
+        return failed;
+    }
+
+    private int failChallenges(Game game, List<ChallengeConceptPersistence> challenges,
+            Date deadline, String executionId) {
+        final String gameId = game.getId();
+        // the state guard skips the challenges completed or failed in the meanwhile by an action,
+        // the deadline scheduler or another engine instance. The challenges failed here are marked
+        // with the execution id and read back: only those are notified
+        BulkOperations failOps =
+                mongoTemplate.bulkOps(BulkMode.UNORDERED, ChallengeConceptPersistence.class);
+        challenges.forEach(c -> failOps.updateOne(
+                new Query(new Criteria("id").is(c.getId()).and("concept.state")
+                        .nin(ChallengeState.COMPLETED, ChallengeState.FAILED)),
+                new Update().set("concept.state", ChallengeState.FAILED)
+                        .set("concept.stateDate." + ChallengeState.FAILED, c.getConcept().getEnd())
+                        .set(FAILURE_EXECUTION_FIELD, executionId)));
+        List<ChallengeConceptPersistence> failed = new ArrayList<>();
+        if (failOps.execute().getModifiedCount() > 0) {
+            failed = mongoTemplate.find(
+                    new Query(new Criteria("id")
+                            .in(challenges.stream().map(ChallengeConceptPersistence::getId)
+                                    .collect(Collectors.toList()))
+                            .and(FAILURE_EXECUTION_FIELD).is(executionId)),
+                    ChallengeConceptPersistence.class);
+        }
+
+        List<Notification> notifications = new ArrayList<>(failed.size());
+        failed.forEach(c -> {
+            ChallengeConcept challenge = c.getConcept();
+            StatsLogger.logChallengeFailed(game.getDomain(), gameId, c.getPlayerId(), executionId,
+                    challenge.getEnd().getTime(), deadline.getTime(), challenge.getName());
+            ChallengeFailedNotication notification = new ChallengeFailedNotication();
+            notification.setChallengeName(challenge.getName());
+            notification.setGameId(gameId);
+            notification.setPlayerId(c.getPlayerId());
+            notification.setModel(challenge.getModelName());
+            notification.setPointConcept(challenge.getFields().containsKey("counterName")
+                    ? String.valueOf(challenge.getFields().get("counterName"))
+                    : "");
+            notification.setStart(challenge.getStart().getTime());
+            notification.setEnd(challenge.getEnd().getTime());
+            notifications.add(notification);
         });
+        notificationSrv.notificate(notifications);
+        deadlineIndex.untrack(challenges.stream()
+                .map(c -> ChallengeDeadlinePersistence.singleId(gameId, c.getPlayerId(), c.getName()))
+                .collect(Collectors.toList()));
+        return failed.size();
     }
 
     public Game loadGameDefinitionByAction(String actionId) {
@@ -788,90 +937,157 @@ public class GameManager implements GameService {
 		 */
 
         LogHub.info(null, logger, "task game statistics");
+        long start = System.currentTimeMillis();
+        List<Game> activeGames = loadGames(true).stream()
+                .filter(game -> game.getSettings() != null
+                        && !game.getSettings().getStatisticsConfig().isEmpty())
+                .collect(Collectors.toList());
+        ExecutorService executor = Executors
+                .newFixedThreadPool(Math.max(1, Math.min(gameStatsPoolSize, activeGames.size())));
+        try {
+            List<Future<?>> computations = activeGames.stream()
+                    .map(game -> executor.submit(() -> computeGameStats(game, start)))
+                    .collect(Collectors.toList());
+            for (Future<?> computation : computations) {
+                computation.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LogHub.error(null, logger, "Exception in game statistics computation", e);
+        } finally {
+            executor.shutdown();
+        }
+        LogHub.info(null, logger, String.format("Game statistics computed in %s ms",
+                System.currentTimeMillis() - start));
+	}
 
-		Calendar cal = Calendar.getInstance();
-		long moment = cal.getTimeInMillis();
-
-		// 1 read active games.
-		for (Game activeG : loadGames(true)) {
-			// 1.1 read settings about statistics.
-			if (activeG.getSettings() != null && !activeG.getSettings().getStatisticsConfig().isEmpty()) {
-                final Set<String> scoreNames = activeG.getSettings().getStatisticsConfig().keySet();
-                for (String pointConceptName : scoreNames) {
-					String periodName = activeG.getSettings().getStatisticsConfig().get(pointConceptName);
-					// 1.2 arrange statistics data array.
-					PeriodInstance periodInstance = ClassificationUtils.retrieveWindow(activeG, periodName,
-							pointConceptName, moment, -1);
-
-					if (periodInstance != null) {
-						String key = ClassificationUtils.generateKey(periodInstance);
-						// 1.3 query player states and prepare data array.
-						Query query = new Query();
-						Criteria criteria = new Criteria("gameId").is(activeG.getId());
-						query.addCriteria(criteria);
-						query.fields().include("concepts.PointConcept." + pointConceptName + ".obj.periods."
-								+ periodName + ".instances." + key + ".score");
-
-						List<StatePersistence> pStates = mongoTemplate.find(query, StatePersistence.class);
-
-                        List<Double> data = new ArrayList<>();
-                        for (StatePersistence state : pStates) {
-                            double value =
-                                    state.getIncrementalScore(pointConceptName, periodName, key);
-                            if (value > 0) {
-                                data.add(value);
-                            }
+    private void computeGameStats(Game game, long moment) {
+        final String gameId = game.getId();
+        long start = System.nanoTime();
+        try {
+            final Set<String> scoreNames = game.getSettings().getStatisticsConfig().keySet();
+            for (String pointConceptName : scoreNames) {
+                String periodName = game.getSettings().getStatisticsConfig().get(pointConceptName);
+                PeriodInstance periodInstance = ClassificationUtils.retrieveWindow(game,
+                        periodName, pointConceptName, moment, -1);
+                if (periodInstance != null) {
+                    computeGameStats(gameId, pointConceptName, periodName,
+                            ClassificationUtils.generateKey(periodInstance),
+                            periodInstance.getStart(), periodInstance.getEnd());
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            Timer.builder(METER_GAME_STATS).tag("game", gameId)
+                    .description("computation time of the statistics of a game")
+                    .register(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry))
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            LogHub.info(gameId, logger, String.format("Calculated statistics on scores %s in %s ms",
+                    scoreNames, TimeUnit.NANOSECONDS.toMillis(elapsed)));
+        } catch (RuntimeException e) {
+            LogHub.error(gameId, logger, "Exception calculating game statistics: {}",
+                    e.getMessage());
+        }
+    }
 
-                        }
+    @Override
+    public void computeGameStats(String gameId, String pointConceptName, String periodName,
+            String periodIndex, long start, long end) {
+        long moment = System.currentTimeMillis();
+        final String score = "concepts.PointConcept." + pointConceptName + ".obj.periods."
+                + periodName + ".instances." + periodIndex + ".score";
+
+        // only the positive scores grouped in the buckets of ScoreSketch are read from the
+        // player states
+        List<Document> pipeline = Arrays.asList(
+                new Document("$match",
+                        new Document("gameId", gameId).append(score, new Document("$gt", 0))),
+                new Document("$group", new Document("_id",
+                        new Document("$ceil", new Document("$divide",
+                                Arrays.asList(new Document("$ln", "$" + score),
+                                        ScoreSketch.LOG_GAMMA))))
+                        .append("count", new Document("$sum", 1))
+                        .append("sum", new Document("$sum", "$" + score))
+                        .append("sumOfSquares", new Document("$sum",
+                                new Document("$multiply", Arrays.asList("$" + score, "$" + score))))
+                        .append("min", new Document("$min", "$" + score))
+                        .append("max", new Document("$max", "$" + score))),
+                new Document("$sort", new Document("_id", 1)));
+        List<Document> buckets = mongoTemplate
+                .getCollection(mongoTemplate.getCollectionName(StatePersistence.class))
+                .aggregate(pipeline).into(new ArrayList<>());
+
+        // seed of the statistics updated incrementally by GameStatisticsAccumulator
+        ScoreSketch sketch = new ScoreSketch();
+        for (Document bucket : buckets) {
+            long count = ((Number) bucket.get("count")).longValue();
+            double sum = ((Number) bucket.get("sum")).doubleValue();
+            double mean = sum / count;
+            double m2 = Math.max(0,
+                    ((Number) bucket.get("sumOfSquares")).doubleValue() - sum * mean);
+            sketch.merge(((Number) bucket.get("_id")).intValue(), count, mean, m2);
+        }
 
-                        double average = data.stream().mapToDouble(a -> a).average().orElse(0d);
+        Query qGameStats = new Query();
+        Criteria cGameStats = new Criteria("gameId").is(gameId).and("pointConceptName")
+                .is(pointConceptName).and("periodName").is(periodName).and("periodIndex")
+                .is(periodIndex);
+        qGameStats.addCriteria(cGameStats);
+
+        Update update = new Update();
+        update.set("gameId", gameId);
+        update.set("pointConceptName", pointConceptName);
+        update.set("periodName", periodName);
+        update.set("periodIndex", periodIndex);
+        update.set("startDate", start);
+        update.set("endDate", end);
+        update.set("average", sketch.getMean());
+        update.set("variance", sketch.variance());
+        update.set("quantiles", quantiles(buckets, sketch.getCount()));
+        update.set("lastUpdated", moment);
+        update.set("sketch", sketch);
+        update.inc("sketchVersion", 1);
+
+        FindAndModifyOptions options = new FindAndModifyOptions();
+        options.upsert(true);
+        options.returnNew(true);
+
+        mongoTemplate.findAndModify(qGameStats, update, options, GameStatistics.class);
+    }
 
-                        // variance.
-                        double variance = 0d;
-                        // 10 quantiles.
-                        Map<Integer, Double> q = null;
-                        if (data.size() > 0) {
-                            variance = ClassificationUtils.calculateVariance(data);
-                            q = Quantiles.scale(10).indexes(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)
-                                    .compute(data);
-                        } else {
-                            q = new HashMap<>();
-                            for (int i = 0; i < 10; i++) {
-                                q.put(i, 0d);
-                            }
-                        }
+    /**
+     * Quantiles interpolated between the scores of the nearest ranks, as Quantiles.scale(10). A
+     * score is estimated from the min and max of its bucket, exact if they are equal
+     */
+    private static Map<Integer, Double> quantiles(List<Document> buckets, long count) {
+        Map<Integer, Double> quantiles = new HashMap<>();
+        for (int i = 0; i < QUANTILES_SCALE; i++) {
+            if (count == 0) {
+                quantiles.put(i, 0d);
+                continue;
+            }
+            double rank = (double) i * (count - 1) / QUANTILES_SCALE;
+            long lowerRank = (long) Math.floor(rank);
+            double lower = scoreAt(buckets, lowerRank);
+            double upper = rank > lowerRank ? scoreAt(buckets, lowerRank + 1) : lower;
+            quantiles.put(i, lower + (rank - lowerRank) * (upper - lower));
+        }
+        return quantiles;
+    }
 
-						Query qGameStats = new Query();
-						Criteria cGameStats = new Criteria("gameId").is(activeG.getId()).and("pointConceptName")
-								.is(pointConceptName).and("periodName").is(periodName).and("periodIndex").is(key);
-						qGameStats.addCriteria(cGameStats);
-
-						Update update = new Update();
-						update.set("gameId", activeG.getId());
-						update.set("pointConceptName", pointConceptName);
-						update.set("periodName", periodName);
-						update.set("periodIndex", key);
-						update.set("startDate", periodInstance.getStart());
-						update.set("endDate", periodInstance.getEnd());
-						update.set("average", average);
-						update.set("variance", variance);
-						update.set("quantiles", q);
-						update.set("lastUpdated", moment);
-
-						FindAndModifyOptions options = new FindAndModifyOptions();
-						options.upsert(true);
-						options.returnNew(true);
-
-                        mongoTemplate.findAndModify(qGameStats, update, options,
-								GameStatistics.class);
-					}
-				}
-                LogHub.info(activeG.getId(), logger,
-                        String.format("Calculated statistics on scores %s", scoreNames));
-			}
-		}
-		
-	}
+    private static double scoreAt(List<Document> buckets, long rank) {
+        long seen = 0;
+        for (Document bucket : buckets) {
+            long count = ((Number) bucket.get("count")).longValue();
+            if (rank < seen + count) {
+                double min = ((Number) bucket.get("min")).doubleValue();
+                double max = ((Number) bucket.get("max")).doubleValue();
+                return count > 1 ? min + (max - min) * (rank - seen) / (count - 1) : min;
+            }
+            seen += count;
+        }
+        return 0d;
+    }
 
 	@Override
 	public List<GameStatistics> loadGameStats(String gameId, String pointConceptName, String periodName, Long timestamp,
@@ -0,0 +1,280 @@
+/**
+ *    Copyright 2015 Fondazione Bruno Kessler - Trento RISE
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package eu.trentorise.game.managers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import eu.trentorise.game.core.LogHub;
+import eu.trentorise.game.model.Game;
+import eu.trentorise.game.model.GameStatistics;
+import eu.trentorise.game.model.PlayerState;
+import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.model.PointConcept.PeriodInstance;
+import eu.trentorise.game.model.ScoreSketch;
+import eu.trentorise.game.model.core.GameConcept;
+import eu.trentorise.game.services.GameService;
+
+/**
+ * Keeps the game statistics updated from the score changes of the action executions, replacing
+ * the nightly computation on all the player states.
+ *
+ * For every score and period configured in the statistics of the game, the workflow records the
+ * scores of the period instances before and after the execution: a changed score is a removed old
+ * score and an added new one in the pending delta of the period instance. Every
+ * game.stats.flush-interval ms the deltas are merged in the {@link ScoreSketch} persisted with the
+ * {@link GameStatistics}, updating average, variance and quantiles. The merge is a compare and set
+ * on the version of the sketch, so concurrent flushes of many engine instances are retried.
+ *
+ * The statistics of a period instance without a sketch are computed once from all the player
+ * states by {@link GameService#computeGameStats}. A delta of another engine instance pending when
+ * the sketch is seeded is counted twice, a score changed out of the action executions is not
+ * counted: set game.stats.incremental to false to go back to the nightly computation
+ */
+@Component
+public class GameStatisticsAccumulator {
+
+	private static final Logger logger = LoggerFactory.getLogger(GameStatisticsAccumulator.class);
+
+	private static final int QUANTILES_SCALE = 10;
+	private static final int MAX_MERGE_ATTEMPTS = 5;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private GameService gameSrv;
+
+	@Value("${game.stats.incremental:true}")
+	private boolean enabled;
+
+	@Value("${game.stats.flush-interval:60000}")
+	private long flushInterval;
+
+	private final Map<StatisticKey, Delta> pending = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService executor;
+
+	@PostConstruct
+	public void init() {
+		if (!enabled) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "game-statistics");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			flush();
+		}
+	}
+
+	/**
+	 * @return the scores of the period instances of the player that are part of the game
+	 *         statistics
+	 */
+	public Map<StatisticKey, Double> periodScores(Game game, PlayerState state) {
+		Map<StatisticKey, Double> scores = new HashMap<>();
+		if (!enabled || game.getSettings() == null || game.getSettings().getStatisticsConfig().isEmpty()
+				|| state == null) {
+			return scores;
+		}
+		Map<String, String> statisticsConfig = game.getSettings().getStatisticsConfig();
+		for (GameConcept concept : state.getState()) {
+			if (concept instanceof PointConcept && statisticsConfig.containsKey(concept.getName())) {
+				String periodName = statisticsConfig.get(concept.getName());
+				for (PeriodInstance instance : ((PointConcept) concept).getPeriodInstances(periodName)) {
+					scores.put(new StatisticKey(game.getId(), concept.getName(), periodName, instance.getStart(),
+							instance.getEnd()), instance.getScore() != null ? instance.getScore() : 0d);
+				}
+			}
+		}
+		return scores;
+	}
+
+	/**
+	 * Records the changes of the scores of the player, given the scores before the execution
+	 */
+	public void record(Game game, Map<StatisticKey, Double> scoresBefore, PlayerState state) {
+		if (!enabled) {
+			return;
+		}
+		Map<StatisticKey, Double> scoresAfter = periodScores(game, state);
+		scoresAfter.forEach((key, score) -> {
+			double before = scoresBefore.getOrDefault(key, 0d);
+			if (before != score) {
+				change(key, before, score);
+			}
+		});
+		scoresBefore.forEach((key, score) -> {
+			if (!scoresAfter.containsKey(key)) {
+				change(key, score, 0d);
+			}
+		});
+	}
+
+	private void change(StatisticKey key, double before, double after) {
+		pending.compute(key, (k, delta) -> {
+			if (delta == null) {
+				delta = new Delta();
+			}
+			// only positive scores are part of the statistics
+			if (before > 0) {
+				delta.removed.add(before);
+			}
+			if (after > 0) {
+				delta.added.add(after);
+			}
+			return delta;
+		});
+	}
+
+	/**
+	 * Merges the pending deltas in the persisted statistics
+	 */
+	public void flush() {
+		for (StatisticKey key : new ArrayList<>(pending.keySet())) {
+			Delta delta = pending.remove(key);
+			if (delta == null) {
+				continue;
+			}
+			try {
+				if (!merge(key, delta)) {
+					LogHub.warn(key.gameId, logger, "Concurrent updates of statistics {}, retry at next flush", key);
+					putBack(key, delta);
+				}
+			} catch (RuntimeException e) {
+				LogHub.error(key.gameId, logger, "Exception updating statistics {}: {}", key, e.getMessage());
+				putBack(key, delta);
+			}
+		}
+	}
+
+	private boolean merge(StatisticKey key, Delta delta) {
+		Query query = new Query(new Criteria("gameId").is(key.gameId).and("pointConceptName")
+				.is(key.pointConceptName).and("periodName").is(key.periodName).and("periodIndex")
+				.is(key.periodIndex()));
+		for (int attempt = 0; attempt < MAX_MERGE_ATTEMPTS; attempt++) {
+			GameStatistics stats = mongoTemplate.findOne(query, GameStatistics.class);
+			if (stats == null || stats.getSketch() == null) {
+				// the computation on the player states includes the changes of the delta
+				gameSrv.computeGameStats(key.gameId, key.pointConceptName, key.periodName, key.periodIndex(),
+						key.start, key.end);
+				return true;
+			}
+			ScoreSketch sketch = stats.getSketch();
+			sketch.merge(delta.added);
+			sketch.subtract(delta.removed);
+
+			Query versioned = Query.of(query);
+			versioned.addCriteria(new Criteria("sketchVersion").is(stats.getSketchVersion()));
+			Update update = new Update().set("sketch", sketch).set("average", sketch.getMean())
+					.set("variance", sketch.variance()).set("quantiles", sketch.quantiles(QUANTILES_SCALE))
+					.set("lastUpdated", System.currentTimeMillis()).inc("sketchVersion", 1);
+			if (mongoTemplate.updateFirst(versioned, update, GameStatistics.class).getModifiedCount() > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void putBack(StatisticKey key, Delta delta) {
+		pending.merge(key, delta, (current, failed) -> {
+			current.added.merge(failed.added);
+			current.removed.merge(failed.removed);
+			return current;
+		});
+	}
+
+	private static class Delta {
+		private final ScoreSketch added = new ScoreSketch();
+		private final ScoreSketch removed = new ScoreSketch();
+	}
+
+	/**
+	 * A period instance of a score in the game statistics
+	 */
+	public static class StatisticKey {
+		private final String gameId;
+		private final String pointConceptName;
+		private final String periodName;
+		private final long start;
+		private final long end;
+
+		public StatisticKey(String gameId, String pointConceptName, String periodName, long start, long end) {
+			this.gameId = gameId;
+			this.pointConceptName = pointConceptName;
+			this.periodName = periodName;
+			this.start = start;
+			this.end = end;
+		}
+
+		public String periodIndex() {
+			return ClassificationUtils.generateKey(start);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof StatisticKey)) {
+				return false;
+			}
+			StatisticKey other = (StatisticKey) obj;
+			return start == other.start && Objects.equals(gameId, other.gameId)
+					&& Objects.equals(pointConceptName, other.pointConceptName)
+					&& Objects.equals(periodName, other.periodName);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(gameId, pointConceptName, periodName, start);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s-%s-%s-%s", gameId, pointConceptName, periodName, periodIndex());
+		}
+	}
+}
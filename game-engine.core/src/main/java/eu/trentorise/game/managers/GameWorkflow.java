@@ -16,9 +16,14 @@ package eu.trentorise.game.managers;
 
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -30,9 +35,12 @@ import org.springframework.stereotype.Component;
 
 import eu.trentorise.game.core.LogHub;
 import eu.trentorise.game.core.StatsLogger;
+import eu.trentorise.game.managers.GameStatisticsAccumulator.StatisticKey;
+import eu.trentorise.game.managers.WorkflowMetrics.Stage;
 import eu.trentorise.game.model.ChallengeConcept.ChallengeState;
 import eu.trentorise.game.model.Game;
 import eu.trentorise.game.model.GroupChallenge;
+import eu.trentorise.game.model.GroupChallenge.Attendee;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.model.PointConcept;
 import eu.trentorise.game.notification.GameNotification;
@@ -72,37 +80,79 @@ public class GameWorkflow implements Workflow {
 	@Autowired
 	Tracer tracing;
 
+    @Autowired
+    private WorkflowMetrics metrics;
+
+    @Autowired
+    private GameStatisticsAccumulator statistics;
+
     private SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
 
     protected void workflowExec(String gameId, String actionId, String userId, String executionId,
             long executionMoment, Map<String, Object> data, List<Object> factObjects) {
+        final long workflowStart = metrics.start();
+        // ids of the request not validated are tagged as unknown, so they don't create new meters
+        String gameTag = WorkflowMetrics.UNKNOWN_TAG;
+        String actionTag = WorkflowMetrics.UNKNOWN_TAG;
+        boolean success = false;
+        try {
+            long stageStart = metrics.start();
+            Game g = gameSrv.loadGameDefinitionById(gameId);
+            boolean validAction = g != null && g.getActions() != null
+                    && (actionId.startsWith(GameManager.INTERNAL_ACTION_PREFIX)
+                            || g.getActions().contains(actionId));
+            if (g != null) {
+                gameTag = gameId;
+            }
+            if (validAction) {
+                actionTag = actionId;
+            }
+            metrics.record(Stage.GAME_LOAD, gameTag, actionTag, stageStart);
+            if (!validAction) {
+                throw new IllegalArgumentException(String.format(
+                        "game %s not exist or action %s not belong to it", gameId, actionId));
+            }
+            executeWorkflow(g, actionId, userId, executionId, executionMoment, data, factObjects);
+            success = true;
+        } finally {
+            metrics.recordAction(gameTag, actionTag, workflowStart, success);
+        }
+    }
+
+    private void executeWorkflow(Game g, String actionId, String userId, String executionId,
+            long executionMoment, Map<String, Object> data, List<Object> factObjects) {
+        final String gameId = g.getId();
         final Date executionDate = new Date(executionMoment);
         LogHub.info(gameId, logger,
                 "gameId:{}, actionId: {}, playerId: {}, executionMoment: {}, data: {}, factObjs: {}",
-                gameId, actionId, userId, dateFormat.format(executionDate), data,
-                factObjects);
-        Game g = gameSrv.loadGameDefinitionById(gameId);
-        if (g == null || g.getActions() == null
-                || (!actionId.startsWith(GameManager.INTERNAL_ACTION_PREFIX)
-                        && !g.getActions().contains(actionId))) {
-            throw new IllegalArgumentException(String
-                    .format("game %s not exist or action %s not belong to it", gameId, actionId));
-        }
+                gameId, actionId, userId, dateFormat.format(executionDate), data, factObjects);
 
+        long stageStart = metrics.start();
         PlayerState playerState = playerSrv.loadState(gameId, userId, true, false);
+        metrics.record(Stage.STATE_LOAD, gameId, actionId, stageStart);
 
         // Actually GameService.execute modifies playerState passed as parameter
         PlayerState oldState = playerState.clone();
+        // clone doesn't copy the period instances of the scores
+        Map<StatisticKey, Double> periodScores = statistics.periodScores(g, playerState);
 
-        if (isClassificationAction(actionId)) {
-            StatsLogger.logClassification(g.getDomain(), gameId, userId, executionId,
-                    executionMoment, data, factObjects);
-        } else {
-            StatsLogger.logAction(g.getDomain(), gameId, userId, executionId, executionMoment,
-                    actionId, data, factObjects, playerState);
+        stageStart = metrics.start();
+        if (StatsLogger.isEnabled()) {
+            if (isClassificationAction(actionId)) {
+                StatsLogger.logClassification(g.getDomain(), gameId, userId, executionId,
+                        executionMoment, data, factObjects);
+            } else {
+                StatsLogger.logAction(g.getDomain(), gameId, userId, executionId,
+                        executionMoment, actionId, data, factObjects, playerState);
+            }
         }
+        metrics.record(Stage.STATS_LOG, gameId, actionId, stageStart);
+
+        // drools engine records the stages of rule execution, level calculation, state save,
+        // notification and team propagation
         PlayerState newState = gameEngine.execute(gameId, playerState, actionId, data, executionId,
                 executionMoment, factObjects);
+        statistics.record(g, periodScores, newState);
 
 //        boolean result = playerSrv.saveState(newState) != null;
 
@@ -113,38 +163,45 @@ public class GameWorkflow implements Workflow {
         
         // Game notification.
         if (g.getNotifyPCName() != null && !g.getNotifyPCName().isEmpty()) {
+            stageStart = metrics.start();
         	sendGameNotificationforPlayer(g, actionId, data, oldState, newState, executionMoment);
+            metrics.record(Stage.NOTIFICATION, gameId, actionId, stageStart);
         }
         
         // update score of all player active groupChallenges
+        stageStart = metrics.start();
         List<GroupChallenge> playerActiveGroupChallenges =
                 challengeSrv.activeGroupChallengesByDate(gameId, userId, executionDate);
         if (playerActiveGroupChallenges.size() > 0) {
-            LogHub.info(gameId, logger, String.format("Player %s has %s active group challenges",
-                    userId, playerActiveGroupChallenges.size()));
+            LogHub.info(gameId, logger, "Player {} has {} active group challenges", userId,
+                    playerActiveGroupChallenges.size());
         } else {
-            LogHub.info(gameId, logger, String.format("Player %s has no active group challenges",
-                    userId, playerActiveGroupChallenges.size()));
+            LogHub.info(gameId, logger, "Player {} has no active group challenges", userId);
         }
+        // challenge scores of the other attendees of performance challenges,
+        // the acting player uses its new state
+        Map<String, PlayerState> attendeeStates = loadPerformanceAttendees(gameId, userId,
+                playerActiveGroupChallenges);
+        attendeeStates.put(userId, newState);
         playerActiveGroupChallenges.forEach(groupChallenge -> {
-            List<PlayerState> participantStates = groupChallenge.getAttendees().stream()
-                    .filter(a -> !a.getPlayerId().equals(userId)).map(participant -> playerSrv
-                            .loadState(gameId, participant.getPlayerId(), false, false))
-                    .collect(Collectors.toList());
-            participantStates.add(newState);
-            if (groupChallenge.getChallengeModel()
-                    .equals(GroupChallenge.MODEL_NAME_COMPETITIVE_TIME)
-                    || groupChallenge.getChallengeModel()
-                            .equals(GroupChallenge.MODEL_NAME_COOPERATIVE)) {
+            List<String> updatedPlayers;
+            if (isScoredByPlayer(groupChallenge)) {
                 groupChallenge.update(newState, executionMoment);
+                updatedPlayers = Collections.singletonList(userId);
             } else { // maybe different behavior for best performance challenge is not needed
+                List<PlayerState> participantStates = groupChallenge.getAttendees().stream()
+                        .map(participant -> attendeeStates.get(participant.getPlayerId()))
+                        .filter(Objects::nonNull).collect(Collectors.toList());
                 groupChallenge.update(participantStates, executionMoment);
+                updatedPlayers = groupChallenge.getAttendees().stream()
+                        .map(Attendee::getPlayerId).collect(Collectors.toList());
+            }
+            if (!challengeSrv.updateScores(groupChallenge, updatedPlayers)) {
+                LogHub.warn(gameId, logger, "Group challenge {} changed, scores not updated",
+                        groupChallenge.getInstanceName());
+                return;
             }
-            challengeSrv.save(groupChallenge);
-            if (groupChallenge.getChallengeModel()
-                    .equals(GroupChallenge.MODEL_NAME_COMPETITIVE_TIME)
-                    || groupChallenge.getChallengeModel()
-                            .equals(GroupChallenge.MODEL_NAME_COOPERATIVE)) {
+            if (isScoredByPlayer(groupChallenge)) {
                 List<String> winners = challengeSrv.conditionCheck(groupChallenge);
                 if (!winners.isEmpty()) {
                     groupChallenge.updateState(ChallengeState.COMPLETED, executionDate);
@@ -152,10 +209,9 @@ public class GameWorkflow implements Workflow {
                     challengeSrv.sendChallengeNotification(groupChallenge);
                     challengeSrv.logStatsEvents(g, groupChallenge);
                     LogHub.info(gameId, logger,
-                            String.format(
-                                    "Player %s wins group challenge %s of type %s, he will be rewarded",
-                                    userId, groupChallenge.getInstanceName(),
-                                    groupChallenge.getChallengeModel()));
+                            "Player {} wins group challenge {} of type {}, he will be rewarded",
+                            userId, groupChallenge.getInstanceName(),
+                            groupChallenge.getChallengeModel());
                     winners.stream().forEach(w -> {
                         apply(gameId, GameManager.INTERNAL_ACTION_PREFIX + "reward", w,
                                 executionMoment, null, Arrays.asList(groupChallenge.getReward()));
@@ -163,15 +219,43 @@ public class GameWorkflow implements Workflow {
                 }
             }
         });
+        metrics.record(Stage.GROUP_CHALLENGE_UPDATE, gameId, actionId, stageStart);
 
-        
         if (env.getProperty("trace.playerMove", Boolean.class, false)) {
             traceSrv.tracePlayerMove(oldState, newState, data, executionMoment);
             LogHub.info(gameId, logger, "Traced player {} move", userId);
         }
         LogHub.info(gameId, logger, "Process terminated");
-        StatsLogger.logEndGameAction(g.getDomain(), gameId, userId, executionId, executionMoment,
-                System.currentTimeMillis());
+        if (StatsLogger.isEnabled()) {
+            StatsLogger.logEndGameAction(g.getDomain(), gameId, userId, executionId,
+                    executionMoment, System.currentTimeMillis());
+        }
+    }
+
+    private boolean isScoredByPlayer(GroupChallenge groupChallenge) {
+        return groupChallenge.getChallengeModel().equals(GroupChallenge.MODEL_NAME_COMPETITIVE_TIME)
+                || groupChallenge.getChallengeModel().equals(GroupChallenge.MODEL_NAME_COOPERATIVE);
+    }
+
+    /*
+     * the point concepts referenced by the performance challenges, for all
+     * the other attendees, in a single query
+     */
+    private Map<String, PlayerState> loadPerformanceAttendees(String gameId, String userId,
+            List<GroupChallenge> groupChallenges) {
+        Set<String> playerIds = new HashSet<>();
+        Set<String> pointConceptNames = new HashSet<>();
+        groupChallenges.stream().filter(groupChallenge -> !isScoredByPlayer(groupChallenge))
+                .forEach(groupChallenge -> {
+                    pointConceptNames.add(groupChallenge.getChallengePointConcept().getName());
+                    groupChallenge.getAttendees().stream()
+                            .filter(a -> !a.getPlayerId().equals(userId))
+                            .forEach(a -> playerIds.add(a.getPlayerId()));
+                });
+        Map<String, PlayerState> states = new HashMap<>();
+        playerSrv.loadPointConcepts(gameId, playerIds, pointConceptNames)
+                .forEach(state -> states.put(state.getPlayerId(), state));
+        return states;
     }
 
 	private void sendGameNotificationforPlayer(Game g, String actionId, Map<String, Object> data, PlayerState oldState,
@@ -0,0 +1,189 @@
+/**
+ *    Copyright 2015 Fondazione Bruno Kessler - Trento RISE
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package eu.trentorise.game.managers;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Sorts;
+
+import eu.trentorise.game.core.LogHub;
+import eu.trentorise.game.model.Settings;
+import eu.trentorise.game.repo.GamePersistence;
+import eu.trentorise.game.repo.GameRepo;
+import eu.trentorise.game.repo.NotificationPersistence;
+
+/**
+ * Applies the notification retention of the games.
+ * 
+ * Notifications older than the retention of their game are moved in batches to the
+ * notificationArchive collection, created with block compression, or deleted when
+ * notification.retention.mode is delete. The age of a notification is the creation time of its
+ * ObjectId, so the batches are read on the (obj.gameId, _id) index. Archived notifications get a
+ * createdAt date removed by a TTL index after notification.archive.retention-days.
+ * 
+ * A batch is inserted in the archive before being deleted from the live collection and
+ * duplicates are ignored, so an interrupted or concurrent run moves every notification once
+ */
+@Component
+public class NotificationArchiver {
+
+	private static final Logger logger = LoggerFactory.getLogger(NotificationArchiver.class);
+
+	private static final int DUPLICATE_KEY = 11000;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private GameRepo gameRepo;
+
+	@Value("${notification.retention.days:0}")
+	private int defaultRetentionDays;
+
+	@Value("${notification.retention.mode:archive}")
+	private String mode;
+
+	@Value("${notification.retention.batch-size:1000}")
+	private int batchSize;
+
+	@Value("${notification.archive.retention-days:0}")
+	private int archiveRetentionDays;
+
+	@Value("${notification.archive.compressor:zlib}")
+	private String compressor;
+
+	@PostConstruct
+	public void init() {
+		if (!isArchiveMode()) {
+			return;
+		}
+		if (!mongoTemplate.collectionExists(NotificationPersistence.ARCHIVE_COLLECTION)) {
+			mongoTemplate.getDb().createCollection(NotificationPersistence.ARCHIVE_COLLECTION,
+					new CreateCollectionOptions().storageEngineOptions(new Document("wiredTiger",
+							new Document("configString", "block_compressor=" + compressor))));
+		}
+		MongoCollection<Document> archive = archive();
+		archive.createIndex(Indexes.ascending("obj.gameId", "_id"));
+		archive.createIndex(Indexes.ascending("obj.gameId", "obj.playerId", "_id"));
+		if (archiveRetentionDays > 0) {
+			archive.createIndex(Indexes.ascending("createdAt"),
+					new IndexOptions().expireAfter((long) archiveRetentionDays, TimeUnit.DAYS));
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${notification.retention.interval:3600000}")
+	public void applyRetention() {
+		for (GamePersistence game : gameRepo.findAll()) {
+			int retentionDays = retentionDays(game.getSettings());
+			if (retentionDays <= 0) {
+				continue;
+			}
+			try {
+				Date limit = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+				long moved = applyRetention(game.getId(), limit);
+				if (moved > 0) {
+					LogHub.info(game.getId(), logger, "{} notifications older than {} days {}", moved,
+							retentionDays, isArchiveMode() ? "archived" : "deleted");
+				}
+			} catch (RuntimeException e) {
+				LogHub.error(game.getId(), logger, "Exception applying notification retention: {}",
+						e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Moves to the archive, or deletes, the notifications of the game created before the limit
+	 * 
+	 * @return the number of notifications removed from the live collection
+	 */
+	public long applyRetention(String gameId, Date limit) {
+		MongoCollection<Document> live = mongoTemplate.getCollection(
+				mongoTemplate.getCollectionName(NotificationPersistence.class));
+		ObjectId limitId = new ObjectId(limit);
+		long removed = 0;
+		while (true) {
+			List<Document> batch = live
+					.find(Filters.and(Filters.eq("obj.gameId", gameId), Filters.lt("_id", limitId)))
+					.sort(Sorts.ascending("obj.gameId", "_id")).limit(batchSize)
+					.into(new ArrayList<>());
+			if (batch.isEmpty()) {
+				return removed;
+			}
+			List<Object> ids = new ArrayList<>(batch.size());
+			for (Document notification : batch) {
+				ids.add(notification.get("_id"));
+				notification.append("createdAt", notification.getObjectId("_id").getDate());
+			}
+			if (isArchiveMode()) {
+				insertIgnoringDuplicates(batch);
+			}
+			removed += live.deleteMany(Filters.in("_id", ids)).getDeletedCount();
+		}
+	}
+
+	private void insertIgnoringDuplicates(List<Document> batch) {
+		try {
+			archive().insertMany(batch, new InsertManyOptions().ordered(false));
+		} catch (MongoBulkWriteException e) {
+			for (BulkWriteError error : e.getWriteErrors()) {
+				if (error.getCode() != DUPLICATE_KEY) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private int retentionDays(Settings settings) {
+		if (settings != null && settings.getNotificationSettings() != null
+				&& settings.getNotificationSettings().getRetentionDays() > 0) {
+			return settings.getNotificationSettings().getRetentionDays();
+		}
+		return defaultRetentionDays;
+	}
+
+	private boolean isArchiveMode() {
+		return !"delete".equals(mode);
+	}
+
+	private MongoCollection<Document> archive() {
+		return mongoTemplate.getCollection(NotificationPersistence.ARCHIVE_COLLECTION);
+	}
+}
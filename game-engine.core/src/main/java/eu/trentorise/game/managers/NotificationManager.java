@@ -17,34 +17,262 @@
 package eu.trentorise.game.managers;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import eu.trentorise.game.core.LogHub;
 import eu.trentorise.game.model.core.Notification;
+import eu.trentorise.game.model.core.NotificationFeed;
 import eu.trentorise.game.repo.NotificationPersistence;
 import eu.trentorise.game.repo.NotificationQuery;
 import eu.trentorise.game.repo.NotificationRepo;
 
+/**
+ * Persists and publishes the notifications.
+ * 
+ * The notifications of an execution are persisted with a single insert. When RabbitMQ is enabled
+ * they are published asynchronously from a bounded queue: a notification is marked as pending
+ * until the broker confirms it, pending notifications not confirmed within the retry delay are
+ * published again from their persisted record, so the rule execution is never blocked by the
+ * broker.
+ * 
+ * The notification feed is read by cursor in insertion order; feed listeners of a game are
+ * signaled when new notifications of the game are persisted by this engine instance. Ids are
+ * generated by the engine instances, so a notification can be persisted after another one with a
+ * greater id: the feed returns only the notifications older than notification.feed.safety-lag ms,
+ * the cursor never passes a notification that could still be persisted
+ */
 @Component
 public class NotificationManager {
 
+	private static final Logger logger = LoggerFactory.getLogger(NotificationManager.class);
+
 	@Autowired
 	NotificationRepo repo;
-	
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
 	@Autowired(required = false)
 	private RabbitMQManager rabbitMQManager;
 
+	@Value("${notification.publish.queue-size:10000}")
+	private int publishQueueSize;
+
+	@Value("${notification.publish.batch-size:100}")
+	private int publishBatchSize;
+
+	@Value("${notification.publish.retry-delay:60000}")
+	private long publishRetryDelay;
+
+	@Value("${notification.feed.max-size:500}")
+	private int feedMaxSize;
+
+	@Value("${notification.feed.safety-lag:2000}")
+	private long feedSafetyLag;
+
+	private BlockingQueue<NotificationPersistence> publishQueue;
+	private Thread publisher;
+	private volatile boolean running;
+
+	private final Map<String, Set<Runnable>> feedListeners = new ConcurrentHashMap<>();
+	private ScheduledExecutorService feedNotifier;
+
+	@PostConstruct
+	public void init() {
+		IndexOperations indexOps = mongoTemplate.indexOps(NotificationPersistence.class);
+		indexOps.ensureIndex(new Index().on("obj.gameId", Direction.ASC).on("_id", Direction.ASC));
+		indexOps.ensureIndex(new Index().on("obj.gameId", Direction.ASC)
+				.on("obj.playerId", Direction.ASC).on("_id", Direction.ASC));
+		feedNotifier = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "notification-feed");
+			t.setDaemon(true);
+			return t;
+		});
+
+		if (rabbitMQManager == null) {
+			return;
+		}
+		indexOps.ensureIndex(new Index().on("publishPending", Direction.ASC)
+				.partial(PartialIndexFilter.of(Criteria.where("publishPending").exists(true))));
+		publishQueue = new ArrayBlockingQueue<>(publishQueueSize);
+		running = true;
+		publisher = new Thread(this::publish, "notification-publisher");
+		publisher.setDaemon(true);
+		publisher.start();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		feedNotifier.shutdownNow();
+		running = false;
+		if (publisher != null) {
+			publisher.interrupt();
+		}
+	}
+
 	public void notificate(Notification n) {
-		NotificationPersistence np = new NotificationPersistence(n); 
-		repo.save(np);
-		
+		notificate(Collections.singletonList(n));
+	}
+
+	/**
+	 * Persists the notifications with a single insert and queues them for publishing
+	 * 
+	 * @param notifications notifications of an execution
+	 */
+	public void notificate(List<Notification> notifications) {
+		if (notifications.isEmpty()) {
+			return;
+		}
+		List<NotificationPersistence> persistences = new ArrayList<>(notifications.size());
+		for (Notification n : notifications) {
+			NotificationPersistence np = new NotificationPersistence(n);
+			if (rabbitMQManager != null) {
+				np.setPublishPending(true);
+			}
+			persistences.add(np);
+		}
+		mongoTemplate.insert(persistences, NotificationPersistence.class);
+		signalFeedListeners(notifications);
+
 		if (rabbitMQManager != null) {
-			rabbitMQManager.sendMessage(np);	
-		}		
+			for (NotificationPersistence np : persistences) {
+				if (!publishQueue.offer(np)) {
+					// published by the retry from the persisted record
+					LogHub.warn(null, logger, "notification publish queue full, {} notifications postponed",
+							persistences.size() - persistences.indexOf(np));
+					break;
+				}
+			}
+		}
+	}
+
+	private void publish() {
+		List<NotificationPersistence> batch = new ArrayList<>(publishBatchSize);
+		while (running) {
+			try {
+				NotificationPersistence np = publishQueue.poll(1, TimeUnit.SECONDS);
+				if (np == null) {
+					continue;
+				}
+				batch.add(np);
+				publishQueue.drainTo(batch, publishBatchSize - 1);
+				List<NotificationPersistence> published = rabbitMQManager.sendMessages(batch);
+				if (!published.isEmpty()) {
+					List<String> ids = published.stream().map(NotificationPersistence::getId)
+							.collect(Collectors.toList());
+					mongoTemplate.updateMulti(new Query(Criteria.where("id").in(ids)),
+							new Update().unset("publishPending"), NotificationPersistence.class);
+				}
+			} catch (InterruptedException e) {
+				running = false;
+			} catch (RuntimeException e) {
+				LogHub.error(null, logger, "Exception publishing notifications: {}", e.getMessage());
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Queues again the notifications pending from longer than the retry delay
+	 */
+	@Scheduled(fixedDelayString = "${notification.publish.retry-delay:60000}")
+	public void retryPublish() {
+		if (rabbitMQManager == null || publishQueue.remainingCapacity() == 0) {
+			return;
+		}
+		Date pendingLimit = new Date(System.currentTimeMillis() - publishRetryDelay);
+		Query query = new Query(Criteria.where("publishPending").is(true).and("id")
+				.lt(new ObjectId(pendingLimit)));
+		query.limit(publishQueue.remainingCapacity());
+		List<NotificationPersistence> pending = mongoTemplate.find(query, NotificationPersistence.class);
+		if (!pending.isEmpty()) {
+			LogHub.info(null, logger, "retry publish of {} notifications", pending.size());
+			pending.forEach(publishQueue::offer);
+		}
+	}
+
+	/**
+	 * Reads the notifications of a game arrived after the cursor
+	 * 
+	 * @param gameId game
+	 * @param playerId player, null to read the notifications of all the players
+	 * @param cursor cursor returned by the previous read, null for the first read
+	 * @param fromTs timestamp the first read starts from, -1 to start from the first notification
+	 * @param size max number of notifications, limited to notification.feed.max-size
+	 * @return the notifications and the cursor of the next read, the same cursor if there are no
+	 *         new notifications
+	 */
+	public NotificationFeed readFeed(String gameId, String playerId, String cursor, long fromTs,
+			int size) {
+		int limit = Math.max(1, Math.min(size, feedMaxSize));
+		Date before = feedSafetyLag > 0 ? new Date(System.currentTimeMillis() - feedSafetyLag) : null;
+		List<NotificationPersistence> nots = repo.findNotificationsAfter(gameId, playerId, cursor,
+				fromTs, before, limit);
+		String nextCursor = nots.isEmpty() ? cursor : nots.get(nots.size() - 1).getId();
+		return new NotificationFeed(convert(nots), nextCursor);
+	}
+
+	/**
+	 * Registers a listener run, out of the caller thread, every time new notifications of the
+	 * game are persisted, as soon as they can be read from the feed
+	 */
+	public void addFeedListener(String gameId, Runnable listener) {
+		feedListeners.computeIfAbsent(gameId, id -> ConcurrentHashMap.newKeySet()).add(listener);
+	}
+
+	public void removeFeedListener(String gameId, Runnable listener) {
+		feedListeners.computeIfPresent(gameId, (id, listeners) -> {
+			listeners.remove(listener);
+			return listeners.isEmpty() ? null : listeners;
+		});
+	}
+
+	private void signalFeedListeners(List<Notification> notifications) {
+		if (feedListeners.isEmpty()) {
+			return;
+		}
+		// ids have the precision of a second
+		long delay = feedSafetyLag > 0 ? feedSafetyLag + 1000 : 0;
+		notifications.stream().map(Notification::getGameId).distinct().forEach(gameId -> {
+			Set<Runnable> listeners = feedListeners.get(gameId);
+			if (listeners != null) {
+				for (Runnable listener : listeners) {
+					feedNotifier.schedule(listener, delay, TimeUnit.MILLISECONDS);
+				}
+			}
+		});
 	}
 
 	public List<Notification> readNotifications(String gameId) {
@@ -1,11 +1,26 @@
 package eu.trentorise.game.managers;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PostConstruct;
 
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.connection.CorrelationData.Confirm;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
@@ -16,6 +31,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import eu.trentorise.game.repo.NotificationPersistence;
 
@@ -42,6 +58,9 @@ public class RabbitMQManager {
 	@Value("${rabbitmq.pngRoutingKeyPrefix}")
 	private String rabbitMQroutingKeyPrefix;
 
+	@Value("${rabbitmq.confirm-timeout:5000}")
+	private long confirmTimeout;
+
 //	@Autowired
 //	private Environment env;
     
@@ -60,7 +79,14 @@ public class RabbitMQManager {
 
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RabbitMQManager.class);
 
-	private ObjectMapper mapper = new ObjectMapper();
+	private static final ObjectWriter writer = new ObjectMapper()
+			.writerFor(NotificationPersistence.class);
+
+	/*
+	 * queue and routing key pairs already declared on the broker, cleared when
+	 * a new connection is created
+	 */
+	private final Set<String> declaredBindings = ConcurrentHashMap.newKeySet();
 
 //	private Channel rabbitMQChannel;
 //	private boolean initialized = false;
@@ -102,37 +128,87 @@ public class RabbitMQManager {
 //		}
 //	}
 
+	@PostConstruct
+	public void init() {
+		// a recovered connection could point to a broker without the queues
+		rabbitTemplate.getConnectionFactory().addConnectionListener(connection -> {
+			if (!declaredBindings.isEmpty()) {
+				logger.info("New RabbitMQ connection, queues will be declared again");
+				declaredBindings.clear();
+			}
+		});
+	}
+
 	private void addNewQueueToExchange(String queueName, String routingKey) throws Exception {
+		String binding = queueName + " " + routingKey;
+		if (declaredBindings.contains(binding)) {
+			return;
+		}
         Map<String, Object> args = new HashMap<>();
         args.put("x-queue-type", "quorum");
         Queue queue = new Queue(queueName, true, false, false, args);
         rabbitAdmin.declareQueue(queue);
         rabbitAdmin.declareBinding(BindingBuilder.bind(queue).to(gameExchange).with(routingKey));
+        declaredBindings.add(binding);
     }
 
 	public void sendMessage(NotificationPersistence notification) {
-		try {
-			String gameId = (String) notification.getObj().get("gameId");
-			String queueId = "queue-" + gameId;
-			String routingKey = "game-" + gameId;
+		sendMessages(Collections.singletonList(notification));
+	}
 
-			if (!rabbitMQEnabled) {
-				return;
+	/**
+	 * Publishes the notifications and waits the confirms of the broker
+	 * 
+	 * @param notifications notifications to publish
+	 * @return the notifications confirmed by the broker
+	 */
+	public List<NotificationPersistence> sendMessages(List<NotificationPersistence> notifications) {
+		List<NotificationPersistence> confirmed = new ArrayList<>();
+		if (!rabbitMQEnabled) {
+			return confirmed;
+		}
+		Map<CorrelationData, NotificationPersistence> sent = new LinkedHashMap<>();
+		for (NotificationPersistence notification : notifications) {
+			try {
+				String gameId = (String) notification.getObj().get("gameId");
+				String queueId = "queue-" + gameId;
+				String routingKey = "game-" + gameId;
+
+				addNewQueueToExchange(queueId, routingKey);
+
+				CorrelationData correlation = new CorrelationData(notification.getId());
+				rabbitTemplate.send(rabbitMQExchangeName, routingKey, toMessage(notification), correlation);
+				sent.put(correlation, notification);
+			} catch (Exception e) {
+				logger.error("Error sending message: {}", e.getMessage());
+			}
+		}
+		for (Map.Entry<CorrelationData, NotificationPersistence> message : sent.entrySet()) {
+			try {
+				Confirm confirm = message.getKey().getFuture().get(confirmTimeout, TimeUnit.MILLISECONDS);
+				if (confirm.isAck()) {
+					confirmed.add(message.getValue());
+				} else {
+					logger.warn("Message {} not confirmed: {}", message.getKey().getId(), confirm.getReason());
+				}
+			} catch (ExecutionException | TimeoutException e) {
+				logger.warn("Message {} not confirmed: {}", message.getKey().getId(), e.getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
 			}
-			
-			addNewQueueToExchange(queueId, routingKey);
-
-			String msg = mapper.writeValueAsString(notification);
-			rabbitTemplate.convertAndSend(rabbitMQExchangeName, routingKey, msg);
-			
-//			byte[] messageBodyBytes = mapper.writeValueAsBytes(notification);
-//			AMQP.BasicProperties.Builder propsBuilder = new AMQP.BasicProperties.Builder();
-//			propsBuilder.deliveryMode(2); // persistent message
-//			rabbitMQChannel.basicPublish(rabbitMQExchangeName, "game-" + gameId, propsBuilder.build(),
-//					messageBodyBytes);
-		} catch (Exception e) {
-			logger.error("Error sending message.", e.getMessage());
 		}
+		return confirmed;
+	}
+
+	/*
+	 * same content type of the String messages sent before the switch to bytes
+	 */
+	private Message toMessage(NotificationPersistence notification) throws Exception {
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+		properties.setContentEncoding("UTF-8");
+		return new Message(writer.writeValueAsBytes(notification), properties);
 	}
 
 //	private void createQueue(String queueId, String gameId) throws IOException {
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2015 Fondazione Bruno Kessler - Trento RISE
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package eu.trentorise.game.managers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers and counters of the stages of the action workflow, tagged by game and action. Callers
+ * pass only validated game and action ids, or {@link #UNKNOWN_TAG}, to bound the number of meters.
+ *
+ * Usage: take the start with {@link #start()} and record the stage with
+ * {@link #record(Stage, String, String, long)} when it terminates
+ */
+@Component
+public class WorkflowMetrics {
+
+    public static final String METER_STAGE = "gamification.workflow.stage";
+    public static final String METER_ACTION = "gamification.workflow.action";
+    public static final String METER_ACTION_ERRORS = "gamification.workflow.action.errors";
+    // tag value of a game or action not validated
+    public static final String UNKNOWN_TAG = "unknown";
+
+    public enum Stage {
+        GAME_LOAD("game_load"),
+        STATE_LOAD("state_load"),
+        STATS_LOG("stats_log"),
+        RULES_EXECUTION("rules_execution"),
+        GROUP_CHALLENGE_UPDATE("group_challenge_update"),
+        LEVEL_CALCULATION("level_calculation"),
+        STATE_SAVE("state_save"),
+        NOTIFICATION("notification"),
+        TEAM_PROPAGATION("team_propagation");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    // meters are cached to avoid the creation of meter ids on every action
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public WorkflowMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    WorkflowMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void record(Stage stage, String gameId, String action, long start) {
+        String game = tagValue(gameId);
+        String actionTag = tagValue(action);
+        timers.computeIfAbsent(stage.getTag() + '|' + game + '|' + actionTag,
+                k -> Timer.builder(METER_STAGE).tag("stage", stage.getTag()).tag("game", game)
+                        .tag("action", actionTag)
+                        .description("execution time of a stage of the action workflow")
+                        .publishPercentileHistogram().register(meterRegistry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordAction(String gameId, String action, long start, boolean success) {
+        String game = tagValue(gameId);
+        String actionTag = tagValue(action);
+        String outcome = success ? "success" : "error";
+        timers.computeIfAbsent(outcome + '|' + game + '|' + actionTag,
+                k -> Timer.builder(METER_ACTION).tag("game", game).tag("action", actionTag)
+                        .tag("outcome", outcome)
+                        .description("execution time of the whole action workflow")
+                        .publishPercentileHistogram().register(meterRegistry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!success) {
+            counters.computeIfAbsent(game + '|' + actionTag,
+                    k -> Counter.builder(METER_ACTION_ERRORS).tag("game", game)
+                            .tag("action", actionTag)
+                            .description("action workflows terminated by an exception")
+                            .register(meterRegistry))
+                    .increment();
+        }
+    }
+
+    private static String tagValue(String value) {
+        return value != null ? value : "none";
+    }
+}
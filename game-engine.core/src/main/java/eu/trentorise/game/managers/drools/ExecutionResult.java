@@ -0,0 +1,98 @@
+package eu.trentorise.game.managers.drools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import eu.trentorise.game.model.CustomData;
+import eu.trentorise.game.model.Member;
+import eu.trentorise.game.model.Propagation;
+import eu.trentorise.game.model.UpdateMembers;
+import eu.trentorise.game.model.UpdateTeams;
+import eu.trentorise.game.model.core.GameConcept;
+import eu.trentorise.game.model.core.Notification;
+
+/**
+ * Typed view of the working memory at the end of a rule execution.
+ *
+ * Facts are classified in a single traversal of the session objects, replacing the set of
+ * queries previously declared in core.drl (one working memory scan for each of them)
+ */
+public class ExecutionResult {
+
+    private List<GameConcept> gameConcepts = new ArrayList<>();
+    private List<Notification> notifications = new ArrayList<>();
+    private List<CustomData> customData = new ArrayList<>();
+    private List<UpdateTeams> updateTeams = new ArrayList<>();
+    private List<UpdateMembers> updateMembers = new ArrayList<>();
+    private Propagation propagation;
+    private Member member;
+
+    public static ExecutionResult classify(Collection<?> facts) {
+        ExecutionResult result = new ExecutionResult();
+        if (facts == null) {
+            return result;
+        }
+        for (Object fact : facts) {
+            result.add(fact);
+        }
+        return result;
+    }
+
+    void add(Object fact) {
+        if (fact instanceof GameConcept) {
+            gameConcepts.add((GameConcept) fact);
+        } else if (fact instanceof Notification) {
+            notifications.add((Notification) fact);
+        } else if (fact instanceof CustomData) {
+            customData.add((CustomData) fact);
+        } else if (fact instanceof UpdateTeams) {
+            updateTeams.add((UpdateTeams) fact);
+        } else if (fact instanceof UpdateMembers) {
+            updateMembers.add((UpdateMembers) fact);
+        } else if (fact instanceof Propagation) {
+            // only the first propagation fact is meaningful, as it was for query getLevel
+            if (propagation == null) {
+                propagation = (Propagation) fact;
+            }
+        } else if (fact instanceof Member) {
+            if (member == null) {
+                member = (Member) fact;
+            }
+        }
+    }
+
+    public List<GameConcept> getGameConcepts() {
+        return Collections.unmodifiableList(gameConcepts);
+    }
+
+    public List<Notification> getNotifications() {
+        return Collections.unmodifiableList(notifications);
+    }
+
+    public List<CustomData> getCustomData() {
+        return Collections.unmodifiableList(customData);
+    }
+
+    public List<UpdateTeams> getUpdateTeams() {
+        return Collections.unmodifiableList(updateTeams);
+    }
+
+    public List<UpdateMembers> getUpdateMembers() {
+        return Collections.unmodifiableList(updateMembers);
+    }
+
+    /**
+     *
+     * @return the level of the next propagation step: 1 if the execution is not itself a
+     *         propagation, the propagation level incremented by one otherwise
+     */
+    public int nextPropagationLevel() {
+        return propagation != null ? propagation.getLevel() + 1 : 1;
+    }
+
+    public Member getMember() {
+        return member;
+    }
+}
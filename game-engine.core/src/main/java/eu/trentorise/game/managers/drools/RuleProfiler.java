@@ -0,0 +1,233 @@
+package eu.trentorise.game.managers.drools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.MatchCancelledEvent;
+import org.kie.api.event.rule.MatchCreatedEvent;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Collects execution statistics of the rules of every game: number of matches created and
+ * cancelled, number of firings and time spent executing the consequence (RHS) of the rule.
+ *
+ * Statistics are published as Micrometer meters tagged by game and rule and can be read through
+ * {@link #readProfile(String)}
+ */
+@Component
+public class RuleProfiler {
+
+    public static final String METER_MATCHES = "gamification.rule.matches";
+    public static final String METER_CANCELLATIONS = "gamification.rule.cancellations";
+    public static final String METER_FIRES = "gamification.rule.fires";
+    public static final String METER_EXECUTION = "gamification.rule.execution";
+
+    @Value("${engine.rule-profiler.enabled:false}")
+    private boolean enabled;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Map<String, RuleStats>> gameStats = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RuleProfiler(ObjectProvider<MeterRegistry> meterRegistry) {
+        this(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    RuleProfiler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     *
+     * @param gameId game of the execution
+     * @return a listener profiling the rules fired in a single execution, null if the profiler is
+     *         disabled
+     */
+    public AgendaEventListener newListener(String gameId) {
+        return enabled ? new ProfilingListener(gameId) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     *
+     * @param gameId game
+     * @return profile of the rules of the game, ordered by cumulative execution time
+     */
+    public List<RuleProfile> readProfile(String gameId) {
+        Map<String, RuleStats> rules = gameStats.get(gameId);
+        if (rules == null) {
+            return Collections.emptyList();
+        }
+        List<RuleProfile> profile = new ArrayList<>();
+        rules.forEach((ruleName, stats) -> profile.add(new RuleProfile(ruleName, stats)));
+        profile.sort(Comparator.comparingLong(RuleProfile::getTotalTimeNanos).reversed());
+        return profile;
+    }
+
+    public void resetProfile(String gameId) {
+        Map<String, RuleStats> rules = gameStats.remove(gameId);
+        if (rules != null) {
+            rules.values().forEach(stats -> stats.removeMeters(meterRegistry));
+        }
+    }
+
+    private RuleStats stats(String gameId, String ruleName) {
+        return gameStats.computeIfAbsent(gameId, g -> new ConcurrentHashMap<>())
+                .computeIfAbsent(ruleName, r -> new RuleStats(meterRegistry, gameId, ruleName));
+    }
+
+    private class ProfilingListener extends DefaultAgendaEventListener {
+        private final String gameId;
+        private long firingStart;
+
+        private ProfilingListener(String gameId) {
+            this.gameId = gameId;
+        }
+
+        @Override
+        public void matchCreated(MatchCreatedEvent event) {
+            stats(gameId, event.getMatch().getRule().getName()).matchCreated();
+        }
+
+        @Override
+        public void matchCancelled(MatchCancelledEvent event) {
+            stats(gameId, event.getMatch().getRule().getName()).matchCancelled();
+        }
+
+        @Override
+        public void beforeMatchFired(BeforeMatchFiredEvent event) {
+            firingStart = System.nanoTime();
+        }
+
+        @Override
+        public void afterMatchFired(AfterMatchFiredEvent event) {
+            stats(gameId, event.getMatch().getRule().getName())
+                    .fired(System.nanoTime() - firingStart);
+        }
+    }
+
+    private static class RuleStats {
+        private final LongAdder matches = new LongAdder();
+        private final LongAdder cancellations = new LongAdder();
+        private final LongAdder fires = new LongAdder();
+        private final LongAdder totalTime = new LongAdder();
+        private final LongAccumulator maxTime = new LongAccumulator(Long::max, 0);
+
+        private final Counter matchesCounter;
+        private final Counter cancellationsCounter;
+        private final Counter firesCounter;
+        private final Timer executionTimer;
+
+        private RuleStats(MeterRegistry registry, String gameId, String ruleName) {
+            matchesCounter = Counter.builder(METER_MATCHES).tag("game", gameId)
+                    .tag("rule", ruleName).description("rule matches created")
+                    .register(registry);
+            cancellationsCounter = Counter.builder(METER_CANCELLATIONS).tag("game", gameId)
+                    .tag("rule", ruleName).description("rule matches cancelled before firing")
+                    .register(registry);
+            firesCounter = Counter.builder(METER_FIRES).tag("game", gameId).tag("rule", ruleName)
+                    .description("rule firings").register(registry);
+            executionTimer = Timer.builder(METER_EXECUTION).tag("game", gameId)
+                    .tag("rule", ruleName).description("rule consequence execution time")
+                    .publishPercentileHistogram().register(registry);
+        }
+
+        private void matchCreated() {
+            matches.increment();
+            matchesCounter.increment();
+        }
+
+        private void matchCancelled() {
+            cancellations.increment();
+            cancellationsCounter.increment();
+        }
+
+        private void fired(long nanos) {
+            fires.increment();
+            totalTime.add(nanos);
+            maxTime.accumulate(nanos);
+            firesCounter.increment();
+            executionTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void removeMeters(MeterRegistry registry) {
+            registry.remove(matchesCounter);
+            registry.remove(cancellationsCounter);
+            registry.remove(firesCounter);
+            registry.remove(executionTimer);
+        }
+    }
+
+    public static class RuleProfile {
+        private final String ruleName;
+        private final long matches;
+        private final long cancellations;
+        private final long fires;
+        private final long totalTimeNanos;
+        private final long maxTimeNanos;
+
+        private RuleProfile(String ruleName, RuleStats stats) {
+            this.ruleName = ruleName;
+            this.matches = stats.matches.sum();
+            this.cancellations = stats.cancellations.sum();
+            this.fires = stats.fires.sum();
+            this.totalTimeNanos = stats.totalTime.sum();
+            this.maxTimeNanos = stats.maxTime.get();
+        }
+
+        public String getRuleName() {
+            return ruleName;
+        }
+
+        public long getMatches() {
+            return matches;
+        }
+
+        public long getCancellations() {
+            return cancellations;
+        }
+
+        public long getFires() {
+            return fires;
+        }
+
+        public long getTotalTimeNanos() {
+            return totalTimeNanos;
+        }
+
+        public long getMaxTimeNanos() {
+            return maxTimeNanos;
+        }
+
+        public double getAverageTimeNanos() {
+            return fires > 0 ? (double) totalTimeNanos / fires : 0;
+        }
+    }
+}
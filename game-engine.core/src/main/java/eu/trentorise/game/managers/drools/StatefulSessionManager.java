@@ -0,0 +1,400 @@
+package eu.trentorise.game.managers.drools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.kie.api.event.rule.AgendaEventListener;
+import org.kie.api.event.rule.RuleRuntimeEventListener;
+import org.kie.api.runtime.KieContainer;
+import org.kie.api.runtime.KieSession;
+import org.kie.api.runtime.rule.FactHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import eu.trentorise.game.core.LogHub;
+import eu.trentorise.game.model.ChallengeConcept;
+import eu.trentorise.game.model.PlayerState;
+import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.model.core.GameConcept;
+import eu.trentorise.game.services.PlayerService;
+
+/**
+ * Keeps a stateful rule session resident for every active player of the games configured with
+ * the STATEFUL execution mode.
+ *
+ * The concepts of the player stay in the working memory between actions: an action inserts its
+ * facts, fires the rules and retracts everything is not a game concept. Idle sessions are
+ * evicted, persisting the last state of the player if the engine did not manage to do it.
+ *
+ * A session is held by an execution until it is released, after the player state has been
+ * saved: other executions of the same player wait for the release up to
+ * engine.stateful.lock-timeout ms, then they fail. An execution holds a single session at a time,
+ * the propagation to teams and members runs after the release.
+ *
+ * Every write of the player state not performed by the execution holding the session
+ * invalidates it, so the working memory never diverges from the persisted state
+ */
+@Component
+public class StatefulSessionManager {
+
+    private final Logger logger = LoggerFactory.getLogger(StatefulSessionManager.class);
+
+    @Value("${engine.stateful.idle-timeout:600000}")
+    private long idleTimeout;
+
+    @Value("${engine.stateful.max-sessions:5000}")
+    private int maxSessions;
+
+    @Value("${engine.stateful.lock-timeout:30000}")
+    private long lockTimeout;
+
+    @Autowired
+    private PlayerService playerSrv;
+
+    private final Map<String, ResidentSession> sessions = new ConcurrentHashMap<>();
+
+    // keys of the sessions held by the executions running in the current thread
+    private final ThreadLocal<Set<String>> ownedSessions = ThreadLocal.withInitial(HashSet::new);
+
+    /**
+     * Executes an action in the resident session of the player, creating it if needed
+     *
+     * @param gameId game of the player
+     * @param playerId player performing the action
+     * @param kieContainer container of the current game rules, a session created with a different
+     *        container is discarded
+     * @param activeConcepts active concepts of the player state
+     * @param actionFacts facts of the action, they are retracted at the end of the execution
+     * @param listener rule listener of the execution
+     * @param agendaListener agenda listener of the execution, can be null
+     * @param globals session globals, used only when a new session is created
+     * @return facts of the working memory at the end of the execution, null if the session is
+     *         already held by an execution of the current thread and the action has to be
+     *         executed stateless
+     * @throws IllegalStateException if the session is held by another execution for more than
+     *         engine.stateful.lock-timeout ms
+     */
+    public ExecutionResult execute(String gameId, String playerId, KieContainer kieContainer,
+            Set<GameConcept> activeConcepts, List<Object> actionFacts,
+            RuleRuntimeEventListener listener, AgendaEventListener agendaListener,
+            Supplier<Map<String, Object>> globals) {
+        String key = key(gameId, playerId);
+        long waitLimit = System.currentTimeMillis() + lockTimeout;
+        while (true) {
+            ResidentSession resident = sessions.computeIfAbsent(key,
+                    k -> new ResidentSession(gameId, playerId, kieContainer));
+            synchronized (resident) {
+                if (resident.disposed) {
+                    continue;
+                }
+                if (resident.inUse) {
+                    if (ownedSessions.get().contains(key)) {
+                        // nested execution for the same player, the working memory is discarded
+                        // when the outer execution releases it
+                        resident.stale = true;
+                        return null;
+                    }
+                    // the concepts of the working memory are still processed by another
+                    // execution of the player
+                    awaitRelease(resident, waitLimit);
+                    continue;
+                }
+                if (resident.kieContainer != kieContainer) {
+                    LogHub.info(gameId, logger,
+                            "rules of game changed, discard resident session of player {}",
+                            playerId);
+                    dispose(key, resident);
+                    continue;
+                }
+                ownedSessions.get().add(key);
+                resident.inUse = true;
+                try {
+                    return resident.execute(activeConcepts, actionFacts, listener, agendaListener,
+                            globals);
+                } catch (RuntimeException e) {
+                    // working memory could be inconsistent
+                    ownedSessions.get().remove(key);
+                    dispose(key, resident);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the session held by the execution after the player state has been processed
+     *
+     * @param gameId game of the player
+     * @param playerId player
+     * @param state state of the player at the end of the execution
+     * @param persisted true if the state has been saved by the engine
+     */
+    public void release(String gameId, String playerId, PlayerState state, boolean persisted) {
+        String key = key(gameId, playerId);
+        ownedSessions.get().remove(key);
+        ResidentSession resident = sessions.get(key);
+        if (resident != null) {
+            synchronized (resident) {
+                resident.inUse = false;
+                resident.lastState = state;
+                resident.persisted = persisted;
+                resident.lastAccess = System.currentTimeMillis();
+                if (resident.stale) {
+                    dispose(key, resident);
+                }
+                resident.notifyAll();
+            }
+        }
+    }
+
+    // called holding the monitor of the resident session
+    private void awaitRelease(ResidentSession resident, long waitLimit) {
+        long timeout = waitLimit - System.currentTimeMillis();
+        if (timeout <= 0) {
+            throw new IllegalStateException(String.format(
+                    "session of player %s held by another execution for more than %s ms",
+                    resident.playerId, lockTimeout));
+        }
+        try {
+            resident.wait(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format(
+                    "interrupted waiting for the session of player %s", resident.playerId), e);
+        }
+    }
+
+    /**
+     * Discards the session held by a failed execution
+     *
+     * @param gameId game of the player
+     * @param playerId player
+     */
+    public void abort(String gameId, String playerId) {
+        ownedSessions.get().remove(key(gameId, playerId));
+        invalidate(gameId, playerId);
+    }
+
+    /**
+     * Discards the resident session of the player, if any. Writes performed by the execution
+     * holding the session are ignored
+     *
+     * @param gameId game of the player
+     * @param playerId player
+     */
+    public void invalidate(String gameId, String playerId) {
+        String key = key(gameId, playerId);
+        if (ownedSessions.get().contains(key)) {
+            return;
+        }
+        ResidentSession resident = sessions.get(key);
+        if (resident != null) {
+            synchronized (resident) {
+                ownedSessions.get().remove(key);
+                dispose(key, resident);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${engine.stateful.eviction-check:60000}")
+    public void evictIdleSessions() {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for (Entry<String, ResidentSession> entry : sessions.entrySet()) {
+            if (now - entry.getValue().lastAccess > idleTimeout
+                    && evict(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        int exceeding = sessions.size() - maxSessions;
+        if (exceeding > 0) {
+            List<Entry<String, ResidentSession>> lessRecentlyUsed =
+                    new ArrayList<>(sessions.entrySet());
+            lessRecentlyUsed.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            for (int i = 0; i < Math.min(exceeding, lessRecentlyUsed.size()); i++) {
+                if (evict(lessRecentlyUsed.get(i).getKey(), lessRecentlyUsed.get(i).getValue())) {
+                    evicted++;
+                }
+            }
+        }
+        if (evicted > 0) {
+            LogHub.info(null, logger, "evicted {} resident sessions, {} still active", evicted,
+                    sessions.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.forEach((key, resident) -> evict(key, resident));
+    }
+
+    public int activeSessions() {
+        return sessions.size();
+    }
+
+    private boolean evict(String key, ResidentSession resident) {
+        synchronized (resident) {
+            if (resident.disposed || resident.inUse) {
+                return false;
+            }
+            if (!resident.persisted && resident.lastState != null) {
+                try {
+                    // prevent the invalidation of the session by its own write
+                    ownedSessions.get().add(key);
+                    playerSrv.saveState(resident.lastState);
+                    LogHub.info(resident.gameId, logger,
+                            "persisted state of player {} on session eviction", resident.playerId);
+                } catch (Exception e) {
+                    LogHub.error(resident.gameId, logger,
+                            String.format("Exception persisting state of player %s on eviction",
+                                    resident.playerId),
+                            e);
+                } finally {
+                    ownedSessions.get().remove(key);
+                }
+            }
+            dispose(key, resident);
+            return true;
+        }
+    }
+
+    // called holding the monitor of the resident session
+    private void dispose(String key, ResidentSession resident) {
+        sessions.remove(key, resident);
+        resident.dispose();
+        resident.notifyAll();
+    }
+
+    private static String key(String gameId, String playerId) {
+        return gameId + "#" + playerId;
+    }
+
+    private static class ResidentSession {
+        private final String gameId;
+        private final String playerId;
+        private final KieContainer kieContainer;
+        private KieSession session;
+        private final Map<String, FactHandle> concepts = new HashMap<>();
+
+        private volatile long lastAccess = System.currentTimeMillis();
+        private PlayerState lastState;
+        private boolean persisted = true;
+        private boolean inUse;
+        private boolean stale;
+        private boolean disposed;
+
+        private ResidentSession(String gameId, String playerId, KieContainer kieContainer) {
+            this.gameId = gameId;
+            this.playerId = playerId;
+            this.kieContainer = kieContainer;
+        }
+
+        private ExecutionResult execute(Set<GameConcept> activeConcepts,
+                List<Object> actionFacts, RuleRuntimeEventListener listener,
+                AgendaEventListener agendaListener, Supplier<Map<String, Object>> globals) {
+            lastAccess = System.currentTimeMillis();
+            persisted = false;
+            if (session == null) {
+                session = kieContainer.newKieSession();
+                globals.get().forEach(session::setGlobal);
+            }
+            align(activeConcepts);
+
+            session.addEventListener(listener);
+            if (agendaListener != null) {
+                session.addEventListener(agendaListener);
+            }
+            try {
+                for (Object fact : actionFacts) {
+                    session.insert(fact);
+                }
+                session.fireAllRules();
+
+                // classify results and collect action facts in a single traversal
+                ExecutionResult result = new ExecutionResult();
+                List<FactHandle> transientFacts = new ArrayList<>();
+                concepts.clear();
+                for (FactHandle handle : session.getFactHandles()) {
+                    Object fact = session.getObject(handle);
+                    result.add(fact);
+                    if (fact instanceof GameConcept) {
+                        concepts.put(conceptKey((GameConcept) fact), handle);
+                    } else {
+                        transientFacts.add(handle);
+                    }
+                }
+                transientFacts.forEach(session::delete);
+                return result;
+            } finally {
+                session.removeEventListener(listener);
+                if (agendaListener != null) {
+                    session.removeEventListener(agendaListener);
+                }
+            }
+        }
+
+        /*
+         * Aligns the resident concepts to the active concepts of the player: new concepts are
+         * inserted, no more active ones retracted. Concepts depending on the execution moment are
+         * updated, others are left untouched because the working memory mirrors the persisted
+         * state
+         */
+        private void align(Set<GameConcept> activeConcepts) {
+            Set<String> activeKeys = new HashSet<>();
+            for (GameConcept concept : activeConcepts) {
+                String key = conceptKey(concept);
+                activeKeys.add(key);
+                FactHandle handle = concepts.get(key);
+                if (handle == null) {
+                    concepts.put(key, session.insert(concept));
+                } else if (isTimeDependent(concept)) {
+                    session.update(handle, concept);
+                }
+            }
+            Iterator<Entry<String, FactHandle>> iter = concepts.entrySet().iterator();
+            while (iter.hasNext()) {
+                Entry<String, FactHandle> resident = iter.next();
+                if (!activeKeys.contains(resident.getKey())) {
+                    session.delete(resident.getValue());
+                    iter.remove();
+                }
+            }
+        }
+
+        private boolean isTimeDependent(GameConcept concept) {
+            return concept instanceof ChallengeConcept || (concept instanceof PointConcept
+                    && !((PointConcept) concept).getPeriods().isEmpty());
+        }
+
+        private String conceptKey(GameConcept concept) {
+            return concept.getClass().getSimpleName() + ":" + concept.getName();
+        }
+
+        private void dispose() {
+            disposed = true;
+            if (session != null) {
+                session.dispose();
+                session = null;
+            }
+            concepts.clear();
+        }
+    }
+}
@@ -5,6 +5,8 @@ import java.util.Map;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 @Document
 public class GameStatistics {
 
@@ -20,6 +22,11 @@ public class GameStatistics {
 	private double variance;
 	private Map<Integer, Double> quantiles;
 	private Long lastUpdated;
+	// incremental statistics, version guards the concurrent merges of the sketch
+	@JsonIgnore
+	private ScoreSketch sketch;
+	@JsonIgnore
+	private long sketchVersion;
 
 	public String getId() {
 		return id;
@@ -112,4 +119,20 @@ public class GameStatistics {
 		this.lastUpdated = lastUpdated;
 	}
 
+	public ScoreSketch getSketch() {
+		return sketch;
+	}
+
+	public void setSketch(ScoreSketch sketch) {
+		this.sketch = sketch;
+	}
+
+	public long getSketchVersion() {
+		return sketchVersion;
+	}
+
+	public void setSketchVersion(long sketchVersion) {
+		this.sketchVersion = sketchVersion;
+	}
+
 }
@@ -21,6 +21,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
@@ -194,6 +195,14 @@ public class PointConcept extends GameConcept {
 		return periods.containsKey(periodIdentifier) ? periods.get(periodIdentifier).retrieveInstance(moment) : null;
 	}
 
+	/**
+	 * @return the instances of the period already created, without creating the current one
+	 */
+	public List<PeriodInstance> getPeriodInstances(String periodIdentifier) {
+		PeriodInternal p = periods.get(periodIdentifier);
+		return p != null ? new ArrayList<>(p.getInstances().values()) : new ArrayList<>();
+	}
+
 	private int getCurrentInstanceIndex(String periodIdentifier) {
 		PeriodInstance current = getPeriodCurrentInstance(periodIdentifier);
 		return current != null ? current.getIndex() : -1;
@@ -0,0 +1,181 @@
+package eu.trentorise.game.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mergeable summary of a set of positive scores, used for the incremental game statistics.
+ *
+ * Mean and variance are kept as a Welford accumulator (count, mean, sum of squared differences),
+ * merged and subtracted with the pairwise formulas of Chan et al. Quantiles are estimated by a
+ * logarithmic histogram: a score falls in bucket ceil(log(score) / log(gamma)) and a bucket is
+ * represented by a value within RELATIVE_ACCURACY of all its scores. Bucket counts are summed,
+ * so a sketch can also be subtracted: a changed score is a sketch of the old score subtracted and
+ * one of the new score merged.
+ */
+public class ScoreSketch {
+
+    public static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    // a score is in bucket ceil(log(score) / LOG_GAMMA), also computed in the aggregations
+    public static final double LOG_GAMMA = Math.log(GAMMA);
+
+    private long count;
+    private double mean;
+    private double m2;
+    private Map<Integer, Long> buckets = new HashMap<>();
+
+    public void add(double score) {
+        if (score <= 0) {
+            throw new IllegalArgumentException("only positive scores can be added to the sketch");
+        }
+        count++;
+        double delta = score - mean;
+        mean += delta / count;
+        m2 += delta * (score - mean);
+        buckets.merge(bucket(score), 1L, Long::sum);
+    }
+
+    public void merge(ScoreSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        combine(other.count, other.mean, other.m2);
+        other.buckets.forEach((bucket, bucketCount) -> buckets.merge(bucket, bucketCount, Long::sum));
+    }
+
+    /**
+     * Merges the scores of a bucket, summarized by their count, mean and sum of squared
+     * differences from the mean
+     */
+    public void merge(int bucket, long bucketCount, double bucketMean, double bucketM2) {
+        if (bucketCount <= 0) {
+            return;
+        }
+        combine(bucketCount, bucketMean, bucketM2);
+        buckets.merge(bucket, bucketCount, Long::sum);
+    }
+
+    private void combine(long otherCount, double otherMean, double otherM2) {
+        long total = count + otherCount;
+        double delta = otherMean - mean;
+        m2 += otherM2 + delta * delta * count * otherCount / total;
+        mean += delta * otherCount / total;
+        count = total;
+    }
+
+    /**
+     * Removes the scores of the other sketch, that must be a part of the scores of this one
+     */
+    public void subtract(ScoreSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        long remaining = count - other.count;
+        if (remaining <= 0) {
+            count = 0;
+            mean = 0;
+            m2 = 0;
+            buckets.clear();
+            return;
+        }
+        double remainingMean = (count * mean - other.count * other.mean) / remaining;
+        double delta = other.mean - remainingMean;
+        m2 = Math.max(0, m2 - other.m2 - delta * delta * remaining * other.count / count);
+        mean = remainingMean;
+        count = remaining;
+        other.buckets.forEach((bucket, bucketCount) -> {
+            long left = buckets.getOrDefault(bucket, 0L) - bucketCount;
+            if (left > 0) {
+                buckets.put(bucket, left);
+            } else {
+                buckets.remove(bucket);
+            }
+        });
+    }
+
+    /**
+     * @return population variance of the scores
+     */
+    public double variance() {
+        return count > 0 ? m2 / count : 0d;
+    }
+
+    /**
+     * @return estimate of the score at the given quantile, interpolated between the scores of the
+     *         nearest ranks as the exact quantiles, each one within RELATIVE_ACCURACY of an actual
+     *         score of that rank
+     */
+    public double quantile(double q) {
+        if (count == 0) {
+            return 0d;
+        }
+        double rank = q * (count - 1);
+        long lowerRank = (long) Math.floor(rank);
+        Double lower = null;
+        long seen = 0;
+        for (Map.Entry<Integer, Long> bucket : new TreeMap<>(buckets).entrySet()) {
+            seen += bucket.getValue();
+            if (lower == null && seen > lowerRank) {
+                lower = value(bucket.getKey());
+            }
+            if (seen > lowerRank + 1 || (seen > lowerRank && rank == lowerRank)) {
+                double upper = value(bucket.getKey());
+                return lower + (rank - lowerRank) * (upper - lower);
+            }
+        }
+        return lower != null ? lower : 0d;
+    }
+
+    /**
+     * @return the quantiles with indexes 0..scale-1 of the given scale, 0 for an empty sketch
+     */
+    public Map<Integer, Double> quantiles(int scale) {
+        Map<Integer, Double> quantiles = new HashMap<>();
+        for (int i = 0; i < scale; i++) {
+            quantiles.put(i, quantile((double) i / scale));
+        }
+        return quantiles;
+    }
+
+    private static int bucket(double score) {
+        return (int) Math.ceil(Math.log(score) / LOG_GAMMA);
+    }
+
+    private static double value(int bucket) {
+        return 2 * Math.pow(GAMMA, bucket) / (GAMMA + 1);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    public double getM2() {
+        return m2;
+    }
+
+    public void setM2(double m2) {
+        this.m2 = m2;
+    }
+
+    public Map<Integer, Long> getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(Map<Integer, Long> buckets) {
+        this.buckets = buckets;
+    }
+}
@@ -4,6 +4,8 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import eu.trentorise.game.model.core.TimeInterval;
 
 public class Settings {
@@ -11,6 +13,56 @@ public class Settings {
 
     private Map<String, String> statisticsConfig = new HashMap<String, String>();
     private ChallengeSettings challengeSettings = new ChallengeSettings();
+    private EngineSettings engineSettings = new EngineSettings();
+    private NotificationSettings notificationSettings = new NotificationSettings();
+
+    /**
+     * Rule engine configuration of the game.
+     * 
+     * STATELESS mode (default) rebuilds the working memory for every action. STATEFUL mode keeps
+     * a rule session resident for every active player, the concepts of the player stay in the
+     * working memory between actions and every action inserts, fires and retracts only its own
+     * facts. Rules not bound to an action fact fire only when the facts they match change, so
+     * game rules must be written with this in mind before activating the STATEFUL mode
+     */
+    public static class EngineSettings {
+        private ExecutionMode executionMode = ExecutionMode.STATELESS;
+
+        public enum ExecutionMode {
+            STATELESS, STATEFUL
+        }
+
+        public ExecutionMode getExecutionMode() {
+            return executionMode;
+        }
+
+        public void setExecutionMode(ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+        }
+
+        @JsonIgnore
+        public boolean isStateful() {
+            return executionMode == ExecutionMode.STATEFUL;
+        }
+    }
+
+    /**
+     * Notification retention of the game.
+     * 
+     * Notifications older than retentionDays are moved to the notification archive (or deleted,
+     * following the engine configuration). 0 applies the retention configured for the engine
+     */
+    public static class NotificationSettings {
+        private int retentionDays;
+
+        public int getRetentionDays() {
+            return retentionDays;
+        }
+
+        public void setRetentionDays(int retentionDays) {
+            this.retentionDays = retentionDays;
+        }
+    }
 
     public static class ChallengeSettings {
         private ChallengeDisclosure disclosure = new ChallengeDisclosure();
@@ -66,4 +118,20 @@ public class Settings {
         this.challengeSettings = challengeSettings;
     }
 
+    public EngineSettings getEngineSettings() {
+        return engineSettings;
+    }
+
+    public void setEngineSettings(EngineSettings engineSettings) {
+        this.engineSettings = engineSettings;
+    }
+
+    public NotificationSettings getNotificationSettings() {
+        return notificationSettings;
+    }
+
+    public void setNotificationSettings(NotificationSettings notificationSettings) {
+        this.notificationSettings = notificationSettings;
+    }
+
 }
\ No newline at end of file
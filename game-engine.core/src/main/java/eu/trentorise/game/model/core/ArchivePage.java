@@ -0,0 +1,38 @@
+package eu.trentorise.game.model.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page of archived concepts in archiving order, the next page is read passing the nextCursor,
+ * null on the last page
+ */
+public class ArchivePage {
+    private List<ArchivedConcept> content = new ArrayList<>();
+    private String nextCursor;
+
+    public ArchivePage(List<ArchivedConcept> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public ArchivePage() {
+
+    }
+
+    public List<ArchivedConcept> getContent() {
+        return content;
+    }
+
+    public void setContent(List<ArchivedConcept> content) {
+        this.content = content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
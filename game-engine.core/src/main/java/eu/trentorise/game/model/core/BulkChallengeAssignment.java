@@ -0,0 +1,61 @@
+package eu.trentorise.game.model.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assignment of a challenge model to many players: the challenge settings are shared, every
+ * player can set its own instanceName and data, merged with the shared ones
+ */
+public class BulkChallengeAssignment extends ChallengeAssignment {
+    private List<PlayerAssignment> players = new ArrayList<>();
+
+    public List<PlayerAssignment> getPlayers() {
+        return players;
+    }
+
+    public void setPlayers(List<PlayerAssignment> players) {
+        this.players = players;
+    }
+
+    public static class PlayerAssignment {
+        private String playerId;
+        private String instanceName;
+        private Map<String, Object> data;
+
+        public PlayerAssignment(String playerId, String instanceName, Map<String, Object> data) {
+            this.playerId = playerId;
+            this.instanceName = instanceName;
+            this.data = data;
+        }
+
+        public PlayerAssignment() {
+
+        }
+
+        public String getPlayerId() {
+            return playerId;
+        }
+
+        public void setPlayerId(String playerId) {
+            this.playerId = playerId;
+        }
+
+        public String getInstanceName() {
+            return instanceName;
+        }
+
+        public void setInstanceName(String instanceName) {
+            this.instanceName = instanceName;
+        }
+
+        public Map<String, Object> getData() {
+            return data;
+        }
+
+        public void setData(Map<String, Object> data) {
+            this.data = data;
+        }
+    }
+}
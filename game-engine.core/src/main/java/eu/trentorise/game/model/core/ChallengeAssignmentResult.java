@@ -0,0 +1,61 @@
+package eu.trentorise.game.model.core;
+
+/**
+ * Outcome of the assignment of a challenge to a player in a {@link BulkChallengeAssignment}
+ */
+public class ChallengeAssignmentResult {
+    private String playerId;
+    private String challengeName;
+    private boolean assigned;
+    private String error;
+
+    public ChallengeAssignmentResult(String playerId, String challengeName) {
+        this.playerId = playerId;
+        this.challengeName = challengeName;
+        this.assigned = true;
+    }
+
+    public ChallengeAssignmentResult() {
+
+    }
+
+    public static ChallengeAssignmentResult failure(String playerId, String challengeName,
+            String error) {
+        ChallengeAssignmentResult result = new ChallengeAssignmentResult(playerId, challengeName);
+        result.assigned = false;
+        result.error = error;
+        return result;
+    }
+
+    public String getPlayerId() {
+        return playerId;
+    }
+
+    public void setPlayerId(String playerId) {
+        this.playerId = playerId;
+    }
+
+    public String getChallengeName() {
+        return challengeName;
+    }
+
+    public void setChallengeName(String challengeName) {
+        this.challengeName = challengeName;
+    }
+
+    public boolean isAssigned() {
+        return assigned;
+    }
+
+    public void setAssigned(boolean assigned) {
+        this.assigned = assigned;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ *    Copyright 2015 Fondazione Bruno Kessler - Trento RISE
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package eu.trentorise.game.model.core;
+
+import java.util.List;
+
+/**
+ * A page of the notification feed of a game or player.
+ * 
+ * The cursor is the id of the last notification of the page: passed back in the next request it
+ * returns only the notifications arrived after the page
+ */
+public class NotificationFeed {
+
+	private List<Notification> notifications;
+	private String cursor;
+
+	public NotificationFeed() {
+	}
+
+	public NotificationFeed(List<Notification> notifications, String cursor) {
+		this.notifications = notifications;
+		this.cursor = cursor;
+	}
+
+	public List<Notification> getNotifications() {
+		return notifications;
+	}
+
+	public void setNotifications(List<Notification> notifications) {
+		this.notifications = notifications;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
+}
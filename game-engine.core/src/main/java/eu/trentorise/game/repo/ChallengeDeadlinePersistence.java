@@ -0,0 +1,101 @@
+package eu.trentorise.game.repo;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Entry of the challenge deadline index: the end date of a challenge still to complete or fail.
+ *
+ * A group challenge entry references the challenge by challengeId, a single challenge entry by
+ * playerId and challenge name
+ */
+@Document(collection = "challengeDeadline")
+public class ChallengeDeadlinePersistence {
+
+	public static final String GROUP = "group";
+	public static final String SINGLE = "single";
+
+	@Id
+	private String id;
+	private String type;
+	private String gameId;
+	private String challengeId;
+	private String playerId;
+	private String name;
+	private Date deadline;
+
+	public ChallengeDeadlinePersistence() {
+		super();
+	}
+
+	public static String groupId(String challengeId) {
+		return GROUP + ":" + challengeId;
+	}
+
+	public static String singleId(String gameId, String playerId, String name) {
+		return String.join(":", SINGLE, gameId, playerId, name);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public String getGameId() {
+		return gameId;
+	}
+
+	public void setGameId(String gameId) {
+		this.gameId = gameId;
+	}
+
+	public String getChallengeId() {
+		return challengeId;
+	}
+
+	public void setChallengeId(String challengeId) {
+		this.challengeId = challengeId;
+	}
+
+	public String getPlayerId() {
+		return playerId;
+	}
+
+	public void setPlayerId(String playerId) {
+		this.playerId = playerId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Date getDeadline() {
+		return deadline;
+	}
+
+	public void setDeadline(Date deadline) {
+		this.deadline = deadline;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s@%s", id, deadline);
+	}
+}
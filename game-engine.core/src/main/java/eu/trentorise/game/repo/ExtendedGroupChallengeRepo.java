@@ -1,5 +1,6 @@
 package eu.trentorise.game.repo;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -29,4 +30,11 @@ public interface ExtendedGroupChallengeRepo {
 
     GroupChallenge deleteProposedChallengeByProposer(String gameId, String playerId,
             String instanceName);
+
+    /**
+     * Writes the challenge scores of the given attendees with a single atomic update
+     * 
+     * @return false if the challenge no longer exists or its attendees changed
+     */
+    boolean updateAttendeeScores(GroupChallenge challenge, Collection<String> playerIds);
 }
@@ -1,5 +1,6 @@
 package eu.trentorise.game.repo;
 
+import java.util.Date;
 import java.util.List;
 
 import org.springframework.data.domain.Pageable;
@@ -11,4 +12,17 @@ public interface ExtendedNotificationRepo {
 
 	public List<NotificationPersistence> findPlayerNotificationsByQuery(String gameId, String playerId,
 			NotificationQuery query, Pageable pageable);
+
+	/**
+	 * Notifications of a game, or of a player if playerId is not null, in insertion order
+	 * 
+	 * @param cursor id of the last notification already read, if null the feed starts from fromTs
+	 * @param fromTs timestamp of the first notification to read when cursor is null, -1 to read from
+	 *        the first notification
+	 * @param before only notifications with an id generated before this date are read, null to
+	 *        read all of them
+	 * @param limit max number of notifications
+	 */
+	public List<NotificationPersistence> findNotificationsAfter(String gameId, String playerId,
+			String cursor, long fromTs, Date before, int limit);
 }
@@ -1,5 +1,6 @@
 package eu.trentorise.game.repo;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -7,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import eu.trentorise.game.model.ChallengeConcept.ChallengeState;
 import eu.trentorise.game.model.GroupChallenge;
@@ -100,4 +102,23 @@ public class GroupChallengeRepoImpl implements ExtendedGroupChallengeRepo {
         return mongo.find(new Query(crit), GroupChallenge.class);
     }
 
+    @Override
+    public boolean updateAttendeeScores(GroupChallenge challenge, Collection<String> playerIds) {
+        // attendees are addressed by position, the position is checked in the query
+        Criteria crit = new Criteria("id").is(challenge.getId());
+        Update update = new Update();
+        List<Attendee> attendees = challenge.getAttendees();
+        for (int i = 0; i < attendees.size(); i++) {
+            Attendee attendee = attendees.get(i);
+            if (playerIds.contains(attendee.getPlayerId())) {
+                crit.and("attendees." + i + ".playerId").is(attendee.getPlayerId());
+                update.set("attendees." + i + ".challengeScore", attendee.getChallengeScore());
+            }
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            return true;
+        }
+        return mongo.updateFirst(new Query(crit), update, GroupChallenge.class)
+                .getMatchedCount() > 0;
+    }
 }
@@ -22,6 +22,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -31,11 +32,18 @@ import eu.trentorise.game.model.core.Notification;
 @Document(collection = "notification")
 public class NotificationPersistence extends GenericObjectPersistence {
 
+	public static final String ARCHIVE_COLLECTION = "notificationArchive";
+
 	@Transient
 	private final Logger logger = LoggerFactory.getLogger(NotificationPersistence.class);
 	@Id
 	private String id;
 
+	/**
+	 * true while the notification is waiting the confirm of the broker, removed when published
+	 */
+	private Boolean publishPending;
+
 	public NotificationPersistence(Object obj) {
 		super(obj);
 	}
@@ -48,6 +56,15 @@ public class NotificationPersistence extends GenericObjectPersistence {
 		this.id = id;
 	}
 
+	@JsonIgnore
+	public Boolean getPublishPending() {
+		return publishPending;
+	}
+
+	public void setPublishPending(Boolean publishPending) {
+		this.publishPending = publishPending;
+	}
+
 	public Notification toNotification() {
 		ObjectMapper mapper = new ObjectMapper();
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
@@ -1,17 +1,31 @@
 package eu.trentorise.game.repo;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import org.apache.commons.collections4.CollectionUtils;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.domain.Sort.Order;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 
 import eu.trentorise.game.notification.BadgeNotification;
 
+/**
+ * Queries on the notifications.
+ * 
+ * A game or player query with a fromTs older than the oldest live notification of the game also
+ * reads the notificationArchive collection, when the results are in chronological order (by id
+ * or timestamp): archived notifications are all older than the live ones, so a page is taken from
+ * the archive, from the live collection or from the tail of one and the head of the other
+ */
 public class NotificationRepoImpl implements ExtendedNotificationRepo {
 
 	private static final String NOTIFICATION_PACKAGE = BadgeNotification.class.getPackage().getName();
@@ -23,12 +37,8 @@ public class NotificationRepoImpl implements ExtendedNotificationRepo {
 	public List<NotificationPersistence> findGameNotificationsByQuery(String gameId,
 			NotificationQuery notificationQuery, Pageable pageable) {
 
-		Query query = new Query(createQueryStructure(gameId, notificationQuery));
-		if (pageable != null) {
-			query.with(pageable);
-		}
-
-		return mongo.find(query, NotificationPersistence.class);
+		return find(gameId, createQueryStructure(gameId, notificationQuery), notificationQuery,
+				pageable);
 	}
 
 	@Override
@@ -36,14 +46,109 @@ public class NotificationRepoImpl implements ExtendedNotificationRepo {
 			NotificationQuery notificationQuery, Pageable pageable) {
 		Criteria criteria = createQueryStructure(gameId, notificationQuery);
 		criteria.and("obj.playerId").is(playerId);
+		return find(gameId, criteria, notificationQuery, pageable);
+	}
+
+	private List<NotificationPersistence> find(String gameId, Criteria criteria,
+			NotificationQuery notificationQuery, Pageable pageable) {
 		Query query = new Query(criteria);
 		if (pageable != null) {
 			query.with(pageable);
 		}
+		insertionOrder(query);
+
+		Sort sort = pageable != null && pageable.getSort().isSorted() ? pageable.getSort()
+				: Sort.by(Direction.ASC, "id");
+		if (!isChronological(sort) || !spansArchive(gameId, notificationQuery)) {
+			return mongo.find(query, NotificationPersistence.class);
+		}
+
+		String live = mongo.getCollectionName(NotificationPersistence.class);
+		boolean ascending = sort.iterator().next().isAscending();
+		String first = ascending ? NotificationPersistence.ARCHIVE_COLLECTION : live;
+		String second = ascending ? live : NotificationPersistence.ARCHIVE_COLLECTION;
+		boolean paged = pageable != null && pageable.isPaged();
+		long offset = paged ? pageable.getOffset() : 0;
+
+		List<NotificationPersistence> result = new ArrayList<>();
+		long firstCount = mongo.count(new Query(criteria), NotificationPersistence.class, first);
+		if (offset < firstCount) {
+			Query firstQuery = new Query(criteria).with(sort).skip(offset);
+			if (paged) {
+				firstQuery.limit((int) Math.min(pageable.getPageSize(), firstCount - offset));
+			}
+			result.addAll(mongo.find(firstQuery, NotificationPersistence.class, first));
+		}
+		if (!paged || result.size() < pageable.getPageSize()) {
+			Query secondQuery = new Query(criteria).with(sort)
+					.skip(Math.max(0, offset - firstCount));
+			if (paged) {
+				secondQuery.limit(pageable.getPageSize() - result.size());
+			}
+			result.addAll(mongo.find(secondQuery, NotificationPersistence.class, second));
+		}
+		return result;
+	}
+
+	/*
+	 * the archive is read only when the time range starts before the oldest
+	 * live notification of the game
+	 */
+	private boolean spansArchive(String gameId, NotificationQuery notificationQuery) {
+		if (notificationQuery == null || notificationQuery.getFromTs() < 0) {
+			return false;
+		}
+		Query oldestQuery = new Query(Criteria.where("obj.gameId").is(gameId))
+				.with(Sort.by(Direction.ASC, "id"));
+		oldestQuery.fields().include("id");
+		NotificationPersistence oldest = mongo.findOne(oldestQuery, NotificationPersistence.class);
+		return oldest == null
+				|| new ObjectId(oldest.getId()).getDate().getTime() > notificationQuery.getFromTs();
+	}
+
+	private boolean isChronological(Sort sort) {
+		List<Order> orders = sort.toList();
+		if (orders.size() != 1) {
+			return false;
+		}
+		String property = orders.get(0).getProperty();
+		return "id".equals(property) || "_id".equals(property) || "obj.timestamp".equals(property);
+	}
+
+	@Override
+	public List<NotificationPersistence> findNotificationsAfter(String gameId, String playerId,
+			String cursor, long fromTs, Date before, int limit) {
+		Criteria criteria = Criteria.where("obj.gameId").is(gameId);
+		if (playerId != null) {
+			criteria.and("obj.playerId").is(playerId);
+		}
+		Criteria idCriteria = null;
+		if (cursor != null) {
+			if (!ObjectId.isValid(cursor)) {
+				throw new IllegalArgumentException(String.format("invalid cursor %s", cursor));
+			}
+			idCriteria = criteria.and("id").gt(new ObjectId(cursor));
+		} else if (fromTs > -1) {
+			criteria.and("obj.timestamp").gte(fromTs);
+		}
+		if (before != null) {
+			(idCriteria != null ? idCriteria : criteria.and("id")).lt(new ObjectId(before));
+		}
+		Query query = new Query(criteria).with(Sort.by(Direction.ASC, "id")).limit(limit);
 
 		return mongo.find(query, NotificationPersistence.class);
 	}
 
+	/*
+	 * without an explicit sort pages are stable only following the index on
+	 * gameId, playerId and id
+	 */
+	private void insertionOrder(Query query) {
+		if (query.getSortObject().isEmpty()) {
+			query.with(Sort.by(Direction.ASC, "id"));
+		}
+	}
+
 	private Criteria createQueryStructure(String gameId, NotificationQuery notificationQuery) {
 		Criteria criteria = Criteria.where("obj.gameId").is(gameId);
 		if (notificationQuery != null) {
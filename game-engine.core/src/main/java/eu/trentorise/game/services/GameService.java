@@ -14,6 +14,7 @@
 
 package eu.trentorise.game.services;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -101,9 +102,26 @@ public interface GameService {
     void taskCheckPerformanceGroupChallenges();
     
     void taskGameStats();
+
+    /**
+     * Computes from the player states the statistics of a score in a period instance, seeding
+     * the statistics updated incrementally
+     */
+    void computeGameStats(String gameId, String pointConceptName, String periodName,
+            String periodIndex, long start, long end);
     
     void taskChallengeFailure();
 
+    /**
+     * Completes or fails the group challenge if it is still open at the deadline
+     */
+    void expireGroupChallenge(String gameId, String challengeId, Date deadline);
+
+    /**
+     * Fails the challenges of the player ended before the deadline
+     */
+    void expireChallenges(String gameId, String playerId, Date deadline);
+
 	public List<GameStatistics> loadGameStats(String gameId, String pointConceptName, String periodName, Long timestamp,
 			String periodIndex, Pageable pageable);
 
@@ -16,6 +16,7 @@
 
 package eu.trentorise.game.services;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -30,7 +31,9 @@ import eu.trentorise.game.model.Inventory.ItemChoice;
 import eu.trentorise.game.model.PlayerBlackList;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.model.TeamState;
+import eu.trentorise.game.model.core.BulkChallengeAssignment;
 import eu.trentorise.game.model.core.ChallengeAssignment;
+import eu.trentorise.game.model.core.ChallengeAssignmentResult;
 import eu.trentorise.game.model.core.ClassificationBoard;
 import eu.trentorise.game.model.core.ComplexSearchQuery;
 import eu.trentorise.game.model.core.RawSearchQuery;
@@ -46,6 +49,14 @@ public interface PlayerService {
 
 	public Page<PlayerState> loadStates(String gameId, Pageable pageable, boolean mergeChallenges);
 
+	/**
+	 * Loads with a single query only the given point concepts of the players
+	 * 
+	 * @return partial states of the players found, containing only the point concepts
+	 */
+	public List<PlayerState> loadPointConcepts(String gameId, Collection<String> playerIds,
+			Collection<String> pointConceptNames);
+
 	public Page<PlayerState> loadStates(String gameId, Pageable pageable, boolean mergeChallenges,
 			boolean filterHiddenChallenges);
 
@@ -102,10 +113,38 @@ public interface PlayerService {
 
 	public ChallengeConcept assignChallenge(String gameId, String playerId, ChallengeAssignment challengeAssignment);
 
+	/**
+	 * Assigns a challenge to many players with bulk writes, the challenge model is validated once.
+	 * A player without a valid assignment doesn't stop the others
+	 * 
+	 * @return the outcome of the assignment for every player, in request order
+	 */
+	public List<ChallengeAssignmentResult> assignChallenge(String gameId, BulkChallengeAssignment bulkAssignment);
+
 	public ChallengeConcept acceptChallenge(String gameId, String playerId, String challengeName);
 
 	public ChallengeConcept forceChallengeChoice(String gameId, String playerId);
 
+	/**
+	 * Force the choice of the PROPOSED single challenges of the players with bulk writes, the
+	 * other PROPOSED single challenges are auto discarded
+	 * 
+	 * @return the forced challenges by player id
+	 */
+	public Map<String, ChallengeConcept> forceChallengeChoice(String gameId, Collection<String> playerIds);
+
+	/**
+	 * Auto discards all the PROPOSED group challenges of the game
+	 * 
+	 * @return the number of discarded challenges
+	 */
+	public int discardProposedGroupChallenges(String gameId);
+
+	/**
+	 * @return the ids of the players with PROPOSED single challenges, expired ones included
+	 */
+	public List<String> readPlayersWithProposedChallenges(String gameId);
+
 	/*
 	 * BLACKLIST
 	 */
@@ -120,6 +159,12 @@ public interface PlayerService {
 	 */
 	public List<String> readSystemPlayerState(String gameId, String playerId, String conceptName);
 
+	/**
+	 * Challengers proposed to the player, at most limit players randomly sampled (0 for all the
+	 * challengers)
+	 */
+	public List<String> readSystemPlayerState(String gameId, String playerId, String conceptName, int limit);
+
 	public PlayerState readPlayerState(String gameId, String playerId, boolean b, Boolean readChallenges, boolean c,
 			List<String> points, List<String> badges);
 
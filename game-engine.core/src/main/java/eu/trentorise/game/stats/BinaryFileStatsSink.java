@@ -0,0 +1,81 @@
+package eu.trentorise.game.stats;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Appends the events to a file as length prefixed binary frames (see {@link StatsEventCodec}).
+ *
+ * Writes are buffered: the file is flushed when the buffer is full, on {@link #flush()} and on
+ * {@link #close()}
+ */
+public class BinaryFileStatsSink implements StatsEventSink {
+
+    private static final Logger logger = Logger.getLogger(BinaryFileStatsSink.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String file;
+    private OutputStream out;
+    private long writtenBytes;
+    private long failures;
+
+    public BinaryFileStatsSink(String file) throws IOException {
+        this.file = file;
+        out = new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE);
+    }
+
+    @Override
+    public synchronized void publish(StatsEvent event) {
+        if (out == null) {
+            return;
+        }
+        try {
+            writtenBytes += StatsEventCodec.writeFrame(out, event);
+        } catch (IOException e) {
+            failures++;
+            logger.error(String.format("Exception writing stats event on %s: %s", file,
+                    e.getMessage()));
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                logger.error(String.format("Exception flushing %s: %s", file, e.getMessage()));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.error(String.format("Exception closing %s: %s", file, e.getMessage()));
+            } finally {
+                out = null;
+            }
+        }
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public synchronized long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,49 @@
+package eu.trentorise.game.stats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Appends the exported events to a file in the format of the stats log, readable by the stats
+ * tools
+ */
+public class FileStatsOutboxTarget implements StatsOutboxTarget {
+
+    private static final Logger logger = Logger.getLogger(FileStatsOutboxTarget.class);
+
+    private static final String ROW_PREFIX = "INFO - ";
+
+    private final FileOutputStream out;
+    private final Writer writer;
+
+    public FileStatsOutboxTarget(String path) throws IOException {
+        out = new FileOutputStream(path, true);
+        writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void write(List<StatsEvent> events) throws IOException {
+        StringBuilder rows = new StringBuilder(events.size() * 160);
+        for (StatsEvent event : events) {
+            event.appendTo(rows.append(ROW_PREFIX)).append('\n');
+        }
+        writer.write(rows.toString());
+        writer.flush();
+        out.getFD().sync();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.error("Exception closing stats outbox file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package eu.trentorise.game.stats;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the events on the stats log, the format of the log is the text representation of the
+ * events.
+ *
+ * The event itself is the message of the log entry: the text is rendered only by the enabled
+ * appenders and appenders aware of {@link StatsEvent} can use the typed fields
+ */
+public class LogStatsSink implements StatsEventSink {
+
+    public static final String LOGGER_NAME = "stats";
+
+    private static final Logger statsLogger = Logger.getLogger(LOGGER_NAME);
+
+    @Override
+    public void publish(StatsEvent event) {
+        statsLogger.info(event);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return statsLogger.isInfoEnabled();
+    }
+
+    @Override
+    public boolean isText() {
+        return true;
+    }
+}
@@ -3,23 +3,76 @@ package eu.trentorise.game.stats;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Layout;
 import org.apache.log4j.Logger;
-import org.apache.log4j.WriterAppender;
 import org.apache.log4j.spi.LoggingEvent;
 
-public class PostgresAppender extends WriterAppender {
+import eu.trentorise.game.stats.StatsEvent.Field;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Writes the stats events on the eventLogs table of a Postgres/TimescaleDB database.
+ *
+ * The appender never blocks the logging thread: events are put in a bounded buffer and inserted
+ * by a writer thread in batches, flushed when the batch is full or the flush interval elapses.
+ * Events not accepted by the full buffer are dropped, counted by the dropped meter and logged by
+ * the writer.
+ *
+ * The writer keeps its connection open across batches, validating it before every batch. The
+ * socket timeout bounds a write on a dead connection: a batch failing on a connection opened by a
+ * previous batch is written again on a new connection. Events of a batch failing on a new
+ * connection are written by the writer to the spill file using the layout of the appender, so
+ * they can be imported later with log2timescaledb
+ */
+public class PostgresAppender extends AppenderSkeleton {
 
 	private static final Logger logger = Logger.getLogger(PostgresAppender.class);
 
+	static final String INSERT_EVENT = "INSERT INTO eventLogs (gameid, playerid, executionid, executiontime, time, type, actionname, rulename, conceptname, deltascore, score) "
+			+ "VALUES (?, ?, ?, to_timestamp(?), to_timestamp(?), ?, ?, ?, ?, ?, ?)";
+
+	private static final String METER_PREFIX = "gamification.stats.postgres";
+	private static final int VALIDATION_TIMEOUT = 2;
+
 	private String url;
+	private int bufferSize = 8192;
+	private int batchSize = 500;
+	private long flushInterval = 1000;
+	private long reconnectDelay = 5000;
+	private int socketTimeout = 30;
+	private String spillFile;
+
+	private BlockingQueue<LoggingEvent> buffer;
+	private Thread writer;
+	private volatile boolean running;
+
+	private Connection conn;
+	private long nextConnectionAttempt;
+
+	// events rejected by the full buffer since the last log of the writer
+	private final AtomicLong overflow = new AtomicLong();
 
-	private static Connection conn;
+	private Counter insertedCounter;
+	private Counter spilledCounter;
+	private Counter droppedCounter;
 
 	public String getUrl() {
 		return url;
@@ -29,89 +82,316 @@ public class PostgresAppender extends WriterAppender {
 		this.url = url;
 	}
 
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	public long getReconnectDelay() {
+		return reconnectDelay;
+	}
+
+	public void setReconnectDelay(long reconnectDelay) {
+		this.reconnectDelay = reconnectDelay;
+	}
+
+	/**
+	 * @return timeout in seconds of the connection and of the socket operations of the writer
+	 */
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	public void setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+	}
+
+	public String getSpillFile() {
+		return spillFile;
+	}
+
+	public void setSpillFile(String spillFile) {
+		this.spillFile = spillFile;
+	}
+
 	@Override
-	public void append(LoggingEvent event) {
-		try {
-			createConnection();
-			String row = getRow(event);
-			insert(row);
-		} catch (SQLException e) {
-			logger.error(e.getMessage());
+	public void activateOptions() {
+		if (StringUtils.isBlank(url)) {
+			url = System.getenv("POSTGRES_URL");
+		}
+		if (StringUtils.isBlank(spillFile)) {
+			spillFile = System.getProperty("logFolder") + System.getProperty("file.separator")
+					+ "gamification.postgres.exception.stats.log";
+		}
+		buffer = new ArrayBlockingQueue<>(bufferSize);
+		Gauge.builder(METER_PREFIX + ".queue", buffer, BlockingQueue::size)
+				.description("stats events waiting to be written").register(Metrics.globalRegistry);
+		insertedCounter = Counter.builder(METER_PREFIX + ".inserted")
+				.description("stats events written on database").register(Metrics.globalRegistry);
+		spilledCounter = Counter.builder(METER_PREFIX + ".spilled")
+				.description("stats events written on the spill file").register(Metrics.globalRegistry);
+		droppedCounter = Counter.builder(METER_PREFIX + ".dropped")
+				.description("stats events lost").register(Metrics.globalRegistry);
+
+		running = true;
+		writer = new Thread(this::writeLoop, "stats-postgres-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	protected void append(LoggingEvent event) {
+		if (buffer == null) {
+			// appender not activated
+			return;
+		}
+		// as AsyncAppender does, capture the data bound to the logging thread
+		event.getNDC();
+		event.getThreadName();
+		event.getMDCCopy();
+		if (!buffer.offer(event)) {
+			droppedCounter.increment();
+			overflow.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		running = false;
+		if (writer != null) {
+			writer.interrupt();
+			try {
+				writer.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		closeConnection();
+	}
+
+	@Override
+	public boolean requiresLayout() {
+		return true;
+	}
+
+	private void writeLoop() {
+		List<LoggingEvent> batch = new ArrayList<>(batchSize);
+		long batchStart = System.currentTimeMillis();
+		while (running || !buffer.isEmpty()) {
+			try {
+				long wait = Math.max(0, flushInterval - (System.currentTimeMillis() - batchStart));
+				LoggingEvent event = running ? buffer.poll(wait, TimeUnit.MILLISECONDS) : buffer.poll();
+				if (event != null) {
+					batch.add(event);
+					buffer.drainTo(batch, batchSize - batch.size());
+				}
+			} catch (InterruptedException e) {
+				// closing: write what remains in the buffer
+				running = false;
+			}
+			logOverflow();
+			if (batch.size() >= batchSize
+					|| (!batch.isEmpty() && (!running || System.currentTimeMillis() - batchStart >= flushInterval))) {
+				write(batch);
+				batch.clear();
+			}
+			if (batch.isEmpty()) {
+				batchStart = System.currentTimeMillis();
+			}
+		}
+		if (!batch.isEmpty()) {
+			write(batch);
+		}
+		logOverflow();
+	}
+
+	private void logOverflow() {
+		long dropped = overflow.getAndSet(0);
+		if (dropped > 0) {
+			logger.error(String.format("stats events buffer full, %s events dropped", dropped));
+		}
+	}
+
+	private void write(List<LoggingEvent> batch) {
+		while (true) {
+			// a connection opened by a previous batch could be broken even if valid
+			Connection previous = conn;
+			Connection connection = connection();
+			boolean reused = connection != null && connection == previous;
+			if (connection == null) {
+				spill(batch);
+				return;
+			}
 			try {
-				logToExceptionErrorFile(getRow(event));
-			} catch (IOException ee) {
-				logger.error(e.getMessage());
+				insert(connection, batch);
+				return;
+			} catch (SQLException e) {
+				closeConnection();
+				if (!reused) {
+					logger.error(String.format("Exception writing %s stats events: %s", batch.size(),
+							e.getMessage()));
+					spill(batch);
+					return;
+				}
+				logger.warn(String.format("Exception writing %s stats events, retry on a new connection: %s",
+						batch.size(), e.getMessage()));
+			}
+		}
+	}
+
+	private void insert(Connection connection, List<LoggingEvent> batch) throws SQLException {
+		int rows = 0;
+		try (PreparedStatement stmt = connection.prepareStatement(INSERT_EVENT)) {
+			for (LoggingEvent event : batch) {
+				if (bind(stmt, event)) {
+					stmt.addBatch();
+					rows++;
+				}
 			}
-		} finally {
-			if (conn != null) {
-				try {
-					conn.close();
-				} catch (SQLException e) {
-					/* Ignored */}
+			if (rows > 0) {
+				stmt.executeBatch();
 			}
 		}
+		insertedCounter.increment(rows);
 	}
 
-	private void logToExceptionErrorFile(String row) throws IOException {
-		FileWriter writer = new FileWriter(System.getProperty("logFolder") + System.getProperty("file.separator")
-				+ "gamification.postgres.exception.stats.log", true);
-		BufferedWriter buffer = new BufferedWriter(writer);
-		PrintWriter printer = new PrintWriter(buffer, true);
-		printer.print(row);
-		printer.close();
-		buffer.close();
-		writer.close();
-	}
-
-	private void insert(String row) throws SQLException {
-		Record record;
-		record = analizza(row);
-		logger.debug("Record type: " + record.getType());
-		RecordAnalyzer analyzer = RecordAnalyzerFactory.getAnalyzer(record);
-		Map<String, String> recordFields = analyzer.extractData();
-		if (recordFields.containsKey("gameId")) {
-			String type = recordFields.containsKey("type") ? "'" + recordFields.get("type") + "'" : null;
-			String actionName = recordFields.containsKey("actionName") ? "'" + recordFields.get("actionName") + "'"
-					: null;
-			String ruleName = recordFields.containsKey("ruleName") ? "'" + recordFields.get("ruleName") + "'" : null;
-			String conceptName = recordFields.containsKey("conceptName") ? "'" + recordFields.get("conceptName") + "'"
-					: null;
-
-			try (var stmt = conn.prepareStatement(
-					"INSERT INTO eventLogs (gameid, playerid, executionid, executiontime, time, type, actionname, rulename, conceptname, deltascore, score) VALUES("
-							+ "'" + recordFields.get("gameId") + "', " + "'" + recordFields.get("playerId") + "', "
-							+ "'" + recordFields.get("executionId") + "', " + "to_timestamp("
-							+ Long.valueOf(recordFields.get("executionTime")) / 1000 + "), " + "to_timestamp("
-							+ Long.valueOf(recordFields.get("timestamp")) / 1000 + "), " + type + ", " + actionName
-							+ ", " + ruleName + ", " + conceptName + ", " + recordFields.get("deltaScore") + ", "
-							+ recordFields.get("score") + ")")) {
-				logger.info("INSERT -" + stmt);
-				stmt.execute();
+	/*
+	 * Binds the event on the insert statement, returns false if the event has not to be written
+	 */
+	private boolean bind(PreparedStatement stmt, LoggingEvent loggingEvent) throws SQLException {
+		Object message = loggingEvent.getMessage();
+		if (message instanceof StatsEvent) {
+			// typed event: no need to parse the formatted row
+			return bind(stmt, (StatsEvent) message);
+		}
+		try {
+			Map<String, String> recordFields = RecordAnalyzerFactory.getAnalyzer(new Record(getRow(loggingEvent)))
+					.extractData();
+			if (!recordFields.containsKey("gameId")) {
+				logger.info("skip event for game not selected: " + recordFields.get("gameId"));
+				return false;
 			}
-		} else {
-			logger.info("skip event for game not selected: " + recordFields.get("gameId"));
+			stmt.setString(1, recordFields.get("gameId"));
+			stmt.setString(2, recordFields.get("playerId"));
+			stmt.setString(3, recordFields.get("executionId"));
+			stmt.setLong(4, Long.valueOf(recordFields.get("executionTime")) / 1000);
+			stmt.setLong(5, Long.valueOf(recordFields.get("timestamp")) / 1000);
+			stmt.setString(6, recordFields.get("type"));
+			stmt.setString(7, recordFields.get("actionName"));
+			stmt.setString(8, recordFields.get("ruleName"));
+			stmt.setString(9, recordFields.get("conceptName"));
+			stmt.setObject(10, toDouble(recordFields.get("deltaScore")), Types.DOUBLE);
+			stmt.setObject(11, toDouble(recordFields.get("score")), Types.DOUBLE);
+			return true;
+		} catch (IllegalArgumentException e) {
+			logger.error("skip unparsable stats row: " + e.getMessage());
+			return false;
 		}
+	}
+
+	/**
+	 * Binds a typed event on a statement created from {@link #INSERT_EVENT}
+	 *
+	 * @return false if the event has not to be written
+	 */
+	static boolean bind(PreparedStatement stmt, StatsEvent event) throws SQLException {
+		if (event.getGameId() == null) {
+			return false;
+		}
+		final boolean pointConcept = event.getType() == RecordType.RULE_POINTCONCEPT;
+		stmt.setString(1, event.getGameId());
+		stmt.setString(2, event.getPlayerId());
+		stmt.setString(3, event.getExecutionId());
+		stmt.setLong(4, event.getExecutionMoment() / 1000);
+		stmt.setLong(5, event.getTimestamp() / 1000);
+		stmt.setString(6, event.getType().getRepresentation());
+		stmt.setString(7, event.getString(Field.ACTION_NAME));
+		stmt.setString(8, event.getString(Field.RULE_NAME));
+		stmt.setString(9, pointConcept ? event.getString(Field.NAME) : null);
+		stmt.setObject(10, pointConcept ? event.getDouble(Field.DELTA_SCORE) : null, Types.DOUBLE);
+		stmt.setObject(11, pointConcept ? event.getDouble(Field.SCORE) : null, Types.DOUBLE);
+		return true;
+	}
+
+	private Double toDouble(String value) {
+		return value != null ? Double.valueOf(value) : null;
+	}
 
+	private Connection connection() {
+		try {
+			if (conn != null && conn.isValid(VALIDATION_TIMEOUT)) {
+				return conn;
+			}
+		} catch (SQLException e) {
+			// reconnect
+		}
+		closeConnection();
+		if (System.currentTimeMillis() < nextConnectionAttempt) {
+			return null;
+		}
+		try {
+			Properties props = new Properties();
+			props.setProperty("connectTimeout", String.valueOf(socketTimeout));
+			props.setProperty("socketTimeout", String.valueOf(socketTimeout));
+			conn = DriverManager.getConnection(url, props);
+			return conn;
+		} catch (SQLException e) {
+			nextConnectionAttempt = System.currentTimeMillis() + reconnectDelay;
+			logger.error("Exception connecting to stats database: " + e.getMessage());
+			return null;
+		}
 	}
 
-	public Record analizza(String record) {
-		Record result = null;
-		if (record != null) {
-			result = new Record(record);
-			logger.debug("RECORD : " + record.toString());
+	private void closeConnection() {
+		if (conn != null) {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				/* Ignored */}
+			conn = null;
 		}
-		return result;
 	}
 
-	public synchronized void createConnection() throws SQLException {
-		if (conn == null || conn.isClosed()) {
-			url = System.getenv("POSTGRES_URL");
-			conn = DriverManager.getConnection(url);
+	// called by the writer thread only
+	private void spill(List<LoggingEvent> events) {
+		try (BufferedWriter spill = new BufferedWriter(new FileWriter(spillFile, true))) {
+			for (LoggingEvent event : events) {
+				spill.write(getRow(event));
+			}
+			spilledCounter.increment(events.size());
+		} catch (IOException e) {
+			logger.error(String.format("Exception writing %s stats events on spill file: %s", events.size(),
+					e.getMessage()));
+			droppedCounter.increment(events.size());
 		}
 	}
 
 	private String getRow(LoggingEvent event) {
-		return super.layout.format(event);
+		Layout eventLayout = getLayout();
+		return eventLayout != null ? eventLayout.format(event) : event.getRenderedMessage() + Layout.LINE_SEP;
 	}
 
 }
@@ -0,0 +1,55 @@
+package eu.trentorise.game.stats;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Inserts the exported events in the eventLogs table, the same table of
+ * {@link PostgresAppender}. Every batch is committed in a transaction
+ */
+public class PostgresStatsOutboxTarget implements StatsOutboxTarget {
+
+    private final String url;
+    private Connection conn;
+
+    public PostgresStatsOutboxTarget(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public synchronized void write(List<StatsEvent> events) throws IOException {
+        try {
+            if (conn == null) {
+                conn = DriverManager.getConnection(url);
+                conn.setAutoCommit(false);
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(PostgresAppender.INSERT_EVENT)) {
+                for (StatsEvent event : events) {
+                    if (PostgresAppender.bind(stmt, event)) {
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            close();
+            throw new IOException("Exception writing stats events on postgres", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                /* Ignored */}
+            conn = null;
+        }
+    }
+}
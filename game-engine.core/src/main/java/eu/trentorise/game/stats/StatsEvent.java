@@ -0,0 +1,221 @@
+package eu.trentorise.game.stats;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Typed statistics event produced by the engine.
+ *
+ * The event carries the fields common to every record and the specific fields of its
+ * {@link RecordType}; sinks consume it without parsing. {@link #toString()} renders the text
+ * line written by the stats log since the first versions of the engine
+ */
+public class StatsEvent {
+
+    /**
+     * Specific fields of the events. The declaration order is the order of the fields in the text
+     * representation, the code identifies the field in the binary one
+     */
+    public enum Field {
+        ACTION_NAME(1, "actionName", true),
+        RULE_NAME(2, "ruleName", true),
+        GUEST(3, "guest", true),
+        NAME(4, "name", true),
+        DELTA_SCORE(5, "deltaScore", false),
+        SCORE(6, "score", false),
+        BADGES(7, "badges", true),
+        NEW_BADGE(8, "new_badge", true),
+        START_DATE(9, "startDate", false),
+        END_DATE(10, "endDate", false),
+        CLASSIFICATION_NAME(11, "classificationName", true),
+        CLASSIFICATION_POSITION(12, "classificationPosition", false),
+        BLOCKED_PLAYER(13, "blockedPlayer", true),
+        CHOICE(14, "choice", true),
+        LEVEL_NAME(15, "levelName", true),
+        LEVEL_TYPE(16, "levelType", true),
+        CHALLENGE_TYPE(17, "challengeType", true),
+        SURVEY_TYPE(18, "surveyType", true);
+
+        private final int code;
+        private final String key;
+        private final boolean quoted;
+
+        Field(int code, String key, boolean quoted) {
+            this.code = code;
+            this.key = key;
+            this.quoted = quoted;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public static Field ofCode(int code) {
+            for (Field field : values()) {
+                if (field.code == code) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException(String.format("field code %s not supported", code));
+        }
+
+        public static Field ofKey(String key) {
+            for (Field field : values()) {
+                if (field.key.equals(key)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException(String.format("field %s not supported", key));
+        }
+    }
+
+    private final RecordType type;
+    private final String domain;
+    private final String gameId;
+    private final String playerId;
+    private final String executionId;
+    private final long executionMoment;
+    private final long timestamp;
+    private final Map<Field, Object> fields = new EnumMap<>(Field.class);
+
+    private String text;
+
+    public StatsEvent(RecordType type, String domain, String gameId, String playerId,
+            String executionId, long executionMoment, long timestamp) {
+        Preconditions.checkNotNull(type, "type cannot be null");
+        this.type = type;
+        this.domain = domain;
+        this.gameId = gameId;
+        this.playerId = playerId;
+        this.executionId = executionId;
+        this.executionMoment = executionMoment;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Sets a specific field of the event, a null value is a valid value
+     *
+     * @param field field
+     * @param value value of the field
+     * @return the event itself
+     */
+    public StatsEvent with(Field field, Object value) {
+        fields.put(field, value);
+        text = null;
+        return this;
+    }
+
+    public boolean has(Field field) {
+        return fields.containsKey(field);
+    }
+
+    public Object get(Field field) {
+        return fields.get(field);
+    }
+
+    public String getString(Field field) {
+        Object value = fields.get(field);
+        return value != null ? value.toString() : null;
+    }
+
+    public Double getDouble(Field field) {
+        Object value = fields.get(field);
+        return value instanceof Number ? Double.valueOf(((Number) value).doubleValue()) : null;
+    }
+
+    public Map<Field, Object> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    public RecordType getType() {
+        return type;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    public String getPlayerId() {
+        return playerId;
+    }
+
+    public String getExecutionId() {
+        return executionId;
+    }
+
+    public long getExecutionMoment() {
+        return executionMoment;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Text representation of the event, the format parsed by {@link Record} and by the stats
+     * tools. The text is rendered once and reused
+     */
+    @Override
+    public String toString() {
+        if (text == null) {
+            text = appendTo(new StringBuilder(128)).toString();
+        }
+        return text;
+    }
+
+    public StringBuilder appendTo(StringBuilder sb) {
+        if (!StringUtils.isBlank(domain)) {
+            sb.append('"').append(domain).append("\" ");
+        }
+        sb.append('"').append(gameId).append("\" \"").append(playerId).append("\" ")
+                .append(executionId).append(' ').append(executionMoment).append(' ')
+                .append(timestamp).append(" type=").append(type.getRepresentation());
+        for (Map.Entry<Field, Object> field : fields.entrySet()) {
+            sb.append(' ').append(field.getKey().key).append('=');
+            if (field.getKey().quoted) {
+                sb.append('"').append(field.getValue()).append('"');
+            } else {
+                sb.append(field.getValue());
+            }
+        }
+        String outcome = outcome(type);
+        if (outcome != null) {
+            sb.append(' ').append(outcome);
+        }
+        return sb;
+    }
+
+    private static String outcome(RecordType type) {
+        switch (type) {
+            case USER_CREATION:
+                return "creation";
+            case END_GAME_ACTION:
+                return "end";
+            case CHALLENGE_COMPLETED:
+                return "completed";
+            case CHALLENGE_PROPOSED:
+                return "proposed";
+            case CHALLENGE_ACCEPTED:
+                return "accepted";
+            case CHALLENGE_REFUSED:
+                return "refused";
+            case CHALLENGE_FAILED:
+                return "failed";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package eu.trentorise.game.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import eu.trentorise.game.stats.StatsEvent.Field;
+
+/**
+ * Binary representation of {@link StatsEvent}.
+ *
+ * Every event is a frame prefixed by its length in bytes, so a reader can skip events or stop at
+ * a truncated tail. Frame content: format version, record type, common fields and the list of
+ * specific fields identified by their code
+ */
+public class StatsEventCodec {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_LONG = 2;
+    private static final int VALUE_DOUBLE = 3;
+
+    private StatsEventCodec() {}
+
+    /**
+     * Writes the event as a length prefixed frame
+     *
+     * @param out destination
+     * @param event event
+     * @return number of bytes written
+     * @throws IOException
+     */
+    public static int writeFrame(OutputStream out, StatsEvent event) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(128);
+        encode(new DataOutputStream(frame), event);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(frame.size());
+        frame.writeTo(dataOut);
+        return Integer.BYTES + frame.size();
+    }
+
+    /**
+     * Reads the next frame
+     *
+     * @param in source
+     * @return the event or null if the stream ends before a complete frame
+     * @throws IOException
+     */
+    public static StatsEvent readFrame(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        try {
+            int length = dataIn.readInt();
+            byte[] frame = new byte[length];
+            dataIn.readFully(frame);
+            return decode(new DataInputStream(new ByteArrayInputStream(frame)));
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    public static void encode(DataOutput out, StatsEvent event) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, event.getType().getRepresentation());
+        writeString(out, event.getDomain());
+        writeString(out, event.getGameId());
+        writeString(out, event.getPlayerId());
+        writeString(out, event.getExecutionId());
+        out.writeLong(event.getExecutionMoment());
+        out.writeLong(event.getTimestamp());
+        Map<Field, Object> fields = event.getFields();
+        out.writeByte(fields.size());
+        for (Map.Entry<Field, Object> field : fields.entrySet()) {
+            out.writeByte(field.getKey().getCode());
+            writeValue(out, field.getValue());
+        }
+    }
+
+    public static StatsEvent decode(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException(String.format("stats event format %s not supported", version));
+        }
+        RecordType type = RecordType.of(readString(in));
+        StatsEvent event = new StatsEvent(type, readString(in), readString(in), readString(in),
+                readString(in), in.readLong(), in.readLong());
+        int fieldCount = in.readUnsignedByte();
+        for (int i = 0; i < fieldCount; i++) {
+            Field field = Field.ofCode(in.readUnsignedByte());
+            event.with(field, readValue(in));
+        }
+        return event;
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(VALUE_NULL);
+        } else if (value instanceof Long || value instanceof Integer) {
+            out.writeByte(VALUE_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(VALUE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else {
+            out.writeByte(VALUE_STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        int valueType = in.readUnsignedByte();
+        switch (valueType) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_LONG:
+                return in.readLong();
+            case VALUE_DOUBLE:
+                return in.readDouble();
+            case VALUE_STRING:
+                return readString(in);
+            default:
+                throw new IOException(String.format("value type %s not supported", valueType));
+        }
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,33 @@
+package eu.trentorise.game.stats;
+
+/**
+ * Destination of the statistics events. Sinks are registered in
+ * {@link eu.trentorise.game.core.StatsLogger} and receive every event on the thread producing it,
+ * so implementations must be fast and thread safe
+ */
+public interface StatsEventSink {
+
+    void publish(StatsEvent event);
+
+    /**
+     *
+     * @return false if the sink is not interested in events, in that case the events are not
+     *         even created when no other sink is enabled
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     *
+     * @return true if the sink writes the text representation of the events, the text is rendered
+     *         only when such a sink is enabled
+     */
+    default boolean isText() {
+        return false;
+    }
+
+    default void flush() {}
+
+    default void close() {}
+}
@@ -0,0 +1,220 @@
+package eu.trentorise.game.stats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+
+/**
+ * Tails the statsOutbox collection and exports the events to a {@link StatsOutboxTarget}.
+ *
+ * Events are exported in batches, flushed when the batch is full or the batch interval elapses.
+ * After a successful write the _id of the last event is saved as checkpoint; a failed batch is
+ * written again with an increasing backoff. The export restarts from the checkpoint moved back by
+ * the resume margin, to not lose events inserted late by other engine instances: delivery is at
+ * least once.
+ *
+ * The target is a {@link StatsOutboxTarget} bean if present, otherwise the one set by
+ * stats.outbox.export.target (file or postgres). The outbox is capped: events not exported
+ * before being overwritten are lost
+ */
+@Component
+public class StatsOutboxExporter {
+
+    private static final Logger logger = Logger.getLogger(StatsOutboxExporter.class);
+
+    static final String CHECKPOINT_COLLECTION = "statsOutboxCheckpoint";
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired(required = false)
+    private StatsOutboxTarget customTarget;
+
+    @Value("${stats.outbox.export.target:}")
+    private String targetType;
+
+    @Value("${stats.outbox.export.file:}")
+    private String file;
+
+    @Value("${stats.outbox.export.postgres-url:}")
+    private String postgresUrl;
+
+    @Value("${stats.outbox.export.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${stats.outbox.export.batch-interval:1000}")
+    private long batchInterval;
+
+    @Value("${stats.outbox.export.resume-margin:60}")
+    private long resumeMarginSeconds;
+
+    private StatsOutboxTarget target;
+    private String checkpointId;
+    private volatile boolean running;
+    private Thread exporter;
+
+    @PostConstruct
+    public void init() {
+        try {
+            target = createTarget();
+        } catch (IOException e) {
+            logger.error("Exception creating stats outbox target: " + e.getMessage());
+        }
+        if (target == null) {
+            return;
+        }
+        checkpointId = customTarget != null ? customTarget.getClass().getName() : targetType;
+        running = true;
+        exporter = new Thread(this::export, "stats-outbox-exporter");
+        exporter.setDaemon(true);
+        exporter.start();
+        logger.info(String.format("stats outbox exported to %s target", checkpointId));
+    }
+
+    private StatsOutboxTarget createTarget() throws IOException {
+        if (customTarget != null) {
+            return customTarget;
+        }
+        if ("file".equals(targetType) && !StringUtils.isBlank(file)) {
+            return new FileStatsOutboxTarget(file);
+        }
+        if ("postgres".equals(targetType) && !StringUtils.isBlank(postgresUrl)) {
+            return new PostgresStatsOutboxTarget(postgresUrl);
+        }
+        if (!StringUtils.isBlank(targetType)) {
+            logger.warn(String.format("stats outbox target %s not configured", targetType));
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (exporter != null) {
+            exporter.interrupt();
+            try {
+                exporter.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            target.close();
+        }
+    }
+
+    private void export() {
+        long backoff = batchInterval;
+        while (running) {
+            Bson filter = resumeFilter();
+            try (MongoCursor<Document> cursor = mongoTemplate
+                    .getCollection(StatsOutboxSink.COLLECTION).find(filter)
+                    .cursorType(CursorType.TailableAwait)
+                    .maxAwaitTime(batchInterval, TimeUnit.MILLISECONDS).batchSize(batchSize)
+                    .iterator()) {
+                List<Document> batch = new ArrayList<>(batchSize);
+                long batchStart = System.currentTimeMillis();
+                while (running) {
+                    Document document = cursor.tryNext();
+                    if (document != null) {
+                        batch.add(document);
+                    } else if (cursor.getServerCursor() == null) {
+                        // dead cursor on an empty outbox
+                        if (!batch.isEmpty()) {
+                            deliver(batch);
+                        }
+                        break;
+                    }
+                    if (batch.size() >= batchSize || (!batch.isEmpty()
+                            && System.currentTimeMillis() - batchStart >= batchInterval)) {
+                        deliver(batch);
+                        batch.clear();
+                        backoff = batchInterval;
+                    }
+                    if (batch.isEmpty()) {
+                        batchStart = System.currentTimeMillis();
+                    }
+                }
+            } catch (RuntimeException e) {
+                // empty outbox or lost cursor: tail it again
+                logger.debug("stats outbox cursor closed: " + e.getMessage());
+            }
+            backoff = pause(backoff);
+        }
+    }
+
+    private Bson resumeFilter() {
+        Document checkpoint = mongoTemplate.getCollection(CHECKPOINT_COLLECTION)
+                .find(Filters.eq("_id", checkpointId)).first();
+        if (checkpoint == null) {
+            return new Document();
+        }
+        ObjectId lastExported = checkpoint.getObjectId("lastId");
+        if (resumeMarginSeconds <= 0) {
+            return Filters.gt("_id", lastExported);
+        }
+        // smallest id of the second, ids created in the same second are not ordered by time
+        long resumeSeconds = lastExported.getTimestamp() - resumeMarginSeconds;
+        return Filters.gte("_id", new ObjectId(String.format("%08x%016x", resumeSeconds, 0)));
+    }
+
+    private void deliver(List<Document> batch) {
+        List<StatsEvent> events = new ArrayList<>(batch.size());
+        for (Document document : batch) {
+            try {
+                events.add(StatsOutboxSink.toEvent(document));
+            } catch (RuntimeException e) {
+                logger.error(String.format("skip invalid stats outbox event %s: %s",
+                        document.get("_id"), e.getMessage()));
+            }
+        }
+        long backoff = batchInterval;
+        while (running) {
+            try {
+                target.write(events);
+                saveCheckpoint(batch.get(batch.size() - 1).getObjectId("_id"));
+                return;
+            } catch (IOException e) {
+                logger.error(String.format("Exception exporting %s stats events, retry in %s ms: %s",
+                        events.size(), backoff, e.getMessage()));
+                backoff = pause(backoff);
+            }
+        }
+    }
+
+    private void saveCheckpoint(ObjectId lastId) {
+        mongoTemplate.getCollection(CHECKPOINT_COLLECTION).replaceOne(
+                Filters.eq("_id", checkpointId),
+                new Document("_id", checkpointId).append("lastId", lastId).append("updated",
+                        new Date()),
+                new ReplaceOptions().upsert(true));
+    }
+
+    private long pause(long backoff) {
+        try {
+            Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+            running = false;
+        }
+        return Math.min(backoff * 2, MAX_BACKOFF);
+    }
+}
@@ -0,0 +1,166 @@
+package eu.trentorise.game.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+
+import eu.trentorise.game.stats.StatsEvent.Field;
+
+/**
+ * Writes the stats events in the capped collection statsOutbox, the source of
+ * {@link StatsOutboxExporter}.
+ *
+ * Events are inserted in batches, when the batch is full or on the periodic flush of
+ * {@link StatsSinkManager}, and on shutdown. The _id of an event is created when it is published,
+ * so the natural order of the collection follows the production of the events.
+ *
+ * A batch failing to be written is kept and written again at the next flush: the _id makes the
+ * insert idempotent, events already written by a partially failed batch are not duplicated. At
+ * most stats.outbox.max-pending events are kept, the oldest exceeding ones are dropped and logged.
+ * The events buffered when the engine crashes are lost, at most a batch or the events of a flush
+ * interval: set stats.outbox.batch-size to 1 to write every event synchronously on the thread of
+ * the execution producing it
+ */
+public class StatsOutboxSink implements StatsEventSink {
+
+    private static final Logger logger = Logger.getLogger(StatsOutboxSink.class);
+
+    public static final String COLLECTION = "statsOutbox";
+
+    private final MongoTemplate mongoTemplate;
+    private final int batchSize;
+    private final int maxPending;
+
+    private List<Document> buffer;
+
+    public StatsOutboxSink(MongoTemplate mongoTemplate, long sizeInBytes, int batchSize,
+            int maxPending) {
+        this.mongoTemplate = mongoTemplate;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        buffer = new ArrayList<>(batchSize);
+        if (!mongoTemplate.collectionExists(COLLECTION)) {
+            mongoTemplate.createCollection(COLLECTION,
+                    CollectionOptions.empty().capped().size(sizeInBytes));
+        }
+    }
+
+    @Override
+    public void publish(StatsEvent event) {
+        Document document = toDocument(event);
+        List<Document> fullBatch = null;
+        synchronized (this) {
+            buffer.add(document);
+            if (buffer.size() >= batchSize) {
+                fullBatch = buffer;
+                buffer = new ArrayList<>(batchSize);
+            }
+        }
+        if (fullBatch != null) {
+            insert(fullBatch);
+        }
+    }
+
+    @Override
+    public void flush() {
+        List<Document> batch;
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            batch = buffer;
+            buffer = new ArrayList<>(batchSize);
+        }
+        insert(batch);
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private void insert(List<Document> batch) {
+        try {
+            mongoTemplate.getCollection(COLLECTION).insertMany(batch,
+                    new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // events already in the outbox are duplicate keys, the others are written again
+            Set<Integer> failed = e.getWriteErrors().stream()
+                    .filter(error -> ErrorCategory.fromErrorCode(error.getCode())
+                            != ErrorCategory.DUPLICATE_KEY)
+                    .map(BulkWriteError::getIndex).collect(Collectors.toSet());
+            List<Document> retry = new ArrayList<>(failed.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (failed.contains(i)) {
+                    retry.add(batch.get(i));
+                }
+            }
+            retry(retry, e);
+        } catch (MongoException e) {
+            retry(batch, e);
+        }
+    }
+
+    private void retry(List<Document> batch, MongoException e) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        logger.error(String.format(
+                "Exception writing %s stats events in %s, retry at next flush: %s", batch.size(),
+                COLLECTION, e.getMessage()));
+        int dropped = 0;
+        synchronized (this) {
+            List<Document> pending = new ArrayList<>(batch.size() + buffer.size());
+            pending.addAll(batch);
+            pending.addAll(buffer);
+            dropped = Math.max(pending.size() - maxPending, 0);
+            buffer = new ArrayList<>(pending.subList(dropped, pending.size()));
+        }
+        if (dropped > 0) {
+            logger.error(String.format("%s pending stats events exceed %s, %s oldest dropped",
+                    dropped + maxPending, maxPending, dropped));
+        }
+    }
+
+    static Document toDocument(StatsEvent event) {
+        Document fields = new Document();
+        for (Map.Entry<Field, Object> field : event.getFields().entrySet()) {
+            fields.append(field.getKey().getKey(), field.getValue());
+        }
+        return new Document("_id", new ObjectId())
+                .append("type", event.getType().getRepresentation())
+                .append("domain", event.getDomain()).append("gameId", event.getGameId())
+                .append("playerId", event.getPlayerId())
+                .append("executionId", event.getExecutionId())
+                .append("executionMoment", event.getExecutionMoment())
+                .append("timestamp", event.getTimestamp()).append("fields", fields);
+    }
+
+    static StatsEvent toEvent(Document document) {
+        StatsEvent event = new StatsEvent(RecordType.of(document.getString("type")),
+                document.getString("domain"), document.getString("gameId"),
+                document.getString("playerId"), document.getString("executionId"),
+                document.getLong("executionMoment"), document.getLong("timestamp"));
+        Document fields = document.get("fields", Document.class);
+        if (fields != null) {
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                event.with(Field.ofKey(field.getKey()), field.getValue());
+            }
+        }
+        return event;
+    }
+}
@@ -0,0 +1,18 @@
+package eu.trentorise.game.stats;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the events exported by {@link StatsOutboxExporter}.
+ *
+ * A write completes only when the events are durable on the target: the exporter moves its
+ * checkpoint forward after a successful write and sends the batch again after a failure, so a
+ * target can receive an event more than once
+ */
+public interface StatsOutboxTarget {
+
+    void write(List<StatsEvent> events) throws IOException;
+
+    default void close() {}
+}
@@ -0,0 +1,90 @@
+package eu.trentorise.game.stats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import eu.trentorise.game.core.StatsLogger;
+
+/**
+ * Registers the stats sinks enabled by configuration and manages their lifecycle
+ */
+@Component
+public class StatsSinkManager {
+
+    private static final Logger logger = Logger.getLogger(StatsSinkManager.class);
+
+    @Value("${stats.sink.binary.file:}")
+    private String binaryFile;
+
+    @Value("${stats.outbox.enabled:false}")
+    private boolean outboxEnabled;
+
+    @Value("${stats.outbox.size:536870912}")
+    private long outboxSize;
+
+    @Value("${stats.outbox.batch-size:500}")
+    private int outboxBatchSize;
+
+    @Value("${stats.outbox.max-pending:100000}")
+    private int outboxMaxPending;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final List<StatsEventSink> managedSinks = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        if (!StringUtils.isBlank(binaryFile)) {
+            try {
+                register(new BinaryFileStatsSink(binaryFile));
+                logger.info(String.format("stats events written in binary format on %s",
+                        binaryFile));
+            } catch (IOException e) {
+                logger.error(String.format("Exception opening binary stats file %s: %s",
+                        binaryFile, e.getMessage()));
+            }
+        }
+        if (outboxEnabled) {
+            register(new StatsOutboxSink(mongoTemplate, outboxSize, outboxBatchSize,
+                    outboxMaxPending));
+            logger.info(String.format("stats events written in %s collection",
+                    StatsOutboxSink.COLLECTION));
+        }
+    }
+
+    public void register(StatsEventSink sink) {
+        StatsLogger.addSink(sink);
+        synchronized (managedSinks) {
+            managedSinks.add(sink);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${stats.sink.flush-interval:1000}")
+    public void flush() {
+        StatsLogger.getSinks().forEach(StatsEventSink::flush);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (managedSinks) {
+            for (StatsEventSink sink : managedSinks) {
+                StatsLogger.removeSink(sink);
+                sink.close();
+            }
+            managedSinks.clear();
+        }
+    }
+}
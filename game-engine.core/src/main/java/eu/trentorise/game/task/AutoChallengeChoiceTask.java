@@ -1,6 +1,15 @@
 package eu.trentorise.game.task;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,8 +19,24 @@ import eu.trentorise.game.core.LogHub;
 import eu.trentorise.game.model.core.GameTask;
 import eu.trentorise.game.services.PlayerService;
 
+/**
+ * Forces the choice of the PROPOSED challenges.
+ *
+ * Only the players with PROPOSED challenges are processed, in partitions run in parallel. The
+ * completed partitions are checkpointed in the task data, so a run interrupted by a crash is
+ * resumed from the pending partitions if restarted within a day
+ */
 public class AutoChallengeChoiceTask extends GameTask {
 
+    private static final int PARTITION_SIZE = 500;
+    private static final int PARALLELISM = 4;
+    private static final long RESUME_WINDOW = TimeUnit.DAYS.toMillis(1);
+
+    private static final String RUN_START_PARAM = "runStart";
+    private static final String PLAYERS_PARAM = "players";
+    private static final String COMPLETED_PARTITIONS_PARAM = "completedPartitions";
+    private static final String LAST_RUN_PARAM = "lastRun";
+
     private Logger logger = LoggerFactory.getLogger(AutoChallengeChoiceTask.class);
 
     private PlayerService playerSrv;
@@ -27,22 +52,92 @@ public class AutoChallengeChoiceTask extends GameTask {
     @Override
     public void execute(GameContext ctx) {
         long start = System.currentTimeMillis();
-        List<String> playerIds = ctx.readPlayers();
-        LogHub.info(ctx.getGameRefId(), logger,
+        final String gameId = ctx.getGameRefId();
+        LogHub.info(gameId, logger,
                 "AutoChallengeChoiceTask started");
         if (playerSrv != null) {
-        playerIds.forEach(id -> {
-            playerSrv.forceChallengeChoice(ctx.getGameRefId(), id);
-        });
-            LogHub.info(ctx.getGameRefId(), logger, "Completed AutoChallengeChoiceTask, ms: "
-                    + (System.currentTimeMillis() - start));
+            Map<String, Object> checkpoint = resumableCheckpoint(ctx, start);
+            if (checkpoint == null) {
+                List<String> playerIds = new ArrayList<>(playerSrv.readPlayersWithProposedChallenges(gameId));
+                Collections.sort(playerIds);
+                checkpoint = new HashMap<>();
+                checkpoint.put(RUN_START_PARAM, start);
+                checkpoint.put(PLAYERS_PARAM, playerIds);
+                checkpoint.put(COMPLETED_PARTITIONS_PARAM, new ArrayList<Integer>());
+                ctx.writeTaskData(checkpoint);
+            } else {
+                LogHub.info(gameId, logger, "Resume AutoChallengeChoiceTask started at {}",
+                        checkpoint.get(RUN_START_PARAM));
+            }
+            processPartitions(ctx, checkpoint);
+
+            int discardedGroupChallenges = playerSrv.discardProposedGroupChallenges(gameId);
+            Map<String, Object> completed = new HashMap<>();
+            completed.put(LAST_RUN_PARAM, System.currentTimeMillis());
+            ctx.writeTaskData(completed);
+            LogHub.info(gameId, logger, "Completed AutoChallengeChoiceTask, ms: "
+                    + (System.currentTimeMillis() - start) + ", players: "
+                    + ((List<?>) checkpoint.get(PLAYERS_PARAM)).size()
+                    + ", discarded group challenges: " + discardedGroupChallenges);
         } else {
-            LogHub.warn(ctx.getGameRefId(), logger,
+            LogHub.warn(gameId, logger,
                     "PlayerSrv null running AutoChallengeChoiceTask ");
         }
 
     }
 
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> resumableCheckpoint(GameContext ctx, long now) {
+        Map<String, Object> taskData = ctx.readTaskData(Map.class);
+        if (taskData == null || taskData.get(PLAYERS_PARAM) == null
+                || now - ((Number) taskData.get(RUN_START_PARAM)).longValue() > RESUME_WINDOW) {
+            return null;
+        }
+        return taskData;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void processPartitions(GameContext ctx, Map<String, Object> checkpoint) {
+        final String gameId = ctx.getGameRefId();
+        List<String> playerIds = (List<String>) checkpoint.get(PLAYERS_PARAM);
+        List<Integer> completedPartitions =
+                (List<Integer>) checkpoint.get(COMPLETED_PARTITIONS_PARAM);
+        int partitions = (playerIds.size() + PARTITION_SIZE - 1) / PARTITION_SIZE;
+        if (partitions == 0) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(PARALLELISM, partitions));
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < partitions; i++) {
+                if (completedPartitions.contains(i)) {
+                    continue;
+                }
+                final int partition = i;
+                final List<String> partitionPlayers = playerIds.subList(partition * PARTITION_SIZE,
+                        Math.min((partition + 1) * PARTITION_SIZE, playerIds.size()));
+                results.add(executor.submit(() -> {
+                    playerSrv.forceChallengeChoice(gameId, partitionPlayers);
+                    synchronized (checkpoint) {
+                        completedPartitions.add(partition);
+                        ctx.writeTaskData(checkpoint);
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("AutoChallengeChoiceTask interrupted", e);
+        } catch (ExecutionException e) {
+            LogHub.error(gameId, logger, "Exception in AutoChallengeChoiceTask partition", e);
+            throw new IllegalStateException("AutoChallengeChoiceTask partition failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Override
     public List<String> getExecutionActions() {
         return null;
@@ -0,0 +1,170 @@
+package eu.trentorise.game.core;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.varia.NullAppender;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.MessageFormatter;
+
+import eu.trentorise.game.model.PointConcept;
+
+/**
+ * Formatting of the LogHub messages.
+ *
+ * The allocation benchmark runs only when the system property benchmark.actions is set, e.g.
+ * -Dbenchmark.actions=20000
+ */
+public class LogHubTest {
+
+    private static final Logger benchmarkLogger = LoggerFactory.getLogger(LogHubTest.class);
+
+    private static final String TEST_LOGGER = "loghub.test";
+    private static final String BENCHMARK_LOGGER = "loghub.benchmark";
+    private static final Integer BENCHMARK_ACTIONS = Integer.getInteger("benchmark.actions");
+    private static final Map<String, Object> DATA = new HashMap<>();
+    private static final PointConcept CONCEPT = new PointConcept("green leaves");
+
+    @Test
+    public void format_like_slf4j() {
+        String[] patterns = {"player {} has {} points", "no placeholders", "escaped \\{} and {}",
+                "double escaped \\\\{} here", "{}{}{}", "missing {} {} {}"};
+        Object[] args = {"p1", 10.5d, null};
+        for (String pattern : patterns) {
+            assertThat(LogHub.format(null, pattern, args, args.length),
+                    is(MessageFormatter.arrayFormat(pattern, args).getMessage()));
+        }
+        assertThat(LogHub.format(null, "array {}", new Object[] {new int[] {1, 2}}, 1),
+                is("array [1, 2]"));
+    }
+
+    @Test
+    public void format_with_game_prefix() {
+        assertThat(LogHub.format("GAME", "player {}", new Object[] {"p1"}, 1),
+                is("GAME - player p1"));
+    }
+
+    @Test
+    public void stats_event_unchanged() {
+        PointConcept concept = new PointConcept("green leaves");
+        concept.setScore(12d);
+        assertThat(
+                StatsLogger.logRule("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1000, 1200,
+                        "rule_name", concept),
+                is(legacyStatsEvent("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1000, 1200)
+                        + " type=PointConcept ruleName=\"rule_name\" name=\"green leaves\" score=12.0"));
+    }
+
+    @Test
+    public void format_only_when_level_enabled() {
+        org.apache.log4j.Logger log4jLogger = org.apache.log4j.Logger.getLogger(TEST_LOGGER);
+        log4jLogger.setAdditivity(false);
+        log4jLogger.addAppender(new NullAppender());
+        Logger logger = LoggerFactory.getLogger(TEST_LOGGER);
+        AtomicInteger formatted = new AtomicInteger();
+        Object arg = new Object() {
+            @Override
+            public String toString() {
+                formatted.incrementAndGet();
+                return "arg";
+            }
+        };
+
+        log4jLogger.setLevel(Level.WARN);
+        LogHub.info("GAME", logger, "player {}", arg);
+        LogHub.info("GAME", logger, "player {} has {} points", arg, 10d);
+        LogHub.info("GAME", logger, "{} {} {}", arg, arg, arg);
+        assertThat(formatted.get(), is(0));
+
+        log4jLogger.setLevel(Level.INFO);
+        LogHub.info("GAME", logger, "player {}", arg);
+        assertThat(formatted.get(), is(1));
+    }
+
+    /**
+     * Compare the bytes allocated by the logging of a typical action (LogHub messages and stats
+     * events) by the previous eager implementation and the current one, with INFO level enabled
+     * and disabled
+     */
+    @Test
+    public void benchmark_allocation_per_action() {
+        Assume.assumeTrue(BENCHMARK_ACTIONS != null);
+        final int actions = BENCHMARK_ACTIONS;
+        org.apache.log4j.Logger log4jLogger = org.apache.log4j.Logger.getLogger(BENCHMARK_LOGGER);
+        log4jLogger.setAdditivity(false);
+        log4jLogger.addAppender(new NullAppender());
+        Logger logger = LoggerFactory.getLogger(BENCHMARK_LOGGER);
+
+        for (Level level : Arrays.asList(Level.INFO, Level.WARN)) {
+            log4jLogger.setLevel(level);
+            // warm-up
+            measure(() -> legacyAction(logger), actions / 4);
+            measure(() -> currentAction(logger), actions / 4);
+
+            long legacy = measure(() -> legacyAction(logger), actions);
+            long current = measure(() -> currentAction(logger), actions);
+            benchmarkLogger.info(
+                    "logging allocation per action with INFO {}: eager {} bytes, current {} bytes",
+                    level == Level.INFO ? "on" : "off", legacy / actions, current / actions);
+        }
+    }
+
+    private long measure(Runnable action, int iterations) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - start;
+    }
+
+    private void currentAction(Logger logger) {
+        for (int i = 0; i < 10; i++) {
+            LogHub.info("GAME", logger, "rule '{}' updated PointConcept '{}' of {} (total: {})",
+                    "rule_name", CONCEPT.getName(), 2d, CONCEPT.getScore());
+        }
+        LogHub.info("GAME", logger, "Player {} has no active group challenges", "PLAYER");
+        LogHub.info("GAME", logger, "Process terminated");
+        if (StatsLogger.isEnabled()) {
+            StatsLogger.logAction("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1000, 1200, "action",
+                    DATA, null, null);
+            StatsLogger.logEndGameAction("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1000, 1200);
+        }
+    }
+
+    private void legacyAction(Logger logger) {
+        for (int i = 0; i < 10; i++) {
+            legacyInfo("GAME", logger, "rule '{}' updated PointConcept '{}' of {} (total: {})",
+                    "rule_name", CONCEPT.getName(), 2d, CONCEPT.getScore());
+        }
+        legacyInfo("GAME", logger,
+                String.format("Player %s has no active group challenges", "PLAYER"));
+        legacyInfo("GAME", logger, "Process terminated");
+        String msg = legacyStatsEvent("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1000, 1200);
+        msg += " " + String.format("type=%s actionName=\"%s\"", "Action", "action");
+        msg = legacyStatsEvent("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1000, 1200);
+        msg += " " + String.format("type=%s end", "EndGameAction");
+    }
+
+    private static void legacyInfo(String gameId, Logger logger, String msg, Object... objs) {
+        LogHub.info(gameId, logger, MessageFormatter.arrayFormat(msg, objs).getMessage());
+    }
+
+    private static String legacyStatsEvent(String domain, String gameId, String playerId,
+            String executionId, long executionMoment, long timestamp) {
+        return String.format("\"%s\" \"%s\" \"%s\" %s %s %s", domain, gameId, playerId,
+                executionId, executionMoment, timestamp);
+    }
+}
@@ -0,0 +1,59 @@
+package eu.trentorise.game.core;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    @Test
+    public void expire_at_deadline_tick() {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 8, START);
+        wheel.schedule("b", START + 550);
+        wheel.schedule("a", START + 250);
+
+        assertThat(wheel.advance(START + 199), is(empty()));
+        assertThat(wheel.advance(START + 299), is(empty()));
+        assertThat(wheel.advance(START + 300), contains("a"));
+        assertThat(wheel.advance(START + 549), is(empty()));
+        assertThat(wheel.advance(START + 600), contains("b"));
+        assertThat(wheel.size(), is(0));
+    }
+
+    @Test
+    public void deadline_beyond_one_revolution() {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 4, START);
+        wheel.schedule("near", START + 150);
+        wheel.schedule("far", START + 1150);
+
+        assertThat(wheel.advance(START + 200), contains("near"));
+        assertThat(wheel.advance(START + 1199), is(empty()));
+        assertThat(wheel.advance(START + 1200), contains("far"));
+    }
+
+    @Test
+    public void past_deadline_expires_at_next_tick() {
+        TimerWheel<String> wheel = new TimerWheel<>(100, 4, START);
+        wheel.advance(START + 1000);
+        wheel.schedule("late", START + 10);
+
+        assertThat(wheel.size(), is(1));
+        assertThat(wheel.advance(START + 1100), contains("late"));
+    }
+
+    @Test
+    public void advance_over_many_ticks() {
+        TimerWheel<String> wheel = new TimerWheel<>(10, 16, START);
+        wheel.schedule("first", START + 30);
+        wheel.schedule("second", START + 200);
+        wheel.schedule("third", START + 5000);
+
+        assertThat(wheel.advance(START + 4000), contains("first", "second"));
+        assertThat(wheel.advance(START + 6000), contains("third"));
+    }
+}
@@ -0,0 +1,92 @@
+package eu.trentorise.game.managers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.sleuth.autoconfig.brave.BraveAutoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import eu.trentorise.game.config.AppConfig;
+import eu.trentorise.game.config.MongoConfig;
+import eu.trentorise.game.config.RabbitConf;
+import eu.trentorise.game.model.ChallengeConcept;
+import eu.trentorise.game.model.ChallengeConcept.ChallengeState;
+import eu.trentorise.game.model.core.ArchivePage;
+import eu.trentorise.game.model.core.ArchivedConcept;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {AppConfig.class, MongoConfig.class, BraveAutoConfiguration.class, RabbitConf.class},
+        loader = AnnotationConfigContextLoader.class)
+public class ArchiveManagerTest {
+
+    private static final String GAME = "archiveGame";
+
+    @Autowired
+    private ArchiveManager archiveSrv;
+
+    @Autowired
+    private MongoTemplate mongo;
+
+    @Before
+    public void setup() {
+        mongo.getDb().drop();
+    }
+
+    @Test
+    public void read_archives_by_cursor() {
+        // same archiving date for some archives, pages are ordered also by id
+        Date archivingDate = new Date();
+        List<ArchivedConcept> archived = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            ChallengeConcept challenge = new ChallengeConcept(ChallengeState.REFUSED);
+            challenge.setName("challenge_" + i);
+            ArchivedConcept archivedConcept = ArchiveManager.archived(GAME, "player_" + i % 2, challenge);
+            archivedConcept.setArchivingDate(new Date(archivingDate.getTime() + i / 5));
+            archived.add(archivedConcept);
+        }
+        archived.add(ArchiveManager.archived("other_game", "player_0", new ChallengeConcept()));
+        archiveSrv.moveToArchive(archived);
+
+        Set<String> read = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ArchivePage page = archiveSrv.readArchives(GAME, null, null, null, null, cursor, 10);
+            page.getContent().forEach(a -> read.add(a.getChallenge().getName()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+        assertThat(pages, is(3));
+        assertThat(read, hasSize(25));
+
+        ArchivePage playerPage = archiveSrv.readArchives(GAME, "player_0", null, null, null, null, 13);
+        assertThat(playerPage.getContent(), hasSize(13));
+        assertThat(playerPage.getNextCursor(), nullValue());
+
+        ArchivePage firstPage = archiveSrv.readArchives(GAME, null, null, null, null, null, 24);
+        assertThat(firstPage.getNextCursor(), notNullValue());
+        assertThat(archiveSrv.readArchives(GAME, null, null, null, null,
+                firstPage.getNextCursor(), 24).getContent(), hasSize(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_cursor() {
+        archiveSrv.readArchives(GAME, null, null, null, null, "not-a-cursor", 10);
+    }
+}
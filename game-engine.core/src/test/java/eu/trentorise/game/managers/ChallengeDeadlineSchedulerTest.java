@@ -0,0 +1,181 @@
+package eu.trentorise.game.managers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.sleuth.autoconfig.brave.BraveAutoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import eu.trentorise.game.config.AppConfig;
+import eu.trentorise.game.config.MongoConfig;
+import eu.trentorise.game.config.RabbitConf;
+import eu.trentorise.game.model.ChallengeConcept.ChallengeState;
+import eu.trentorise.game.model.ChallengeModel;
+import eu.trentorise.game.model.Game;
+import eu.trentorise.game.model.GroupChallenge;
+import eu.trentorise.game.model.GroupChallenge.Attendee;
+import eu.trentorise.game.model.GroupChallenge.Attendee.Role;
+import eu.trentorise.game.model.GroupChallenge.PointConceptRef;
+import eu.trentorise.game.model.PlayerState;
+import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.model.core.ChallengeAssignment;
+import eu.trentorise.game.model.core.GameConcept;
+import eu.trentorise.game.notification.ChallengeFailedNotication;
+import eu.trentorise.game.repo.ChallengeDeadlinePersistence;
+import eu.trentorise.game.services.GameService;
+import eu.trentorise.game.services.PlayerService;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {AppConfig.class, MongoConfig.class, RabbitConf.class, BraveAutoConfiguration.class},
+        loader = AnnotationConfigContextLoader.class)
+@TestPropertySource(properties = {"challenge.deadline.enabled=true", "challenge.deadline.tick=100",
+        "challenge.deadline.refresh=200"})
+public class ChallengeDeadlineSchedulerTest {
+
+    private static final String GAME = "deadlineGame";
+    private static final String PLAYER = "player";
+    private static final String POINT_CONCEPT = "green leaves";
+    private static final long TIMEOUT = 10000;
+
+    @Autowired
+    private ChallengeDeadlineIndex deadlineIndex;
+
+    @Autowired
+    private ChallengeManager challengeSrv;
+
+    @Autowired
+    private GameService gameSrv;
+
+    @Autowired
+    private PlayerService playerSrv;
+
+    @Autowired
+    private NotificationManager notificationSrv;
+
+    @Autowired
+    private MongoTemplate mongo;
+
+    @Before
+    public void setup() {
+        mongo.getDb().drop();
+    }
+
+    @Test
+    public void claim_deadline_once() {
+        defineGame();
+        Date end = LocalDate.now().plusDays(2).toDate();
+        playerSrv.assignChallenge(GAME, PLAYER, new ChallengeAssignment("prize", "future", null, null,
+                LocalDate.now().minusDays(1).toDate(), end));
+
+        List<ChallengeDeadlinePersistence> due = deadlineIndex.due(LocalDate.now().plusDays(3).toDate(), 10);
+        assertThat(due, hasSize(1));
+        assertThat(due.get(0).getId(), is(ChallengeDeadlinePersistence.singleId(GAME, PLAYER, "future")));
+        assertThat(due.get(0).getDeadline(), is(end));
+        assertThat(deadlineIndex.due(end, 10), hasSize(0));
+
+        assertThat(deadlineIndex.claim(due.get(0)), is(true));
+        assertThat(deadlineIndex.claim(due.get(0)), is(false));
+
+        // a retried entry has a new deadline, the old one cannot be claimed
+        Date retry = new Date(end.getTime() + 1);
+        deadlineIndex.retry(due.get(0), retry);
+        assertThat(deadlineIndex.claim(due.get(0)), is(false));
+        List<ChallengeDeadlinePersistence> retried = deadlineIndex.due(LocalDate.now().plusDays(3).toDate(), 10);
+        assertThat(retried, hasSize(1));
+        assertThat(retried.get(0).getDeadline(), is(retry));
+        assertThat(deadlineIndex.claim(retried.get(0)), is(true));
+    }
+
+    @Test
+    public void rebuild_index_of_open_challenges() {
+        defineGame();
+        Date end = LocalDate.now().plusDays(2).toDate();
+        playerSrv.assignChallenge(GAME, PLAYER, new ChallengeAssignment("prize", "future", null, null,
+                LocalDate.now().minusDays(1).toDate(), end));
+        challengeSrv.save(groupChallenge(end));
+        mongo.dropCollection(ChallengeDeadlinePersistence.class);
+
+        assertThat(deadlineIndex.rebuild(), is(2L));
+        List<ChallengeDeadlinePersistence> due = deadlineIndex.due(LocalDate.now().plusDays(3).toDate(), 10);
+        assertThat(due, hasSize(2));
+        assertThat(due.stream().map(ChallengeDeadlinePersistence::getType).collect(Collectors.toSet()),
+                is(new HashSet<>(Arrays.asList(ChallengeDeadlinePersistence.SINGLE,
+                        ChallengeDeadlinePersistence.GROUP))));
+    }
+
+    @Test
+    public void expire_due_challenges_once() throws Exception {
+        defineGame();
+        Date end = new Date(System.currentTimeMillis() + 1000);
+        playerSrv.assignChallenge(GAME, PLAYER, new ChallengeAssignment("prize", "single", null, null,
+                LocalDate.now().minusDays(1).toDate(), end));
+        GroupChallenge group = challengeSrv.save(groupChallenge(end));
+
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < timeout && !(singleState() == ChallengeState.FAILED
+                && challengeSrv.readGroupChallenge(group.getId()).getState() == ChallengeState.FAILED)) {
+            Thread.sleep(100);
+        }
+        assertThat(singleState(), is(ChallengeState.FAILED));
+        assertThat(challengeSrv.readGroupChallenge(group.getId()).getState(), is(ChallengeState.FAILED));
+        assertThat(deadlineIndex.due(LocalDate.now().plusDays(1).toDate(), 10), hasSize(0));
+
+        // expiring again the processed deadlines changes nothing
+        gameSrv.expireChallenges(GAME, PLAYER, new Date());
+        gameSrv.expireGroupChallenge(GAME, group.getId(), new Date());
+        Thread.sleep(500);
+
+        List<String> failed = notificationSrv.readNotifications(GAME, PLAYER).stream()
+                .filter(n -> n instanceof ChallengeFailedNotication)
+                .map(n -> ((ChallengeFailedNotication) n).getChallengeName()).sorted()
+                .collect(Collectors.toList());
+        assertThat(failed, is(Arrays.asList("group", "single")));
+    }
+
+    private ChallengeState singleState() {
+        PlayerState state = playerSrv.loadState(GAME, PLAYER, false, false);
+        return state.challenge("single").map(c -> c.getState()).orElse(null);
+    }
+
+    private GroupChallenge groupChallenge(Date end) {
+        GroupChallenge groupChallenge = new GroupChallenge();
+        groupChallenge.setGameId(GAME);
+        groupChallenge.setInstanceName("group");
+        groupChallenge.setChallengeModel(GroupChallenge.MODEL_NAME_COOPERATIVE);
+        Attendee player = new Attendee();
+        player.setPlayerId(PLAYER);
+        player.setRole(Role.GUEST);
+        groupChallenge.getAttendees().add(player);
+        groupChallenge.setStart(LocalDate.now().minusDays(1).toDate());
+        groupChallenge.setEnd(end);
+        groupChallenge.setState(ChallengeState.ASSIGNED);
+        groupChallenge.setChallengePointConcept(new PointConceptRef(POINT_CONCEPT, null));
+        return groupChallenge;
+    }
+
+    private void defineGame() {
+        Game game = new Game(GAME);
+        game.setConcepts(new HashSet<GameConcept>());
+        game.getConcepts().add(new PointConcept(POINT_CONCEPT));
+        gameSrv.saveGameDefinition(game);
+        ChallengeModel model = new ChallengeModel();
+        model.setName("prize");
+        gameSrv.saveChallengeModel(GAME, model);
+    }
+}
@@ -9,6 +9,7 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -588,6 +589,59 @@ public class ChallengeManagerTest {
         assertThat(proposedCount, is(0L));
     }
 
+    @Test
+    public void load_point_concept_missing_from_state() {
+        gameSrv.saveGameDefinition(defineGame());
+        PlayerState state = new PlayerState("GAME", "p1");
+        PointConcept greenLeaves = new PointConcept("green leaves");
+        greenLeaves.setScore(5d);
+        state.getState().add(greenLeaves);
+        playerSrv.saveState(state);
+
+        // concept added to the game after the player state was saved
+        Game game = defineGame();
+        game.getConcepts().add(new PointConcept("health"));
+        gameSrv.saveGameDefinition(game);
+
+        List<PlayerState> states = playerSrv.loadPointConcepts("GAME", Arrays.asList("p1", "p2"),
+                Arrays.asList("green leaves", "health"));
+        assertThat(states, hasSize(1));
+        assertThat(states.get(0).pointConcept("green leaves").getScore(), is(5d));
+        assertThat(states.get(0).pointConcept("health"), notNullValue());
+        assertThat(states.get(0).pointConcept("health").getScore(), is(0d));
+    }
+
+    @Test
+    public void update_scores_of_attendees_in_challenge_only() {
+        gameSrv.saveGameDefinition(defineGame());
+        GroupChallenge challenge = new GroupChallenge();
+        challenge.setGameId("GAME");
+        challenge.setInstanceName("performance");
+        challenge.setChallengeModel(GroupChallenge.MODEL_NAME_COMPETITIVE_PERFORMANCE);
+        challenge.setChallengePointConcept(new PointConceptRef("green leaves", "weekly"));
+        challenge.setState(ChallengeState.ASSIGNED);
+        for (String playerId : Arrays.asList("p1", "p2")) {
+            Attendee attendee = new Attendee();
+            attendee.setPlayerId(playerId);
+            attendee.setRole(Role.GUEST);
+            challenge.getAttendees().add(attendee);
+        }
+        challenge = challengeManager.save(challenge);
+
+        challenge.getAttendees().get(0).setChallengeScore(3d);
+        challenge.getAttendees().get(1).setChallengeScore(7d);
+        assertThat(challengeManager.updateScores(challenge, Arrays.asList("p1", "p3")), is(true));
+        GroupChallenge saved = challengeManager.readGroupChallenge(challenge.getId());
+        assertThat(saved.getAttendees().get(0).getChallengeScore(), is(3d));
+        assertThat(saved.getAttendees().get(1).getChallengeScore(), is(0d));
+
+        // no attendee of the challenge, nothing to update
+        assertThat(challengeManager.updateScores(challenge, Arrays.asList("p3")), is(true));
+        saved = challengeManager.readGroupChallenge(challenge.getId());
+        assertThat(saved.getAttendees().get(0).getChallengeScore(), is(3d));
+        assertThat(saved.getAttendees().get(1).getChallengeScore(), is(0d));
+    }
+
     private Game defineGame() {
         return defineGame("GAME");
     }
@@ -5,12 +5,22 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
@@ -30,6 +40,8 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.AnnotationConfigContextLoader;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import eu.trentorise.game.config.AppConfig;
 import eu.trentorise.game.config.MongoConfig;
 import eu.trentorise.game.config.RabbitConf;
@@ -45,12 +57,18 @@ import eu.trentorise.game.model.GroupChallenge.Attendee.Role;
 import eu.trentorise.game.model.GroupChallenge.PointConceptRef;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.model.core.BulkChallengeAssignment;
+import eu.trentorise.game.model.core.BulkChallengeAssignment.PlayerAssignment;
 import eu.trentorise.game.model.core.ChallengeAssignment;
+import eu.trentorise.game.model.core.ChallengeAssignmentResult;
 import eu.trentorise.game.model.core.ClasspathRule;
 import eu.trentorise.game.model.core.GameConcept;
 import eu.trentorise.game.model.core.GameTask;
+import eu.trentorise.game.model.core.Notification;
 import eu.trentorise.game.model.core.TimeInterval;
 import eu.trentorise.game.model.core.TimeUnit;
+import eu.trentorise.game.notification.ChallengeFailedNotication;
+import eu.trentorise.game.repo.ChallengeDeadlinePersistence;
 import eu.trentorise.game.repo.GroupChallengeRepo;
 import eu.trentorise.game.services.GameEngine;
 import eu.trentorise.game.services.GameService;
@@ -79,6 +97,9 @@ public class ChallengeTest {
     @Autowired
     private MongoTemplate mongo;
 
+    @Autowired
+    private NotificationManager notificationSrv;
+
     @Mock
     private Clock clock;
 
@@ -535,6 +556,130 @@ public class ChallengeTest {
         assertThat(forced.getName(), is("secondProposed"));
     }
 
+    @Test
+    public void force_proposed_challenges_of_many_players() {
+        gameSrv.saveGameDefinition(defineGame());
+
+        // define challenge Model
+        ChallengeModel modelPrize = new ChallengeModel();
+        modelPrize.setName("prize");
+        gameSrv.saveChallengeModel(GAME, modelPrize);
+
+        for (String player : Arrays.asList("player", "other")) {
+            ChallengeAssignment firstProposed = new ChallengeAssignment();
+            firstProposed.setChallengeType("PROPOSED");
+            firstProposed.setInstanceName(player + "_firstProposed");
+            firstProposed.setModelName("prize");
+            firstProposed.setPriority(1);
+            playerSrv.assignChallenge(GAME, player, firstProposed);
+
+            ChallengeAssignment secondProposed = new ChallengeAssignment();
+            secondProposed.setChallengeType("PROPOSED");
+            secondProposed.setInstanceName(player + "_secondProposed");
+            secondProposed.setModelName("prize");
+            secondProposed.setPriority(5);
+            playerSrv.assignChallenge(GAME, player, secondProposed);
+        }
+        ChallengeAssignment assigned = new ChallengeAssignment();
+        assigned.setChallengeType("ASSIGNED");
+        assigned.setInstanceName("assigned");
+        assigned.setModelName("prize");
+        playerSrv.assignChallenge(GAME, "assigned_player", assigned);
+
+        assertThat(new HashSet<>(playerSrv.readPlayersWithProposedChallenges(GAME)),
+                is(new HashSet<>(Arrays.asList("player", "other"))));
+
+        Map<String, ChallengeConcept> forced =
+                playerSrv.forceChallengeChoice(GAME, Arrays.asList("player", "other"));
+        assertThat(forced.get("player").getName(), is("player_secondProposed"));
+        assertThat(forced.get("other").getName(), is("other_secondProposed"));
+
+        PlayerState state = playerSrv.loadState(GAME, "player", false, true);
+        assertThat(state.challenges(), hasSize(1));
+        ChallengeConcept challenge = state.challenges().get(0);
+        assertThat(challenge.getName(), is("player_secondProposed"));
+        assertThat(challenge.getState(), is(ChallengeState.ASSIGNED));
+        assertThat(challenge.isForced(), is(true));
+        assertThat(playerSrv.readPlayersWithProposedChallenges(GAME), hasSize(0));
+    }
+
+    @Test
+    public void assign_challenge_to_many_players() {
+        gameSrv.saveGameDefinition(defineGame());
+
+        // define challenge Model
+        ChallengeModel modelPrize = new ChallengeModel();
+        modelPrize.setName("prize");
+        modelPrize.setVariables(new HashSet<>(Arrays.asList("target", "bonus")));
+        gameSrv.saveChallengeModel(GAME, modelPrize);
+
+        playerSrv.saveState(playerSrv.loadState(GAME, "player", true, false));
+
+        BulkChallengeAssignment bulkAssignment = new BulkChallengeAssignment();
+        bulkAssignment.setModelName("prize");
+        bulkAssignment.setInstanceName("weekly");
+        bulkAssignment.setChallengeType("ASSIGNED");
+        bulkAssignment.setData(new HashMap<>(Collections.singletonMap("bonus", 10)));
+        Map<String, Object> target = new HashMap<>(Collections.singletonMap("target", 5));
+        bulkAssignment.setPlayers(Arrays.asList(
+                new PlayerAssignment("player", null, target),
+                new PlayerAssignment("new_player", null, null),
+                new PlayerAssignment("invalid_player", null,
+                        Collections.singletonMap("unknown", 1)),
+                new PlayerAssignment("player", null, null)));
+
+        List<ChallengeAssignmentResult> results = playerSrv.assignChallenge(GAME, bulkAssignment);
+        assertThat(results, hasSize(4));
+        assertThat(results.get(0).isAssigned(), is(true));
+        assertThat(results.get(1).isAssigned(), is(true));
+        assertThat(results.get(2).isAssigned(), is(false));
+        assertThat(results.get(2).getError(), is("field unknown not present in model prize"));
+        assertThat(results.get(3).isAssigned(), is(false));
+
+        PlayerState state = playerSrv.loadState(GAME, "player", false, true);
+        assertThat(state.challenges(), hasSize(1));
+        ChallengeConcept challenge = state.challenges().get(0);
+        assertThat(challenge.getName(), is("weekly"));
+        assertThat(challenge.getState(), is(ChallengeState.ASSIGNED));
+        assertThat(challenge.getFields().get("target"), is(5));
+        assertThat(challenge.getFields().get("bonus"), is(10));
+
+        state = playerSrv.loadState(GAME, "new_player", false, true);
+        assertThat(state.challenges(), hasSize(1));
+    }
+
+    @Test
+    public void stream_challenge_report() throws Exception {
+        gameSrv.saveGameDefinition(defineGame());
+
+        // define challenge Model
+        ChallengeModel modelPrize = new ChallengeModel();
+        modelPrize.setName("prize");
+        gameSrv.saveChallengeModel(GAME, modelPrize);
+
+        for (String player : Arrays.asList("player", "other")) {
+            ChallengeAssignment assigned = new ChallengeAssignment();
+            assigned.setChallengeType("ASSIGNED");
+            assigned.setInstanceName(player + "_assigned");
+            assigned.setModelName("prize");
+            playerSrv.assignChallenge(GAME, player, assigned);
+        }
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        challengeSrv.writeChallengeReportCSV(GAME, null, null, null, null, null, csv);
+        String[] rows = csv.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertThat(rows.length, is(3));
+        assertThat(rows[0].startsWith("\"type\",\"challengeId\""), is(true));
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        challengeSrv.writeChallengeReportJSON(GAME, null, null, "single", null, null, false, json);
+        assertThat(new ObjectMapper().readValue(json.toByteArray(), List.class), hasSize(2));
+
+        ByteArrayOutputStream jsonLines = new ByteArrayOutputStream();
+        challengeSrv.writeChallengeReportJSON(GAME, null, null, "group", null, null, true, jsonLines);
+        assertThat(jsonLines.size(), is(0));
+    }
+
     @Test
     public void force_proposed_group_challenge() {
         gameSrv.saveGameDefinition(defineGame());
@@ -764,6 +909,78 @@ public class ChallengeTest {
         assertThat(state.challenges(), hasSize(1));
     }
 
+    @Test
+    public void challenge_failure_single_challenges_notified_once() throws Exception {
+        gameSrv.saveGameDefinition(defineGame());
+        ChallengeModel model = new ChallengeModel();
+        model.setName("prize");
+        gameSrv.saveChallengeModel(GAME, model);
+
+        LocalDate today = new LocalDate();
+        playerSrv.assignChallenge(GAME, PLAYER, new ChallengeAssignment("prize", "expired", null,
+                null, today.minusDays(3).toDate(), today.minusDays(1).toDate()));
+        playerSrv.assignChallenge(GAME, PLAYER, new ChallengeAssignment("prize", "active", null,
+                null, today.minusDays(1).toDate(), today.plusDays(2).toDate()));
+
+        // the failure task and the deadlines of the player race on the same challenge
+        final Date now = new Date();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> failures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final boolean task = i == 0;
+            failures.add(executor.submit(() -> {
+                start.await();
+                if (task) {
+                    gameSrv.taskChallengeFailure();
+                } else {
+                    gameSrv.expireChallenges(GAME, PLAYER, now);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> failure : failures) {
+            failure.get();
+        }
+        executor.shutdown();
+        gameSrv.taskChallengeFailure();
+
+        PlayerState state = playerSrv.loadState(GAME, PLAYER, false, false);
+        Map<String, ChallengeState> states = new HashMap<>();
+        state.challenges().forEach(c -> states.put(c.getName(), c.getState()));
+        assertThat(states.get("expired"), is(ChallengeState.FAILED));
+        assertThat(states.get("active"), is(ChallengeState.ASSIGNED));
+
+        List<Notification> failed = notificationSrv.readNotifications(GAME, PLAYER).stream()
+                .filter(n -> n instanceof ChallengeFailedNotication).collect(Collectors.toList());
+        assertThat(failed, hasSize(1));
+        assertThat(((ChallengeFailedNotication) failed.get(0)).getChallengeName(), is("expired"));
+    }
+
+    @Test
+    public void deadlines_not_indexed_when_scheduling_disabled() {
+        gameSrv.saveGameDefinition(defineGame());
+        ChallengeModel model = new ChallengeModel();
+        model.setName("prize");
+        gameSrv.saveChallengeModel(GAME, model);
+
+        LocalDate today = new LocalDate();
+        playerSrv.assignChallenge(GAME, PLAYER, new ChallengeAssignment("prize", "active", null,
+                null, today.minusDays(1).toDate(), today.plusDays(2).toDate()));
+        GroupChallenge groupChallenge = new GroupChallenge();
+        groupChallenge.setGameId(GAME);
+        groupChallenge.setInstanceName("groupChallengeInstance");
+        groupChallenge.setChallengeModel(GroupChallenge.MODEL_NAME_COOPERATIVE);
+        groupChallenge.setStart(today.minusDays(1).toDate());
+        groupChallenge.setEnd(today.plusDays(2).toDate());
+        groupChallenge.setState(ChallengeState.ASSIGNED);
+        groupChallenge.setChallengePointConcept(new PointConceptRef("green leaves", null));
+        challengeSrv.save(groupChallenge);
+
+        assertThat(mongo.findAll(ChallengeDeadlinePersistence.class), hasSize(0));
+    }
+
     @Test
     public void challenge_failure_one_group_challenge() {
         Game game = defineGame();
@@ -32,6 +32,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.joda.time.LocalDate;
@@ -45,12 +49,14 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.AnnotationConfigContextLoader;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import eu.trentorise.game.config.AppConfig;
 import eu.trentorise.game.config.MongoConfig;
 import eu.trentorise.game.config.RabbitConf;
 import eu.trentorise.game.core.TaskSchedule;
 import eu.trentorise.game.core.config.TestCoreConfiguration;
+import eu.trentorise.game.managers.drools.StatefulSessionManager;
 import eu.trentorise.game.model.BadgeCollectionConcept;
 import eu.trentorise.game.model.Game;
 import eu.trentorise.game.model.Level;
@@ -58,6 +64,7 @@ import eu.trentorise.game.model.Level.Threshold;
 import eu.trentorise.game.model.PlayerLevel;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.model.Settings.EngineSettings.ExecutionMode;
 import eu.trentorise.game.model.core.ClasspathRule;
 import eu.trentorise.game.model.core.DBRule;
 import eu.trentorise.game.model.core.GameConcept;
@@ -68,6 +75,8 @@ import eu.trentorise.game.repo.StatePersistence;
 import eu.trentorise.game.services.GameEngine;
 import eu.trentorise.game.services.PlayerService;
 import eu.trentorise.game.task.GeneralClassificationTask;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = {AppConfig.class, MongoConfig.class, RabbitConf.class, TestCoreConfiguration.class, BraveAutoConfiguration.class},
@@ -89,6 +98,9 @@ public class GameEngineTest {
     @Autowired
     private GameWorkflow workflow;
 
+    @Autowired
+    private StatefulSessionManager statefulSessions;
+
 
     private static final String GAME = "coreGameTest";
     private static final String ACTION = "save_itinerary";
@@ -264,6 +276,119 @@ public class GameEngineTest {
     }
 
 
+    @Test
+    public void stateful_execution() {
+        Game g = new Game(GAME);
+        g.setConcepts(new HashSet<>());
+        g.getConcepts().add(new PointConcept("green"));
+        g.setActions(new HashSet<>());
+        g.getActions().add(ACTION);
+        g.getSettings().getEngineSettings().setExecutionMode(ExecutionMode.STATEFUL);
+
+        gameManager.saveGameDefinition(g);
+        gameManager.addRule(new ClasspathRule(GAME, "rules/periodic/points.drl"));
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("bikeDistance", 8.43);
+
+        PlayerState p = playerSrv.loadState(GAME, PLAYER, true, false);
+        p = engine.execute(GAME, p, ACTION, params, UUID.randomUUID().toString(),
+                System.currentTimeMillis(), null);
+        assertThat(p.pointConcept("green").getScore(), equalTo(16d));
+
+        // second action runs in the resident session of the player
+        p = playerSrv.loadState(GAME, PLAYER, true, false);
+        p = engine.execute(GAME, p, ACTION, params, UUID.randomUUID().toString(),
+                System.currentTimeMillis(), null);
+        assertThat(p.pointConcept("green").getScore(), equalTo(32d));
+
+        // a state update outside the engine discards the resident session
+        p = playerSrv.loadState(GAME, PLAYER, true, false);
+        p.pointConcept("green").setScore(100d);
+        playerSrv.saveState(p);
+
+        p = playerSrv.loadState(GAME, PLAYER, true, false);
+        p = engine.execute(GAME, p, ACTION, params, UUID.randomUUID().toString(),
+                System.currentTimeMillis(), null);
+        assertThat(p.pointConcept("green").getScore(), equalTo(116d));
+    }
+
+    @Test
+    public void stateful_concurrent_executions_of_same_player() throws Exception {
+        Game g = new Game(GAME);
+        g.setConcepts(new HashSet<>());
+        g.getConcepts().add(new PointConcept("green"));
+        g.setActions(new HashSet<>());
+        g.getActions().add(ACTION);
+        g.getSettings().getEngineSettings().setExecutionMode(ExecutionMode.STATEFUL);
+
+        gameManager.saveGameDefinition(g);
+        gameManager.addRule(new ClasspathRule(GAME, "rules/periodic/points.drl"));
+        playerSrv.saveState(playerSrv.loadState(GAME, PLAYER, true, false));
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("bikeDistance", 8.43);
+
+        // executions of the same player wait for the release of the resident session
+        final int executions = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(executions);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < executions; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                PlayerState state = playerSrv.loadState(GAME, PLAYER, true, false);
+                return engine.execute(GAME, state, ACTION, params, UUID.randomUUID().toString(),
+                        System.currentTimeMillis(), null);
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        PlayerState p = playerSrv.loadState(GAME, PLAYER, false, false);
+        assertThat(p.pointConcept("green").getScore(), equalTo(16d * executions));
+    }
+
+    @Test
+    public void stateful_execution_fails_when_session_held_too_long() {
+        Game g = new Game(GAME);
+        g.setConcepts(new HashSet<>());
+        g.getConcepts().add(new PointConcept("green"));
+        g.setActions(new HashSet<>());
+        g.getActions().add(ACTION);
+        g.getSettings().getEngineSettings().setExecutionMode(ExecutionMode.STATEFUL);
+
+        gameManager.saveGameDefinition(g);
+        gameManager.addRule(new ClasspathRule(GAME, "rules/periodic/points.drl"));
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("bikeDistance", 8.43);
+        PlayerState p = playerSrv.loadState(GAME, PLAYER, true, false);
+        engine.execute(GAME, p, ACTION, params, UUID.randomUUID().toString(),
+                System.currentTimeMillis(), null);
+
+        // the resident session is held by an execution never releasing it
+        Map<?, ?> sessions = (Map<?, ?>) ReflectionTestUtils.getField(statefulSessions, "sessions");
+        Object resident = sessions.get(GAME + "#" + PLAYER);
+        ReflectionTestUtils.setField(statefulSessions, "lockTimeout", 200L);
+        ReflectionTestUtils.setField(resident, "inUse", true);
+        try {
+            engine.execute(GAME, playerSrv.loadState(GAME, PLAYER, true, false), ACTION, params,
+                    UUID.randomUUID().toString(), System.currentTimeMillis(), null);
+            Assert.fail("execution waiting for the session forever");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            ReflectionTestUtils.setField(resident, "inUse", false);
+            ReflectionTestUtils.setField(statefulSessions, "lockTimeout", 30000L);
+        }
+        assertThat(playerSrv.loadState(GAME, PLAYER, false, false).pointConcept("green").getScore(),
+                equalTo(16d));
+    }
+
     @Test
     public void dbExecution() throws InterruptedException {
         initDBRuleGame();
@@ -358,6 +483,28 @@ public class GameEngineTest {
         Assert.assertEquals(7, p.getState().size());
     }
 
+    @Test
+    public void invalid_action_tagged_as_unknown() {
+        initClasspathRuleGame();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            final String invalidAction = "action-" + UUID.randomUUID();
+            try {
+                workflow.apply(GAME, invalidAction, "25", null, null);
+                Assert.fail("invalid action executed");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            Assert.assertNull(registry.find(WorkflowMetrics.METER_ACTION).tag("action", invalidAction)
+                    .timer());
+            Assert.assertEquals(1d, registry.get(WorkflowMetrics.METER_ACTION_ERRORS).tag("game", GAME)
+                    .tag("action", WorkflowMetrics.UNKNOWN_TAG).counter().count(), 0);
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+
     @Test
     public void owner() {
         initClasspathRuleGame();
@@ -3,14 +3,17 @@ package eu.trentorise.game.managers;
 
 import static eu.trentorise.game.test_utils.Utils.date;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.joda.time.DateTime;
@@ -30,6 +33,8 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.AnnotationConfigContextLoader;
 
+import com.google.common.math.Quantiles;
+
 import eu.trentorise.game.config.AppConfig;
 import eu.trentorise.game.config.MongoConfig;
 import eu.trentorise.game.config.RabbitConf;
@@ -46,6 +51,7 @@ import eu.trentorise.game.model.Level.Threshold;
 import eu.trentorise.game.model.PlayerLevel;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.model.ScoreSketch;
 import eu.trentorise.game.model.Settings;
 import eu.trentorise.game.model.core.TimeInterval;
 import eu.trentorise.game.model.core.TimeUnit;
@@ -676,6 +682,55 @@ public class GameManagerTest {
 		Assert.assertTrue(gameStats.get(0).getVariance() == 0.1875);
 		Assert.assertTrue(gameStats.get(0).getQuantiles().get(9) == 2.0);
 	}
+
+	@Test
+	public void game_statistics_quantiles_computed_on_buckets() {
+		final String gameId = "STATS_GAME";
+		final String POINT_CONCEPT = "green leaves";
+		final String PERIOD_NAME = "weekly";
+
+		Calendar cal = Calendar.getInstance();
+		cal.add(Calendar.DAY_OF_WEEK, -(cal.get(Calendar.DAY_OF_WEEK)));
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+
+		Game g = new Game(gameId);
+		g.setConcepts(new HashSet<>());
+		PointConcept green = new PointConcept(POINT_CONCEPT);
+		green.addPeriod(PERIOD_NAME, cal.getTime(), 7 * 24 * 60 * 60000);
+		Settings settings = new Settings();
+		settings.getStatisticsConfig().put(POINT_CONCEPT, PERIOD_NAME);
+		g.setSettings(settings);
+		g.getConcepts().add(green);
+		gameSrv.saveGameDefinition(g);
+
+		List<Double> scores = new ArrayList<>();
+		for (int p = 1; p <= 50; p++) {
+			double score = p * p / 7d;
+			scores.add(score);
+			PointConcept testGreen = new PointConcept(POINT_CONCEPT);
+			testGreen.addPeriod(PERIOD_NAME, cal.getTime(), 7 * 24 * 60 * 60000);
+			testGreen.setScore(score);
+			PlayerState player = new PlayerState(gameId, "player-" + p);
+			player.getState().add(testGreen);
+			playerSrv.saveState(player);
+		}
+
+		gameSrv.taskGameStats();
+
+		GameStatistics stats = gameSrv.loadGameStats(gameId, POINT_CONCEPT, PERIOD_NAME,
+				cal.getTimeInMillis(), null, null).get(0);
+		Map<Integer, Double> expected = Quantiles.scale(10).indexes(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)
+				.compute(scores);
+		assertThat(stats.getAverage(), closeTo(scores.stream().mapToDouble(a -> a).average().getAsDouble(), 1e-9));
+		assertThat(stats.getVariance(), closeTo(ClassificationUtils.calculateVariance(scores), 1e-6));
+		for (int i = 0; i < 10; i++) {
+			assertThat(stats.getQuantiles().get(i),
+					closeTo(expected.get(i), expected.get(i) * 2 * ScoreSketch.RELATIVE_ACCURACY));
+		}
+	}
     
     @Test
     public void challengeDisclosureNotSetted() {
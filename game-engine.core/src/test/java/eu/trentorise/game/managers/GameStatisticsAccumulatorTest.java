@@ -0,0 +1,129 @@
+package eu.trentorise.game.managers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.sleuth.autoconfig.brave.BraveAutoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import eu.trentorise.game.config.AppConfig;
+import eu.trentorise.game.config.MongoConfig;
+import eu.trentorise.game.config.RabbitConf;
+import eu.trentorise.game.managers.GameStatisticsAccumulator.StatisticKey;
+import eu.trentorise.game.model.Game;
+import eu.trentorise.game.model.GameStatistics;
+import eu.trentorise.game.model.PlayerState;
+import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.model.ScoreSketch;
+import eu.trentorise.game.model.Settings;
+import eu.trentorise.game.model.core.GameConcept;
+import eu.trentorise.game.services.GameService;
+import eu.trentorise.game.services.PlayerService;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {AppConfig.class, MongoConfig.class, BraveAutoConfiguration.class, RabbitConf.class},
+        loader = AnnotationConfigContextLoader.class)
+public class GameStatisticsAccumulatorTest {
+
+    private static final String GAME = "statsGame";
+    private static final String POINT_CONCEPT = "green leaves";
+    private static final String PERIOD_NAME = "weekly";
+    private static final long WEEK = 7 * 24 * 60 * 60000L;
+
+    @Autowired
+    private GameStatisticsAccumulator statistics;
+
+    @Autowired
+    private GameService gameSrv;
+
+    @Autowired
+    private PlayerService playerSrv;
+
+    @Autowired
+    private MongoTemplate mongo;
+
+    private Calendar periodStart;
+
+    @Before
+    public void setup() {
+        mongo.getDb().drop();
+        periodStart = Calendar.getInstance();
+        periodStart.add(Calendar.DAY_OF_WEEK, -(periodStart.get(Calendar.DAY_OF_WEEK)));
+        periodStart.set(Calendar.HOUR_OF_DAY, 0);
+        periodStart.set(Calendar.MINUTE, 0);
+        periodStart.set(Calendar.SECOND, 0);
+        periodStart.set(Calendar.MILLISECOND, 0);
+    }
+
+    @Test
+    public void update_statistics_from_score_changes() {
+        Game game = new Game(GAME);
+        game.setConcepts(new HashSet<>());
+        PointConcept green = new PointConcept(POINT_CONCEPT);
+        green.addPeriod(PERIOD_NAME, periodStart.getTime(), WEEK);
+        game.getConcepts().add(green);
+        Settings settings = new Settings();
+        settings.getStatisticsConfig().put(POINT_CONCEPT, PERIOD_NAME);
+        game.setSettings(settings);
+        gameSrv.saveGameDefinition(game);
+
+        for (int p = 1; p <= 4; p++) {
+            PointConcept score = new PointConcept(POINT_CONCEPT);
+            score.addPeriod(PERIOD_NAME, periodStart.getTime(), WEEK);
+            score.setScore(p % 2 == 0 ? 2d : 1d);
+            PlayerState player = new PlayerState(GAME, "player-" + p);
+            player.getState().add(score);
+            playerSrv.saveState(player);
+        }
+
+        // statistics without sketch are computed on the player states
+        changeScore(game, "player-1", 4d);
+        statistics.flush();
+        GameStatistics stats = loadStats();
+        assertThat(stats.getAverage(), is(2.25));
+        assertThat(stats.getVariance(), is(1.1875));
+        assertThat(stats.getQuantiles().get(9), closeTo(3.4, 1e-9));
+
+        // then updated by the score changes only
+        changeScore(game, "player-2", 3d);
+        statistics.flush();
+        stats = loadStats();
+        assertThat(stats.getAverage(), closeTo(2.5, 1e-9));
+        assertThat(stats.getVariance(), closeTo(1.25, 1e-9));
+        assertThat(stats.getQuantiles().get(0), closeTo(1d, 1d * ScoreSketch.RELATIVE_ACCURACY));
+        assertThat(stats.getQuantiles().get(9), closeTo(3.7, 3.7 * ScoreSketch.RELATIVE_ACCURACY));
+    }
+
+    private void changeScore(Game game, String playerId, double score) {
+        PlayerState state = playerSrv.loadState(GAME, playerId, false, false);
+        Map<StatisticKey, Double> before = statistics.periodScores(game, state);
+        for (GameConcept concept : state.getState()) {
+            if (concept instanceof PointConcept && concept.getName().equals(POINT_CONCEPT)) {
+                ((PointConcept) concept).setScore(score);
+            }
+        }
+        playerSrv.saveState(state);
+        statistics.record(game, before, state);
+    }
+
+    private GameStatistics loadStats() {
+        List<GameStatistics> stats = gameSrv.loadGameStats(GAME, POINT_CONCEPT, PERIOD_NAME,
+                periodStart.getTimeInMillis(), null, null);
+        assertThat(stats, hasSize(1));
+        return stats.get(0);
+    }
+}
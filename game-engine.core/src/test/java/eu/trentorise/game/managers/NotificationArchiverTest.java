@@ -0,0 +1,107 @@
+package eu.trentorise.game.managers;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.ObjectId;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.sleuth.autoconfig.brave.BraveAutoConfiguration;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import eu.trentorise.game.config.AppConfig;
+import eu.trentorise.game.config.MongoConfig;
+import eu.trentorise.game.model.Game;
+import eu.trentorise.game.model.core.Notification;
+import eu.trentorise.game.notification.BadgeNotification;
+import eu.trentorise.game.repo.GamePersistence;
+import eu.trentorise.game.repo.NotificationPersistence;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = { AppConfig.class, MongoConfig.class, BraveAutoConfiguration.class }, loader = AnnotationConfigContextLoader.class)
+public class NotificationArchiverTest {
+
+	private static final String GAME = "archiveGame";
+	private static final String PLAYER = "player";
+
+	@Autowired
+	private NotificationArchiver archiver;
+
+	@Autowired
+	private NotificationManager notificationManager;
+
+	@Autowired
+	private MongoTemplate mongo;
+
+	@Before
+	public void cleanDB() {
+		mongo.getDb().drop();
+	}
+
+	@Test
+	public void archiveNotificationsOlderThanGameRetention() {
+		Game game = new Game(GAME);
+		game.getSettings().getNotificationSettings().setRetentionDays(30);
+		mongo.save(new GamePersistence(game));
+
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 3; i++) {
+			saveNotification("old-" + i, now - TimeUnit.DAYS.toMillis(60 - i));
+		}
+		for (int i = 0; i < 2; i++) {
+			saveNotification("new-" + i, now - TimeUnit.DAYS.toMillis(2 - i));
+		}
+
+		archiver.applyRetention();
+
+		Assert.assertEquals(2, mongo.count(new Query(),
+				NotificationPersistence.class));
+		Assert.assertEquals(3, mongo.getCollection(NotificationPersistence.ARCHIVE_COLLECTION)
+				.countDocuments());
+
+		// recent range reads only live notifications
+		List<Notification> notifications = notificationManager.readNotifications(GAME,
+				now - TimeUnit.DAYS.toMillis(10), now + 1000);
+		Assert.assertEquals(2, notifications.size());
+
+		// old range spans archive and live notifications in chronological order
+		notifications = notificationManager.readNotifications(GAME,
+				now - TimeUnit.DAYS.toMillis(90), now + 1000);
+		Assert.assertEquals(5, notifications.size());
+		Assert.assertEquals("old-0", ((BadgeNotification) notifications.get(0)).getBadge());
+		Assert.assertEquals("new-1", ((BadgeNotification) notifications.get(4)).getBadge());
+
+		notifications = notificationManager.readNotifications(GAME,
+				now - TimeUnit.DAYS.toMillis(90), now + 1000, PageRequest.of(1, 2));
+		Assert.assertEquals(2, notifications.size());
+		Assert.assertEquals("old-2", ((BadgeNotification) notifications.get(0)).getBadge());
+		Assert.assertEquals("new-0", ((BadgeNotification) notifications.get(1)).getBadge());
+	}
+
+	@Test
+	public void noRetentionKeepsNotifications() {
+		mongo.save(new GamePersistence(new Game(GAME)));
+		saveNotification("old", System.currentTimeMillis() - TimeUnit.DAYS.toMillis(400));
+
+		archiver.applyRetention();
+
+		Assert.assertEquals(1, notificationManager.readNotifications(GAME).size());
+	}
+
+	private void saveNotification(String badge, long timestamp) {
+		BadgeNotification notification = new BadgeNotification(GAME, PLAYER, "chest", badge);
+		notification.setTimestamp(timestamp);
+		NotificationPersistence np = new NotificationPersistence(notification);
+		np.setId(new ObjectId(new Date(timestamp)).toHexString());
+		mongo.insert(np);
+	}
+}
@@ -1,7 +1,9 @@
 package eu.trentorise.game.managers;
 
+import java.util.Date;
 import java.util.List;
 
+import org.bson.types.ObjectId;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -12,12 +14,15 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.AnnotationConfigContextLoader;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import eu.trentorise.game.config.AppConfig;
 import eu.trentorise.game.config.MongoConfig;
 import eu.trentorise.game.config.RabbitConf;
 import eu.trentorise.game.model.core.Notification;
+import eu.trentorise.game.model.core.NotificationFeed;
 import eu.trentorise.game.notification.MessageNotification;
+import eu.trentorise.game.repo.NotificationPersistence;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = { AppConfig.class, MongoConfig.class, RabbitConf.class, BraveAutoConfiguration.class }, loader = AnnotationConfigContextLoader.class)
@@ -47,4 +52,69 @@ public class NotificationManagerTest {
 		Assert.assertEquals(1, notifications.size());
 	}
 
+	@Test
+	public void readFeedByCursor() {
+		for (int i = 0; i < 5; i++) {
+			notificationManager.notificate(new MessageNotification("TEST", "1000", "key_" + i));
+		}
+		notificationManager.notificate(new MessageNotification("TEST", "2000", "other_player"));
+
+		NotificationFeed feed = notificationManager.readFeed("TEST", "1000", null, -1, 3);
+		Assert.assertEquals(3, feed.getNotifications().size());
+		Assert.assertEquals("key_0", ((MessageNotification) feed.getNotifications().get(0)).getKey());
+
+		feed = notificationManager.readFeed("TEST", "1000", feed.getCursor(), -1, 3);
+		Assert.assertEquals(2, feed.getNotifications().size());
+		Assert.assertEquals("key_3", ((MessageNotification) feed.getNotifications().get(0)).getKey());
+
+		String cursor = feed.getCursor();
+		feed = notificationManager.readFeed("TEST", "1000", cursor, -1, 3);
+		Assert.assertEquals(0, feed.getNotifications().size());
+		Assert.assertEquals(cursor, feed.getCursor());
+
+		notificationManager.notificate(new MessageNotification("TEST", "1000", "key_5"));
+		feed = notificationManager.readFeed("TEST", "1000", cursor, -1, 3);
+		Assert.assertEquals(1, feed.getNotifications().size());
+
+		feed = notificationManager.readFeed("TEST", null, null, -1, 10);
+		Assert.assertEquals(7, feed.getNotifications().size());
+	}
+
+	@Test
+	public void readFeedBehindSafetyLag() throws Exception {
+		ReflectionTestUtils.setField(notificationManager, "feedSafetyLag", 2000L);
+		try {
+			persistWithIdOf("settled", System.currentTimeMillis() - 10000);
+			NotificationFeed feed = notificationManager.readFeed("TEST", "1000", null, -1, 10);
+			Assert.assertEquals(1, feed.getNotifications().size());
+			String cursor = feed.getCursor();
+
+			// a fresh notification is not read and the cursor does not pass it
+			notificationManager.notificate(new MessageNotification("TEST", "1000", "fresh"));
+			feed = notificationManager.readFeed("TEST", "1000", cursor, -1, 10);
+			Assert.assertEquals(0, feed.getNotifications().size());
+			Assert.assertEquals(cursor, feed.getCursor());
+
+			// persisted late with an older id by another engine instance
+			persistWithIdOf("late", System.currentTimeMillis() - 5000);
+			feed = notificationManager.readFeed("TEST", "1000", cursor, -1, 10);
+			Assert.assertEquals(1, feed.getNotifications().size());
+			Assert.assertEquals("late", ((MessageNotification) feed.getNotifications().get(0)).getKey());
+
+			Thread.sleep(3000);
+			feed = notificationManager.readFeed("TEST", "1000", feed.getCursor(), -1, 10);
+			Assert.assertEquals(1, feed.getNotifications().size());
+			Assert.assertEquals("fresh", ((MessageNotification) feed.getNotifications().get(0)).getKey());
+		} finally {
+			ReflectionTestUtils.setField(notificationManager, "feedSafetyLag", 0L);
+		}
+	}
+
+	private void persistWithIdOf(String key, long timestamp) {
+		NotificationPersistence notification = new NotificationPersistence(
+				new MessageNotification("TEST", "1000", key));
+		notification.setId(new ObjectId(new Date(timestamp)).toHexString());
+		mongo.insert(notification);
+	}
+
 }
@@ -0,0 +1,194 @@
+package eu.trentorise.game.managers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.connection.CorrelationData.Confirm;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.sleuth.autoconfig.brave.BraveAutoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import eu.trentorise.game.config.AppConfig;
+import eu.trentorise.game.config.MongoConfig;
+import eu.trentorise.game.config.RabbitConf;
+import eu.trentorise.game.model.core.Notification;
+import eu.trentorise.game.notification.MessageNotification;
+import eu.trentorise.game.repo.NotificationPersistence;
+
+/**
+ * Asynchronous publishing of the notifications on a mocked RabbitTemplate
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {AppConfig.class, MongoConfig.class, RabbitConf.class, BraveAutoConfiguration.class},
+        loader = AnnotationConfigContextLoader.class)
+public class NotificationPublisherTest {
+
+    private static final long TIMEOUT = 5000;
+
+    private enum BrokerConfirm {
+        ACK, NACK, NONE
+    }
+
+    @Autowired
+    private MongoTemplate mongo;
+
+    private RabbitTemplate rabbitTemplate;
+
+    private NotificationManager notificationManager;
+
+    private volatile BrokerConfirm brokerConfirm = BrokerConfirm.ACK;
+
+    // a closed latch blocks the publishing on the broker
+    private volatile CountDownLatch brokerAvailable = new CountDownLatch(0);
+
+    @Before
+    public void setup() {
+        mongo.getDb().drop();
+
+        rabbitTemplate = mock(RabbitTemplate.class);
+        doAnswer(invocation -> {
+            brokerAvailable.await();
+            CorrelationData correlation = invocation.getArgument(3);
+            if (brokerConfirm != BrokerConfirm.NONE) {
+                boolean ack = brokerConfirm == BrokerConfirm.ACK;
+                correlation.getFuture().set(new Confirm(ack, ack ? null : "rejected"));
+            }
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class),
+                any(CorrelationData.class));
+
+        RabbitMQManager rabbitMQManager = new RabbitMQManager();
+        ReflectionTestUtils.setField(rabbitMQManager, "rabbitMQEnabled", true);
+        ReflectionTestUtils.setField(rabbitMQManager, "rabbitMQExchangeName", "ge-notifications");
+        ReflectionTestUtils.setField(rabbitMQManager, "confirmTimeout", 200L);
+        ReflectionTestUtils.setField(rabbitMQManager, "rabbitTemplate", rabbitTemplate);
+        ReflectionTestUtils.setField(rabbitMQManager, "rabbitAdmin", mock(RabbitAdmin.class));
+        ReflectionTestUtils.setField(rabbitMQManager, "gameExchange",
+                new DirectExchange("ge-notifications"));
+
+        notificationManager = new NotificationManager();
+        ReflectionTestUtils.setField(notificationManager, "mongoTemplate", mongo);
+        ReflectionTestUtils.setField(notificationManager, "rabbitMQManager", rabbitMQManager);
+        ReflectionTestUtils.setField(notificationManager, "publishQueueSize", 100);
+        ReflectionTestUtils.setField(notificationManager, "publishBatchSize", 10);
+        ReflectionTestUtils.setField(notificationManager, "publishRetryDelay", 0L);
+    }
+
+    @After
+    public void shutdown() {
+        brokerAvailable.countDown();
+        notificationManager.shutdown();
+    }
+
+    @Test
+    public void publish_on_ack() throws Exception {
+        notificationManager.init();
+        notificationManager.notificate(notifications(3));
+
+        verifySent(3);
+        waitNoPending();
+    }
+
+    @Test
+    public void requeue_on_nack() throws Exception {
+        requeueNotConfirmed(BrokerConfirm.NACK);
+    }
+
+    @Test
+    public void requeue_on_confirm_timeout() throws Exception {
+        requeueNotConfirmed(BrokerConfirm.NONE);
+    }
+
+    @Test
+    public void full_queue_does_not_block_nor_drop() throws Exception {
+        ReflectionTestUtils.setField(notificationManager, "publishQueueSize", 1);
+        brokerAvailable = new CountDownLatch(1);
+        notificationManager.init();
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            notificationManager.notificate(notifications(2));
+        }
+        assertThat(System.currentTimeMillis() - start, lessThan(TIMEOUT));
+        assertThat(pending(), is(10L));
+
+        // notifications not queued are published from their persisted record
+        brokerAvailable.countDown();
+        Thread.sleep(1100);
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (pending() > 0 && System.currentTimeMillis() < timeout) {
+            notificationManager.retryPublish();
+            Thread.sleep(100);
+        }
+        assertThat(pending(), is(0L));
+    }
+
+    private void requeueNotConfirmed(BrokerConfirm confirm) throws Exception {
+        brokerConfirm = confirm;
+        notificationManager.init();
+        notificationManager.notificate(notifications(2));
+
+        verifySent(2);
+        Thread.sleep(500);
+        assertThat(pending(), is(2L));
+
+        // ids of the retried notifications are older than the retry delay
+        brokerConfirm = BrokerConfirm.ACK;
+        Thread.sleep(1100);
+        notificationManager.retryPublish();
+        verifySent(4);
+        waitNoPending();
+    }
+
+    private void verifySent(int messages) {
+        verify(rabbitTemplate, timeout(TIMEOUT).times(messages)).send(anyString(), anyString(),
+                any(Message.class), any(CorrelationData.class));
+    }
+
+    private void waitNoPending() throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (pending() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(100);
+        }
+        assertThat(pending(), is(0L));
+    }
+
+    private long pending() {
+        return mongo.count(new Query(Criteria.where("publishPending").is(true)),
+                NotificationPersistence.class);
+    }
+
+    private List<Notification> notifications(int count) {
+        List<Notification> notifications = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            notifications.add(new MessageNotification("GAME", "player-" + i, "key_" + i));
+        }
+        return notifications;
+    }
+}
@@ -0,0 +1,115 @@
+package eu.trentorise.game.managers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.connection.CorrelationData.Confirm;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import eu.trentorise.game.notification.LevelGainedNotification;
+import eu.trentorise.game.repo.NotificationPersistence;
+
+public class RabbitMQManagerTest {
+
+	@InjectMocks
+	private RabbitMQManager rabbitMQManager;
+
+	@Mock
+	private RabbitAdmin rabbitAdmin;
+
+	@Mock
+	private RabbitTemplate rabbitTemplate;
+
+	@Mock
+	private ConnectionFactory connectionFactory;
+
+	private ConnectionListener connectionListener;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(rabbitMQManager, "rabbitMQEnabled", true);
+		ReflectionTestUtils.setField(rabbitMQManager, "rabbitMQExchangeName", "ge-notifications");
+		ReflectionTestUtils.setField(rabbitMQManager, "confirmTimeout", 1000L);
+		ReflectionTestUtils.setField(rabbitMQManager, "gameExchange",
+				new DirectExchange("ge-notifications"));
+
+		// the mock broker acks every message
+		doAnswer(invocation -> {
+			CorrelationData correlation = invocation.getArgument(3);
+			correlation.getFuture().set(new Confirm(true, null));
+			return null;
+		}).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class),
+				any(CorrelationData.class));
+
+		when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+		rabbitMQManager.init();
+		ArgumentCaptor<ConnectionListener> listener = ArgumentCaptor.forClass(ConnectionListener.class);
+		verify(connectionFactory).addConnectionListener(listener.capture());
+		connectionListener = listener.getValue();
+	}
+
+	@Test
+	public void declare_queue_once_per_game() {
+		List<NotificationPersistence> notifications = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			notifications.add(notification("GAME_A", "player-" + i));
+			notifications.add(notification("GAME_B", "player-" + i));
+		}
+
+		assertThat(rabbitMQManager.sendMessages(notifications), hasSize(20));
+		assertThat(rabbitMQManager.sendMessages(notifications.subList(0, 2)), hasSize(2));
+
+		verify(rabbitAdmin, times(2)).declareQueue(any(Queue.class));
+		verify(rabbitAdmin, times(2)).declareBinding(any(Binding.class));
+		verify(rabbitTemplate, times(22)).send(eq("ge-notifications"), anyString(),
+				any(Message.class), any(CorrelationData.class));
+	}
+
+	@Test
+	public void declare_queue_again_on_new_connection() {
+		rabbitMQManager.sendMessage(notification("GAME_A", "player"));
+		rabbitMQManager.sendMessage(notification("GAME_A", "player"));
+		verify(rabbitAdmin, times(1)).declareQueue(any(Queue.class));
+
+		connectionListener.onCreate(null);
+
+		rabbitMQManager.sendMessage(notification("GAME_A", "player"));
+		verify(rabbitAdmin, times(2)).declareQueue(any(Queue.class));
+		verify(rabbitAdmin, times(2)).declareBinding(any(Binding.class));
+	}
+
+	private NotificationPersistence notification(String gameId, String playerId) {
+		LevelGainedNotification notification = new LevelGainedNotification();
+		notification.setGameId(gameId);
+		notification.setPlayerId(playerId);
+		NotificationPersistence np = new NotificationPersistence(notification);
+		np.setId(gameId + "-" + playerId);
+		return np;
+	}
+}
@@ -0,0 +1,137 @@
+package eu.trentorise.game.managers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.Document;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.sleuth.autoconfig.brave.BraveAutoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+
+import eu.trentorise.game.config.AppConfig;
+import eu.trentorise.game.config.MongoConfig;
+import eu.trentorise.game.model.GroupChallenge;
+import eu.trentorise.game.model.PlayerBlackList;
+import eu.trentorise.game.model.PlayerState;
+import eu.trentorise.game.services.PlayerService;
+
+/**
+ * Challengers selection of readSystemPlayerState on a seeded game.
+ *
+ * The number of seeded players is set by the system property benchmark.players (default 200),
+ * run with -Dbenchmark.players=100000 to check the selection on a 100k players game
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = { AppConfig.class, MongoConfig.class, BraveAutoConfiguration.class }, loader = AnnotationConfigContextLoader.class)
+public class SystemPlayerStateBenchmarkTest {
+
+	private static final int PLAYERS = Integer.getInteger("benchmark.players", 200);
+	private static final String GAME = "challengersGame";
+	private static final String POINT_NAME = "green leaves";
+	private static final String PROPOSER = "player-0";
+	private static final int LEVELS = 10;
+
+	@Autowired
+	private PlayerService playerSrv;
+
+	@Autowired
+	private MongoTemplate mongo;
+
+	private Set<String> expected;
+
+	@Before
+	public void seed() {
+		// documents are removed keeping the indexes created at startup
+		mongo.remove(new Query(), PlayerState.class);
+		mongo.remove(new Query(), GroupChallenge.class);
+		mongo.remove(new Query(), PlayerBlackList.class);
+
+		expected = new HashSet<>();
+		List<Document> states = new ArrayList<>();
+		for (int i = 0; i < PLAYERS; i++) {
+			String playerId = "player-" + i;
+			int levelIndex = i % LEVELS;
+			boolean active = i % 7 != 0;
+			states.add(new Document("gameId", GAME).append("playerId", playerId)
+					.append("levels", Arrays.asList(new Document("levelName", "green")
+							.append("pointConcept", POINT_NAME).append("levelIndex", levelIndex)))
+					.append("customData", new Document(DBPlayerManager.ACTIVE_CAMPAIGN_KEY, active)));
+			if (states.size() == 1000) {
+				mongo.getCollection(mongo.getCollectionName(PlayerState.class)).insertMany(states);
+				states.clear();
+			}
+			// proposer is player-0 at level 0: candidates are at level 0, 1 and 2
+			if (i > 0 && levelIndex <= 2 && active) {
+				expected.add(playerId);
+			}
+		}
+		if (!states.isEmpty()) {
+			mongo.getCollection(mongo.getCollectionName(PlayerState.class)).insertMany(states);
+		}
+
+		// player-1 is blacklisted by the proposer, player-2 has blocked the proposer
+		PlayerBlackList blackList = new PlayerBlackList();
+		blackList.setGameId(GAME);
+		blackList.setPlayerId(PROPOSER);
+		blackList.getBlockedPlayers().add("player-1");
+		mongo.save(blackList);
+		blackList = new PlayerBlackList();
+		blackList.setGameId(GAME);
+		blackList.setPlayerId("player-2");
+		blackList.getBlockedPlayers().add(PROPOSER);
+		mongo.save(blackList);
+		expected.remove("player-1");
+		expected.remove("player-2");
+
+		// player-10 has 3 invitations, player-11 only 2, player-20 has a challenge starting next week
+		List<Document> challenges = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			challenges.add(groupChallenge("PROPOSED", "player-10", "proposer-" + i, new Date()));
+		}
+		for (int i = 0; i < 2; i++) {
+			challenges.add(groupChallenge("PROPOSED", "player-11", "proposer-" + i, new Date()));
+		}
+		challenges.add(groupChallenge("ASSIGNED", "player-20", "player-21",
+				DateTime.now().plusWeeks(1).toDate()));
+		mongo.getCollection(mongo.getCollectionName(GroupChallenge.class)).insertMany(challenges);
+		expected.remove("player-10");
+		expected.remove("player-20");
+		expected.remove("player-21");
+	}
+
+	@Test
+	public void selectChallengers() {
+		List<String> challengers = playerSrv.readSystemPlayerState(GAME, PROPOSER, POINT_NAME);
+
+		Assert.assertEquals(expected, new HashSet<>(challengers));
+		Assert.assertEquals(expected.size(), challengers.size());
+	}
+
+	@Test
+	public void sampleChallengers() {
+		List<String> challengers = playerSrv.readSystemPlayerState(GAME, PROPOSER, POINT_NAME, 10);
+
+		Assert.assertEquals(10, challengers.size());
+		Assert.assertTrue(expected.containsAll(challengers));
+	}
+
+	private Document groupChallenge(String state, String guest, String proposer, Date start) {
+		return new Document("gameId", GAME).append("state", state).append("start", start)
+				.append("attendees",
+						Arrays.asList(new Document("playerId", guest).append("role", "GUEST"),
+								new Document("playerId", proposer).append("role", "PROPOSER")));
+	}
+}
@@ -0,0 +1,41 @@
+package eu.trentorise.game.managers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+import eu.trentorise.game.managers.WorkflowMetrics.Stage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class WorkflowMetricsTest {
+
+    @Test
+    public void record_stages() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        WorkflowMetrics metrics = new WorkflowMetrics(registry);
+
+        metrics.record(Stage.STATE_LOAD, "GAME", "save_itinerary", metrics.start());
+        metrics.record(Stage.STATE_LOAD, "GAME", "save_itinerary", metrics.start());
+        metrics.record(Stage.RULES_EXECUTION, "GAME", "save_itinerary", metrics.start());
+
+        assertThat(registry.get(WorkflowMetrics.METER_STAGE).tag("stage", "state_load")
+                .tag("game", "GAME").tag("action", "save_itinerary").timer().count(), is(2L));
+        assertThat(registry.get(WorkflowMetrics.METER_STAGE).tag("stage", "rules_execution")
+                .timer().count(), is(1L));
+    }
+
+    @Test
+    public void record_failed_action() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        WorkflowMetrics metrics = new WorkflowMetrics(registry);
+
+        metrics.recordAction("GAME", "save_itinerary", metrics.start(), true);
+        metrics.recordAction("GAME", "save_itinerary", metrics.start(), false);
+
+        assertThat(registry.get(WorkflowMetrics.METER_ACTION).tag("outcome", "success").timer()
+                .count(), is(1L));
+        assertThat(registry.get(WorkflowMetrics.METER_ACTION_ERRORS).tag("game", "GAME")
+                .counter().count(), is(1d));
+    }
+}
@@ -0,0 +1,200 @@
+package eu.trentorise.game.managers.drools;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.kie.api.command.Command;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.ExecutionResults;
+import org.kie.api.runtime.StatelessKieSession;
+import org.kie.api.runtime.rule.QueryResults;
+import org.kie.api.runtime.rule.QueryResultsRow;
+import org.kie.internal.command.CommandFactory;
+import org.kie.internal.utils.KieHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.trentorise.game.model.Action;
+import eu.trentorise.game.model.BadgeCollectionConcept;
+import eu.trentorise.game.model.CustomData;
+import eu.trentorise.game.model.Member;
+import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.model.Propagation;
+import eu.trentorise.game.model.UpdateMembers;
+import eu.trentorise.game.model.UpdateTeams;
+import eu.trentorise.game.notification.BadgeNotification;
+
+/**
+ * Classification of the facts of an execution.
+ *
+ * The benchmark of the old queries against the single traversal runs only when the system
+ * property benchmark.facts is set, e.g. -Dbenchmark.facts=200
+ */
+public class ExecutionResultTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionResultTest.class);
+
+    private static final Integer BENCHMARK_FACTS = Integer.getInteger("benchmark.facts");
+    private static final int BENCHMARK_ITERATIONS = 500;
+
+    private static final String QUERIES_DRL = "package eu.trentorise.game.model\n"
+            + "import eu.trentorise.game.model.core.GameConcept\n"
+            + "import eu.trentorise.game.model.core.Notification\n"
+            + "query \"getGameConcepts\" $result: GameConcept() end\n"
+            + "query \"getNotifications\" $notifications: Notification() end\n"
+            + "query \"getCustomData\" $data: CustomData() end\n"
+            + "query \"getUpdateTeams\" $data: UpdateTeams() end\n"
+            + "query \"getUpdateMembers\" $data: UpdateMembers() end\n"
+            + "query \"getLevel\" Propagation($data: level) end\n"
+            + "query \"getMember\" $data: Member() end\n";
+
+    private static final String EMPTY_DRL = "package eu.trentorise.game.model\n";
+
+    @Test
+    public void classify_facts() {
+        List<Object> facts = Arrays.asList(new PointConcept("green leaves"),
+                new BadgeCollectionConcept("green badges"), new BadgeNotification("G", "P", "b"),
+                new CustomData(), new UpdateTeams("propagate"), new UpdateMembers("members"),
+                new Propagation("propagate", 2), new Member("P"), new Action("save_itinerary"));
+
+        ExecutionResult result = ExecutionResult.classify(facts);
+        assertThat(result.getGameConcepts(), hasSize(2));
+        assertThat(result.getNotifications(), hasSize(1));
+        assertThat(result.getCustomData(), hasSize(1));
+        assertThat(result.getUpdateTeams(), hasSize(1));
+        assertThat(result.getUpdateMembers(), hasSize(1));
+        assertThat(result.nextPropagationLevel(), is(3));
+        assertThat(result.getMember().getPlayerId(), is("P"));
+    }
+
+    @Test
+    public void no_propagation() {
+        ExecutionResult result = ExecutionResult.classify(null);
+        assertThat(result.getGameConcepts(), hasSize(0));
+        assertThat(result.nextPropagationLevel(), is(1));
+        assertThat(result.getMember(), is(nullValue()));
+    }
+
+    /**
+     * The single GetObjects traversal of the working memory extracts the same results of the old
+     * set of queries
+     */
+    @Test
+    public void single_traversal_same_results_of_queries() {
+        List<Object> facts = facts(20);
+        StatelessKieSession querySession =
+                new KieHelper().addContent(QUERIES_DRL, ResourceType.DRL).build()
+                        .newStatelessKieSession();
+        List<Command> cmds = commands(facts);
+        cmds.add(CommandFactory.newQuery("retrieveState", "getGameConcepts"));
+        cmds.add(CommandFactory.newQuery("retrieveNotifications", "getNotifications"));
+        cmds.add(CommandFactory.newQuery("retrieveCustomData", "getCustomData"));
+        ExecutionResults queries = querySession.execute(CommandFactory.newBatchExecution(cmds));
+
+        StatelessKieSession traversalSession =
+                new KieHelper().addContent(EMPTY_DRL, ResourceType.DRL).build()
+                        .newStatelessKieSession();
+        cmds = commands(facts);
+        cmds.add(CommandFactory.newGetObjects("facts"));
+        ExecutionResult result = ExecutionResult.classify((Collection<?>) traversalSession
+                .execute(CommandFactory.newBatchExecution(cmds)).getValue("facts"));
+
+        assertThat(result.getGameConcepts(),
+                containsInAnyOrder(queryRows(queries, "retrieveState", "$result").toArray()));
+        assertThat(result.getNotifications(), containsInAnyOrder(
+                queryRows(queries, "retrieveNotifications", "$notifications").toArray()));
+        assertThat(result.getCustomData(),
+                containsInAnyOrder(queryRows(queries, "retrieveCustomData", "$data").toArray()));
+    }
+
+    /**
+     * Compare the extraction of the execution results through the old set of queries against a
+     * single GetObjects traversal of the working memory
+     */
+    @Test
+    public void benchmark_queries_vs_single_traversal() {
+        Assume.assumeTrue(BENCHMARK_FACTS != null);
+        List<Object> facts = facts(BENCHMARK_FACTS);
+        StatelessKieSession querySession =
+                new KieHelper().addContent(QUERIES_DRL, ResourceType.DRL).build()
+                        .newStatelessKieSession();
+        StatelessKieSession traversalSession =
+                new KieHelper().addContent(EMPTY_DRL, ResourceType.DRL).build()
+                        .newStatelessKieSession();
+
+        // warm-up
+        runQueries(querySession, facts, BENCHMARK_ITERATIONS / 5);
+        runTraversal(traversalSession, facts, BENCHMARK_ITERATIONS / 5);
+
+        long start = System.nanoTime();
+        runQueries(querySession, facts, BENCHMARK_ITERATIONS);
+        long queriesTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        runTraversal(traversalSession, facts, BENCHMARK_ITERATIONS);
+        long traversalTime = System.nanoTime() - start;
+
+        logger.info(
+                "results extraction of {} facts x {} executions: queries {} ms, single traversal {} ms",
+                facts.size(), BENCHMARK_ITERATIONS, queriesTime / 1_000_000,
+                traversalTime / 1_000_000);
+    }
+
+    private void runQueries(StatelessKieSession kSession, List<Object> facts, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            List<Command> cmds = commands(facts);
+            cmds.add(CommandFactory.newQuery("retrieveState", "getGameConcepts"));
+            cmds.add(CommandFactory.newQuery("retrieveNotifications", "getNotifications"));
+            cmds.add(CommandFactory.newQuery("retrieveCustomData", "getCustomData"));
+            cmds.add(CommandFactory.newQuery("retrieveUpdateTeams", "getUpdateTeams"));
+            cmds.add(CommandFactory.newQuery("retrieveUpdateMembers", "getUpdateMembers"));
+            cmds.add(CommandFactory.newQuery("retrieveLevel", "getLevel"));
+            cmds.add(CommandFactory.newQuery("retrieveMember", "getMember"));
+            kSession.execute(CommandFactory.newBatchExecution(cmds));
+        }
+    }
+
+    private void runTraversal(StatelessKieSession kSession, List<Object> facts, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            List<Command> cmds = commands(facts);
+            cmds.add(CommandFactory.newGetObjects("facts"));
+            ExecutionResults results = kSession.execute(CommandFactory.newBatchExecution(cmds));
+            ExecutionResult.classify((Collection<?>) results.getValue("facts"));
+        }
+    }
+
+    private List<Object> queryRows(ExecutionResults results, String query, String identifier) {
+        List<Object> rows = new ArrayList<>();
+        for (QueryResultsRow row : (QueryResults) results.getValue(query)) {
+            rows.add(row.get(identifier));
+        }
+        return rows;
+    }
+
+    private List<Object> facts(int concepts) {
+        List<Object> facts = new ArrayList<>();
+        for (int i = 0; i < concepts; i++) {
+            facts.add(new PointConcept("point_" + i));
+        }
+        facts.add(new CustomData());
+        facts.add(new BadgeNotification("G", "P", "b"));
+        return facts;
+    }
+
+    private List<Command> commands(List<Object> facts) {
+        List<Command> cmds = new ArrayList<>();
+        cmds.add(CommandFactory.newInsertElements(facts));
+        cmds.add(CommandFactory.newFireAllRules());
+        return cmds;
+    }
+}
@@ -0,0 +1,60 @@
+package eu.trentorise.game.managers.drools;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.kie.api.io.ResourceType;
+import org.kie.api.runtime.KieSession;
+import org.kie.internal.utils.KieHelper;
+
+import eu.trentorise.game.managers.drools.RuleProfiler.RuleProfile;
+import eu.trentorise.game.model.Action;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RuleProfilerTest {
+
+    private static final String DRL = "package eu.trentorise.game.model\n"
+            + "rule \"save itinerary\" when Action(id == \"save_itinerary\") then end\n"
+            + "rule \"never fired\" when Action(id == \"none\") then end\n";
+
+    @Test
+    public void disabled_profiler() {
+        RuleProfiler profiler = new RuleProfiler(new SimpleMeterRegistry());
+        assertThat(profiler.newListener("GAME"), is(nullValue()));
+    }
+
+    @Test
+    public void profile_rules() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RuleProfiler profiler = new RuleProfiler(registry);
+        profiler.setEnabled(true);
+
+        for (int i = 0; i < 3; i++) {
+            KieSession session = new KieHelper().addContent(DRL, ResourceType.DRL).build()
+                    .newKieSession();
+            session.addEventListener(profiler.newListener("GAME"));
+            session.insert(new Action("save_itinerary"));
+            session.fireAllRules();
+            session.dispose();
+        }
+
+        List<RuleProfile> profile = profiler.readProfile("GAME");
+        assertThat(profile, hasSize(1));
+        assertThat(profile.get(0).getRuleName(), is("save itinerary"));
+        assertThat(profile.get(0).getMatches(), is(3L));
+        assertThat(profile.get(0).getFires(), is(3L));
+        assertThat(registry.get(RuleProfiler.METER_FIRES).tag("game", "GAME")
+                .tag("rule", "save itinerary").counter().count(), is(3d));
+        assertThat(registry.get(RuleProfiler.METER_EXECUTION).tag("game", "GAME").timer()
+                .count(), is(3L));
+
+        profiler.resetProfile("GAME");
+        assertThat(profiler.readProfile("GAME"), hasSize(0));
+        assertThat(registry.find(RuleProfiler.METER_FIRES).counter(), is(nullValue()));
+    }
+}
@@ -0,0 +1,70 @@
+package eu.trentorise.game.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.Test;
+
+public class ScoreSketchTest {
+
+    @Test
+    public void merge_sketches() {
+        ScoreSketch first = new ScoreSketch();
+        ScoreSketch second = new ScoreSketch();
+        for (int i = 1; i <= 100; i++) {
+            if (i % 3 == 0) {
+                first.add(i);
+            } else {
+                second.add(i);
+            }
+        }
+        first.merge(second);
+
+        assertThat(first.getCount(), is(100L));
+        assertThat(first.getMean(), closeTo(50.5, 1e-9));
+        assertThat(first.variance(), closeTo(833.25, 1e-9));
+        assertThat(first.quantile(0), closeTo(1, 1 * ScoreSketch.RELATIVE_ACCURACY));
+        assertThat(first.quantile(0.5), closeTo(50.5, 50.5 * ScoreSketch.RELATIVE_ACCURACY));
+        assertThat(first.quantile(0.9), closeTo(90.1, 90.1 * ScoreSketch.RELATIVE_ACCURACY));
+    }
+
+    @Test
+    public void subtract_changed_scores() {
+        ScoreSketch sketch = new ScoreSketch();
+        sketch.add(1);
+        sketch.add(2);
+        sketch.add(10);
+
+        // score 10 changed to 3
+        ScoreSketch removed = new ScoreSketch();
+        removed.add(10);
+        ScoreSketch added = new ScoreSketch();
+        added.add(3);
+        sketch.merge(added);
+        sketch.subtract(removed);
+
+        assertThat(sketch.getCount(), is(3L));
+        assertThat(sketch.getMean(), closeTo(2, 1e-9));
+        assertThat(sketch.variance(), closeTo(2d / 3, 1e-9));
+        assertThat(sketch.quantile(1), closeTo(3, 3 * ScoreSketch.RELATIVE_ACCURACY));
+    }
+
+    @Test
+    public void empty_sketch() {
+        ScoreSketch sketch = new ScoreSketch();
+        sketch.add(5);
+        ScoreSketch removed = new ScoreSketch();
+        removed.add(5);
+        sketch.subtract(removed);
+
+        assertThat(sketch.getCount(), is(0L));
+        assertThat(sketch.variance(), is(0d));
+        assertThat(sketch.quantiles(10).get(9), is(0d));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void not_positive_score() {
+        new ScoreSketch().add(0);
+    }
+}
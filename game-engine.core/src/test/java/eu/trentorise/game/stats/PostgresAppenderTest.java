@@ -0,0 +1,91 @@
+package eu.trentorise.game.stats;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.SimpleLayout;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import eu.trentorise.game.stats.StatsEvent.Field;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PostgresAppenderTest {
+
+    private static final Logger STATS = Logger.getLogger("postgres.appender.test");
+
+    @Test
+    public void spill_events_when_database_is_unreachable() throws IOException {
+        File spillFile = File.createTempFile("stats-spill", ".log");
+        spillFile.deleteOnExit();
+
+        PostgresAppender appender = new PostgresAppender();
+        appender.setLayout(new SimpleLayout());
+        appender.setUrl("jdbc:unknown://localhost/stats");
+        appender.setBatchSize(2);
+        appender.setFlushInterval(50);
+        appender.setSpillFile(spillFile.getAbsolutePath());
+        appender.activateOptions();
+
+        for (int i = 0; i < 5; i++) {
+            StatsEvent event = new StatsEvent(RecordType.ACTION, null, "GAME", "PLAYER",
+                    "EXEC_ID", 1000, 1200).with(Field.ACTION_NAME, "action_" + i);
+            appender.doAppend(new LoggingEvent(Logger.class.getName(), STATS, Level.INFO, event, null));
+        }
+        // close writes the events still in the buffer
+        appender.close();
+
+        List<String> rows = Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8);
+        assertThat(rows, hasSize(5));
+        assertThat(rows.get(4), is(
+                "INFO - \"GAME\" \"PLAYER\" EXEC_ID 1000 1200 type=Action actionName=\"action_4\""));
+        Record record = new Record(rows.get(0));
+        assertThat(record.getType(), is(RecordType.ACTION));
+    }
+
+    @Test
+    public void drop_events_of_full_buffer() throws Exception {
+        File spillFile = File.createTempFile("stats-spill", ".log");
+        spillFile.deleteOnExit();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            PostgresAppender appender = new PostgresAppender();
+            appender.setLayout(new SimpleLayout());
+            appender.setUrl("jdbc:unknown://localhost/stats");
+            appender.setBufferSize(2);
+            appender.setSpillFile(spillFile.getAbsolutePath());
+            appender.activateOptions();
+
+            // writer stopped: the buffer is not drained anymore
+            ReflectionTestUtils.setField(appender, "running", false);
+            Thread writer = (Thread) ReflectionTestUtils.getField(appender, "writer");
+            writer.interrupt();
+            writer.join(5000);
+
+            for (int i = 0; i < 5; i++) {
+                StatsEvent event = new StatsEvent(RecordType.ACTION, null, "GAME", "PLAYER",
+                        "EXEC_ID", 1000, 1200).with(Field.ACTION_NAME, "action_" + i);
+                appender.doAppend(new LoggingEvent(Logger.class.getName(), STATS, Level.INFO, event, null));
+            }
+            appender.close();
+
+            // the logging thread never writes the spill file
+            assertThat(spillFile.length(), is(0L));
+            assertThat(registry.counter("gamification.stats.postgres.dropped").count(), is(3d));
+        } finally {
+            Metrics.removeRegistry(registry);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package eu.trentorise.game.stats;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import eu.trentorise.game.core.StatsLogger;
+import eu.trentorise.game.model.BadgeCollectionConcept;
+import eu.trentorise.game.model.PointConcept;
+import eu.trentorise.game.stats.StatsEvent.Field;
+
+public class StatsEventTest {
+
+    @Test
+    public void text_representation() {
+        StatsEvent event = new StatsEvent(RecordType.RULE_POINTCONCEPT, "DOMAIN", "GAME", "PLAYER",
+                "EXEC_ID", 1000, 1200).with(Field.RULE_NAME, "rule")
+                        .with(Field.NAME, "green leaves").with(Field.DELTA_SCORE, 2d)
+                        .with(Field.SCORE, 12d);
+        assertThat(event.toString(), is(
+                "\"DOMAIN\" \"GAME\" \"PLAYER\" EXEC_ID 1000 1200 type=PointConcept ruleName=\"rule\" name=\"green leaves\" deltaScore=2.0 score=12.0"));
+
+        event = new StatsEvent(RecordType.CHALLENGE_FAILED, null, "GAME", "PLAYER", "EXEC_ID",
+                1000, 1200).with(Field.NAME, "challenge");
+        assertThat(event.toString(), is(
+                "\"GAME\" \"PLAYER\" EXEC_ID 1000 1200 type=ChallengeFailed name=\"challenge\" failed"));
+    }
+
+    @Test
+    public void stats_logger_text_is_unchanged() {
+        BadgeCollectionConcept badges = new BadgeCollectionConcept("green badges");
+        badges.getBadgeEarned().add("10-points");
+        assertThat(
+                StatsLogger.logRule("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1000, 1200, "rule",
+                        badges),
+                is("\"DOMAIN\" \"GAME\" \"PLAYER\" EXEC_ID 1000 1200 type=BadgeCollectionConcept ruleName=\"rule\" name=\"green badges\" badges=\"[10-points]\""));
+        assertThat(StatsLogger.logUserCreation("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1000),
+                is("\"DOMAIN\" \"GAME\" \"PLAYER\" EXEC_ID 1000 1000 type=UserCreation creation"));
+        assertThat(
+                StatsLogger.logInviteToChallenge("", "GAME", "PLAYER", "EXEC_ID", 1000, 1000,
+                        "GUEST", "instance", "groupCompetitiveTime"),
+                is("\"GAME\" \"PLAYER\" EXEC_ID 1000 1000 type=ChallengeInvitation guest=\"GUEST\" name=\"instance\" challengeType=\"groupCompetitiveTime\""));
+    }
+
+    @Test
+    public void text_is_parsed_by_record_analyzers() {
+        PointConcept concept = new PointConcept("green leaves");
+        concept.setScore(12d);
+        String text = StatsLogger.logRulePointConceptDelta(null, "GAME", "PLAYER", "EXEC_ID",
+                1000, "rule", concept, 2d);
+        Record record = new Record("INFO - " + text);
+        assertThat(record.getType(), is(RecordType.RULE_POINTCONCEPT));
+        assertThat(RecordAnalyzerFactory.getAnalyzer(record).extractData().get("deltaScore"),
+                is("2.0"));
+    }
+
+    @Test
+    public void binary_roundtrip() throws IOException {
+        StatsEvent assigned = new StatsEvent(RecordType.CHALLENGE_ASSIGNED, "DOMAIN", "GAME",
+                "PLAYER", "EXEC_ID", 1000, 1200).with(Field.NAME, "challenge")
+                        .with(Field.START_DATE, null).with(Field.END_DATE, 1508623200000L);
+        StatsEvent point = new StatsEvent(RecordType.RULE_POINTCONCEPT, null, "GAME", "PLAYER",
+                "EXEC_ID", 1000, 1200).with(Field.RULE_NAME, "rule").with(Field.SCORE, 12d);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StatsEventCodec.writeFrame(out, assigned);
+        StatsEventCodec.writeFrame(out, point);
+        // truncated frame
+        out.write(new byte[] {0, 0, 1});
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        StatsEvent read = StatsEventCodec.readFrame(in);
+        assertThat(read.toString(), is(assigned.toString()));
+        assertThat(read.has(Field.START_DATE), is(true));
+        read = StatsEventCodec.readFrame(in);
+        assertThat(read.getDouble(Field.SCORE), is(12d));
+        assertThat(read.getDomain(), is(nullValue()));
+        assertThat(StatsEventCodec.readFrame(in), is(nullValue()));
+    }
+
+    @Test
+    public void custom_sink() {
+        List<StatsEvent> received = new ArrayList<>();
+        StatsEventSink sink = received::add;
+        StatsLogger.addSink(sink);
+        try {
+            // no text sink is enabled: the text is not rendered
+            assertThat(StatsLogger.logEndGameAction("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1000,
+                    1200), is(nullValue()));
+            StatsLogger.logBlacklist("DOMAIN", "GAME", "PLAYER", "EXEC_ID", 1200, "BLOCKED");
+        } finally {
+            StatsLogger.removeSink(sink);
+        }
+        assertThat(received, hasSize(2));
+        assertThat(Arrays.asList(received.get(0).getType(), received.get(1).getType()),
+                is(Arrays.asList(RecordType.END_GAME_ACTION, RecordType.BLACKLIST)));
+        assertThat(received.get(1).getString(Field.BLOCKED_PLAYER), is("BLOCKED"));
+        assertThat(ReflectionTestUtils.getField(received.get(0), "text"), is(nullValue()));
+    }
+}
@@ -0,0 +1,178 @@
+package eu.trentorise.game.stats;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.sleuth.autoconfig.brave.BraveAutoConfiguration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.AnnotationConfigContextLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.mongodb.client.model.Filters;
+
+import eu.trentorise.game.config.AppConfig;
+import eu.trentorise.game.config.MongoConfig;
+import eu.trentorise.game.config.RabbitConf;
+
+/**
+ * Export of the statsOutbox collection: checkpoint and resume after a restart
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {AppConfig.class, MongoConfig.class, RabbitConf.class, BraveAutoConfiguration.class},
+        loader = AnnotationConfigContextLoader.class)
+public class StatsOutboxExporterTest {
+
+    private static final long TIMEOUT = 10000;
+    private static final long BATCH_INTERVAL = 100;
+
+    @Autowired
+    private MongoTemplate mongo;
+
+    private long now;
+
+    @Before
+    public void setup() {
+        mongo.getDb().drop();
+        new StatsOutboxSink(mongo, 1024 * 1024, 10, 100);
+        now = System.currentTimeMillis();
+    }
+
+    @Test
+    public void checkpoint_last_exported_event() throws Exception {
+        List<ObjectId> ids = insert(1, 2, 3);
+
+        RecordingTarget target = new RecordingTarget();
+        StatsOutboxExporter exporter = start(target, 60);
+        try {
+            waitExported(target, 3);
+        } finally {
+            exporter.shutdown();
+        }
+        assertThat(target.executionIds(), is(Arrays.asList("EXEC_1", "EXEC_2", "EXEC_3")));
+        assertThat(checkpoint(), is(ids.get(2)));
+    }
+
+    @Test
+    public void resume_after_restart() throws Exception {
+        insert(1, 2, 3);
+        RecordingTarget target = new RecordingTarget();
+        StatsOutboxExporter exporter = start(target, 0);
+        try {
+            waitExported(target, 3);
+        } finally {
+            exporter.shutdown();
+        }
+
+        // events written while the exporter is down
+        List<ObjectId> ids = insert(4, 5);
+        target = new RecordingTarget();
+        exporter = start(target, 0);
+        try {
+            waitExported(target, 2);
+            Thread.sleep(BATCH_INTERVAL * 5);
+        } finally {
+            exporter.shutdown();
+        }
+        assertThat(target.executionIds(), is(Arrays.asList("EXEC_4", "EXEC_5")));
+        assertThat(checkpoint(), is(ids.get(1)));
+    }
+
+    @Test
+    public void resume_margin_exports_events_again() throws Exception {
+        insert(1, 2, 3);
+        RecordingTarget target = new RecordingTarget();
+        StatsOutboxExporter exporter = start(target, 0);
+        try {
+            waitExported(target, 3);
+        } finally {
+            exporter.shutdown();
+        }
+
+        // events are 100 seconds apart: a margin of 150 seconds goes back to the second event
+        insert(4);
+        target = new RecordingTarget();
+        exporter = start(target, 150);
+        try {
+            waitExported(target, 3);
+            Thread.sleep(BATCH_INTERVAL * 5);
+        } finally {
+            exporter.shutdown();
+        }
+        assertThat(target.executionIds(), is(Arrays.asList("EXEC_2", "EXEC_3", "EXEC_4")));
+    }
+
+    private StatsOutboxExporter start(StatsOutboxTarget target, long resumeMargin) {
+        StatsOutboxExporter exporter = new StatsOutboxExporter();
+        ReflectionTestUtils.setField(exporter, "mongoTemplate", mongo);
+        ReflectionTestUtils.setField(exporter, "customTarget", target);
+        ReflectionTestUtils.setField(exporter, "batchSize", 2);
+        ReflectionTestUtils.setField(exporter, "batchInterval", BATCH_INTERVAL);
+        ReflectionTestUtils.setField(exporter, "resumeMarginSeconds", resumeMargin);
+        exporter.init();
+        return exporter;
+    }
+
+    /*
+     * Inserts an event for every index, the _id of the event is 100 seconds after the previous
+     * index
+     */
+    private List<ObjectId> insert(int... indexes) {
+        List<Document> documents = new ArrayList<>();
+        for (int index : indexes) {
+            Document document = StatsOutboxSink.toDocument(new StatsEvent(RecordType.ACTION, null,
+                    "GAME", "PLAYER", "EXEC_" + index, 1000, 1200)
+                            .with(StatsEvent.Field.ACTION_NAME, "action"));
+            document.put("_id", new ObjectId(new Date(now - (10 - index) * 100000L)));
+            documents.add(document);
+        }
+        mongo.getCollection(StatsOutboxSink.COLLECTION).insertMany(documents);
+        return documents.stream().map(d -> d.getObjectId("_id")).collect(Collectors.toList());
+    }
+
+    private ObjectId checkpoint() {
+        return mongo.getCollection(StatsOutboxExporter.CHECKPOINT_COLLECTION)
+                .find(Filters.eq("_id", RecordingTarget.class.getName())).first()
+                .getObjectId("lastId");
+    }
+
+    private void waitExported(RecordingTarget target, int events) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (target.executionIds().size() < events && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        // the checkpoint is saved after the write
+        Thread.sleep(BATCH_INTERVAL);
+        assertThat(target.executionIds().size(), is(events));
+    }
+
+    private static class RecordingTarget implements StatsOutboxTarget {
+
+        private final List<String> executionIds = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void write(List<StatsEvent> events) {
+            events.forEach(e -> executionIds.add(e.getExecutionId()));
+        }
+
+        private List<String> executionIds() {
+            synchronized (executionIds) {
+                return new ArrayList<>(executionIds);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package eu.trentorise.game.stats;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import com.mongodb.MongoSocketException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+
+import eu.trentorise.game.stats.StatsEvent.Field;
+
+public class StatsOutboxTest {
+
+    @Test
+    public void document_roundtrip() {
+        StatsEvent event = new StatsEvent(RecordType.RULE_POINTCONCEPT, "DOMAIN", "GAME", "PLAYER",
+                "EXEC_ID", 1000, 1200).with(Field.RULE_NAME, "rule")
+                        .with(Field.NAME, "green leaves").with(Field.DELTA_SCORE, 2d)
+                        .with(Field.SCORE, 12d);
+        Document document = StatsOutboxSink.toDocument(event);
+        StatsEvent read = StatsOutboxSink.toEvent(document);
+        assertThat(read.toString(), is(event.toString()));
+        assertThat(read.getDouble(Field.SCORE), is(12d));
+    }
+
+    @Test
+    public void file_target_writes_stats_log_rows() throws IOException {
+        File file = File.createTempFile("stats-outbox", ".log");
+        file.deleteOnExit();
+        StatsOutboxTarget target = new FileStatsOutboxTarget(file.getAbsolutePath());
+        try {
+            target.write(Arrays.asList(
+                    new StatsEvent(RecordType.ACTION, null, "GAME", "PLAYER", "EXEC_ID", 1000,
+                            1200).with(Field.ACTION_NAME, "save_itinerary"),
+                    new StatsEvent(RecordType.END_GAME_ACTION, null, "GAME", "PLAYER", "EXEC_ID",
+                            1000, 1300)));
+        } finally {
+            target.close();
+        }
+        List<String> rows = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertThat(rows, hasSize(2));
+        Record record = new Record(rows.get(0));
+        assertThat(RecordAnalyzerFactory.getAnalyzer(record).extractData().get("actionName"),
+                is("save_itinerary"));
+        assertThat(rows.get(1),
+                is("INFO - \"GAME\" \"PLAYER\" EXEC_ID 1000 1300 type=EndGameAction end"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void failed_batch_written_at_next_flush() {
+        List<Document> outbox = new ArrayList<>();
+        boolean[] available = {false};
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        doAnswer(invocation -> {
+            if (!available[0]) {
+                throw new MongoSocketException("outbox not reachable", new ServerAddress());
+            }
+            outbox.addAll(invocation.getArgument(0));
+            return null;
+        }).when(collection).insertMany(anyList(), any(InsertManyOptions.class));
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.collectionExists(anyString())).thenReturn(true);
+        when(mongoTemplate.getCollection(StatsOutboxSink.COLLECTION)).thenReturn(collection);
+
+        StatsOutboxSink sink = new StatsOutboxSink(mongoTemplate, 1024, 2, 3);
+        for (int i = 1; i <= 4; i++) {
+            sink.publish(new StatsEvent(RecordType.ACTION, null, "GAME", "PLAYER", "EXEC_" + i,
+                    1000, 1200).with(Field.ACTION_NAME, "action"));
+        }
+        sink.flush();
+        assertThat(outbox, hasSize(0));
+
+        // the oldest event exceeding the pending limit is dropped
+        available[0] = true;
+        sink.flush();
+        assertThat(outbox, hasSize(3));
+        assertThat(StatsOutboxSink.toEvent(outbox.get(0)).getExecutionId(), is("EXEC_2"));
+        sink.flush();
+        assertThat(outbox, hasSize(3));
+    }
+}
@@ -1,57 +1,50 @@
 package it.smartcommunitylab.gamification.log2elastic;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
-import it.smartcommunitylab.gamification.log2elastic.analyzer.RecordAnalyzer;
-import it.smartcommunitylab.gamification.log2elastic.analyzer.RecordAnalyzerFactory;
-
 public class Application {
     private static final String PREFIX_PROCESSED_FILE = "NEW-";
-    private static final String GAMEID = "";
 
 	private static final Logger logger = Logger.getLogger(Application.class);
 
-	public static void main(String[] args) throws IOException {
+	public static void main(String[] args) throws IOException, InterruptedException {
         final Config config = new Config(args);
-		String logfolderPath = args[0];
 		logger.debug("stats processiong logs");
-		File folder = new File(logfolderPath);
+		File folder = new File(config.getLogFolderPath());
 		File[] listOfFiles = folder.listFiles();
         ESHelper esHelper = new ESHelper(config);
-		for (int i = 0; i < listOfFiles.length; i++) {
-			if (!listOfFiles[i].isDirectory()) {
-				if (isLogFileProcessato(listOfFiles[i])) {
-					logger.info("processing FILE: " + listOfFiles[i].getName());
-					FileReader fr = null;
-					BufferedReader br = null;
-					fr = new FileReader(args[0] + "/" + listOfFiles[i].getName());
-					br = new BufferedReader(fr);
-
-					String inputLine;
-					while ((inputLine = br.readLine()) != null) {
-						Record record = analizza(inputLine);
-						logger.debug("Record type: " + record.getType());
-						RecordAnalyzer analyzer = RecordAnalyzerFactory.getAnalyzer(record);
-						Map<String, String> recordFields = analyzer.extractData();
-                        if (GAMEID.equals(recordFields.get("gameId"))) {
-                            esHelper.saveRecord(record.getType(), recordFields.get("gameId"),
-                                    Long.valueOf(recordFields.get("executionTime")), recordFields);
-                        } else {
-                            logger.info("skip event for game not selected: "
-                                    + recordFields.get("gameId"));
-                        }
-					}
-
-					br.close();
-				}
-			}
-		}
+        ExecutorService workers = Executors.newFixedThreadPool(config.getThreads());
+        try (OffsetJournal journal = new OffsetJournal(new File(config.getJournalPath()))) {
+            List<Future<Long>> indexers = new ArrayList<>();
+            for (int i = 0; i < listOfFiles.length; i++) {
+                if (!listOfFiles[i].isDirectory() && isLogFileProcessato(listOfFiles[i])) {
+                    indexers.add(workers
+                            .submit(new LogFileIndexer(listOfFiles[i], config, esHelper, journal)));
+                }
+            }
+            long pushed = 0;
+            for (Future<Long> indexer : indexers) {
+                try {
+                    pushed += indexer.get();
+                } catch (ExecutionException e) {
+                    // the journal keeps the offset reached, next run resumes the file
+                    logger.error("processing failed: " + e.getCause().getMessage());
+                }
+            }
+            logger.info("pushed " + pushed + " records");
+        } finally {
+            workers.shutdown();
+            esHelper.close();
+        }
 
 		logger.info("application end");
 	}
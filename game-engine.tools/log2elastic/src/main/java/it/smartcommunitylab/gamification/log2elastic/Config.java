@@ -1,13 +1,32 @@
 package it.smartcommunitylab.gamification.log2elastic;
 
+import java.io.File;
+
+/**
+ * Configuration of the application: the command line arguments and the tuning options set as
+ * system properties
+ */
 public class Config {
     private String logFolderPath;
     private boolean pushToElastic7 = true;
 
+    private String elasticUrl = System.getProperty("elastic.url", "http://localhost:9200");
+    private String gameId = System.getProperty("gameId", "");
+    private int bulkActions = Integer.getInteger("bulk.actions", 5000);
+    private long bulkBytes = Long.getLong("bulk.bytes", 5 * 1024 * 1024);
+    private int concurrentRequests = Integer.getInteger("bulk.concurrency", 4);
+    private int maxRetries = Integer.getInteger("bulk.retries", 8);
+    private long retryBackoff = Long.getLong("bulk.backoff", 500);
+    private int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+    private String journalPath = System.getProperty("journal");
+
 
     public Config(String[] commandLineArgs) {
         logFolderPath = commandLineArgs[0];
         pushToElastic7 = commandLineArgs.length == 1 || !commandLineArgs[1].equals("--elastic5");
+        if (journalPath == null) {
+            journalPath = new File(logFolderPath, "log2elastic.journal").getPath();
+        }
     }
 
 
@@ -20,4 +39,95 @@ public class Config {
         return pushToElastic7;
     }
 
+    public String getElasticUrl() {
+        return elasticUrl;
+    }
+
+    public void setElasticUrl(String elasticUrl) {
+        this.elasticUrl = elasticUrl;
+    }
+
+    /**
+     * @return gameId of the events to insert into ElasticSearch
+     */
+    public String getGameId() {
+        return gameId;
+    }
+
+    public void setGameId(String gameId) {
+        this.gameId = gameId;
+    }
+
+    /**
+     * @return max number of records sent in a _bulk request
+     */
+    public int getBulkActions() {
+        return bulkActions;
+    }
+
+    public void setBulkActions(int bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    /**
+     * @return max size in bytes of the body of a _bulk request
+     */
+    public long getBulkBytes() {
+        return bulkBytes;
+    }
+
+    public void setBulkBytes(long bulkBytes) {
+        this.bulkBytes = bulkBytes;
+    }
+
+    /**
+     * @return max number of _bulk requests in flight
+     */
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    public void setConcurrentRequests(int concurrentRequests) {
+        this.concurrentRequests = concurrentRequests;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return wait in millis before the first retry of a rejected request, doubled at every
+     *         retry
+     */
+    public long getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    public void setRetryBackoff(long retryBackoff) {
+        this.retryBackoff = retryBackoff;
+    }
+
+    /**
+     * @return number of log files processed in parallel
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public String getJournalPath() {
+        return journalPath;
+    }
+
+    public void setJournalPath(String journalPath) {
+        this.journalPath = journalPath;
+    }
+
 }
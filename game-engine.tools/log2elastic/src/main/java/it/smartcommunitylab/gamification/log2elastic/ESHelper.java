@@ -4,82 +4,192 @@ import java.io.IOException;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
-
+import okhttp3.ResponseBody;
+
+/**
+ * Sends the records to ElasticSearch through the _bulk endpoint.
+ *
+ * Requests are asynchronous, at most {@link Config#getConcurrentRequests()} are in flight: callers
+ * of {@link #bulk(List)} wait for a free slot. Requests and single actions rejected with status 429
+ * are retried with an exponential backoff
+ */
 public class ESHelper {
 
-    public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    public static final MediaType NDJSON = MediaType.parse("application/x-ndjson; charset=utf-8");
 
     private static final Logger logger = Logger.getLogger(ESHelper.class);
-    static OkHttpClient client;
-    static {
-        client = new OkHttpClient();
-    }
 
-    private static final String ELASTIC_URL = "http://localhost:9200";
     private static final String INDEX_PREFIX = "gamification-stats-";
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
 
-    private Config config;
+    private final Config config;
+    private final OkHttpClient client;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService retryScheduler;
+    private final Gson gson = new Gson();
+    private final DateTimeFormatter indexSuffixFormatter =
+            DateTimeFormatter.ofPattern("YYYY-MM-'w'w").withZone(ZoneOffset.systemDefault());
 
     public ESHelper(Config config) {
         this.config = config;
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.getConcurrentRequests());
+        dispatcher.setMaxRequestsPerHost(config.getConcurrentRequests());
+        client = new OkHttpClient.Builder().dispatcher(dispatcher).readTimeout(60, TimeUnit.SECONDS)
+                .build();
+        inFlight = new Semaphore(config.getConcurrentRequests());
+        retryScheduler = Executors.newSingleThreadScheduledExecutor();
     }
 
-    private String pushToElastic(String url, String json) throws IOException {
-        RequestBody body = RequestBody.create(JSON, json);
-        Request request = new Request.Builder().url(url).post(body).build();
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                logger.warn("Record not corrected pushed in elasticsearch: " + json);
-            }
-            String out = response.body().string();
-            response.close();
-            return out;
-        }
+    private String getIndexName(String gameId, long timestamp) {
+        String indexSuffix = indexSuffixFormatter.format(Instant.ofEpochMilli(timestamp));
+        return INDEX_PREFIX + gameId + "-" + indexSuffix;
 
     }
 
-    private String pushToElastic(String url, Map<String, String> fields) throws IOException {
-        String json = toJsonString(fields);
-        return pushToElastic(url, json);
+    /**
+     * @return the action and the source lines of the record in the body of a _bulk request
+     */
+    public String toBulkAction(RecordType recordType, String gameId, long creationTimestamp,
+            Map<String, String> recordFields) {
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("_index", getIndexName(gameId, creationTimestamp));
+        if (!config.pushToElastic7()) {
+            metadata.put("_type", recordType.getRepresentation());
+        }
+        return gson.toJson(Collections.singletonMap("index", metadata)) + "\n"
+                + gson.toJson(recordFields) + "\n";
     }
 
-    private String getIndexName(String gameId, long timestamp) {
-        String indexSuffix = DateTimeFormatter.ofPattern("YYYY-MM-'w'w")
-                .withZone(ZoneOffset.systemDefault()).format(Instant.ofEpochMilli(timestamp));
-        return INDEX_PREFIX + gameId + "-" + indexSuffix;
+    /**
+     * Sends the actions in a _bulk request, waits if the max number of requests is already in
+     * flight
+     *
+     * @param actions actions created by
+     *        {@link #toBulkAction(RecordType, String, long, Map)}
+     * @return future completed when all the actions are accepted by ElasticSearch
+     * @throws InterruptedException
+     */
+    public CompletableFuture<Void> bulk(List<String> actions) throws InterruptedException {
+        inFlight.acquire();
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        result.whenComplete((nothing, ex) -> inFlight.release());
+        send(new ArrayList<>(actions), 0, result);
+        return result;
+    }
 
+    private void send(final List<String> actions, final int attempt,
+            final CompletableFuture<Void> result) {
+        StringBuilder body = new StringBuilder();
+        for (String action : actions) {
+            body.append(action);
+        }
+        Request request = new Request.Builder().url(config.getElasticUrl() + "/_bulk")
+                .post(RequestBody.create(NDJSON, body.toString())).build();
+        client.newCall(request).enqueue(new Callback() {
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                retry(actions, attempt, result, e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (ResponseBody responseBody = response.body()) {
+                    if (response.code() == TOO_MANY_REQUESTS
+                            || response.code() == SERVICE_UNAVAILABLE) {
+                        retry(actions, attempt, result, "status " + response.code());
+                    } else if (!response.isSuccessful()) {
+                        result.completeExceptionally(new IOException(
+                                String.format("bulk request failed with status %s: %s",
+                                        response.code(), responseBody.string())));
+                    } else {
+                        List<String> rejected = rejectedActions(actions, responseBody.string());
+                        if (rejected.isEmpty()) {
+                            result.complete(null);
+                        } else {
+                            retry(rejected, attempt, result,
+                                    rejected.size() + " actions rejected");
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
     }
 
-    public void saveRecord(RecordType recordType, String gameId, long creationTimestamp,
-            Map<String, String> recordFields) throws IOException {
-        String elasticResponse = "";
-        if (config.pushToElastic7()) {
-            elasticResponse = pushToElastic(
-                    ELASTIC_URL + "/" + getIndexName(gameId, creationTimestamp) + "/" + "_doc",
-                    recordFields);
-        } else {
-            elasticResponse =
-                    pushToElastic(ELASTIC_URL + "/" + getIndexName(gameId, creationTimestamp) + "/"
-                            + recordType.getRepresentation(), recordFields);
+    private void retry(List<String> actions, int attempt, CompletableFuture<Void> result,
+            String cause) {
+        if (attempt >= config.getMaxRetries()) {
+            result.completeExceptionally(new IOException(
+                    String.format("bulk request failed after %s retries: %s", attempt, cause)));
+            return;
+        }
+        long backoff = config.getRetryBackoff() << Math.min(attempt, 16);
+        logger.warn(String.format("bulk request of %s actions rejected (%s), retry in %s ms",
+                actions.size(), cause, backoff));
+        retryScheduler.schedule(() -> send(actions, attempt + 1, result), backoff,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Actions rejected for back pressure have to be sent again, other failures are logged
+     */
+    private List<String> rejectedActions(List<String> actions, String response) {
+        List<String> rejected = new ArrayList<>();
+        JsonObject json = gson.fromJson(response, JsonObject.class);
+        if (json == null || !json.has("errors") || !json.get("errors").getAsBoolean()) {
+            return rejected;
+        }
+        JsonArray items = json.getAsJsonArray("items");
+        for (int i = 0; i < items.size(); i++) {
+            for (Map.Entry<String, JsonElement> item : items.get(i).getAsJsonObject()
+                    .entrySet()) {
+                JsonObject outcome = item.getValue().getAsJsonObject();
+                int status = outcome.get("status").getAsInt();
+                if (status == TOO_MANY_REQUESTS) {
+                    rejected.add(actions.get(i));
+                } else if (status >= 300) {
+                    logger.warn("Record not corrected pushed in elasticsearch: "
+                            + outcome.get("error") + " " + actions.get(i));
+                }
+            }
         }
-        logger.info(elasticResponse);
+        return rejected;
     }
 
-    private String toJsonString(Map<String, String> fields) {
-        Gson gson = new Gson();
-        String jsonContent = gson.toJson(fields);
-        return jsonContent;
+    public void close() {
+        retryScheduler.shutdown();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
     }
 
 }
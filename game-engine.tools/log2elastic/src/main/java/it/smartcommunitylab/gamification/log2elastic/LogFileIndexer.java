@@ -0,0 +1,202 @@
+package it.smartcommunitylab.gamification.log2elastic;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Utf8;
+
+import it.smartcommunitylab.gamification.log2elastic.analyzer.RecordAnalyzer;
+import it.smartcommunitylab.gamification.log2elastic.analyzer.RecordAnalyzerFactory;
+
+/**
+ * Pushes a log file in ElasticSearch starting from its offset in the journal.
+ *
+ * The records are collected in _bulk requests limited by number of actions and bytes. The journal
+ * is moved forward only when all the requests before an offset are completed, so a new run
+ * resumes from the first record possibly not indexed. Only complete lines are pushed.
+ *
+ * The journal is keyed by the hash of the first line of the file, not by its name: a rotated file
+ * keeps its offset and a new file with the name of a rotated one is pushed from the start
+ */
+public class LogFileIndexer implements Callable<Long> {
+
+    private static final Logger logger = Logger.getLogger(LogFileIndexer.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final File logFile;
+    private final Config config;
+    private final ESHelper esHelper;
+    private final OffsetJournal journal;
+
+    private String fileKey;
+    private final Deque<PendingBulk> pending = new ArrayDeque<>();
+    private List<String> actions = new ArrayList<>();
+    private long actionsBytes;
+    private long pushed;
+
+    private static class PendingBulk {
+        private final CompletableFuture<Void> request;
+        private final long offset;
+        private final int size;
+
+        PendingBulk(CompletableFuture<Void> request, long offset, int size) {
+            this.request = request;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    public LogFileIndexer(File logFile, Config config, ESHelper esHelper, OffsetJournal journal) {
+        this.logFile = logFile;
+        this.config = config;
+        this.esHelper = esHelper;
+        this.journal = journal;
+    }
+
+    @Override
+    public Long call() throws IOException, InterruptedException, ExecutionException {
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            fileKey = fileKey(channel);
+            if (fileKey == null) {
+                logger.info(String.format("%s has no complete line, nothing to push", logFile.getName()));
+                return 0L;
+            }
+            long position = journal.getOffset(fileKey);
+            if (position > channel.size()) {
+                logger.info(String.format("%s is shorter than its journal offset, push it from the start",
+                        logFile.getName()));
+                position = 0;
+            }
+            logger.info(String.format("processing FILE: %s from offset %s", logFile.getName(), position));
+            channel.position(position);
+
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            byte[] line = new byte[1024];
+            int lineLength = 0;
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    position++;
+                    if (b == '\n') {
+                        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                            lineLength--;
+                        }
+                        addRecord(new String(line, 0, lineLength, StandardCharsets.UTF_8), position);
+                        lineLength = 0;
+                    } else {
+                        if (lineLength == line.length) {
+                            byte[] larger = new byte[line.length * 2];
+                            System.arraycopy(line, 0, larger, 0, lineLength);
+                            line = larger;
+                        }
+                        line[lineLength++] = b;
+                    }
+                }
+                buffer.clear();
+            }
+            // an incomplete last line is pushed by the next run
+            flush(position - lineLength);
+            while (!pending.isEmpty()) {
+                PendingBulk bulk = pending.poll();
+                bulk.request.get();
+                complete(bulk);
+            }
+        }
+        logger.info(String.format("%s: pushed %s records", logFile.getName(), pushed));
+        return pushed;
+    }
+
+    private void addRecord(String row, long offset)
+            throws IOException, InterruptedException, ExecutionException {
+        Map<String, String> recordFields;
+        Record record;
+        try {
+            record = Application.analizza(row);
+            RecordAnalyzer analyzer = RecordAnalyzerFactory.getAnalyzer(record);
+            recordFields = analyzer.extractData();
+        } catch (IllegalArgumentException e) {
+            logger.warn(String.format("skip row of %s: %s", logFile.getName(), e.getMessage()));
+            return;
+        }
+        if (config.getGameId().equals(recordFields.get("gameId"))) {
+            String action = esHelper.toBulkAction(record.getType(), recordFields.get("gameId"),
+                    Long.valueOf(recordFields.get("executionTime")), recordFields);
+            actions.add(action);
+            actionsBytes += Utf8.encodedLength(action);
+            if (actions.size() >= config.getBulkActions() || actionsBytes >= config.getBulkBytes()) {
+                flush(offset);
+            }
+        } else {
+            logger.debug("skip event for game not selected: " + recordFields.get("gameId"));
+        }
+    }
+
+    private void flush(long offset) throws IOException, InterruptedException, ExecutionException {
+        if (!actions.isEmpty()) {
+            pending.add(new PendingBulk(esHelper.bulk(actions), offset, actions.size()));
+            actions = new ArrayList<>();
+            actionsBytes = 0;
+        } else {
+            pending.add(new PendingBulk(CompletableFuture.completedFuture(null), offset, 0));
+        }
+        // move the journal forward to the last offset with all the previous requests completed
+        while (!pending.isEmpty() && pending.peek().request.isDone()) {
+            PendingBulk bulk = pending.poll();
+            bulk.request.get();
+            complete(bulk);
+        }
+    }
+
+    private void complete(PendingBulk bulk) throws IOException {
+        pushed += bulk.size;
+        journal.update(fileKey, bulk.offset);
+    }
+
+    /*
+     * hash of the first line, null if the file has no complete line yet
+     */
+    static String fileKey(FileChannel channel) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long position = 0;
+        int read;
+        while ((read = channel.read(buffer, position)) != -1) {
+            buffer.flip();
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    buffer.limit(i);
+                    digest.update(buffer);
+                    return String.format("%064x", new BigInteger(1, digest.digest()));
+                }
+            }
+            digest.update(buffer);
+            buffer.clear();
+            position += read;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package it.smartcommunitylab.gamification.log2elastic;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Journal of the offsets of the log files already pushed in ElasticSearch.
+ *
+ * A file is identified by a key built by {@link LogFileIndexer} from its content. Every update
+ * appends a line "offset fileKey" to the journal file, the journal is compacted when opened
+ */
+public class OffsetJournal implements Closeable {
+
+    private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+    private final Writer writer;
+
+    public OffsetJournal(File journalFile) throws IOException {
+        if (journalFile.exists()) {
+            for (String line : Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8)) {
+                int separator = line.indexOf(' ');
+                if (separator > 0) {
+                    try {
+                        offsets.put(line.substring(separator + 1),
+                                Long.valueOf(line.substring(0, separator)));
+                    } catch (NumberFormatException e) {
+                        // line truncated by an interrupted write
+                    }
+                }
+            }
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile),
+                StandardCharsets.UTF_8));
+        for (Map.Entry<String, Long> offset : offsets.entrySet()) {
+            write(offset.getKey(), offset.getValue());
+        }
+        writer.flush();
+    }
+
+    /**
+     * @return offset of the first byte of the file not pushed yet
+     */
+    public long getOffset(String fileKey) {
+        return offsets.getOrDefault(fileKey, 0L);
+    }
+
+    public synchronized void update(String fileKey, long offset) throws IOException {
+        offsets.put(fileKey, offset);
+        write(fileKey, offset);
+        writer.flush();
+    }
+
+    private void write(String fileKey, long offset) throws IOException {
+        writer.write(offset + " " + fileKey + "\n");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,177 @@
+package it.smartcommunitylab.gamification.log2elastic;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+
+public class LogFileIndexerTest {
+
+    private static final String RECORD =
+            "INFO - \"GAME\" \"24587\" 0a2f204f-324f-4350-b02e-3765100ec936 1477087206137 1486292961614 type=Action actionName=\"save_itinerary\"\n";
+    private static final String EXECUTION_RECORD =
+            "INFO - \"GAME\" \"24587\" EXEC_%s 1477087206137 1486292961614 type=Action actionName=\"%s\"\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer elastic;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<Integer> indexedBulkSizes = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void startElasticStub() throws IOException {
+        elastic = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        elastic.createContext("/_bulk", exchange -> {
+            String body = new String(ByteStreams.toByteArray(exchange.getRequestBody()),
+                    StandardCharsets.UTF_8);
+            byte[] response;
+            // the first request is refused for back pressure
+            if (requests.getAndIncrement() == 0) {
+                response = "{\"error\":\"es_rejected_execution_exception\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(429, response.length);
+            } else {
+                indexedBulkSizes.add(body.split("\n").length / 2);
+                response = "{\"errors\":false,\"items\":[]}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, response.length);
+            }
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        elastic.start();
+    }
+
+    @After
+    public void stopElasticStub() {
+        elastic.stop(0);
+    }
+
+    @Test
+    public void push_records_in_bulk_and_resume_from_journal() throws Exception {
+        File logFile = folder.newFile("NEW-gamification.stats.log");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            content.append(RECORD);
+        }
+        Files.write(logFile.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+        Config config = config();
+        config.setBulkActions(2);
+
+        ESHelper esHelper = new ESHelper(config);
+        try (OffsetJournal journal = new OffsetJournal(new File(config.getJournalPath()))) {
+            long pushed = new LogFileIndexer(logFile, config, esHelper, journal).call();
+            assertThat(pushed, is(5L));
+            assertThat(indexedBulkSizes, contains(2, 2, 1));
+            assertThat(requests.get(), is(4));
+            assertThat(journal.getOffset(fileKey(logFile)), is(logFile.length()));
+        }
+
+        // a new run only reads the journal
+        try (OffsetJournal journal = new OffsetJournal(new File(config.getJournalPath()))) {
+            assertThat(journal.getOffset(fileKey(logFile)), is(logFile.length()));
+            long pushed = new LogFileIndexer(logFile, config, esHelper, journal).call();
+            assertThat(pushed, is(0L));
+            assertThat(requests.get(), is(4));
+        } finally {
+            esHelper.close();
+        }
+    }
+
+    @Test
+    public void rotated_file_keeps_its_offset() throws Exception {
+        File logFile = folder.newFile("NEW-gamification.stats.log");
+        Files.write(logFile.toPath(), (String.format(EXECUTION_RECORD, 1, "save")
+                + String.format(EXECUTION_RECORD, 2, "save")).getBytes(StandardCharsets.UTF_8));
+
+        Config config = config();
+        ESHelper esHelper = new ESHelper(config);
+        try (OffsetJournal journal = new OffsetJournal(new File(config.getJournalPath()))) {
+            assertThat(new LogFileIndexer(logFile, config, esHelper, journal).call(), is(2L));
+
+            // rotation: the file is renamed and a new one is created with the same name
+            File rotated = new File(folder.getRoot(), "NEW-gamification.stats.log.1");
+            Files.move(logFile.toPath(), rotated.toPath());
+            Files.write(logFile.toPath(), String.format(EXECUTION_RECORD, 3, "save")
+                    .getBytes(StandardCharsets.UTF_8));
+
+            assertThat(new LogFileIndexer(rotated, config, esHelper, journal).call(), is(0L));
+            assertThat(new LogFileIndexer(logFile, config, esHelper, journal).call(), is(1L));
+            assertThat(journal.getOffset(fileKey(rotated)), is(rotated.length()));
+            assertThat(journal.getOffset(fileKey(logFile)), is(logFile.length()));
+        } finally {
+            esHelper.close();
+        }
+    }
+
+    @Test
+    public void bulk_limited_by_utf8_bytes() throws Exception {
+        String actionName = String.join("", Collections.nCopies(100, "\u00e8"));
+        File logFile = folder.newFile("NEW-gamification.stats.log");
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i <= 4; i++) {
+            content.append(String.format(EXECUTION_RECORD, i, actionName));
+        }
+        Files.write(logFile.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+
+        Config config = config();
+        ESHelper esHelper = new ESHelper(config);
+        try (OffsetJournal journal = new OffsetJournal(new File(config.getJournalPath()))) {
+            String action = bulkAction(esHelper, String.format(EXECUTION_RECORD, 1, actionName).trim());
+            int chars = action.length();
+            int bytes = action.getBytes(StandardCharsets.UTF_8).length;
+            // two actions exceed the limit in bytes, not in chars
+            config.setBulkBytes(2 * chars + (bytes - chars));
+
+            assertThat(new LogFileIndexer(logFile, config, esHelper, journal).call(), is(4L));
+            assertThat(indexedBulkSizes, contains(2, 2));
+        } finally {
+            esHelper.close();
+        }
+    }
+
+    private Config config() {
+        Config config = new Config(new String[] {folder.getRoot().getAbsolutePath()});
+        config.setElasticUrl("http://localhost:" + elastic.getAddress().getPort());
+        config.setGameId("GAME");
+        config.setConcurrentRequests(1);
+        config.setRetryBackoff(10);
+        return config;
+    }
+
+    private static String bulkAction(ESHelper esHelper, String row) {
+        Record record = Application.analizza(row);
+        Map<String, String> fields = RecordAnalyzerFactory.getAnalyzer(record).extractData();
+        return esHelper.toBulkAction(record.getType(), fields.get("gameId"),
+                Long.valueOf(fields.get("executionTime")), fields);
+    }
+
+    private static String fileKey(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return LogFileIndexer.fileKey(channel);
+        }
+    }
+}
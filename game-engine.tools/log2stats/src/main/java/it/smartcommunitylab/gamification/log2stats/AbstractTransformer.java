@@ -6,6 +6,13 @@ import java.text.SimpleDateFormat;
 import java.util.UUID;
 
 public abstract class AbstractTransformer implements Transformer {
+
+    // SimpleDateFormat is not thread safe, files are transformed in parallel
+    private static final ThreadLocal<DateFormat> TIMESTAMP_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS"));
+    private static final ThreadLocal<DateFormat> EXECUTION_TIME_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("dd-MM-yyyy HH:mm:ss"));
+
     private String executionId;
 
     public AbstractTransformer(String executionId) {
@@ -18,7 +25,7 @@ public abstract class AbstractTransformer implements Transformer {
 
 
     final static long timestamp(String representation) {
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+        DateFormat dateFormat = TIMESTAMP_FORMAT.get();
         try {
             return dateFormat.parse(representation).getTime();
         } catch (ParseException e) {
@@ -28,7 +35,7 @@ public abstract class AbstractTransformer implements Transformer {
     }
 
     final static long executionTime(String representation) {
-        DateFormat dateFormat = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+        DateFormat dateFormat = EXECUTION_TIME_FORMAT.get();
         try {
             return dateFormat.parse(representation).getTime();
         } catch (ParseException e) {
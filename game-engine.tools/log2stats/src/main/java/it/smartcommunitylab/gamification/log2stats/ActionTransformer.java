@@ -5,6 +5,9 @@ import java.util.regex.Pattern;
 
 public class ActionTransformer extends AbstractTransformer {
 
+    private static final Pattern ACTION_PATTERN = Pattern.compile(
+            "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - gameId:(\\w+), actionId: (.+), playerId: (.+), executionMoment: (\\d{2}-\\d{2}-\\d{4} \\d{2}:\\d{2}:\\d{2}), data: .*, factObjs: .*");
+
     protected String gameId;
     protected String playerId;
     protected long executionTime;
@@ -20,9 +23,7 @@ public class ActionTransformer extends AbstractTransformer {
             if (row.isEmpty()) {
                 result = row;
             } else {
-                Pattern searchFields = Pattern.compile(
-                        "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - gameId:(\\w+), actionId: (.+), playerId: (.+), executionMoment: (\\d{2}-\\d{2}-\\d{4} \\d{2}:\\d{2}:\\d{2}), data: .*, factObjs: .*");
-                Matcher matcher = searchFields.matcher(row);
+                Matcher matcher = ACTION_PATTERN.matcher(row);
                 if (matcher.matches()) {
                     gameId = matcher.group(2);
                     playerId = matcher.group(4);
@@ -1,16 +1,49 @@
 package it.smartcommunitylab.gamification.log2stats;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.log4j.Logger;
 
+/**
+ * Transforms the rows of an application log in stats records.
+ *
+ * The rows of an execution are correlated to its Action (or Classification) row by the thread
+ * that logged them, so the executions logged concurrently by the engine are not mixed up. The
+ * executionId of an execution is derived from the source and the position of its Action row: the
+ * transformation of a file always produces the same output
+ */
 public class Analyzer {
 
     private static final Logger logger = Logger.getLogger(Analyzer.class);
 
-    private ActionTransformer lastAction = null;
+    private static final String THREAD_START = " [";
+    private static final String THREAD_END = "] - ";
+    private static final String MESSAGE_SEPARATOR = " - ";
+
+    private final String source;
+    private long rowNumber;
+    private final Map<String, ActionTransformer> executions = new HashMap<>();
+
+    enum RowKind {
+        ACTION, CLASSIFICATION, POINT_CONCEPT, BADGE_COLLECTION_CONCEPT, END_GAME_ACTION, NONE
+    }
+
+    public Analyzer() {
+        this(UUID.randomUUID().toString());
+    }
+
+    /**
+     * @param source name of the analyzed log, seed of the generated executionIds
+     */
+    public Analyzer(String source) {
+        this.source = source;
+    }
 
     public String analyze(String row) {
+        rowNumber++;
         Transformer transformer = getTransformer(row);
         if (transformer != null) {
             return transformer.transform(row);
@@ -21,61 +54,96 @@ public class Analyzer {
 
 
     private Transformer getTransformer(String row) {
-        Transformer transformer = null;
-        if (isAction(row)) {
-            lastAction = new ActionTransformer(UUID.randomUUID().toString());
-            return lastAction;
-        } else if (isEndGameAction(row)) {
-            if (lastAction == null) {
-                logger.warn(String.format("not found relative Action row: %s", row));
+        if (row == null) {
+            return null;
+        }
+        int threadStart = row.indexOf(THREAD_START);
+        int threadEnd = threadStart > -1 ? row.indexOf(THREAD_END, threadStart) : -1;
+        if (threadEnd == -1) {
+            return null;
+        }
+        String thread = thread(row.substring(threadStart + THREAD_START.length(), threadEnd));
+        int messageStart = threadEnd + THREAD_END.length();
+        int gameSeparator = row.indexOf(MESSAGE_SEPARATOR, messageStart);
+        if (gameSeparator > -1) {
+            messageStart = gameSeparator + MESSAGE_SEPARATOR.length();
+        }
+
+        switch (kind(row, messageStart)) {
+            case ACTION:
+                ActionTransformer action = new ActionTransformer(executionId());
+                executions.put(thread, action);
+                return action;
+            case CLASSIFICATION:
+                ClassificationTransformer classification =
+                        new ClassificationTransformer(executionId());
+                executions.put(thread, classification);
+                return classification;
+            case END_GAME_ACTION:
+                ActionTransformer lastAction = lastAction(thread, row);
+                return lastAction == null ? null
+                        : new EndGameTransformer(lastAction.getExecutionId(),
+                                lastAction.getExecutionTime(), lastAction.getGameId(),
+                                lastAction.getPlayerId());
+            case BADGE_COLLECTION_CONCEPT:
+                lastAction = lastAction(thread, row);
+                return lastAction == null ? null
+                        : new BadgeCollectionConceptTransformer(lastAction.getExecutionId(),
+                                lastAction.getExecutionTime(), lastAction.getGameId(),
+                                lastAction.getPlayerId());
+            case POINT_CONCEPT:
+                lastAction = lastAction(thread, row);
+                return lastAction == null ? null
+                        : new PointConceptTransformer(lastAction.getExecutionId(),
+                                lastAction.getExecutionTime(), lastAction.getGameId());
+            default:
                 return null;
+        }
+    }
+
+    /*
+     * the message follows the gameId, the kind is recognized by its beginning
+     */
+    static RowKind kind(String row, int messageStart) {
+        if (row.startsWith("gameId:", messageStart)) {
+            if (row.indexOf("actionId: scogei_classification", messageStart) > -1) {
+                return RowKind.CLASSIFICATION;
             }
-            return new EndGameTransformer(lastAction.getExecutionId(),
-                    lastAction.getExecutionTime(), lastAction.getGameId(),
-                    lastAction.getPlayerId());
-        } else if (isBadgeCollectionConcept(row)) {
-            if (lastAction == null) {
-                logger.warn(String.format("not found relative Action row: %s", row));
-                return null;
+            return row.indexOf("actionId:", messageStart) > -1 ? RowKind.ACTION : RowKind.NONE;
+        }
+        if (row.startsWith("rule '", messageStart)) {
+            if (row.indexOf("' updated BadgeCollectionConcept '", messageStart) > -1) {
+                return RowKind.BADGE_COLLECTION_CONCEPT;
             }
-            return new BadgeCollectionConceptTransformer(lastAction.getExecutionId(),
-                    lastAction.getExecutionTime(), lastAction.getGameId(),
-                    lastAction.getPlayerId());
-        } else if (isPointConcept(row)) {
-            if (lastAction == null) {
-                logger.warn(String.format("not found relative Action row: %s", row));
-                return null;
+            if (row.indexOf("' updated PointConcept '", messageStart) > -1) {
+                return RowKind.POINT_CONCEPT;
             }
-            return new PointConceptTransformer(lastAction.getExecutionId(),
-                    lastAction.getExecutionTime(), lastAction.getGameId());
-        } else if (isClassification(row)) {
-            ClassificationTransformer classificationTransformer =
-                    new ClassificationTransformer(UUID.randomUUID().toString());
-            lastAction = classificationTransformer;
-            return classificationTransformer;
+            return RowKind.NONE;
         }
-        return transformer;
-
-    }
-
-
-    private boolean isEndGameAction(String row) {
-        return row != null && row.contains("Process terminated: true");
-    }
-
-    private boolean isBadgeCollectionConcept(String row) {
-        return row != null && row.contains("updated BadgeCollectionConcept");
+        if (row.startsWith("Process terminated: true", messageStart)) {
+            return RowKind.END_GAME_ACTION;
+        }
+        return RowKind.NONE;
     }
 
-    private boolean isPointConcept(String row) {
-        return row != null && row.contains("updated PointConcept");
+    /*
+     * the thread part of the log4j pattern [%C{1}-%t], class names have no dash
+     */
+    private static String thread(String classAndThread) {
+        int separator = classAndThread.indexOf('-');
+        return separator > -1 ? classAndThread.substring(separator + 1) : classAndThread;
     }
 
-    private boolean isClassification(String row) {
-        return row != null && row.contains("scogei_classification");
+    private ActionTransformer lastAction(String thread, String row) {
+        ActionTransformer lastAction = executions.get(thread);
+        if (lastAction == null) {
+            logger.warn(String.format("not found relative Action row: %s", row));
+        }
+        return lastAction;
     }
 
-    private boolean isAction(String row) {
-        return row != null && row.contains("actionId:") && !row.contains("scogei_classification");
+    private String executionId() {
+        return UUID.nameUUIDFromBytes((source + ":" + rowNumber).getBytes(StandardCharsets.UTF_8))
+                .toString();
     }
 }
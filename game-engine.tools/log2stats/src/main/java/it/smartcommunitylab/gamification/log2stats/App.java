@@ -3,9 +3,18 @@ package it.smartcommunitylab.gamification.log2stats;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
@@ -13,10 +22,14 @@ public class App {
 
     private static final Logger logger = Logger.getLogger(App.class);
 
+    private static final int IO_BUFFER_SIZE = 1024 * 1024;
+
     private static String FOLDER_INPUT = "";
     private static String FOLDER_OUTPUT = "";
+    private static final int THREADS =
+            Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
 
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
         FOLDER_INPUT = args[0];
         FOLDER_OUTPUT = args[1];
 
@@ -31,31 +44,70 @@ public class App {
                         String.format("created output folder %s", outputFolder.getAbsolutePath()));
             }
         }
-        Analyzer analyzer = new Analyzer();
+        transform(new File(FOLDER_INPUT), outputFolder, THREADS);
+        logger.info("Done");
+    }
 
-        for (File logFile : getStatsFile(FOLDER_INPUT)) {
-            if (!logFile.isDirectory()) {
-                BufferedReader reader = new BufferedReader(new FileReader(logFile));
-                logger.info(String.format("read logFile: %s", logFile.getName()));
-                String statsFileName = statsFileName(logFile.getName());
-                BufferedWriter writer = new BufferedWriter(
-                        new FileWriter(new File(FOLDER_OUTPUT, statsFileName)));
-                logger.info(String.format("write stasFile: %s", statsFileName));
-                String row = null;
-                while ((row = reader.readLine()) != null) {
-                    String result = analyzer.analyze(row);
-                    if (result == null) {
-                        logger.error(String.format("row issue: %s", row));
-                    }
-                    if (result != null && !result.isEmpty()) {
-                        writer.write(result + "\n");
+    /**
+     * Transforms the log files of the input folder in parallel, every log file in its stats file
+     *
+     * @return number of stats records written
+     */
+    public static long transform(File inputFolder, File outputFolder, int threads)
+            throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> transformations = new ArrayList<>();
+            for (File logFile : getStatsFile(inputFolder)) {
+                if (!logFile.isDirectory()) {
+                    transformations.add(workers.submit(() -> transformFile(logFile, outputFolder)));
+                }
+            }
+            long records = 0;
+            for (Future<Long> transformation : transformations) {
+                try {
+                    records += transformation.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
                     }
+                    throw new IllegalStateException(e.getCause());
                 }
-                reader.close();
-                writer.close();
             }
+            return records;
+        } finally {
+            workers.shutdownNow();
         }
-        logger.info("Done");
+    }
+
+    static long transformFile(File logFile, File outputFolder) throws IOException {
+        String statsFileName = statsFileName(logFile.getName());
+        long records = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(logFile), Charset.defaultCharset()),
+                IO_BUFFER_SIZE);
+                BufferedWriter writer = new BufferedWriter(
+                        new OutputStreamWriter(
+                                new FileOutputStream(new File(outputFolder, statsFileName)),
+                                Charset.defaultCharset()),
+                        IO_BUFFER_SIZE)) {
+            logger.info(String.format("read logFile: %s", logFile.getName()));
+            logger.info(String.format("write stasFile: %s", statsFileName));
+            Analyzer analyzer = new Analyzer(logFile.getName());
+            String row = null;
+            while ((row = reader.readLine()) != null) {
+                String result = analyzer.analyze(row);
+                if (result == null) {
+                    logger.error(String.format("row issue: %s", row));
+                }
+                if (result != null && !result.isEmpty()) {
+                    writer.write(result);
+                    writer.write('\n');
+                    records++;
+                }
+            }
+        }
+        return records;
     }
 
     private static String statsFileName(String logFileName) {
@@ -66,8 +118,7 @@ public class App {
         }
     }
 
-    private static File[] getStatsFile(String folder) {
-        File folderFile = new File(folder);
+    private static File[] getStatsFile(File folderFile) {
         if (folderFile.isDirectory()) {
             return folderFile.listFiles();
         }
@@ -4,6 +4,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class BadgeCollectionConceptTransformer extends AbstractTransformer {
+
+    private static final Pattern BADGE_COLLECTION_CONCEPT_PATTERN = Pattern.compile(
+            "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - rule \\'(.+)\\' updated BadgeCollectionConcept \\'(.+)\\' with \\'(.+)\\' of player (.+)");
     private long executionTime;
     private String gameId;
     private String playerId;
@@ -24,9 +27,7 @@ public class BadgeCollectionConceptTransformer extends AbstractTransformer {
             if (row.isEmpty()) {
                 result = row;
             } else {
-                Pattern searchFields = Pattern.compile(
-                        "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - rule \\'(.+)\\' updated BadgeCollectionConcept \\'(.+)\\' with \\'(.+)\\' of player (.+)");
-                Matcher matcher = searchFields.matcher(row);
+                Matcher matcher = BADGE_COLLECTION_CONCEPT_PATTERN.matcher(row);
                 if (matcher.matches()) {
                     long timestamp = timestamp(matcher.group(1));
                     String ruleName = matcher.group(2);
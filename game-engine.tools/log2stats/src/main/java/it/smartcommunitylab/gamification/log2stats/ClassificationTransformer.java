@@ -5,6 +5,9 @@ import java.util.regex.Pattern;
 
 public class ClassificationTransformer extends ActionTransformer {
 
+    private static final Pattern CLASSIFICATION_PATTERN = Pattern.compile(
+            "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - gameId:(.+), actionId: scogei_classification, playerId: (.+), executionMoment: (\\d{2}-\\d{2}-\\d{4} \\d{2}:\\d{2}:\\d{2}), data: null, factObjs: \\[\\{name: (.+), classificationType: INCREMENTAL, scoreType: .+, position: (.+), executionTime: .*");
+
     public ClassificationTransformer(String executionId) {
         super(executionId);
     }
@@ -16,9 +19,7 @@ public class ClassificationTransformer extends ActionTransformer {
             if (row.isEmpty()) {
                 result = row;
             } else {
-                Pattern searchFields = Pattern.compile(
-                        "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - gameId:(.+), actionId: scogei_classification, playerId: (.+), executionMoment: (\\d{2}-\\d{2}-\\d{4} \\d{2}:\\d{2}:\\d{2}), data: null, factObjs: \\[\\{name: (.+), classificationType: INCREMENTAL, scoreType: .+, position: (.+), executionTime: .*");
-                Matcher matcher = searchFields.matcher(row);
+                Matcher matcher = CLASSIFICATION_PATTERN.matcher(row);
                 if (matcher.matches()) {
                     long timestamp = timestamp(matcher.group(1));
                     String classificationName = matcher.group(5);
@@ -4,6 +4,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class EndGameTransformer extends AbstractTransformer {
+
+    private static final Pattern END_GAME_PATTERN = Pattern.compile(
+            "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - Process terminated: true");
     private long executionTime;
     private String gameId;
     private String playerId;
@@ -23,9 +26,7 @@ public class EndGameTransformer extends AbstractTransformer {
             if (row.isEmpty()) {
                 result = row;
             } else {
-                Pattern searchFields = Pattern.compile(
-                        "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - Process terminated: true");
-                Matcher matcher = searchFields.matcher(row);
+                Matcher matcher = END_GAME_PATTERN.matcher(row);
                 if (matcher.matches()) {
                     long timestamp = timestamp(matcher.group(1));
                     result = String.format("INFO - \"%s\" \"%s\" %s %s %s type=EndGameAction",
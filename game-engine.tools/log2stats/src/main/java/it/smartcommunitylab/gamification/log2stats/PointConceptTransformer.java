@@ -4,6 +4,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class PointConceptTransformer extends AbstractTransformer {
+
+    private static final Pattern POINT_CONCEPT_PATTERN = Pattern.compile(
+            "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - rule \'(.+)\' updated PointConcept \'(.+)\' of (.+) \\(total: (.+)\\) of player (.+)");
     private long executionTime;
     private String gameId;
 
@@ -20,9 +23,7 @@ public class PointConceptTransformer extends AbstractTransformer {
             if (row.isEmpty()) {
                 result = row;
             } else {
-                Pattern searchFields = Pattern.compile(
-                        "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}) INFO \\[.+\\] - .+ - rule \'(.+)\' updated PointConcept \'(.+)\' of (.+) \\(total: (.+)\\) of player (.+)");
-                Matcher matcher = searchFields.matcher(row);
+                Matcher matcher = POINT_CONCEPT_PATTERN.matcher(row);
                 if (matcher.matches()) {
                     String deltaScore = matcher.group(4);
                     String score = matcher.group(5);
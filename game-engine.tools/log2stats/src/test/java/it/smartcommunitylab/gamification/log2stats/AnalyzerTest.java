@@ -0,0 +1,58 @@
+package it.smartcommunitylab.gamification.log2stats;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AnalyzerTest {
+
+    private static final String ACTION_THREAD_1 =
+            "2018-02-21 00:29:42,807 INFO [LogHub-pool-1-thread-1] - 59a91478e4b0c9db6800afaf - gameId:59a91478e4b0c9db6800afaf, actionId: save_itinerary, playerId: 25631, executionMoment: 20-02-2018 20:57:09, data: {travelId=5a8c7d9e9045ea330453b661}, factObjs: null";
+    private static final String ACTION_THREAD_2 =
+            "2018-02-21 00:29:42,810 INFO [LogHub-pool-1-thread-2] - 59a91478e4b0c9db6800afaf - gameId:59a91478e4b0c9db6800afaf, actionId: save_itinerary, playerId: 24587, executionMoment: 20-02-2018 20:58:09, data: {travelId=5a8c7d9e9045ea330453b662}, factObjs: null";
+    private static final String POINT_THREAD_1 =
+            "2018-02-21 00:29:42,829 INFO [LogHub-pool-1-thread-1] - 59a91478e4b0c9db6800afaf - rule 'all modes - update green points' updated PointConcept 'green leaves' of 4.0 (total: 13440.0) of player 25631";
+    private static final String END_THREAD_1 =
+            "2018-02-21 00:29:42,866 INFO [LogHub-pool-1-thread-1] - 59a91478e4b0c9db6800afaf - Process terminated: true";
+
+    @Test
+    public void correlate_interleaved_executions_by_thread() {
+        Analyzer analyzer = new Analyzer("gamification.all.log");
+        String action1 = analyzer.analyze(ACTION_THREAD_1);
+        String action2 = analyzer.analyze(ACTION_THREAD_2);
+        String point = analyzer.analyze(POINT_THREAD_1);
+        String end = analyzer.analyze(END_THREAD_1);
+
+        String executionId1 = executionId(action1);
+        assertThat(executionId1, not(executionId(action2)));
+        Assert.assertEquals(
+                "INFO - \"59a91478e4b0c9db6800afaf\" \"25631\" " + executionId1
+                        + " 1519156629000 1519169382829 type=PointConcept ruleName=\"all modes - update green points\" name=\"green leaves\" deltaScore=4.0 score=13440.0",
+                point);
+        Assert.assertEquals("INFO - \"59a91478e4b0c9db6800afaf\" \"25631\" " + executionId1
+                + " 1519156629000 1519169382866 type=EndGameAction", end);
+    }
+
+    @Test
+    public void same_source_same_output() {
+        Analyzer first = new Analyzer("gamification.all.log");
+        Analyzer second = new Analyzer("gamification.all.log");
+        assertThat(first.analyze(ACTION_THREAD_1), is(second.analyze(ACTION_THREAD_1)));
+    }
+
+    @Test
+    public void rows_not_related_to_stats_are_skipped() {
+        Analyzer analyzer = new Analyzer("gamification.all.log");
+        assertThat(analyzer.analyze(
+                "2018-02-21 00:29:42,807 INFO [GameWorkflow-pool-1-thread-1] - 59a91478e4b0c9db6800afaf - Player 25631 has no active group challenges"),
+                is(""));
+        assertThat(analyzer.analyze(END_THREAD_1), is(""));
+    }
+
+    private static String executionId(String record) {
+        return record.split(" ")[4];
+    }
+}
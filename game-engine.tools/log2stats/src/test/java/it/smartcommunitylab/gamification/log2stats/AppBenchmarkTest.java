@@ -0,0 +1,111 @@
+package it.smartcommunitylab.gamification.log2stats;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Transformation of a generated application log, sequential and parallel.
+ *
+ * By default a small log checks that the parallel transformation writes the same stats files of
+ * the sequential one. Set the system property benchmark.bytes to generate a bigger log and log the
+ * throughput, e.g. -Dbenchmark.bytes=4294967296 to measure on a multi-GB log
+ */
+public class AppBenchmarkTest {
+
+    private static final Logger logger = Logger.getLogger(AppBenchmarkTest.class);
+
+    private static final Long BENCHMARK_BYTES = Long.getLong("benchmark.bytes");
+    private static final long LOG_BYTES = BENCHMARK_BYTES != null ? BENCHMARK_BYTES : 1024 * 1024;
+    private static final int LOG_FILES = 8;
+    private static final int LOGGING_THREADS = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parallel_same_output_of_sequential() throws IOException, InterruptedException {
+        File logs = folder.newFolder("logs");
+        for (int i = 0; i < LOG_FILES; i++) {
+            generateLog(new File(logs, String.format("gamification.all.log.2018-02-%02d", i + 1)),
+                    LOG_BYTES / LOG_FILES);
+        }
+
+        File sequentialOutput = folder.newFolder("sequential");
+        long start = System.nanoTime();
+        long records = App.transform(logs, sequentialOutput, 1);
+        report("sequential", start, records);
+        Assert.assertTrue(records > 0);
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        File parallelOutput = folder.newFolder("parallel");
+        start = System.nanoTime();
+        App.transform(logs, parallelOutput, threads);
+        report("parallel on " + threads + " threads", start, records);
+
+        for (File statsFile : sequentialOutput.listFiles()) {
+            Assert.assertArrayEquals(Files.readAllBytes(statsFile.toPath()), Files
+                    .readAllBytes(new File(parallelOutput, statsFile.getName()).toPath()));
+        }
+    }
+
+    private void report(String mode, long start, long records) {
+        if (BENCHMARK_BYTES == null) {
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info(String.format("log2stats %s: %s records, %.1f MB/s", mode, records,
+                LOG_BYTES / seconds / (1024 * 1024)));
+    }
+
+    /*
+     * executions of the logging threads are interleaved as in the engine logs
+     */
+    private void generateLog(File logFile, long bytes) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile), 1024 * 1024)) {
+            long written = 0;
+            int execution = 0;
+            while (written < bytes) {
+                for (int step = 0; step < 4; step++) {
+                    for (int thread = 1; thread <= LOGGING_THREADS; thread++) {
+                        String row = row(step, thread, execution + thread);
+                        writer.write(row);
+                        writer.write('\n');
+                        written += row.length() + 1;
+                    }
+                }
+                execution += LOGGING_THREADS;
+            }
+        }
+    }
+
+    private String row(int step, int thread, int player) {
+        String prefix = String.format(
+                "2018-02-21 00:29:42,8%02d INFO [LogHub-pool-1-thread-%s] - 59a91478e4b0c9db6800afaf - ",
+                step * 10 + thread, thread);
+        switch (step) {
+            case 0:
+                return prefix + "gameId:59a91478e4b0c9db6800afaf, actionId: save_itinerary, playerId: "
+                        + player
+                        + ", executionMoment: 20-02-2018 20:57:09, data: {travelId=5a8c7d9e9045ea330453b661, walkDistance=0.2728388418605312}, factObjs: null";
+            case 1:
+                return prefix
+                        + "rule 'all modes - update green points' updated PointConcept 'green leaves' of 4.0 (total: 13440.0) of player "
+                        + player;
+            case 2:
+                return prefix
+                        + "rule 'green badges' updated BadgeCollectionConcept 'green leaves' with '10-point-green' of player "
+                        + player;
+            default:
+                return prefix + "Process terminated: true";
+        }
+    }
+}
@@ -1,23 +1,25 @@
 package it.smartcommunitylab.gamification.log2timescaledb;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
-import it.smartcomunitylab.gamification.log2timescaledb.analyzer.RecordAnalyzer;
-import it.smartcomunitylab.gamification.log2timescaledb.analyzer.RecordAnalyzerFactory;
-
 public class Application {
 	private static final Logger logger = Logger.getLogger(Application.class);
 	private static String CONN_URL = "";
 	private static String FOLDER_INPUT = "";
+	private static final int THREADS = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+	private static final int BATCH_SIZE = Integer.getInteger("batchSize", 50000);
+	private static final boolean RESET = Boolean.getBoolean("reset");
 
 	public static void main(String args[]) {
 		FOLDER_INPUT = args[0];
@@ -25,21 +27,22 @@ public class Application {
 		logger.info(String.format("folder_input %s", FOLDER_INPUT));
 
 		try (var conn = DriverManager.getConnection(CONN_URL)) {
-			deleteSchema(conn);
+			if (RESET) {
+				deleteSchema(conn);
+			}
 			createSchema(conn);
-			insertData(conn, FOLDER_INPUT);
 		} catch (SQLException ex) {
 			System.err.println(ex.getMessage());
-		} catch (IOException ex) {
-			// TODO Auto-generated catch block
-			System.err.println(ex.getMessage());
+			return;
 		}
+		insertData(FOLDER_INPUT);
 	}
 
 	private static void deleteSchema(Connection conn) throws SQLException {
 		try (var stmt = conn.createStatement()) {
 			stmt.execute("DROP TABLE IF EXISTS eventLogs");
 		}
+		Checkpoints.deleteSchema(conn);
 	}
 
 	private static void createSchema(final Connection conn) throws SQLException {
@@ -58,62 +61,34 @@ public class Application {
 			stmt.execute("SELECT create_hypertable('eventLogs', 'time', if_not_exists => TRUE)");
 		}
 
-	}
+		Checkpoints.createSchema(conn);
 
-	private static void insertData(final Connection conn, String path) throws SQLException, IOException {
+	}
 
-		for (File logFile : getStatsFile(FOLDER_INPUT)) {
-			logger.info(logFile.getName());
-			if (logFile.getName().indexOf("stats.log") == -1) 
+	private static void insertData(String path) {
+		ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+		List<Future<Long>> imports = new ArrayList<>();
+		for (File logFile : getStatsFile(path)) {
+			if (logFile.getName().indexOf("stats.log") == -1 || logFile.isDirectory())
 				continue;
-			if (!logFile.isDirectory()) {
-				BufferedReader reader = new BufferedReader(new FileReader(logFile));
-				logger.info(String.format("read logFile: %s", logFile.getName()));
-				String row = null;
-				int counter = 0;
-				while ((row = reader.readLine()) != null) {
-					Record record;
-					try {
-						record = analizza(row);
-					} catch (IllegalArgumentException ile) {
-						System.err.println(ile.getMessage());
-						continue;
-					}
-					logger.debug("Record type: " + record.getType());
-					RecordAnalyzer analyzer = RecordAnalyzerFactory.getAnalyzer(record);
-					Map<String, String> recordFields = analyzer.extractData();
-					if (recordFields.containsKey("gameId")) {
-						counter++;
-						String type = recordFields.containsKey("type") ? "'" + recordFields.get("type") + "'" : null;
-						String actionName = recordFields.containsKey("actionName")
-								? "'" + recordFields.get("actionName") + "'"
-								: null;
-						String ruleName = recordFields.containsKey("ruleName")
-								? "'" + recordFields.get("ruleName") + "'"
-								: null;
-						String conceptName = recordFields.containsKey("conceptName")
-								? "'" + recordFields.get("conceptName") + "'"
-								: null;
-
-						try (var stmt = conn.prepareStatement(
-								"INSERT INTO eventLogs (gameid, playerid, executionid, executiontime, time, type, actionname, rulename, conceptname, deltascore, score) VALUES("
-										+ "'" + recordFields.get("gameId") + "', " + "'" + recordFields.get("playerId")
-										+ "', " + "'" + recordFields.get("executionId") + "', " + "to_timestamp("
-										+ Long.valueOf(recordFields.get("executionTime")) / 1000 + "), "
-										+ "to_timestamp(" + Long.valueOf(recordFields.get("timestamp")) / 1000 + "), "
-										+ type + ", " + actionName + ", " + ruleName + ", " + conceptName + ", "
-										+ recordFields.get("deltaScore") + ", " + recordFields.get("score") + ")")) {
-							logger.info(counter + "-" + stmt);
-							stmt.execute();
-						}
-					} else {
-						logger.info("skip event for game not selected: " + recordFields.get("gameId"));
-					}
+			imports.add(workers.submit(new FileImporter(logFile, CONN_URL, BATCH_SIZE)));
+		}
+		workers.shutdown();
+		long counter = 0;
+		try {
+			for (Future<Long> fileImport : imports) {
+				try {
+					counter += fileImport.get();
+				} catch (ExecutionException e) {
+					// the checkpoint of the file is kept, next run resumes it
+					logger.error("import failed: " + e.getCause().getMessage());
 				}
-				logger.info("inserted " + counter + " entries");
-				reader.close();
 			}
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
 		}
+		logger.info("inserted " + counter + " entries");
 		logger.info("Done");
 	}
 
@@ -125,13 +100,4 @@ public class Application {
 		return new File[0];
 	}
 
-	public static Record analizza(String record) {
-		Record result = null;
-		if (record != null) {
-			result = new Record(record);
-			logger.debug("RECORD : " + record.toString());
-		}
-		return result;
-	}
-
 }
\ No newline at end of file
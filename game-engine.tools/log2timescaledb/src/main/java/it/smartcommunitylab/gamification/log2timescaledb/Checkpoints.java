@@ -0,0 +1,51 @@
+package it.smartcommunitylab.gamification.log2timescaledb;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Offsets of the stats files already imported, stored in the import_checkpoints table.
+ *
+ * A file is identified by the hash of its first line, not by its name: a rotated file keeps its
+ * checkpoint and a new file with the name of a rotated one starts from the beginning. The offset
+ * of a file is updated in the same transaction of the rows copied from it, so an interrupted
+ * import resumes from the first line not yet committed
+ */
+public class Checkpoints {
+
+	private Checkpoints() {
+	}
+
+	public static void createSchema(Connection conn) throws SQLException {
+		try (var stmt = conn.createStatement()) {
+			stmt.execute(
+					"CREATE TABLE IF NOT EXISTS import_checkpoints (filekey TEXT PRIMARY KEY, filename TEXT NOT NULL, fileoffset BIGINT NOT NULL, updated TIMESTAMP NOT NULL)");
+		}
+	}
+
+	public static void deleteSchema(Connection conn) throws SQLException {
+		try (var stmt = conn.createStatement()) {
+			stmt.execute("DROP TABLE IF EXISTS import_checkpoints");
+		}
+	}
+
+	public static long read(Connection conn, String fileKey) throws SQLException {
+		try (var stmt = conn.prepareStatement("SELECT fileoffset FROM import_checkpoints WHERE filekey = ?")) {
+			stmt.setString(1, fileKey);
+			try (var rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : 0;
+			}
+		}
+	}
+
+	public static void write(Connection conn, String fileKey, String filename, long offset) throws SQLException {
+		try (var stmt = conn.prepareStatement(
+				"INSERT INTO import_checkpoints (filekey, filename, fileoffset, updated) VALUES (?, ?, ?, now()) "
+						+ "ON CONFLICT (filekey) DO UPDATE SET filename = EXCLUDED.filename, fileoffset = EXCLUDED.fileoffset, updated = EXCLUDED.updated")) {
+			stmt.setString(1, fileKey);
+			stmt.setString(2, filename);
+			stmt.setLong(3, offset);
+			stmt.executeUpdate();
+		}
+	}
+}
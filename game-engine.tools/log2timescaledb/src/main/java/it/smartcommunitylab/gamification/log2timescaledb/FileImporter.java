@@ -0,0 +1,213 @@
+package it.smartcommunitylab.gamification.log2timescaledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.log4j.Logger;
+
+import it.smartcomunitylab.gamification.log2timescaledb.analyzer.RecordAnalyzer;
+import it.smartcomunitylab.gamification.log2timescaledb.analyzer.RecordAnalyzerFactory;
+
+/**
+ * Imports a stats file in the eventLogs table.
+ *
+ * The file is read through memory mapped chunks starting from its checkpoint, the records are
+ * parsed and loaded with COPY in batches by an {@link ImportTarget}. Every batch is committed together with the offset of
+ * its last line, the checkpoint is keyed by the hash of the first line of the file so it follows
+ * the file when it is rotated. Only complete lines are imported: a trailing line without line
+ * separator is left to the next run, so the stats file in use by the engine can be imported too
+ */
+public class FileImporter implements Callable<Long> {
+
+	private static final Logger logger = Logger.getLogger(FileImporter.class);
+
+	static final int CHUNK_SIZE = 64 * 1024 * 1024;
+
+	private final File logFile;
+	private final Callable<ImportTarget> targetFactory;
+	private final int batchSize;
+	private final int chunkSize;
+
+	private String fileKey;
+	private DateTimeFormatter timestampFormatter;
+	private ImportTarget target;
+	private final StringBuilder batch = new StringBuilder();
+	private int batchRows;
+	private long imported;
+	private long skipped;
+
+	public FileImporter(File logFile, String connectionUrl, int batchSize) {
+		this(logFile, () -> new PostgresImportTarget(connectionUrl), batchSize, CHUNK_SIZE);
+	}
+
+	FileImporter(File logFile, Callable<ImportTarget> targetFactory, int batchSize, int chunkSize) {
+		this.logFile = logFile;
+		this.targetFactory = targetFactory;
+		this.batchSize = batchSize;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public Long call() throws Exception {
+		try (var importTarget = targetFactory.call();
+				var channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+			target = importTarget;
+			timestampFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(target.zone());
+
+			final long size = channel.size();
+			fileKey = fileKey(channel, size);
+			if (fileKey == null) {
+				logger.info(String.format("%s has no complete line, nothing to import", logFile.getName()));
+				return 0L;
+			}
+			long position = target.checkpoint(fileKey);
+			if (position > size) {
+				logger.info(String.format("%s is shorter than its checkpoint, import it from the start",
+						logFile.getName()));
+				position = 0;
+			}
+			logger.info(String.format("read logFile: %s from offset %s of %s", logFile.getName(), position, size));
+
+			byte[] line = new byte[1024];
+			while (position < size) {
+				long mappedSize = Math.min(chunkSize, size - position);
+				MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, mappedSize);
+				int lineStart = 0;
+				for (int i = 0; i < mappedSize; i++) {
+					if (chunk.get(i) == '\n') {
+						int length = i - lineStart;
+						if (length > 0 && chunk.get(i - 1) == '\r') {
+							length--;
+						}
+						if (line.length < length) {
+							line = new byte[Math.max(length, line.length * 2)];
+						}
+						chunk.position(lineStart);
+						chunk.get(line, 0, length);
+						addRow(new String(line, 0, length, StandardCharsets.UTF_8));
+						lineStart = i + 1;
+						if (batchRows >= batchSize) {
+							commit(position + lineStart);
+						}
+					}
+				}
+				if (lineStart == 0) {
+					if (mappedSize == chunkSize) {
+						throw new IOException(String.format("line longer than %s bytes at offset %s of %s",
+								chunkSize, position, logFile.getName()));
+					}
+					// incomplete last line
+					break;
+				}
+				position += lineStart;
+			}
+			commit(position);
+		}
+		logger.info(String.format("%s: inserted %s entries, skipped %s", logFile.getName(), imported, skipped));
+		return imported;
+	}
+
+	private void addRow(String row) {
+		Map<String, String> recordFields;
+		try {
+			RecordAnalyzer analyzer = RecordAnalyzerFactory.getAnalyzer(new Record(row));
+			if (analyzer == null) {
+				skipped++;
+				return;
+			}
+			recordFields = analyzer.extractData();
+		} catch (IllegalArgumentException ile) {
+			logger.debug(String.format("skip row of %s: %s", logFile.getName(), ile.getMessage()));
+			skipped++;
+			return;
+		}
+		if (!recordFields.containsKey("gameId")) {
+			skipped++;
+			return;
+		}
+		appendText(recordFields.get("gameId")).append(',');
+		appendText(recordFields.get("playerId")).append(',');
+		appendText(recordFields.get("executionId")).append(',');
+		appendTimestamp(recordFields.get("executionTime")).append(',');
+		appendTimestamp(recordFields.get("timestamp")).append(',');
+		appendText(recordFields.get("type")).append(',');
+		appendText(recordFields.get("actionName")).append(',');
+		appendText(recordFields.get("ruleName")).append(',');
+		appendText(recordFields.get("conceptName")).append(',');
+		appendValue(recordFields.get("deltaScore")).append(',');
+		appendValue(recordFields.get("score")).append('\n');
+		batchRows++;
+	}
+
+	/*
+	 * CSV null is an empty unquoted value, texts are always quoted to keep empty strings
+	 */
+	private StringBuilder appendText(String value) {
+		if (value == null) {
+			return batch;
+		}
+		batch.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				batch.append('"');
+			}
+			batch.append(c);
+		}
+		return batch.append('"');
+	}
+
+	private StringBuilder appendValue(String value) {
+		return value == null || "null".equals(value) ? batch : batch.append(value);
+	}
+
+	/*
+	 * same value of to_timestamp(millis / 1000) stored in a TIMESTAMP column by the previous
+	 * importer
+	 */
+	private StringBuilder appendTimestamp(String millis) {
+		if (millis == null) {
+			return batch;
+		}
+		return batch.append(timestampFormatter.format(Instant.ofEpochSecond(Long.valueOf(millis) / 1000)));
+	}
+
+	private void commit(long offset) throws SQLException, IOException {
+		target.commit(batch.toString(), fileKey, logFile.getName(), offset);
+		imported += batchRows;
+		logger.debug(String.format("%s: committed %s rows, offset %s", logFile.getName(), batchRows, offset));
+		batch.setLength(0);
+		batchRows = 0;
+	}
+
+	/*
+	 * hash of the first line, null if the file has no complete line yet
+	 */
+	private String fileKey(FileChannel channel, long size) throws IOException {
+		MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(chunkSize, size));
+		for (int i = 0; i < head.limit(); i++) {
+			if (head.get(i) == '\n') {
+				try {
+					MessageDigest digest = MessageDigest.getInstance("SHA-256");
+					digest.update(head.limit(i));
+					return String.format("%064x", new BigInteger(1, digest.digest()));
+				} catch (NoSuchAlgorithmException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+		return null;
+	}
+}
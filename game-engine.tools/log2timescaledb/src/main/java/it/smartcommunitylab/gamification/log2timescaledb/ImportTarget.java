@@ -0,0 +1,29 @@
+package it.smartcommunitylab.gamification.log2timescaledb;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.ZoneId;
+
+/**
+ * Destination of the rows imported by a {@link FileImporter}, opened for the import of a file
+ */
+public interface ImportTarget extends AutoCloseable {
+
+	/**
+	 * @return time zone of the timestamps written in the rows
+	 */
+	ZoneId zone() throws SQLException;
+
+	/**
+	 * @return offset of the first line of the file not yet imported, 0 if the file is new
+	 */
+	long checkpoint(String fileKey) throws SQLException;
+
+	/**
+	 * Writes the rows, in COPY csv format, together with the new offset of the file
+	 */
+	void commit(String rows, String fileKey, String filename, long offset) throws SQLException, IOException;
+
+	@Override
+	void close() throws SQLException;
+}
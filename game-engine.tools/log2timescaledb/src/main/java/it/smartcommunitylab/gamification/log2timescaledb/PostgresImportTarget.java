@@ -0,0 +1,67 @@
+package it.smartcommunitylab.gamification.log2timescaledb;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Loads the rows in the eventLogs table with COPY, in the same transaction of the checkpoint of
+ * the file
+ */
+public class PostgresImportTarget implements ImportTarget {
+
+	private static final String COPY_EVENTS = "COPY eventLogs (gameid, playerid, executionid, executiontime, time, type, actionname, rulename, conceptname, deltascore, score) FROM STDIN WITH (FORMAT csv)";
+
+	private final Connection conn;
+	private final CopyManager copyManager;
+
+	public PostgresImportTarget(String connectionUrl) throws SQLException {
+		conn = DriverManager.getConnection(connectionUrl);
+		try {
+			conn.setAutoCommit(false);
+			copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+		} catch (SQLException e) {
+			conn.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public ZoneId zone() throws SQLException {
+		try (var stmt = conn.createStatement(); var rs = stmt.executeQuery("SHOW TimeZone")) {
+			rs.next();
+			return ZoneId.of(rs.getString(1));
+		} catch (DateTimeException e) {
+			try (var stmt = conn.createStatement()) {
+				stmt.execute("SET TIME ZONE 'UTC'");
+			}
+			return ZoneId.of("UTC");
+		}
+	}
+
+	@Override
+	public long checkpoint(String fileKey) throws SQLException {
+		return Checkpoints.read(conn, fileKey);
+	}
+
+	@Override
+	public void commit(String rows, String fileKey, String filename, long offset) throws SQLException, IOException {
+		if (!rows.isEmpty()) {
+			copyManager.copyIn(COPY_EVENTS, new StringReader(rows));
+		}
+		Checkpoints.write(conn, fileKey, filename, offset);
+		conn.commit();
+	}
+
+	@Override
+	public void close() throws SQLException {
+		conn.close();
+	}
+}
@@ -34,6 +34,9 @@ public enum RecordType {
     }
 
     public static RecordType of(String recordType) {
+        if (recordType == null) {
+            throw new IllegalArgumentException("record without type");
+        }
         switch (recordType) {
             case "Action":
                 return RecordType.ACTION;
@@ -0,0 +1,161 @@
+package it.smartcommunitylab.gamification.log2timescaledb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileImporterTest {
+
+    private static final String ACTION =
+            "INFO - \"GAME\" \"PLAYER\" EXEC_%s 1000000 1200000 type=Action actionName=\"save\"";
+    private static final String POINT_CONCEPT =
+            "INFO - \"GAME\" \"PLAYER\" EXEC_%s 1000000 1200000 type=PointConcept ruleName=\"rule\" name=\"green\" deltaScore=2.0 score=12.0";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MemoryTarget target = new MemoryTarget();
+
+    @Test
+    public void parse_records_in_copy_rows() throws Exception {
+        File log = write("stats.log", String.format(ACTION, 1) + "\r\n" + "not a stats record\n"
+                + String.format(POINT_CONCEPT, 2) + "\n" + "INFO - \"GAME\" \"PLA");
+
+        assertThat(importFile(log, 100), is(2L));
+        assertThat(target.commits.size(), is(1));
+        assertThat(target.commits.get(0).rows, is(
+                "\"GAME\",\"PLAYER\",\"EXEC_1\",1970-01-01 00:16:40,1970-01-01 00:20:00,\"Action\",\"save\",,,,\n"
+                        + "\"GAME\",\"PLAYER\",\"EXEC_2\",1970-01-01 00:16:40,1970-01-01 00:20:00,\"PointConcept\",,\"rule\",\"green\",2.0,12.0\n"));
+        // the incomplete last line is left to the next run
+        assertThat(target.commits.get(0).offset, is(log.length() - "INFO - \"GAME\" \"PLA".length()));
+    }
+
+    @Test
+    public void resume_from_checkpoint() throws Exception {
+        File log = write("stats.log", String.format(ACTION, 1) + "\n" + "INFO - \"GAME\" \"PLA");
+        assertThat(importFile(log, 100), is(1L));
+
+        // the engine completes the line and writes a new one
+        Files.write(log.toPath(),
+                ("YER\" EXEC_2 1000000 1200000 type=Action actionName=\"save\"\n"
+                        + String.format(ACTION, 3) + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        assertThat(importFile(log, 100), is(2L));
+        assertThat(executionIds(), is(Arrays.asList("EXEC_1", "EXEC_2", "EXEC_3")));
+        assertThat(target.checkpoints.values().iterator().next(), is(log.length()));
+
+        // nothing new to import
+        assertThat(importFile(log, 100), is(0L));
+        assertThat(executionIds(), is(Arrays.asList("EXEC_1", "EXEC_2", "EXEC_3")));
+    }
+
+    @Test
+    public void rotated_file_keeps_its_checkpoint() throws Exception {
+        File log = write("stats.log", String.format(ACTION, 1) + "\n" + String.format(ACTION, 2) + "\n");
+        assertThat(importFile(log, 100), is(2L));
+
+        // rotation: the file is renamed and a new one is created with the same name
+        File rotated = new File(folder.getRoot(), "stats.log.1");
+        Files.move(log.toPath(), rotated.toPath());
+        log = write("stats.log", String.format(POINT_CONCEPT, 3) + "\n");
+
+        assertThat(importFile(rotated, 100), is(0L));
+        assertThat(importFile(log, 100), is(1L));
+        assertThat(executionIds(), is(Arrays.asList("EXEC_1", "EXEC_2", "EXEC_3")));
+        assertThat(target.checkpoints.size(), is(2));
+    }
+
+    @Test
+    public void copy_rows_in_batches() throws Exception {
+        StringBuilder content = new StringBuilder();
+        List<Long> lineEnds = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            content.append(String.format(ACTION, i)).append('\n');
+            lineEnds.add((long) content.length());
+        }
+        File log = write("stats.log", content.toString());
+
+        // chunks smaller than two lines: lines are split between chunks
+        assertThat(new FileImporter(log, () -> target, 2, 128).call(), is(5L));
+        assertThat(target.commits.stream().map(c -> c.rows.split("\n").length).collect(Collectors.toList()),
+                is(Arrays.asList(2, 2, 1)));
+        assertThat(target.commits.stream().map(c -> c.offset).collect(Collectors.toList()),
+                is(Arrays.asList(lineEnds.get(1), lineEnds.get(3), lineEnds.get(4))));
+        assertThat(executionIds(), is(Arrays.asList("EXEC_1", "EXEC_2", "EXEC_3", "EXEC_4", "EXEC_5")));
+    }
+
+    private long importFile(File log, int batchSize) throws Exception {
+        return new FileImporter(log, () -> target, batchSize, FileImporter.CHUNK_SIZE).call();
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private List<String> executionIds() {
+        List<String> ids = new ArrayList<>();
+        for (Commit commit : target.commits) {
+            for (String row : commit.rows.split("\n")) {
+                if (!row.isEmpty()) {
+                    ids.add(row.split(",")[2].replace("\"", ""));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static class Commit {
+        private final String rows;
+        private final long offset;
+
+        private Commit(String rows, long offset) {
+            this.rows = rows;
+            this.offset = offset;
+        }
+    }
+
+    private static class MemoryTarget implements ImportTarget {
+
+        private final Map<String, Long> checkpoints = new HashMap<>();
+        private final List<Commit> commits = new ArrayList<>();
+
+        @Override
+        public ZoneId zone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public long checkpoint(String fileKey) {
+            return checkpoints.getOrDefault(fileKey, 0L);
+        }
+
+        @Override
+        public void commit(String rows, String fileKey, String filename, long offset) {
+            if (!rows.isEmpty()) {
+                commits.add(new Commit(rows, offset));
+            }
+            checkpoints.put(fileKey, offset);
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -17,6 +18,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import eu.trentorise.game.bean.PlayerStateDTO;
+import eu.trentorise.game.managers.drools.RuleProfiler;
+import eu.trentorise.game.managers.drools.RuleProfiler.RuleProfile;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.services.PlayerService;
 import eu.trentorise.game.utils.Converter;
@@ -36,6 +39,9 @@ public class AdminController {
 	@Autowired
 	private JsonDB jsonDB;
 
+    @Autowired
+    private RuleProfiler ruleProfiler;
+
     @GetMapping(value="/data/game/{gameId}/player")
     public Page<PlayerStateDTO> readPlayerStates(@PathVariable String gameId,
             Pageable pageable, @RequestParam(required = false) String playerFilter) {
@@ -83,4 +89,16 @@ public class AdminController {
 	public void importJsonDB() throws Exception {
 		jsonDB.importDB();
 	}
+
+    @GetMapping("/profiler/game/{gameId}/rules")
+    public List<RuleProfile> readRuleProfile(@PathVariable String gameId) {
+        gameId = decodePathVariable(gameId);
+        return ruleProfiler.readProfile(gameId);
+    }
+
+    @DeleteMapping("/profiler/game/{gameId}/rules")
+    public void resetRuleProfile(@PathVariable String gameId) {
+        gameId = decodePathVariable(gameId);
+        ruleProfiler.resetProfile(gameId);
+    }
 }
@@ -14,8 +14,11 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import eu.trentorise.game.managers.ArchiveManager;
+import eu.trentorise.game.model.core.ArchivePage;
 import eu.trentorise.game.model.core.ArchivedConcept;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.Parameters;
 
 @RestController
 @Profile({ "sec", "no-sec" })
@@ -50,4 +53,25 @@ public class ArchiveConceptController {
 
 	}
 
+	@RequestMapping(method = RequestMethod.GET, value = "/data/game/{gameId}/archive/page", produces = {
+			"application/json" })
+	@Operation(summary = "Read a page of archive concepts for a game, in archiving order")
+	@Parameters({
+		@Parameter(name = "cursor", description = "nextCursor of the previous page, omit to read the first page"),
+		@Parameter(name = "size", description = "page size, max 1000")
+		})
+	public ArchivePage readArchivePageForGame(@PathVariable String gameId,
+			@RequestParam(required = false) String playerId,
+			@RequestParam(required = false) String state,
+			@RequestParam(required = false) Long from, @RequestParam(required = false) Long to,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(required = false, defaultValue = "100") int size) {
+
+		gameId = decodePathVariable(gameId);
+
+		Date fromDate = from != null ? new Date(from) : null;
+		Date toDate = to != null ? new Date(to) : null;
+		return archiveSrv.readArchives(gameId, playerId, state, fromDate, toDate, cursor, size);
+	}
+
 }
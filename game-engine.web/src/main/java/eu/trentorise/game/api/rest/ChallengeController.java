@@ -2,22 +2,16 @@ package eu.trentorise.game.api.rest;
 
 import static eu.trentorise.game.api.rest.ControllerUtils.decodePathVariable;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -25,12 +19,11 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import eu.trentorise.game.core.LogHub;
 import eu.trentorise.game.managers.ChallengeManager;
 import eu.trentorise.game.model.ChallengeConcept;
-import eu.trentorise.game.model.ChallengeReportCSVStub;
-import eu.trentorise.game.model.ExportCsv;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.repo.ChallengeConceptPersistence;
 import eu.trentorise.game.repo.ChallengeConceptRepo;
@@ -80,56 +73,47 @@ public class ChallengeController {
 			"application/json" })
 	@Operation(summary = "Read single group challenge report for a game with optional filter parameters")
 	@Parameters({
-		@Parameter(name = "fileType", description = "csv|json "),
+		@Parameter(name = "fileType", description = "csv|json|jsonl "),
 		@Parameter(name = "challengeType", description = "group|single")
 		})
-	public void getChallengeReportForGame(@PathVariable String gameId,
+	public ResponseEntity<StreamingResponseBody> getChallengeReportForGame(@PathVariable String gameId,
 			@RequestParam(required = false) Long from,
 			@RequestParam(required = false) Long to,
 			@RequestParam(required = false) String challengeType,
 			@RequestParam(required = false) String modelName,
 			@RequestParam(required = false) Boolean hidden,
-			@RequestParam String fileType,
-			HttpServletRequest request, HttpServletResponse response) throws Exception {
-
-		gameId = decodePathVariable(gameId);
+			@RequestParam String fileType) {
 
-		Date fromDate = null;
-		Date toDate = null;
-		if (from != null) {
-			fromDate = new Date(from);
-		}
+		final String decodedGameId = decodePathVariable(gameId);
 
-		if (to != null) {
-			toDate = new Date(to);
-		}
+		final Date fromDate = from != null ? new Date(from) : null;
+		final Date toDate = to != null ? new Date(to) : null;
 
+		String filename;
+		String contentType;
+		StreamingResponseBody body;
 		if (fileType.equalsIgnoreCase("csv")) {
-			List<ChallengeReportCSVStub> result = challengeSrv.readChallengeReportCSV(gameId, fromDate, toDate,
-					challengeType, modelName, hidden);
-			ExportCsv reportCsv = challengeSrv.getChallengeReportCSV(result, gameId);
-			response.setContentType(reportCsv.getContentType());
-			response.setHeader("Content-Disposition", "attachment; filename=" + reportCsv.getFilename());
-			response.setHeader("Access-Control-Expose-Headers", "Content-Disposition");
-			response.getOutputStream().write(reportCsv.getContent().toString().getBytes(StandardCharsets.UTF_8));
-		} else if (fileType.equalsIgnoreCase("json")) {
-			String reportJSON = challengeSrv.readChallengeReportJSON(gameId, fromDate, toDate, challengeType, modelName,
-					hidden);
-			DateTimeFormatter ldf = DateTimeFormatter.ofPattern("dd-MM-YYYY");
-			LocalDate today = LocalDate.now();
-			String filename = "report_challenges" + "_" + gameId + "_" + today.format(ldf) + ".json";
-			response.setContentType("application/json");
-			response.setHeader("Content-Disposition", "attachment; filename=" + filename);
-			response.setHeader("Access-Control-Expose-Headers", "Content-Disposition");
-			response.getOutputStream().write(reportJSON.getBytes(StandardCharsets.UTF_8));
+			filename = challengeSrv.challengeReportFilename(decodedGameId, "csv");
+			contentType = "text/csv";
+			body = out -> challengeSrv.writeChallengeReportCSV(decodedGameId, fromDate, toDate, challengeType,
+					modelName, hidden, out);
+		} else if (fileType.equalsIgnoreCase("json") || fileType.equalsIgnoreCase("jsonl")) {
+			final boolean jsonLines = fileType.equalsIgnoreCase("jsonl");
+			filename = challengeSrv.challengeReportFilename(decodedGameId, fileType.toLowerCase());
+			contentType = jsonLines ? "application/x-ndjson" : "application/json";
+			body = out -> challengeSrv.writeChallengeReportJSON(decodedGameId, fromDate, toDate, challengeType,
+					modelName, hidden, jsonLines, out);
 		} else {
 			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "file type not specified");
 		}
-				
+
 		if (logger.isInfoEnabled()) {
-			logger.info(String.format("getChallengeReportForGame:%s", gameId));
+			logger.info(String.format("getChallengeReportForGame:%s", decodedGameId));
 		}
 
+		return ResponseEntity.ok().header(HttpHeaders.CONTENT_TYPE, contentType)
+				.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+				.header(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, HttpHeaders.CONTENT_DISPOSITION).body(body);
 	}
 	
 }
@@ -5,8 +5,10 @@ import static eu.trentorise.game.api.rest.ControllerUtils.decodePathVariable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Pageable;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -14,12 +16,14 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 
 import eu.trentorise.game.managers.NotificationManager;
 import eu.trentorise.game.model.core.Notification;
+import eu.trentorise.game.model.core.NotificationFeed;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.Parameters;
@@ -31,6 +35,9 @@ public class NotificationController {
     @Autowired
     private NotificationManager notificationSrv;
 
+    @Value("${notification.feed.max-wait:60}")
+    private long feedMaxWait;
+
     @RequestMapping(method = RequestMethod.GET,
             value = "/notification/game/{gameId}/player/{playerId}",
             produces = {"application/json"})
@@ -116,5 +123,75 @@ public class NotificationController {
                 pageable);
     }
 
+    @RequestMapping(method = RequestMethod.GET, value = "/notification/game/{gameId}/feed",
+            produces = {"application/json"})
+    @Operation(summary = "Get game notification feed",
+            description = "Get the game notifications arrived after the cursor. If there are no new notifications the request waits up to wait seconds")
+    @Parameters({
+            @Parameter(name = "cursor", description = "cursor returned by the previous request, empty for the first request"),
+            @Parameter(name = "fromTs", description = "timestamp the first request starts from"),
+            @Parameter(name = "size", description = "max number of notifications"),
+            @Parameter(name = "wait", description = "max seconds waiting new notifications"),})
+    public DeferredResult<NotificationFeed> readNotificationFeed(@PathVariable String gameId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "-1") long fromTs,
+            @RequestParam(defaultValue = "100") int size,
+            @RequestParam(defaultValue = "0") long wait) {
+        gameId = decodePathVariable(gameId);
+        return readFeed(gameId, null, cursor, fromTs, size, wait);
+    }
+
+    @RequestMapping(method = RequestMethod.GET,
+            value = "/notification/game/{gameId}/player/{playerId}/feed",
+            produces = {"application/json"})
+    @Operation(summary = "Get player notification feed",
+            description = "Get the player notifications arrived after the cursor. If there are no new notifications the request waits up to wait seconds")
+    @Parameters({
+            @Parameter(name = "cursor", description = "cursor returned by the previous request, empty for the first request"),
+            @Parameter(name = "fromTs", description = "timestamp the first request starts from"),
+            @Parameter(name = "size", description = "max number of notifications"),
+            @Parameter(name = "wait", description = "max seconds waiting new notifications"),})
+    public DeferredResult<NotificationFeed> readPlayerNotificationFeed(
+            @PathVariable String gameId, @PathVariable String playerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "-1") long fromTs,
+            @RequestParam(defaultValue = "100") int size,
+            @RequestParam(defaultValue = "0") long wait) {
+        gameId = decodePathVariable(gameId);
+        playerId = decodePathVariable(playerId);
+        return readFeed(gameId, playerId, cursor, fromTs, size, wait);
+    }
+
+    /*
+     * long polling: when the feed is empty the result is set by the first
+     * signal of new notifications of the game or, on timeout, by a last read
+     * that catches the notifications persisted by other engine instances
+     */
+    private DeferredResult<NotificationFeed> readFeed(String gameId, String playerId,
+            String cursor, long fromTs, int size, long wait) {
+        long timeout = TimeUnit.SECONDS.toMillis(Math.max(0, Math.min(wait, feedMaxWait)));
+        DeferredResult<NotificationFeed> result = new DeferredResult<>(timeout > 0 ? timeout : null);
+        NotificationFeed feed = notificationSrv.readFeed(gameId, playerId, cursor, fromTs, size);
+        if (!feed.getNotifications().isEmpty() || timeout == 0) {
+            result.setResult(feed);
+            return result;
+        }
+
+        Runnable listener = () -> {
+            NotificationFeed newFeed =
+                    notificationSrv.readFeed(gameId, playerId, cursor, fromTs, size);
+            if (!newFeed.getNotifications().isEmpty()) {
+                result.setResult(newFeed);
+            }
+        };
+        result.onTimeout(() -> result
+                .setResult(notificationSrv.readFeed(gameId, playerId, cursor, fromTs, size)));
+        result.onCompletion(() -> notificationSrv.removeFeedListener(gameId, listener));
+        notificationSrv.addFeedListener(gameId, listener);
+        // notifications persisted before the listener registration
+        listener.run();
+        return result;
+    }
+
     // TODO: consider a possibility to write notifications
 }
@@ -22,6 +22,7 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import eu.trentorise.game.bean.BulkChallengeAssignmentDTO;
 import eu.trentorise.game.bean.ChallengeAssignmentDTO;
 import eu.trentorise.game.bean.GroupChallengeDTO;
 import eu.trentorise.game.bean.PlayerStateDTO;
@@ -41,7 +42,9 @@ import eu.trentorise.game.model.PlayerBlackList;
 import eu.trentorise.game.model.PlayerLevel;
 import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.model.TeamState;
+import eu.trentorise.game.model.core.BulkChallengeAssignment;
 import eu.trentorise.game.model.core.ChallengeAssignment;
+import eu.trentorise.game.model.core.ChallengeAssignmentResult;
 import eu.trentorise.game.services.GameService;
 import eu.trentorise.game.services.PlayerService;
 import eu.trentorise.game.utils.Converter;
@@ -81,6 +84,18 @@ public class PlayerController {
         playerSrv.assignChallenge(gameId, playerId, assignment);
     }
 
+    @RequestMapping(method = RequestMethod.POST,
+            value = "/data/game/{gameId}/challenges/bulk",
+            consumes = {"application/json"}, produces = {"application/json"})
+    @Operation(summary = "Assign challenge to many players")
+    public List<ChallengeAssignmentResult> assignChallenge(
+            @RequestBody BulkChallengeAssignmentDTO challengeData, @PathVariable String gameId) {
+
+        gameId = decodePathVariable(gameId);
+        BulkChallengeAssignment assignment = converter.convert(challengeData);
+        return playerSrv.assignChallenge(gameId, assignment);
+    }
+
     @RequestMapping(method = RequestMethod.POST,
             value = "/data/game/{gameId}/group-challenges",
             consumes = {"application/json"}, produces = {"application/json"})
@@ -472,7 +487,9 @@ public class PlayerController {
 			"application/json" })
     @Operation(summary = "Get availabe challengers for the player")
 	public List<String> readSystemPlayerState(@PathVariable String gameId, @PathVariable String playerId,
-			@RequestParam(required = false) String conceptName) throws Exception {
+			@RequestParam(required = false) String conceptName,
+			@Parameter(description = "max number of challengers, randomly sampled (0 for all)") @RequestParam(defaultValue = "0") int limit)
+			throws Exception {
 
 		gameId = decodePathVariable(gameId);
 		playerId = decodePathVariable(playerId);
@@ -481,7 +498,7 @@ public class PlayerController {
 			conceptName = decodePathVariable(conceptName);
 		}	
 
-		return playerSrv.readSystemPlayerState(gameId, playerId, conceptName);
+		return playerSrv.readSystemPlayerState(gameId, playerId, conceptName, limit);
 
 	}
     
@@ -0,0 +1,47 @@
+package eu.trentorise.game.bean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class BulkChallengeAssignmentDTO extends ChallengeAssignmentDTO {
+    private List<PlayerAssignmentDTO> players = new ArrayList<>();
+
+    public List<PlayerAssignmentDTO> getPlayers() {
+        return players;
+    }
+
+    public void setPlayers(List<PlayerAssignmentDTO> players) {
+        this.players = players;
+    }
+
+    public static class PlayerAssignmentDTO {
+        private String playerId;
+        private String instanceName;
+        private Map<String, Object> data;
+
+        public String getPlayerId() {
+            return playerId;
+        }
+
+        public void setPlayerId(String playerId) {
+            this.playerId = playerId;
+        }
+
+        public String getInstanceName() {
+            return instanceName;
+        }
+
+        public void setInstanceName(String instanceName) {
+            this.instanceName = instanceName;
+        }
+
+        public Map<String, Object> getData() {
+            return data;
+        }
+
+        public void setData(Map<String, Object> data) {
+            this.data = data;
+        }
+    }
+}
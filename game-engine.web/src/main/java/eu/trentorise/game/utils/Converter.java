@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import eu.trentorise.game.bean.BulkChallengeAssignmentDTO;
 import eu.trentorise.game.bean.ChallengeAssignmentDTO;
 import eu.trentorise.game.bean.ClassificationDTO;
 import eu.trentorise.game.bean.GameDTO;
@@ -61,6 +62,8 @@ import eu.trentorise.game.model.PlayerState;
 import eu.trentorise.game.model.PointConcept;
 import eu.trentorise.game.model.Reward;
 import eu.trentorise.game.model.TeamState;
+import eu.trentorise.game.model.core.BulkChallengeAssignment;
+import eu.trentorise.game.model.core.BulkChallengeAssignment.PlayerAssignment;
 import eu.trentorise.game.model.core.ChallengeAssignment;
 import eu.trentorise.game.model.core.GameConcept;
 import eu.trentorise.game.model.core.GameTask;
@@ -480,6 +483,29 @@ public class Converter {
         return challengeAssignment;
     }
 
+    public BulkChallengeAssignment convert(BulkChallengeAssignmentDTO dto) {
+        BulkChallengeAssignment bulkAssignment = null;
+        if (dto != null) {
+            bulkAssignment = new BulkChallengeAssignment();
+            bulkAssignment.setChallengeType(dto.getState());
+            bulkAssignment.setData(dto.getData());
+            bulkAssignment.setStart(dto.getStart());
+            bulkAssignment.setEnd(dto.getEnd());
+            bulkAssignment.setInstanceName(dto.getInstanceName());
+            bulkAssignment.setModelName(dto.getModelName());
+            bulkAssignment.setOrigin(dto.getOrigin());
+            bulkAssignment.setPriority(dto.getPriority());
+            bulkAssignment.setHide(dto.isHide());
+            if (dto.getPlayers() != null) {
+                bulkAssignment.setPlayers(dto.getPlayers().stream()
+                        .map(player -> new PlayerAssignment(player.getPlayerId(),
+                                player.getInstanceName(), player.getData()))
+                        .collect(Collectors.toList()));
+            }
+        }
+        return bulkAssignment;
+    }
+
     public GroupChallenge convert(GroupChallengeDTO dto) {
         GroupChallenge groupChallenge = null;
         if (dto != null) {
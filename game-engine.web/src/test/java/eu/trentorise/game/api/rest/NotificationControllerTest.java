@@ -1,8 +1,10 @@
 package eu.trentorise.game.api.rest;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import javax.annotation.PostConstruct;
@@ -21,11 +23,13 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.AnnotationConfigWebContextLoader;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import eu.trentorise.game.config.AppConfig;
@@ -230,6 +234,54 @@ public class NotificationControllerTest {
         }
     }
 
+    @Test
+    public void readPlayerFeedByCursor() throws Exception {
+        setupPaginationTest();
+        RequestBuilder builder = MockMvcRequestBuilders
+                .get("/notification/game/{gameId}/player/{playerId}/feed", GAME, PLAYER_1)
+                .param("size", "3");
+        MvcResult result = mocker.perform(builder).andExpect(request().asyncStarted()).andReturn();
+        result = mocker.perform(asyncDispatch(result)).andDo(print())
+                .andExpect(status().is(200))
+                .andExpect(jsonPath("$.notifications", Matchers.hasSize(3)))
+                .andExpect(jsonPath("$.notifications[0].badge", Matchers.equalTo("1-gold-coin")))
+                .andReturn();
+        String cursor = cursor(result);
+
+        builder = MockMvcRequestBuilders
+                .get("/notification/game/{gameId}/player/{playerId}/feed", GAME, PLAYER_1)
+                .param("size", "3").param("cursor", cursor);
+        result = mocker.perform(builder).andExpect(request().asyncStarted()).andReturn();
+        mocker.perform(asyncDispatch(result)).andDo(print()).andExpect(status().is(200))
+                .andExpect(jsonPath("$.notifications", Matchers.hasSize(1)))
+                .andExpect(jsonPath("$.notifications[0].badge", Matchers.equalTo("5-gold-coin")));
+    }
+
+    @Test
+    public void longPollingFeedReturnsNewNotification() throws Exception {
+        notificationManager
+                .notificate(new BadgeNotification(GAME, PLAYER_1, "chest", "1-gold-coin"));
+        RequestBuilder builder =
+                MockMvcRequestBuilders.get("/notification/game/{gameId}/feed", GAME);
+        MvcResult result = mocker.perform(builder).andExpect(request().asyncStarted()).andReturn();
+        result = mocker.perform(asyncDispatch(result)).andReturn();
+        String cursor = cursor(result);
+
+        builder = MockMvcRequestBuilders.get("/notification/game/{gameId}/feed", GAME)
+                .param("cursor", cursor).param("wait", "10");
+        result = mocker.perform(builder).andExpect(request().asyncStarted()).andReturn();
+        notificationManager
+                .notificate(new BadgeNotification(GAME, PLAYER_2, "chest", "2-gold-coin"));
+        mocker.perform(asyncDispatch(result)).andDo(print()).andExpect(status().is(200))
+                .andExpect(jsonPath("$.notifications", Matchers.hasSize(1)))
+                .andExpect(jsonPath("$.notifications[0].badge", Matchers.equalTo("2-gold-coin")));
+    }
+
+    private String cursor(MvcResult result) throws Exception {
+        JsonNode feed = mapper.readTree(result.getResponse().getContentAsString());
+        return feed.get("cursor").asText();
+    }
+
     private void setup_ExcludeNotificationType() {
         BadgeNotification notification =
                 new BadgeNotification(GAME, PLAYER_1, "chest", "1-gold-coin");